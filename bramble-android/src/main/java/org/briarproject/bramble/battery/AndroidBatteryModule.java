@@ -9,6 +9,8 @@ import javax.inject.Singleton;
 import dagger.Module;
 import dagger.Provides;
 
+import static java.util.Collections.emptyList;
+
 @Module
 public class AndroidBatteryModule {
 
@@ -21,7 +23,7 @@ public class AndroidBatteryModule {
 	@Singleton
 	BatteryManager provideBatteryManager(LifecycleManager lifecycleManager,
 			AndroidBatteryManager batteryManager) {
-		lifecycleManager.registerService(batteryManager);
+		lifecycleManager.registerService(batteryManager, emptyList());
 		return batteryManager;
 	}
 }
@@ -13,6 +13,7 @@ import org.briarproject.bramble.api.mailbox.MailboxUpdate;
 import org.briarproject.bramble.api.mailbox.MailboxVersion;
 import org.briarproject.bramble.api.plugin.TransportId;
 import org.briarproject.bramble.api.properties.TransportProperties;
+import org.briarproject.bramble.api.sync.ClientId;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
 import org.briarproject.bramble.api.sync.MessageId;
@@ -55,6 +56,13 @@ public interface ClientHelper {
 	BdfDictionary getGroupMetadataAsDictionary(Transaction txn, GroupId g)
 			throws DbException, FormatException;
 
+	/**
+	 * Returns the metadata for all groups belonging to the given client.
+	 * Groups with no metadata are not included.
+	 */
+	Map<GroupId, BdfDictionary> getGroupMetadataAsDictionary(Transaction txn,
+			ClientId c, int majorVersion) throws DbException, FormatException;
+
 	Collection<MessageId> getMessageIds(Transaction txn, GroupId g,
 			BdfDictionary query) throws DbException, FormatException;
 
@@ -77,6 +85,15 @@ public interface ClientHelper {
 			Transaction txn, GroupId g, BdfDictionary query) throws DbException,
 			FormatException;
 
+	/**
+	 * Returns the metadata for a page of delivered messages in the given
+	 * group, in timestamp order. The page is selected in the same way as
+	 * by the corresponding method of the DatabaseComponent.
+	 */
+	Map<MessageId, BdfDictionary> getMessageMetadataAsDictionary(
+			Transaction txn, GroupId g, BdfDictionary query, long timestamp,
+			boolean before, int limit) throws DbException, FormatException;
+
 	void mergeGroupMetadata(GroupId g, BdfDictionary metadata)
 			throws DbException, FormatException;
 
@@ -0,0 +1,64 @@
+package org.briarproject.bramble.api.db;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A snapshot of the database's connection pool metrics.
+ */
+@Immutable
+@NotNullByDefault
+public class ConnectionPoolStats {
+
+	private final long checkouts, readOnlyCheckouts, waitTime;
+	private final int idleConnections, idleReadOnlyConnections;
+
+	public ConnectionPoolStats(long checkouts, long readOnlyCheckouts,
+			long waitTime, int idleConnections, int idleReadOnlyConnections) {
+		this.checkouts = checkouts;
+		this.readOnlyCheckouts = readOnlyCheckouts;
+		this.waitTime = waitTime;
+		this.idleConnections = idleConnections;
+		this.idleReadOnlyConnections = idleReadOnlyConnections;
+	}
+
+	/**
+	 * Returns the number of transactions that have been started since the
+	 * database was opened, including read-only transactions.
+	 */
+	public long getCheckouts() {
+		return checkouts;
+	}
+
+	/**
+	 * Returns the number of transactions that have been started on the
+	 * read-only connection pool since the database was opened.
+	 */
+	public long getReadOnlyCheckouts() {
+		return readOnlyCheckouts;
+	}
+
+	/**
+	 * Returns the total time in milliseconds that callers have spent
+	 * waiting for the database lock or a connection since the database was
+	 * opened.
+	 */
+	public long getWaitTime() {
+		return waitTime;
+	}
+
+	/**
+	 * Returns the number of idle read-write connections in the pool.
+	 */
+	public int getIdleConnections() {
+		return idleConnections;
+	}
+
+	/**
+	 * Returns the number of idle connections in the read-only pool.
+	 */
+	public int getIdleReadOnlyConnections() {
+		return idleReadOnlyConnections;
+	}
+}
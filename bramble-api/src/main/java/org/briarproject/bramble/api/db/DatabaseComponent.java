@@ -76,6 +76,11 @@ public interface DatabaseComponent extends TransactionManager {
 	 */
 	void close() throws DbException;
 
+	/**
+	 * Returns a snapshot of the database's connection pool metrics.
+	 */
+	ConnectionPoolStats getConnectionPoolStats();
+
 	/**
 	 * Stores a contact associated with the given local and remote pseudonyms,
 	 * and returns an ID for the contact.
@@ -297,6 +302,15 @@ public interface DatabaseComponent extends TransactionManager {
 	 */
 	Metadata getGroupMetadata(Transaction txn, GroupId g) throws DbException;
 
+	/**
+	 * Returns the metadata for all groups belonging to the given client.
+	 * Groups with no metadata are not included.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<GroupId, Metadata> getGroupMetadata(Transaction txn, ClientId c,
+			int majorVersion) throws DbException;
+
 	/**
 	 * Returns all groups belonging to the given client.
 	 * <p/>
@@ -432,6 +446,29 @@ public interface DatabaseComponent extends TransactionManager {
 	Map<MessageId, Metadata> getMessageMetadata(Transaction txn, GroupId g,
 			Metadata query) throws DbException;
 
+	/**
+	 * Returns the metadata for a page of delivered messages in the given
+	 * group with metadata that matches all entries in the given query, in
+	 * timestamp order. If the query is empty, all delivered messages that
+	 * have metadata are eligible. Messages without metadata, such as those
+	 * that have been deleted, are never included.
+	 * <p/>
+	 * If {@code before} is true, the page contains the latest messages with
+	 * timestamps earlier than the given timestamp, latest first. Otherwise
+	 * the page contains the earliest messages with timestamps later than the
+	 * given timestamp, earliest first.
+	 * <p/>
+	 * The page contains at most {@code limit} messages, unless other
+	 * messages share the timestamp of the last message in the page, in which
+	 * case they're also included. The timestamp of the last message can
+	 * therefore be used to fetch the next page.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<MessageId, Metadata> getMessageMetadata(Transaction txn, GroupId g,
+			Metadata query, long timestamp, boolean before, int limit)
+			throws DbException;
+
 	/**
 	 * Returns the metadata for the given delivered message.
 	 * <p/>
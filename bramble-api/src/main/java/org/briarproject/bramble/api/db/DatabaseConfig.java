@@ -26,4 +26,32 @@ public interface DatabaseConfig {
 	 */
 	@Nullable
 	KeyStrengthener getKeyStrengthener();
+
+	/**
+	 * Returns the maximum number of read-only connections the database may
+	 * open for running read-only transactions concurrently with each other
+	 * and with the read-write transaction, or zero if read-only transactions
+	 * should share the database lock with read-write transactions.
+	 * <p>
+	 * A read-only transaction that holds the database lock sees a consistent
+	 * view of the database. A read-only transaction that uses a pooled
+	 * connection only sees committed data, but each statement sees the
+	 * changes committed before it started, so a read-only transaction may
+	 * see some but not all of the changes made by read-write transactions
+	 * that commit while it's in progress.
+	 */
+	int getReadOnlyConnectionPoolSize();
+
+	/**
+	 * Returns how soon committed transactions should be written to disk.
+	 */
+	DatabaseDurability getDurability();
+
+	/**
+	 * Returns true if the database should spend a bounded amount of time
+	 * compacting itself when it's closed, or false if the database should
+	 * be fully compacted whenever it's closed. The database is always fully
+	 * compacted after a schema migration or an unclean shutdown.
+	 */
+	boolean isIncrementalCompactionEnabled();
 }
@@ -0,0 +1,43 @@
+package org.briarproject.bramble.api.db;
+
+/**
+ * Controls how soon committed transactions are written to disk. All modes
+ * leave the database in a consistent state after a crash, but the less
+ * strict modes may lose transactions that were committed shortly before
+ * the crash.
+ */
+public enum DatabaseDurability {
+
+	/**
+	 * Each transaction is written to disk when it commits.
+	 */
+	STRICT(0),
+
+	/**
+	 * Transactions that commit within a short period are written to disk
+	 * together. A crash may lose transactions committed during the last
+	 * {@link #getMaxWriteDelay()} milliseconds.
+	 */
+	GROUP_COMMIT(100),
+
+	/**
+	 * Transactions are written to disk in the background. A crash may lose
+	 * transactions committed during the last {@link #getMaxWriteDelay()}
+	 * milliseconds.
+	 */
+	RELAXED(1000);
+
+	private final int maxWriteDelay;
+
+	DatabaseDurability(int maxWriteDelay) {
+		this.maxWriteDelay = maxWriteDelay;
+	}
+
+	/**
+	 * Returns the maximum time in milliseconds between a transaction
+	 * committing and being written to disk.
+	 */
+	public int getMaxWriteDelay() {
+		return maxWriteDelay;
+	}
+}
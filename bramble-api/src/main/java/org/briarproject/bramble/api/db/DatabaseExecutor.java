@@ -22,6 +22,10 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
  * It is not mandatory to use this executor for database tasks. The database
  * can be accessed from any thread, but this executor's guarantee that tasks
  * are run in the order they're submitted may be useful in some cases.
+ * <p>
+ * Read-only tasks that don't depend on this ordering guarantee can be
+ * submitted to the {@link DatabaseReadExecutor} instead, so they don't have
+ * to wait for read-write tasks.
  */
 @Qualifier
 @Target({FIELD, METHOD, PARAMETER})
@@ -0,0 +1,30 @@
+package org.briarproject.bramble.api.db;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import javax.inject.Qualifier;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Annotation for injecting the executor for read-only database tasks. Also
+ * used for annotating methods that should run on the database read executor.
+ * <p>
+ * Tasks submitted to this executor must only start read-only transactions.
+ * If the database has a
+ * {@link DatabaseConfig#getReadOnlyConnectionPoolSize() read-only connection
+ * pool}, tasks may run concurrently with each other and with tasks on the
+ * {@link DatabaseExecutor}, and there are no guarantees about the order in
+ * which tasks are run. Otherwise this executor is the
+ * {@link DatabaseExecutor}. Submitting a task will never block. Tasks must not
+ * run indefinitely. Tasks submitted during shutdown are discarded.
+ */
+@Qualifier
+@Target({FIELD, METHOD, PARAMETER})
+@Retention(RUNTIME)
+public @interface DatabaseReadExecutor {
+}
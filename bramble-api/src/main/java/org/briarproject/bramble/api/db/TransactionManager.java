@@ -14,6 +14,14 @@ import javax.annotation.concurrent.ThreadSafe;
  * read-write transaction will block until there are no read-write
  * transactions in progress.
  * <p>
+ * If the database is configured with a
+ * {@link DatabaseConfig#getReadOnlyConnectionPoolSize() read-only connection
+ * pool}, read-only transactions do not acquire the database lock and may run
+ * concurrently with a read-write transaction. In that case a read-only
+ * transaction sees data committed by other transactions, but not their
+ * uncommitted changes, and starting a read-only transaction blocks only
+ * while all pooled read-only connections are in use.
+ * <p>
  * Failing to {@link #endTransaction(Transaction) end} a transaction will
  * prevent other callers from accessing the database, so it is recommended to
  * use the {@link #transaction(boolean, DbRunnable)},
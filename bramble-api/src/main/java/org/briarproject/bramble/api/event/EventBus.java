@@ -2,6 +2,8 @@ package org.briarproject.bramble.api.event;
 
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.Collection;
+
 @NotNullByDefault
 public interface EventBus {
 
@@ -10,6 +12,13 @@ public interface EventBus {
 	 */
 	void addListener(EventListener l);
 
+	/**
+	 * Adds a listener to be notified when events of the given types, or any
+	 * of their subtypes, occur. The listener is not notified of other events.
+	 */
+	void addListener(EventListener l,
+			Collection<Class<? extends Event>> eventTypes);
+
 	/**
 	 * Removes a listener.
 	 */
@@ -22,4 +31,9 @@ public interface EventBus {
 	 * This method can safely be called while holding a lock.
 	 */
 	void broadcast(Event e);
+
+	/**
+	 * Returns a snapshot of the event bus's dispatch metrics.
+	 */
+	EventBusStats getStats();
 }
@@ -0,0 +1,74 @@
+package org.briarproject.bramble.api.event;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A snapshot of the event bus's dispatch metrics.
+ */
+@Immutable
+@NotNullByDefault
+public class EventBusStats {
+
+	private final int queuedEvents, maxQueuedEvents;
+	private final long dispatchedEvents, deliveries, queueTime, dispatchTime;
+
+	public EventBusStats(int queuedEvents, int maxQueuedEvents,
+			long dispatchedEvents, long deliveries, long queueTime,
+			long dispatchTime) {
+		this.queuedEvents = queuedEvents;
+		this.maxQueuedEvents = maxQueuedEvents;
+		this.dispatchedEvents = dispatchedEvents;
+		this.deliveries = deliveries;
+		this.queueTime = queueTime;
+		this.dispatchTime = dispatchTime;
+	}
+
+	/**
+	 * Returns the number of events that have been broadcast but not yet
+	 * dispatched to listeners.
+	 */
+	public int getQueuedEvents() {
+		return queuedEvents;
+	}
+
+	/**
+	 * Returns the largest number of events that have been waiting to be
+	 * dispatched at any one time.
+	 */
+	public int getMaxQueuedEvents() {
+		return maxQueuedEvents;
+	}
+
+	/**
+	 * Returns the number of events that have been dispatched to listeners.
+	 */
+	public long getDispatchedEvents() {
+		return dispatchedEvents;
+	}
+
+	/**
+	 * Returns the number of times a listener has been notified of an event.
+	 * Listeners are not notified of events they haven't subscribed to.
+	 */
+	public long getDeliveries() {
+		return deliveries;
+	}
+
+	/**
+	 * Returns the total time in milliseconds that dispatched events spent
+	 * waiting for the {@link EventExecutor}.
+	 */
+	public long getQueueTime() {
+		return queueTime;
+	}
+
+	/**
+	 * Returns the total time in milliseconds that listeners have spent
+	 * handling dispatched events.
+	 */
+	public long getDispatchTime() {
+		return dispatchTime;
+	}
+}
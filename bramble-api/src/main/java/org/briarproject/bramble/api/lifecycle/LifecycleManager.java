@@ -8,8 +8,11 @@ import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.bramble.api.system.Wakeful;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.Collection;
 import java.util.concurrent.ExecutorService;
 
+import javax.annotation.Nullable;
+
 /**
  * Manages the lifecycle of the app: opening and closing the
  * {@link DatabaseComponent} starting and stopping {@link Service Services},
@@ -59,11 +62,22 @@ public interface LifecycleManager {
 	void registerOpenDatabaseHook(OpenDatabaseHook hook);
 
 	/**
-	 * Registers a {@link Service} to be started and stopped. This method
-	 * should be called before {@link #startServices(SecretKey)}.
+	 * Registers a {@link Service} to be started and stopped. The service
+	 * will not be started until all previously registered services have
+	 * started. This method should be called before
+	 * {@link #startServices(SecretKey)}.
 	 */
 	void registerService(Service s);
 
+	/**
+	 * Registers a {@link Service} to be started and stopped. The service
+	 * will be started as soon as the given services, which must already have
+	 * been registered, have started. It may be started concurrently with any
+	 * other services. This method should be called before
+	 * {@link #startServices(SecretKey)}.
+	 */
+	void registerService(Service s, Collection<Service> dependencies);
+
 	/**
 	 * Registers an {@link ExecutorService} to be shut down. This method
 	 * should be called before {@link #startServices(SecretKey)}.
@@ -112,6 +126,13 @@ public interface LifecycleManager {
 	 */
 	LifecycleState getLifecycleState();
 
+	/**
+	 * Returns the time taken by each stage of starting the app, or null if
+	 * the app has not started successfully.
+	 */
+	@Nullable
+	StartupStats getStartupStats();
+
 	interface OpenDatabaseHook {
 		/**
 		 * Called when the database is being opened, before
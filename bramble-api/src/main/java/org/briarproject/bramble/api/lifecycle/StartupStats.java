@@ -0,0 +1,75 @@
+package org.briarproject.bramble.api.lifecycle;
+
+import org.briarproject.bramble.api.lifecycle.LifecycleManager.OpenDatabaseHook;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.Map;
+
+import javax.annotation.concurrent.Immutable;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * The time taken by each stage of starting the app.
+ */
+@Immutable
+@NotNullByDefault
+public class StartupStats {
+
+	private final long databaseOpenTime, servicesStartupTime, totalTime;
+	private final Map<String, Long> openDatabaseHookTimes, serviceStartupTimes;
+
+	public StartupStats(long databaseOpenTime,
+			Map<String, Long> openDatabaseHookTimes,
+			Map<String, Long> serviceStartupTimes, long servicesStartupTime,
+			long totalTime) {
+		this.databaseOpenTime = databaseOpenTime;
+		this.openDatabaseHookTimes = unmodifiableMap(openDatabaseHookTimes);
+		this.serviceStartupTimes = unmodifiableMap(serviceStartupTimes);
+		this.servicesStartupTime = servicesStartupTime;
+		this.totalTime = totalTime;
+	}
+
+	/**
+	 * Returns the time in milliseconds taken to open or create the database,
+	 * including any migration or compaction.
+	 */
+	public long getDatabaseOpenTime() {
+		return databaseOpenTime;
+	}
+
+	/**
+	 * Returns the time in milliseconds taken by each
+	 * {@link OpenDatabaseHook}, keyed by class name, in the order the hooks
+	 * were called.
+	 */
+	public Map<String, Long> getOpenDatabaseHookTimes() {
+		return openDatabaseHookTimes;
+	}
+
+	/**
+	 * Returns the time in milliseconds taken to start each {@link Service},
+	 * keyed by class name, in the order the services were registered.
+	 */
+	public Map<String, Long> getServiceStartupTimes() {
+		return serviceStartupTimes;
+	}
+
+	/**
+	 * Returns the time in milliseconds taken to start all the
+	 * {@link Service Services}. This may be less than the sum of the
+	 * individual startup times, as independent services are started
+	 * concurrently.
+	 */
+	public long getServicesStartupTime() {
+		return servicesStartupTime;
+	}
+
+	/**
+	 * Returns the total time in milliseconds taken to open the database and
+	 * start the services.
+	 */
+	public long getTotalTime() {
+		return totalTime;
+	}
+}
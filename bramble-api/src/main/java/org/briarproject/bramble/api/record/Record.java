@@ -2,9 +2,11 @@ package org.briarproject.bramble.api.record;
 
 import org.briarproject.nullsafety.NotNullByDefault;
 
-import javax.annotation.concurrent.Immutable;
-
-@Immutable
+/**
+ * A record read from or written to a stream. A record read by
+ * {@link RecordReader#readRecordIntoBuffer} shares the reader's buffer, so
+ * its payload is only valid until the reader reads the next record.
+ */
 @NotNullByDefault
 public class Record {
 
@@ -13,13 +15,26 @@ public class Record {
 
 	private final byte protocolVersion, recordType;
 	private final byte[] payload;
+	private final int payloadLength;
 
 	public Record(byte protocolVersion, byte recordType, byte[] payload) {
-		if (payload.length > MAX_RECORD_PAYLOAD_BYTES)
+		this(protocolVersion, recordType, payload, payload.length);
+	}
+
+	/**
+	 * Creates a record whose payload is the first {@code payloadLength} bytes
+	 * of the given buffer. The buffer is not copied.
+	 */
+	public Record(byte protocolVersion, byte recordType, byte[] buffer,
+			int payloadLength) {
+		if (payloadLength < 0 || payloadLength > buffer.length)
+			throw new IllegalArgumentException();
+		if (payloadLength > MAX_RECORD_PAYLOAD_BYTES)
 			throw new IllegalArgumentException();
 		this.protocolVersion = protocolVersion;
 		this.recordType = recordType;
-		this.payload = payload;
+		this.payload = buffer;
+		this.payloadLength = payloadLength;
 	}
 
 	public byte getProtocolVersion() {
@@ -30,7 +45,16 @@ public class Record {
 		return recordType;
 	}
 
+	/**
+	 * Returns the array holding the payload. If the record was created from
+	 * a buffer, the array may be longer than the payload, which occupies the
+	 * first {@link #getPayloadLength()} bytes.
+	 */
 	public byte[] getPayload() {
 		return payload;
 	}
+
+	public int getPayloadLength() {
+		return payloadLength;
+	}
 }
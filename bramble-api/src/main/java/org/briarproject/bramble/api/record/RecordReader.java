@@ -13,7 +13,8 @@ import javax.annotation.Nullable;
 public interface RecordReader {
 
 	/**
-	 * Reads and returns the next record.
+	 * Reads and returns the next record. The record's payload array holds
+	 * exactly the payload.
 	 *
 	 * @throws EOFException if the end of the stream is reached without reading
 	 * a complete record
@@ -24,7 +25,7 @@ public interface RecordReader {
 	 * Reads and returns the next record matching the 'accept' predicate,
 	 * skipping any records that match the 'ignore' predicate. Returns null if
 	 * no record matching the 'accept' predicate is found before the end of the
-	 * stream.
+	 * stream. The record's payload array holds exactly the payload.
 	 *
 	 * @throws EOFException If the end of the stream is reached without
 	 * reading a complete record
@@ -35,5 +36,22 @@ public interface RecordReader {
 	Record readRecord(Predicate<Record> accept, Predicate<Record> ignore)
 			throws IOException;
 
+	/**
+	 * Like {@link #readRecord(Predicate, Predicate)}, except that the payload
+	 * is read into a buffer owned by the reader instead of a new array. The
+	 * buffer is reused by the next call to this method, so the returned
+	 * record is only valid until then, and callers must copy any parts of the
+	 * payload they want to keep. The payload occupies the first
+	 * {@link Record#getPayloadLength()} bytes of the buffer.
+	 *
+	 * @throws EOFException If the end of the stream is reached without
+	 * reading a complete record
+	 * @throws FormatException If a record is read that does not match the
+	 * 'accept' or 'ignore' predicates
+	 */
+	@Nullable
+	Record readRecordIntoBuffer(Predicate<Record> accept,
+			Predicate<Record> ignore) throws IOException;
+
 	void close() throws IOException;
 }
@@ -0,0 +1,60 @@
+package org.briarproject.bramble.api.sync;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A snapshot of the metrics for receiving and storing sync records, either
+ * for a single incoming {@link SyncSession} or for all incoming sessions.
+ */
+@Immutable
+@NotNullByDefault
+public class IngestStats {
+
+	private final long receivedMessages, storedRecords, transactions;
+	private final long receiveTime;
+
+	public IngestStats(long receivedMessages, long storedRecords,
+			long transactions, long receiveTime) {
+		this.receivedMessages = receivedMessages;
+		this.storedRecords = storedRecords;
+		this.transactions = transactions;
+		this.receiveTime = receiveTime;
+	}
+
+	/**
+	 * Returns the number of messages that have been received and stored in
+	 * the database. Messages discarded because the session was interrupted
+	 * or because of a database error are not counted.
+	 */
+	public long getReceivedMessages() {
+		return receivedMessages;
+	}
+
+	/**
+	 * Returns the number of records of any type that have been stored in
+	 * the database. Records discarded after a database error are not
+	 * counted.
+	 */
+	public long getStoredRecords() {
+		return storedRecords;
+	}
+
+	/**
+	 * Returns the number of transactions that have been used to store
+	 * records.
+	 */
+	public long getTransactions() {
+		return transactions;
+	}
+
+	/**
+	 * Returns the total time in milliseconds that incoming sessions spent
+	 * receiving records, counting only sessions that have ended. The times
+	 * of concurrent sessions are added together.
+	 */
+	public long getReceiveTime() {
+		return receiveTime;
+	}
+}
@@ -9,5 +9,12 @@ public interface MessageFactory {
 
 	Message createMessage(byte[] raw);
 
+	/**
+	 * Creates a message from the raw message occupying {@code length} bytes
+	 * of the given buffer, starting at {@code off}. The buffer isn't retained
+	 * by the message, so it can be reused afterwards.
+	 */
+	Message createMessage(byte[] buf, int off, int length);
+
 	byte[] getRawMessage(Message m);
 }
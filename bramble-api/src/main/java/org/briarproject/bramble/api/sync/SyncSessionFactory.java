@@ -18,6 +18,12 @@ public interface SyncSessionFactory {
 	SyncSession createIncomingSession(ContactId c, InputStream in,
 			PriorityHandler handler);
 
+	/**
+	 * Returns the ingest metrics for all incoming sessions created by this
+	 * factory.
+	 */
+	IngestStats getIngestStats();
+
 	/**
 	 * Creates a session for sending data to a contact over a simplex transport.
 	 *
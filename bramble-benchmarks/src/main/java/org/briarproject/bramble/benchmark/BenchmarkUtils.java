@@ -0,0 +1,104 @@
+package org.briarproject.bramble.benchmark;
+
+import org.briarproject.bramble.api.UniqueId;
+import org.briarproject.bramble.api.crypto.AgreementPrivateKey;
+import org.briarproject.bramble.api.crypto.AgreementPublicKey;
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.crypto.SignaturePrivateKey;
+import org.briarproject.bramble.api.crypto.SignaturePublicKey;
+import org.briarproject.bramble.api.identity.Author;
+import org.briarproject.bramble.api.identity.AuthorId;
+import org.briarproject.bramble.api.identity.Identity;
+import org.briarproject.bramble.api.identity.LocalAuthor;
+import org.briarproject.bramble.api.sync.ClientId;
+import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageId;
+
+import java.util.Random;
+
+import static org.briarproject.bramble.api.crypto.CryptoConstants.MAX_AGREEMENT_PUBLIC_KEY_BYTES;
+import static org.briarproject.bramble.api.crypto.CryptoConstants.MAX_SIGNATURE_PUBLIC_KEY_BYTES;
+import static org.briarproject.bramble.api.identity.Author.FORMAT_VERSION;
+import static org.briarproject.bramble.api.identity.AuthorConstants.MAX_AUTHOR_NAME_LENGTH;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_GROUP_DESCRIPTOR_LENGTH;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_BODY_LENGTH;
+
+/**
+ * Helpers for creating benchmark inputs. Inputs are generated from a fixed
+ * seed so that every run measures the same data.
+ */
+public class BenchmarkUtils {
+
+	public static final long SEED = 0x5eed;
+
+	/**
+	 * The timestamp of identities and messages created by these helpers.
+	 */
+	public static final long TIMESTAMP = 1_600_000_000_000L;
+
+	public static byte[] getRandomBytes(Random random, int length) {
+		byte[] b = new byte[length];
+		random.nextBytes(b);
+		return b;
+	}
+
+	public static String getRandomString(Random random, int length) {
+		char[] c = new char[length];
+		for (int i = 0; i < length; i++) {
+			c[i] = (char) ('a' + random.nextInt(26));
+		}
+		return new String(c);
+	}
+
+	public static byte[] getRandomId(Random random) {
+		return getRandomBytes(random, UniqueId.LENGTH);
+	}
+
+	public static SecretKey getSecretKey(Random random) {
+		return new SecretKey(getRandomBytes(random, SecretKey.LENGTH));
+	}
+
+	public static Identity getIdentity(Random random) {
+		AuthorId id = new AuthorId(getRandomId(random));
+		String name = getAuthorName(random);
+		LocalAuthor localAuthor = new LocalAuthor(id, FORMAT_VERSION, name,
+				new SignaturePublicKey(getRandomBytes(random,
+						MAX_SIGNATURE_PUBLIC_KEY_BYTES)),
+				new SignaturePrivateKey(getRandomBytes(random, 123)));
+		return new Identity(localAuthor,
+				new AgreementPublicKey(getRandomBytes(random,
+						MAX_AGREEMENT_PUBLIC_KEY_BYTES)),
+				new AgreementPrivateKey(getRandomBytes(random, 123)),
+				TIMESTAMP);
+	}
+
+	public static Author getAuthor(Random random) {
+		AuthorId id = new AuthorId(getRandomId(random));
+		String name = getAuthorName(random);
+		return new Author(id, FORMAT_VERSION, name,
+				new SignaturePublicKey(getRandomBytes(random,
+						MAX_SIGNATURE_PUBLIC_KEY_BYTES)));
+	}
+
+	public static Group getGroup(Random random, ClientId clientId,
+			int majorVersion) {
+		GroupId id = new GroupId(getRandomId(random));
+		int descriptorLength = 1 + random.nextInt(MAX_GROUP_DESCRIPTOR_LENGTH);
+		byte[] descriptor = getRandomBytes(random, descriptorLength);
+		return new Group(id, clientId, majorVersion, descriptor);
+	}
+
+	public static Message getMessage(Random random, GroupId groupId) {
+		MessageId id = new MessageId(getRandomId(random));
+		int bodyLength = 1 + random.nextInt(MAX_MESSAGE_BODY_LENGTH);
+		byte[] body = getRandomBytes(random, bodyLength);
+		return new Message(id, groupId, TIMESTAMP, body);
+	}
+
+	private static String getAuthorName(Random random) {
+		return getRandomString(random,
+				1 + random.nextInt(MAX_AUTHOR_NAME_LENGTH));
+	}
+}
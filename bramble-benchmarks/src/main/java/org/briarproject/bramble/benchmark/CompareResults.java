@@ -0,0 +1,82 @@
+package org.briarproject.bramble.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Compares two sets of JMH results in JSON format and exits with a non-zero
+ * status if any benchmark has become slower than the baseline by more than
+ * the given percentage. Scores are assumed to be times, so lower is better.
+ * <p>
+ * Usage: CompareResults &lt;baseline&gt; &lt;results&gt; &lt;threshold&gt;
+ */
+public class CompareResults {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			System.err.println(
+					"Usage: CompareResults <baseline> <results> <threshold>");
+			System.exit(2);
+		}
+		File baselineFile = new File(args[0]);
+		if (!baselineFile.exists()) {
+			System.err.println("No baseline at " + baselineFile
+					+ " - run jmhSaveBaseline on this machine first");
+			System.exit(2);
+		}
+		double threshold = Double.parseDouble(args[2]);
+		Map<String, Double> baseline = readScores(baselineFile);
+		Map<String, Double> results = readScores(new File(args[1]));
+		int regressions = 0;
+		for (Entry<String, Double> e : results.entrySet()) {
+			Double before = baseline.get(e.getKey());
+			if (before == null) {
+				System.out.println(String.format("%s: %.3f (new)",
+						e.getKey(), e.getValue()));
+				continue;
+			}
+			double change = (e.getValue() - before) * 100 / before;
+			boolean regression = change > threshold;
+			if (regression) regressions++;
+			System.out.println(String.format("%s: %.3f -> %.3f (%+.1f%%)%s",
+					e.getKey(), before, e.getValue(), change,
+					regression ? " REGRESSION" : ""));
+		}
+		if (regressions > 0) {
+			System.err.println(regressions + " benchmark(s) regressed by more"
+					+ " than " + threshold + "%");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Returns the primary score of each benchmark, keyed by the benchmark's
+	 * name and parameters.
+	 */
+	private static Map<String, Double> readScores(File f) throws IOException {
+		Map<String, Double> scores = new LinkedHashMap<>();
+		for (JsonNode result : new ObjectMapper().readTree(f)) {
+			StringBuilder key =
+					new StringBuilder(result.get("benchmark").asText());
+			JsonNode params = result.get("params");
+			if (params != null) {
+				Iterator<Entry<String, JsonNode>> it = params.fields();
+				while (it.hasNext()) {
+					Entry<String, JsonNode> param = it.next();
+					key.append(' ').append(param.getKey()).append('=')
+							.append(param.getValue().asText());
+				}
+			}
+			double score = result.get("primaryMetric").get("score").asDouble();
+			scores.put(key.toString(), score);
+		}
+		return scores;
+	}
+}
@@ -0,0 +1,103 @@
+package org.briarproject.bramble.crypto;
+
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.briarproject.bramble.api.transport.TransportConstants.MAX_PAYLOAD_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.STREAM_HEADER_NONCE_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.TAG_LENGTH;
+import static org.briarproject.bramble.benchmark.BenchmarkUtils.SEED;
+import static org.briarproject.bramble.benchmark.BenchmarkUtils.getRandomBytes;
+
+/**
+ * Measures encrypting and decrypting a stream of full-size frames, with a
+ * given number of frames batched per write or read.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class StreamCryptoBenchmark {
+
+	private static final int FRAMES = 256;
+
+	private static final OutputStream DISCARD = new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
+	@Param({"1", "4", "16", "64"})
+	public int framesPerBatch;
+
+	private final byte[] buffer = new byte[MAX_PAYLOAD_LENGTH];
+
+	private SecretKey streamHeaderKey, frameKey;
+	private byte[] tag, streamHeaderNonce, payload, ciphertext;
+
+	@Setup
+	public void setUp() throws IOException {
+		Random random = new Random(SEED);
+		streamHeaderKey = new SecretKey(getRandomBytes(random,
+				SecretKey.LENGTH));
+		frameKey = new SecretKey(getRandomBytes(random, SecretKey.LENGTH));
+		tag = getRandomBytes(random, TAG_LENGTH);
+		streamHeaderNonce = getRandomBytes(random,
+				STREAM_HEADER_NONCE_LENGTH);
+		payload = getRandomBytes(random, MAX_PAYLOAD_LENGTH);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		encrypt(out);
+		ciphertext = out.toByteArray();
+	}
+
+	@Benchmark
+	public void encryptStream() throws IOException {
+		encrypt(DISCARD);
+	}
+
+	@Benchmark
+	public int decryptStream() throws IOException {
+		ByteArrayInputStream in = new ByteArrayInputStream(ciphertext,
+				TAG_LENGTH, ciphertext.length - TAG_LENGTH);
+		StreamDecrypterImpl d = new StreamDecrypterImpl(in,
+				new XSalsa20Poly1305AuthenticatedCipher(), 0,
+				streamHeaderKey, framesPerBatch);
+		int total = 0, read;
+		while ((read = d.readFrame(buffer)) != -1) total += read;
+		return total;
+	}
+
+	private void encrypt(OutputStream out) throws IOException {
+		StreamEncrypterImpl e = new StreamEncrypterImpl(out,
+				new XSalsa20Poly1305AuthenticatedCipher(), 0, tag,
+				streamHeaderNonce, streamHeaderKey, frameKey, framesPerBatch);
+		for (int i = 0; i < FRAMES; i++) {
+			boolean finalFrame = i == FRAMES - 1;
+			e.writeFrame(payload, MAX_PAYLOAD_LENGTH, 0, finalFrame);
+		}
+		e.flush();
+	}
+}
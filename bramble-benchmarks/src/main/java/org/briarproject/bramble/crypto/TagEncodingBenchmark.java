@@ -0,0 +1,57 @@
+package org.briarproject.bramble.crypto;
+
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.crypto.TransportCrypto;
+import org.briarproject.bramble.test.TestSecureRandomProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.briarproject.bramble.api.transport.TransportConstants.PROTOCOL_VERSION;
+import static org.briarproject.bramble.api.transport.TransportConstants.TAG_LENGTH;
+import static org.briarproject.bramble.benchmark.BenchmarkUtils.SEED;
+import static org.briarproject.bramble.benchmark.BenchmarkUtils.getRandomBytes;
+
+/**
+ * Measures encoding a tag, which is done for every stream number in every
+ * reordering window whenever transport keys are loaded or rotated.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class TagEncodingBenchmark {
+
+	private final byte[] tag = new byte[TAG_LENGTH];
+
+	private TransportCrypto transportCrypto;
+	private SecretKey tagKey;
+	private long streamNumber = 0;
+
+	@Setup
+	public void setUp() {
+		transportCrypto = new TransportCryptoImpl(new CryptoComponentImpl(
+				new TestSecureRandomProvider(), null));
+		tagKey = new SecretKey(getRandomBytes(new Random(SEED),
+				SecretKey.LENGTH));
+	}
+
+	@Benchmark
+	public byte[] encodeTag() {
+		transportCrypto.encodeTag(tag, tagKey, PROTOCOL_VERSION,
+				streamNumber++);
+		return tag;
+	}
+}
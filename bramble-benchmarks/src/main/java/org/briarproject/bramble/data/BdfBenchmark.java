@@ -0,0 +1,101 @@
+package org.briarproject.bramble.data;
+
+import org.briarproject.bramble.api.data.BdfDictionary;
+import org.briarproject.bramble.api.data.BdfList;
+import org.briarproject.bramble.api.db.Metadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static org.briarproject.bramble.api.data.BdfReader.DEFAULT_MAX_BUFFER_SIZE;
+import static org.briarproject.bramble.api.data.BdfReader.DEFAULT_NESTED_LIMIT;
+import static org.briarproject.bramble.benchmark.BenchmarkUtils.SEED;
+import static org.briarproject.bramble.benchmark.BenchmarkUtils.getRandomBytes;
+import static org.briarproject.bramble.benchmark.BenchmarkUtils.getRandomString;
+
+/**
+ * Measures encoding and decoding a BDF list shaped like a typical message
+ * body, and encoding and parsing a typical metadata dictionary.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class BdfBenchmark {
+
+	private final MetadataEncoderImpl metadataEncoder =
+			new MetadataEncoderImpl(new BdfWriterFactoryImpl());
+	private final MetadataParserImpl metadataParser =
+			new MetadataParserImpl(new BdfReaderFactoryImpl());
+
+	private BdfList body;
+	private byte[] encodedBody;
+	private BdfDictionary meta;
+	private Metadata encodedMeta;
+
+	@Setup
+	public void setUp() throws Exception {
+		Random random = new Random(SEED);
+		BdfList timestamps = new BdfList();
+		for (int i = 0; i < 10; i++) timestamps.add(random.nextLong());
+		body = BdfList.of(1, random.nextLong(), getRandomString(random, 500),
+				getRandomBytes(random, 32), getMeta(random), timestamps);
+		encodedBody = encode(body);
+		meta = getMeta(random);
+		encodedMeta = metadataEncoder.encode(meta);
+	}
+
+	@Benchmark
+	public byte[] writeList() throws IOException {
+		return encode(body);
+	}
+
+	@Benchmark
+	public BdfList readList() throws IOException {
+		ByteArrayInputStream in = new ByteArrayInputStream(encodedBody);
+		return new BdfReaderImpl(in, DEFAULT_NESTED_LIMIT,
+				DEFAULT_MAX_BUFFER_SIZE).readList();
+	}
+
+	@Benchmark
+	public Metadata encodeMetadata() throws Exception {
+		return metadataEncoder.encode(meta);
+	}
+
+	@Benchmark
+	public BdfDictionary parseMetadata() throws Exception {
+		return metadataParser.parse(encodedMeta);
+	}
+
+	private byte[] encode(BdfList list) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new BdfWriterImpl(out).writeList(list);
+		return out.toByteArray();
+	}
+
+	private BdfDictionary getMeta(Random random) {
+		BdfDictionary d = new BdfDictionary();
+		d.put("timestamp", random.nextLong());
+		d.put("read", random.nextBoolean());
+		d.put("local", random.nextBoolean());
+		d.put("author", getRandomBytes(random, 32));
+		d.put("parent", getRandomBytes(random, 32));
+		d.put("text", getRandomString(random, 100));
+		return d;
+	}
+}
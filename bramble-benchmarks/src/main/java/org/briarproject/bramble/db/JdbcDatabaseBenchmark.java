@@ -0,0 +1,202 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.Metadata;
+import org.briarproject.bramble.api.identity.Identity;
+import org.briarproject.bramble.api.identity.LocalAuthor;
+import org.briarproject.bramble.api.sync.ClientId;
+import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.sync.validation.MessageState;
+import org.briarproject.bramble.system.SystemClock;
+import org.briarproject.bramble.test.TestDatabaseConfig;
+import org.briarproject.bramble.test.TestMessageFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.logging.Level.OFF;
+import static org.briarproject.bramble.api.record.Record.RECORD_HEADER_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_LENGTH;
+import static org.briarproject.bramble.benchmark.BenchmarkUtils.SEED;
+import static org.briarproject.bramble.benchmark.BenchmarkUtils.getAuthor;
+import static org.briarproject.bramble.benchmark.BenchmarkUtils.getGroup;
+import static org.briarproject.bramble.benchmark.BenchmarkUtils.getIdentity;
+import static org.briarproject.bramble.benchmark.BenchmarkUtils.getMessage;
+import static org.briarproject.bramble.benchmark.BenchmarkUtils.getRandomBytes;
+import static org.briarproject.bramble.benchmark.BenchmarkUtils.getRandomString;
+import static org.briarproject.bramble.benchmark.BenchmarkUtils.getSecretKey;
+import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
+
+/**
+ * Measures the queries that sync sessions and clients run most often,
+ * against an H2 database populated with the same shape of data as
+ * DatabasePerformanceTest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class JdbcDatabaseBenchmark {
+
+	private static final int CONTACTS = 20;
+	private static final int CLIENTS = 10;
+	private static final int CLIENT_ID_LENGTH = 50;
+	private static final int GROUPS_PER_CONTACT = 10;
+	private static final int MESSAGES_PER_GROUP = 20;
+	private static final int METADATA_KEYS_PER_MESSAGE = 5;
+	private static final int METADATA_KEY_LENGTH = 10;
+	private static final int METADATA_VALUE_LENGTH = 100;
+	private static final int MAX_LATENCY = 30 * 1000;
+	private static final int BATCH_CAPACITY =
+			(RECORD_HEADER_BYTES + MAX_MESSAGE_LENGTH) * 2;
+
+	private final Random random = new Random(SEED);
+	private final List<ContactId> contacts = new ArrayList<>();
+	private final List<GroupId> groups = new ArrayList<>();
+	private final List<MessageId> messages = new ArrayList<>();
+	private final Map<GroupId, List<Metadata>> messageMeta = new HashMap<>();
+
+	private File testDir;
+	private Database<Connection> db;
+
+	@Setup(Level.Trial)
+	public void setUp() throws DbException {
+		Logger.getLogger("").setLevel(OFF);
+		testDir = getTestDirectory();
+		db = new H2Database(new TestDatabaseConfig(testDir),
+				new TestMessageFactory(), new SystemClock());
+		db.open(getSecretKey(random), null);
+		populateDatabase();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws DbException {
+		db.close();
+		deleteTestDirectory(testDir);
+	}
+
+	@Benchmark
+	public boolean containsMessage() throws DbException {
+		Connection txn = db.startReadOnlyTransaction();
+		boolean contains = db.containsMessage(txn, pickRandom(messages));
+		db.commitTransaction(txn);
+		return contains;
+	}
+
+	@Benchmark
+	public Map<MessageId, Metadata> getMessageMetadataWithQuery()
+			throws DbException {
+		Connection txn = db.startReadOnlyTransaction();
+		GroupId g = pickRandom(groups);
+		Map<MessageId, Metadata> metadata =
+				db.getMessageMetadata(txn, g, pickRandom(messageMeta.get(g)));
+		db.commitTransaction(txn);
+		return metadata;
+	}
+
+	@Benchmark
+	public Collection<MessageId> getMessageIdsWithQuery() throws DbException {
+		Connection txn = db.startReadOnlyTransaction();
+		GroupId g = pickRandom(groups);
+		Collection<MessageId> ids =
+				db.getMessageIds(txn, g, pickRandom(messageMeta.get(g)));
+		db.commitTransaction(txn);
+		return ids;
+	}
+
+	@Benchmark
+	public Collection<MessageId> getMessagesToSend() throws DbException {
+		Connection txn = db.startReadOnlyTransaction();
+		Collection<MessageId> ids = db.getMessagesToSend(txn,
+				pickRandom(contacts), BATCH_CAPACITY, MAX_LATENCY);
+		db.commitTransaction(txn);
+		return ids;
+	}
+
+	@Benchmark
+	public Collection<MessageId> getMessagesToAck() throws DbException {
+		Connection txn = db.startReadOnlyTransaction();
+		Collection<MessageId> ids =
+				db.getMessagesToAck(txn, pickRandom(contacts), MAX_MESSAGE_IDS);
+		db.commitTransaction(txn);
+		return ids;
+	}
+
+	private <T> T pickRandom(List<T> list) {
+		return list.get(random.nextInt(list.size()));
+	}
+
+	private void populateDatabase() throws DbException {
+		List<ClientId> clientIds = new ArrayList<>();
+		for (int i = 0; i < CLIENTS; i++) {
+			clientIds.add(new ClientId(getRandomString(random,
+					CLIENT_ID_LENGTH)));
+		}
+		Identity identity = getIdentity(random);
+		LocalAuthor localAuthor = identity.getLocalAuthor();
+		Connection txn = db.startTransaction();
+		db.addIdentity(txn, identity);
+		for (int i = 0; i < CONTACTS; i++) {
+			ContactId c = db.addContact(txn, getAuthor(random),
+					localAuthor.getId(), null, true);
+			contacts.add(c);
+			for (int j = 0; j < GROUPS_PER_CONTACT; j++) {
+				Group g = getGroup(random, clientIds.get(j % CLIENTS), 123);
+				groups.add(g.getId());
+				messageMeta.put(g.getId(), new ArrayList<>());
+				db.addGroup(txn, g);
+				db.addGroupVisibility(txn, c, g.getId(), true);
+				for (int k = 0; k < MESSAGES_PER_GROUP; k++) {
+					Message m = getMessage(random, g.getId());
+					messages.add(m.getId());
+					MessageState state =
+							MessageState.fromValue(random.nextInt(4));
+					boolean shared = random.nextBoolean();
+					ContactId sender = random.nextBoolean() ? c : null;
+					db.addMessage(txn, m, state, shared, false, sender);
+					Metadata mm = getMetadata();
+					messageMeta.get(g.getId()).add(mm);
+					db.mergeMessageMetadata(txn, m.getId(), mm);
+				}
+			}
+		}
+		db.commitTransaction(txn);
+	}
+
+	private Metadata getMetadata() {
+		Metadata meta = new Metadata();
+		for (int i = 0; i < METADATA_KEYS_PER_MESSAGE; i++) {
+			String key = getRandomString(random, METADATA_KEY_LENGTH);
+			meta.put(key, getRandomBytes(random, METADATA_VALUE_LENGTH));
+		}
+		return meta;
+	}
+}
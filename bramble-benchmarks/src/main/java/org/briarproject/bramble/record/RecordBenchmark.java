@@ -0,0 +1,101 @@
+package org.briarproject.bramble.record;
+
+import org.briarproject.bramble.api.Predicate;
+import org.briarproject.bramble.api.record.Record;
+import org.briarproject.bramble.api.record.RecordReader;
+import org.briarproject.bramble.api.record.RecordWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static org.briarproject.bramble.benchmark.BenchmarkUtils.SEED;
+import static org.briarproject.bramble.benchmark.BenchmarkUtils.getRandomBytes;
+
+/**
+ * Measures writing and reading a stream of records of a given payload
+ * length, using both the allocating and the buffered read paths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class RecordBenchmark {
+
+	private static final int RECORDS = 64;
+
+	private static final Predicate<Record> ACCEPT = r -> true;
+	private static final Predicate<Record> IGNORE = r -> false;
+
+	private static final OutputStream DISCARD = new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
+	@Param({"1024", "32768"})
+	public int payloadLength;
+
+	private Record record;
+	private byte[] stream;
+
+	@Setup
+	public void setUp() throws IOException {
+		Random random = new Random(SEED);
+		record = new Record((byte) 0, (byte) 1,
+				getRandomBytes(random, payloadLength));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RecordWriter writer = new RecordWriterImpl(out);
+		for (int i = 0; i < RECORDS; i++) writer.writeRecord(record);
+		writer.flush();
+		stream = out.toByteArray();
+	}
+
+	@Benchmark
+	public void writeRecords() throws IOException {
+		RecordWriter writer = new RecordWriterImpl(DISCARD);
+		for (int i = 0; i < RECORDS; i++) writer.writeRecord(record);
+		writer.flush();
+	}
+
+	@Benchmark
+	public void readRecords(Blackhole blackhole) throws IOException {
+		RecordReader reader =
+				new RecordReaderImpl(new ByteArrayInputStream(stream));
+		Record r;
+		while ((r = reader.readRecord(ACCEPT, IGNORE)) != null) {
+			blackhole.consume(r);
+		}
+	}
+
+	@Benchmark
+	public void readRecordsIntoBuffer(Blackhole blackhole) throws IOException {
+		RecordReader reader =
+				new RecordReaderImpl(new ByteArrayInputStream(stream));
+		Record r;
+		while ((r = reader.readRecordIntoBuffer(ACCEPT, IGNORE)) != null) {
+			blackhole.consume(r);
+		}
+	}
+}
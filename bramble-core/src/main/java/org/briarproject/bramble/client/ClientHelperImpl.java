@@ -31,6 +31,7 @@ import org.briarproject.bramble.api.mailbox.MailboxUpdateWithMailbox;
 import org.briarproject.bramble.api.mailbox.MailboxVersion;
 import org.briarproject.bramble.api.plugin.TransportId;
 import org.briarproject.bramble.api.properties.TransportProperties;
+import org.briarproject.bramble.api.sync.ClientId;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
 import org.briarproject.bramble.api.sync.MessageFactory;
@@ -45,6 +46,7 @@ import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -172,6 +174,17 @@ class ClientHelperImpl implements ClientHelper {
 		return metadataParser.parse(metadata);
 	}
 
+	@Override
+	public Map<GroupId, BdfDictionary> getGroupMetadataAsDictionary(
+			Transaction txn, ClientId c, int majorVersion)
+			throws DbException, FormatException {
+		Map<GroupId, Metadata> raw = db.getGroupMetadata(txn, c, majorVersion);
+		Map<GroupId, BdfDictionary> parsed = new HashMap<>(raw.size());
+		for (Entry<GroupId, Metadata> e : raw.entrySet())
+			parsed.put(e.getKey(), metadataParser.parse(e.getValue()));
+		return parsed;
+	}
+
 	@Override
 	public Collection<MessageId> getMessageIds(Transaction txn, GroupId g,
 			BdfDictionary query) throws DbException, FormatException {
@@ -229,6 +242,20 @@ class ClientHelperImpl implements ClientHelper {
 		return parsed;
 	}
 
+	@Override
+	public Map<MessageId, BdfDictionary> getMessageMetadataAsDictionary(
+			Transaction txn, GroupId g, BdfDictionary query, long timestamp,
+			boolean before, int limit) throws DbException, FormatException {
+		Metadata metadata = metadataEncoder.encode(query);
+		Map<MessageId, Metadata> raw = db.getMessageMetadata(txn, g, metadata,
+				timestamp, before, limit);
+		// Preserve the order of the page
+		Map<MessageId, BdfDictionary> parsed = new LinkedHashMap<>(raw.size());
+		for (Entry<MessageId, Metadata> e : raw.entrySet())
+			parsed.put(e.getKey(), metadataParser.parse(e.getValue()));
+		return parsed;
+	}
+
 	@Override
 	public void mergeGroupMetadata(GroupId g, BdfDictionary metadata)
 			throws DbException, FormatException {
@@ -63,6 +63,8 @@ class CryptoComponentImpl implements CryptoComponent {
 	private static final int PBKDF_SALT_BYTES = 32; // 256 bits
 	private static final byte PBKDF_FORMAT_SCRYPT = 0;
 	private static final byte PBKDF_FORMAT_SCRYPT_STRENGTHENED = 1;
+	private static final byte PBKDF_FORMAT_SCRYPT_PARALLEL = 2;
+	private static final byte PBKDF_FORMAT_SCRYPT_PARALLEL_STRENGTHENED = 3;
 	private static final byte ONION_HS_PROTOCOL_VERSION = 3;
 	private static final int ONION_CHECKSUM_BYTES = 2;
 
@@ -339,22 +341,33 @@ class CryptoComponentImpl implements CryptoComponent {
 		byte[] salt = new byte[PBKDF_SALT_BYTES];
 		secureRandom.nextBytes(salt);
 		// Calibrate the KDF
-		int cost = passwordBasedKdf.chooseCostParameter();
+		int parallelization = passwordBasedKdf.chooseParallelizationParameter();
+		int cost = passwordBasedKdf.chooseCostParameter(parallelization);
 		// Derive the encryption key from the password
-		SecretKey key = passwordBasedKdf.deriveKey(password, salt, cost);
+		SecretKey key = passwordBasedKdf.deriveKey(password, salt, cost,
+				parallelization);
 		if (keyStrengthener != null) key = keyStrengthener.strengthenKey(key);
 		// Generate a random IV
 		byte[] iv = new byte[STORAGE_IV_BYTES];
 		secureRandom.nextBytes(iv);
-		// The output contains the format version, salt, cost parameter, IV,
-		// ciphertext and MAC
-		int outputLen = 1 + salt.length + INT_32_BYTES + iv.length
-				+ input.length + macBytes;
+		// The output contains the format version, salt, cost parameter,
+		// parallelization parameter (unless it's 1, for compatibility with
+		// older versions), IV, ciphertext and MAC
+		boolean parallel = parallelization > 1;
+		int outputLen = 1 + salt.length + INT_32_BYTES + (parallel ? 1 : 0)
+				+ iv.length + input.length + macBytes;
 		byte[] output = new byte[outputLen];
 		int outputOff = 0;
 		// Format version
-		byte formatVersion = keyStrengthener == null
-				? PBKDF_FORMAT_SCRYPT : PBKDF_FORMAT_SCRYPT_STRENGTHENED;
+		byte formatVersion;
+		if (parallel) {
+			formatVersion = keyStrengthener == null
+					? PBKDF_FORMAT_SCRYPT_PARALLEL
+					: PBKDF_FORMAT_SCRYPT_PARALLEL_STRENGTHENED;
+		} else {
+			formatVersion = keyStrengthener == null
+					? PBKDF_FORMAT_SCRYPT : PBKDF_FORMAT_SCRYPT_STRENGTHENED;
+		}
 		output[outputOff] = formatVersion;
 		outputOff++;
 		// Salt
@@ -363,6 +376,12 @@ class CryptoComponentImpl implements CryptoComponent {
 		// Cost parameter
 		ByteUtils.writeUint32(cost, output, outputOff);
 		outputOff += INT_32_BYTES;
+		// Parallelization parameter
+		if (parallel) {
+			if (parallelization > 255) throw new IllegalStateException();
+			output[outputOff] = (byte) parallelization;
+			outputOff++;
+		}
 		// IV
 		arraycopy(iv, 0, output, outputOff, iv.length);
 		outputOff += iv.length;
@@ -382,7 +401,8 @@ class CryptoComponentImpl implements CryptoComponent {
 			throws DecryptionException {
 		AuthenticatedCipher cipher = new XSalsa20Poly1305AuthenticatedCipher();
 		int macBytes = cipher.getMacBytes();
-		// The input contains the format version, salt, cost parameter, IV,
+		// The input contains the format version, salt, cost parameter,
+		// parallelization parameter (for the parallel formats), IV,
 		// ciphertext and MAC
 		if (input.length < 1 + PBKDF_SALT_BYTES + INT_32_BYTES
 				+ STORAGE_IV_BYTES + macBytes) {
@@ -393,8 +413,15 @@ class CryptoComponentImpl implements CryptoComponent {
 		byte formatVersion = input[inputOff];
 		inputOff++;
 		// Check whether we support this format version
+		boolean parallel = formatVersion == PBKDF_FORMAT_SCRYPT_PARALLEL ||
+				formatVersion == PBKDF_FORMAT_SCRYPT_PARALLEL_STRENGTHENED;
 		if (formatVersion != PBKDF_FORMAT_SCRYPT &&
-				formatVersion != PBKDF_FORMAT_SCRYPT_STRENGTHENED) {
+				formatVersion != PBKDF_FORMAT_SCRYPT_STRENGTHENED &&
+				!parallel) {
+			throw new DecryptionException(INVALID_CIPHERTEXT);
+		}
+		if (parallel && input.length < 1 + PBKDF_SALT_BYTES + INT_32_BYTES
+				+ 1 + STORAGE_IV_BYTES + macBytes) {
 			throw new DecryptionException(INVALID_CIPHERTEXT);
 		}
 		// Salt
@@ -407,13 +434,23 @@ class CryptoComponentImpl implements CryptoComponent {
 		if (cost < 2 || cost > Integer.MAX_VALUE) {
 			throw new DecryptionException(INVALID_CIPHERTEXT);
 		}
+		// Parallelization parameter
+		int parallelization = 1;
+		if (parallel) {
+			parallelization = input[inputOff] & 0xFF;
+			inputOff++;
+			if (parallelization < 1)
+				throw new DecryptionException(INVALID_CIPHERTEXT);
+		}
 		// IV
 		byte[] iv = new byte[STORAGE_IV_BYTES];
 		arraycopy(input, inputOff, iv, 0, iv.length);
 		inputOff += iv.length;
 		// Derive the decryption key from the password
-		SecretKey key = passwordBasedKdf.deriveKey(password, salt, (int) cost);
-		if (formatVersion == PBKDF_FORMAT_SCRYPT_STRENGTHENED) {
+		SecretKey key = passwordBasedKdf.deriveKey(password, salt, (int) cost,
+				parallelization);
+		if (formatVersion == PBKDF_FORMAT_SCRYPT_STRENGTHENED ||
+				formatVersion == PBKDF_FORMAT_SCRYPT_PARALLEL_STRENGTHENED) {
 			if (keyStrengthener == null || !keyStrengthener.isInitialised()) {
 				// Can't derive the same strengthened key
 				throw new DecryptionException(KEY_STRENGTHENER_ERROR);
@@ -440,7 +477,9 @@ class CryptoComponentImpl implements CryptoComponent {
 	@Override
 	public boolean isEncryptedWithStrengthenedKey(byte[] ciphertext) {
 		return ciphertext.length > 0 &&
-				ciphertext[0] == PBKDF_FORMAT_SCRYPT_STRENGTHENED;
+				(ciphertext[0] == PBKDF_FORMAT_SCRYPT_STRENGTHENED ||
+						ciphertext[0] ==
+								PBKDF_FORMAT_SCRYPT_PARALLEL_STRENGTHENED);
 	}
 
 	@Override
@@ -4,7 +4,10 @@ import org.briarproject.bramble.api.crypto.SecretKey;
 
 interface PasswordBasedKdf {
 
-	int chooseCostParameter();
+	int chooseParallelizationParameter();
 
-	SecretKey deriveKey(String password, byte[] salt, int cost);
+	int chooseCostParameter(int parallelization);
+
+	SecretKey deriveKey(String password, byte[] salt, int cost,
+			int parallelization);
 }
@@ -1,17 +1,29 @@
 package org.briarproject.bramble.crypto;
 
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.engines.Salsa20Engine;
+import org.bouncycastle.crypto.generators.PKCS5S2ParametersGenerator;
 import org.bouncycastle.crypto.generators.SCrypt;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.briarproject.bramble.api.crypto.CryptoExecutor;
 import org.briarproject.bramble.api.crypto.SecretKey;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.bramble.util.StringUtils;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import javax.inject.Inject;
 
+import static java.lang.Math.max;
 import static java.lang.Math.min;
+import static java.lang.System.arraycopy;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Logger.getLogger;
+import static org.bouncycastle.util.Pack.intToLittleEndian;
+import static org.bouncycastle.util.Pack.littleEndianToInt;
 import static org.briarproject.bramble.util.LogUtils.logDuration;
 import static org.briarproject.bramble.util.LogUtils.now;
 
@@ -23,30 +35,51 @@ class ScryptKdf implements PasswordBasedKdf {
 	private static final int MIN_COST = 256; // Min parameter N
 	private static final int MAX_COST = 1024 * 1024; // Max parameter N
 	private static final int BLOCK_SIZE = 8; // Parameter r
-	private static final int PARALLELIZATION = 1; // Parameter p
+	private static final int MAX_PARALLELIZATION = 8; // Max parameter p
 	private static final int TARGET_MS = 1000;
 
+	/**
+	 * The size of each lane in 32-bit words.
+	 */
+	private static final int LANE_WORDS = 32 * BLOCK_SIZE;
+
 	private final Clock clock;
+	private final Executor cryptoExecutor;
 
 	@Inject
-	ScryptKdf(Clock clock) {
+	ScryptKdf(Clock clock, @CryptoExecutor Executor cryptoExecutor) {
 		this.clock = clock;
+		this.cryptoExecutor = cryptoExecutor;
+	}
+
+	@Override
+	public int chooseParallelizationParameter() {
+		// The lanes are computed on the crypto executor and the calling
+		// thread, so use one lane per available processor
+		int processors = Runtime.getRuntime().availableProcessors();
+		int parallelization = max(1, min(MAX_PARALLELIZATION, processors));
+		if (LOG.isLoggable(INFO))
+			LOG.info("KDF parallelization parameter " + parallelization);
+		return parallelization;
 	}
 
 	@Override
-	public int chooseCostParameter() {
-		// Scrypt uses at least 128 * N * r bytes of memory. Don't use more
-		// than half of the JVM's max heap size or we may run out of memory.
+	public int chooseCostParameter(int parallelization) {
+		// Scrypt uses at least 128 * N * r * p bytes of memory when the lanes
+		// are computed in parallel. Don't use more than half of the JVM's max
+		// heap size or we may run out of memory.
 		// https://blog.filippo.io/the-scrypt-parameters/
 		long maxMemory = Runtime.getRuntime().maxMemory();
-		long maxCost = min(MAX_COST, maxMemory / BLOCK_SIZE / 256);
+		long maxCost = min(MAX_COST,
+				maxMemory / BLOCK_SIZE / parallelization / 256);
 		if (LOG.isLoggable(INFO) && maxCost < MAX_COST) {
 			LOG.info("Max cost capped at " + maxCost
 					+ " due to max heap size " + maxMemory);
 		}
 		// Increase the cost from min to max while measuring performance
 		int cost = MIN_COST;
-		while (cost * 2 <= maxCost && measureDuration(cost) * 2 <= TARGET_MS) {
+		while (cost * 2 <= maxCost
+				&& measureDuration(cost, parallelization) * 2 <= TARGET_MS) {
 			cost *= 2;
 		}
 		if (LOG.isLoggable(INFO))
@@ -54,21 +87,125 @@ class ScryptKdf implements PasswordBasedKdf {
 		return cost;
 	}
 
-	private long measureDuration(int cost) {
+	private long measureDuration(int cost, int parallelization) {
 		byte[] password = new byte[16], salt = new byte[32];
 		long start = clock.currentTimeMillis();
-		SCrypt.generate(password, salt, cost, BLOCK_SIZE, PARALLELIZATION,
-				SecretKey.LENGTH);
+		generate(password, salt, cost, parallelization);
 		return clock.currentTimeMillis() - start;
 	}
 
 	@Override
-	public SecretKey deriveKey(String password, byte[] salt, int cost) {
+	public SecretKey deriveKey(String password, byte[] salt, int cost,
+			int parallelization) {
 		long start = now();
 		byte[] passwordBytes = StringUtils.toUtf8(password);
-		SecretKey k = new SecretKey(SCrypt.generate(passwordBytes, salt, cost,
-				BLOCK_SIZE, PARALLELIZATION, SecretKey.LENGTH));
+		SecretKey k = new SecretKey(generate(passwordBytes, salt, cost,
+				parallelization));
 		logDuration(LOG, "Deriving key from password", start);
 		return k;
 	}
+
+	private byte[] generate(byte[] password, byte[] salt, int cost,
+			int parallelization) {
+		if (parallelization == 1) {
+			return SCrypt.generate(password, salt, cost, BLOCK_SIZE, 1,
+					SecretKey.LENGTH);
+		}
+		if (cost < 2 || (cost & (cost - 1)) != 0)
+			throw new IllegalArgumentException();
+		if (parallelization < 1) throw new IllegalArgumentException();
+		// Expand the password and salt into one block of data per lane
+		byte[] b = pbkdf2(password, salt, parallelization * LANE_WORDS * 4);
+		int[][] lanes = new int[parallelization][LANE_WORDS];
+		for (int i = 0; i < parallelization; i++)
+			littleEndianToInt(b, i * LANE_WORDS * 4, lanes[i]);
+		mixLanes(lanes, cost);
+		for (int i = 0; i < parallelization; i++)
+			intToLittleEndian(lanes[i], b, i * LANE_WORDS * 4);
+		return pbkdf2(password, b, SecretKey.LENGTH);
+	}
+
+	private byte[] pbkdf2(byte[] password, byte[] salt, int length) {
+		PKCS5S2ParametersGenerator generator =
+				new PKCS5S2ParametersGenerator(new SHA256Digest());
+		generator.init(password, salt, 1);
+		KeyParameter k = (KeyParameter)
+				generator.generateDerivedMacParameters(length * 8);
+		return k.getKey();
+	}
+
+	/**
+	 * Mixes the lanes in parallel on the crypto executor. The calling thread
+	 * also mixes lanes, so all the lanes are mixed even if the executor is
+	 * busy or shutting down.
+	 */
+	private void mixLanes(int[][] lanes, int cost) {
+		AtomicInteger nextLane = new AtomicInteger(0);
+		AtomicInteger mixed = new AtomicInteger(0);
+		CountDownLatch finished = new CountDownLatch(lanes.length);
+		Runnable mixer = () -> {
+			int i;
+			while ((i = nextLane.getAndIncrement()) < lanes.length) {
+				try {
+					smix(lanes[i], cost);
+					mixed.incrementAndGet();
+				} finally {
+					finished.countDown();
+				}
+			}
+		};
+		for (int i = 1; i < lanes.length; i++) cryptoExecutor.execute(mixer);
+		mixer.run();
+		// Wait for any lanes that are being mixed by other threads
+		boolean interrupted = false;
+		while (true) {
+			try {
+				finished.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		if (mixed.get() != lanes.length) throw new IllegalStateException();
+	}
+
+	/**
+	 * The scrypt ROMix function, applied to a single lane.
+	 */
+	private static void smix(int[] x, int cost) {
+		int[] v = new int[cost * LANE_WORDS];
+		int[] y = new int[LANE_WORDS];
+		int[] scratch = new int[16], block = new int[16];
+		for (int i = 0; i < cost; i++) {
+			arraycopy(x, 0, v, i * LANE_WORDS, LANE_WORDS);
+			blockMix(x, y, scratch, block);
+		}
+		int mask = cost - 1;
+		for (int i = 0; i < cost; i++) {
+			int j = x[LANE_WORDS - 16] & mask;
+			int offset = j * LANE_WORDS;
+			for (int k = 0; k < LANE_WORDS; k++) x[k] ^= v[offset + k];
+			blockMix(x, y, scratch, block);
+		}
+	}
+
+	/**
+	 * The scrypt BlockMix function, using Salsa20/8 as the hash function.
+	 * The result replaces the contents of {@code b}.
+	 */
+	private static void blockMix(int[] b, int[] y, int[] scratch,
+			int[] block) {
+		arraycopy(b, LANE_WORDS - 16, block, 0, 16);
+		int half = LANE_WORDS / 2;
+		for (int i = 0; i < 2 * BLOCK_SIZE; i++) {
+			for (int k = 0; k < 16; k++) block[k] ^= b[i * 16 + k];
+			Salsa20Engine.salsaCore(8, block, scratch);
+			arraycopy(scratch, 0, block, 0, 16);
+			// Even blocks go to the first half, odd blocks to the second
+			int offset = (i / 2) * 16 + (i % 2) * half;
+			arraycopy(block, 0, y, offset, 16);
+		}
+		arraycopy(y, 0, b, 0, LANE_WORDS);
+	}
 }
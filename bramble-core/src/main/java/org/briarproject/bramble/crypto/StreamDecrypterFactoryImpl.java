@@ -16,6 +16,12 @@ import javax.inject.Provider;
 @NotNullByDefault
 class StreamDecrypterFactoryImpl implements StreamDecrypterFactory {
 
+	/**
+	 * The maximum number of frames to read from the transport in a single
+	 * read.
+	 */
+	private static final int READ_AHEAD_FRAMES = 16;
+
 	private final Provider<AuthenticatedCipher> cipherProvider;
 
 	@Inject
@@ -28,7 +34,7 @@ class StreamDecrypterFactoryImpl implements StreamDecrypterFactory {
 			StreamContext ctx) {
 		AuthenticatedCipher cipher = cipherProvider.get();
 		return new StreamDecrypterImpl(in, cipher, ctx.getStreamNumber(),
-				ctx.getHeaderKey());
+				ctx.getHeaderKey(), READ_AHEAD_FRAMES);
 	}
 
 	@Override
@@ -35,8 +35,15 @@ class StreamDecrypterImpl implements StreamDecrypter {
 	private final AuthenticatedCipher cipher;
 	private final long streamNumber;
 	private final SecretKey streamHeaderKey;
-	private final byte[] frameNonce, frameHeader, frameCiphertext;
+	private final boolean readAhead;
+	private final byte[] frameNonce, frameHeader;
+	/**
+	 * Holds ciphertext that has been read from the input stream. The bytes
+	 * between bufStart and bufEnd haven't been decrypted yet.
+	 */
+	private final byte[] buf;
 
+	private int bufStart, bufEnd;
 	@Nullable
 	private SecretKey frameKey;
 	private long frameNumber;
@@ -44,13 +51,30 @@ class StreamDecrypterImpl implements StreamDecrypter {
 
 	StreamDecrypterImpl(InputStream in, AuthenticatedCipher cipher,
 			long streamNumber, SecretKey streamHeaderKey) {
+		this(in, cipher, streamNumber, streamHeaderKey, 1);
+	}
+
+	/**
+	 * @param readAheadFrames The maximum number of frames to read from the
+	 * input stream in a single read. If this is greater than one, the
+	 * decrypter may read past the end of the current frame, and past the
+	 * final frame, if the input stream has more data available.
+	 */
+	StreamDecrypterImpl(InputStream in, AuthenticatedCipher cipher,
+			long streamNumber, SecretKey streamHeaderKey,
+			int readAheadFrames) {
+		if (readAheadFrames < 1) throw new IllegalArgumentException();
 		this.in = in;
 		this.cipher = cipher;
 		this.streamNumber = streamNumber;
 		this.streamHeaderKey = streamHeaderKey;
+		readAhead = readAheadFrames > 1;
 		frameNonce = new byte[FRAME_NONCE_LENGTH];
 		frameHeader = new byte[FRAME_HEADER_PLAINTEXT_LENGTH];
-		frameCiphertext = new byte[MAX_FRAME_LENGTH];
+		buf = new byte[Math.max(STREAM_HEADER_LENGTH,
+				readAheadFrames * MAX_FRAME_LENGTH)];
+		bufStart = 0;
+		bufEnd = 0;
 		frameKey = null;
 		frameNumber = 0;
 		finalFrame = false;
@@ -67,18 +91,12 @@ class StreamDecrypterImpl implements StreamDecrypter {
 		// Read the stream header if required
 		if (frameKey == null) readStreamHeader();
 		// Read the frame header
-		int offset = 0;
-		while (offset < FRAME_HEADER_LENGTH) {
-			int read = in.read(frameCiphertext, offset,
-					FRAME_HEADER_LENGTH - offset);
-			if (read == -1) throw new EOFException();
-			offset += read;
-		}
+		fillBuffer(FRAME_HEADER_LENGTH);
 		// Decrypt and authenticate the frame header
 		FrameEncoder.encodeNonce(frameNonce, frameNumber, true);
 		try {
 			cipher.init(false, frameKey, frameNonce);
-			int decrypted = cipher.process(frameCiphertext, 0,
+			int decrypted = cipher.process(buf, bufStart,
 					FRAME_HEADER_LENGTH, frameHeader, 0);
 			if (decrypted != FRAME_HEADER_PLAINTEXT_LENGTH)
 				throw new RuntimeException();
@@ -94,22 +112,20 @@ class StreamDecrypterImpl implements StreamDecrypter {
 		// Read the payload and padding
 		int frameLength = FRAME_HEADER_LENGTH + payloadLength + paddingLength
 				+ MAC_LENGTH;
-		while (offset < frameLength) {
-			int read = in.read(frameCiphertext, offset, frameLength - offset);
-			if (read == -1) throw new EOFException();
-			offset += read;
-		}
+		fillBuffer(frameLength);
 		// Decrypt and authenticate the payload and padding
 		FrameEncoder.encodeNonce(frameNonce, frameNumber, false);
 		try {
 			cipher.init(false, frameKey, frameNonce);
-			int decrypted = cipher.process(frameCiphertext, FRAME_HEADER_LENGTH,
+			int decrypted = cipher.process(buf,
+					bufStart + FRAME_HEADER_LENGTH,
 					payloadLength + paddingLength + MAC_LENGTH, payload, 0);
 			if (decrypted != payloadLength + paddingLength)
 				throw new RuntimeException();
 		} catch (GeneralSecurityException e) {
 			throw new FormatException();
 		}
+		bufStart += frameLength;
 		// If there's any padding it must be all zeroes
 		for (int i = 0; i < paddingLength; i++)
 			if (payload[payloadLength + i] != 0) throw new FormatException();
@@ -117,26 +133,41 @@ class StreamDecrypterImpl implements StreamDecrypter {
 		return payloadLength;
 	}
 
+	/**
+	 * Reads from the input stream until the buffer holds at least the given
+	 * number of undecrypted bytes. When reading ahead, each read asks for as
+	 * many bytes as the buffer can hold, so several frames may be read at
+	 * once if they're available.
+	 */
+	private void fillBuffer(int length) throws IOException {
+		if (bufEnd - bufStart >= length) return;
+		// Move any undecrypted bytes to the start of the buffer
+		if (bufStart > 0) {
+			System.arraycopy(buf, bufStart, buf, 0, bufEnd - bufStart);
+			bufEnd -= bufStart;
+			bufStart = 0;
+		}
+		while (bufEnd < length) {
+			int read = in.read(buf, bufEnd,
+					readAhead ? buf.length - bufEnd : length - bufEnd);
+			if (read == -1) throw new EOFException();
+			bufEnd += read;
+		}
+	}
+
 	private void readStreamHeader() throws IOException {
-		byte[] streamHeaderCiphertext = new byte[STREAM_HEADER_LENGTH];
 		byte[] streamHeaderPlaintext = new byte[STREAM_HEADER_PLAINTEXT_LENGTH];
 		// Read the stream header
-		int offset = 0;
-		while (offset < STREAM_HEADER_LENGTH) {
-			int read = in.read(streamHeaderCiphertext, offset,
-					STREAM_HEADER_LENGTH - offset);
-			if (read == -1) throw new EOFException();
-			offset += read;
-		}
+		fillBuffer(STREAM_HEADER_LENGTH);
 		// Extract the nonce
 		byte[] streamHeaderNonce = new byte[STREAM_HEADER_NONCE_LENGTH];
-		System.arraycopy(streamHeaderCiphertext, 0, streamHeaderNonce, 0,
+		System.arraycopy(buf, bufStart, streamHeaderNonce, 0,
 				STREAM_HEADER_NONCE_LENGTH);
 		// Decrypt and authenticate the stream header
 		try {
 			cipher.init(false, streamHeaderKey, streamHeaderNonce);
-			int decrypted = cipher.process(streamHeaderCiphertext,
-					STREAM_HEADER_NONCE_LENGTH,
+			int decrypted = cipher.process(buf,
+					bufStart + STREAM_HEADER_NONCE_LENGTH,
 					STREAM_HEADER_PLAINTEXT_LENGTH + MAC_LENGTH,
 					streamHeaderPlaintext, 0);
 			if (decrypted != STREAM_HEADER_PLAINTEXT_LENGTH)
@@ -144,6 +175,7 @@ class StreamDecrypterImpl implements StreamDecrypter {
 		} catch (GeneralSecurityException e) {
 			throw new FormatException();
 		}
+		bufStart += STREAM_HEADER_LENGTH;
 		// Check the protocol version
 		int receivedProtocolVersion =
 				ByteUtils.readUint16(streamHeaderPlaintext, 0);
@@ -159,4 +191,4 @@ class StreamDecrypterImpl implements StreamDecrypter {
 				frameKeyBytes, 0, SecretKey.LENGTH);
 		frameKey = new SecretKey(frameKeyBytes);
 	}
-}
\ No newline at end of file
+}
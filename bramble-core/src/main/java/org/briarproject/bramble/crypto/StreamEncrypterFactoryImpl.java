@@ -22,6 +22,12 @@ import static org.briarproject.bramble.api.transport.TransportConstants.TAG_LENG
 @NotNullByDefault
 class StreamEncrypterFactoryImpl implements StreamEncrypterFactory {
 
+	/**
+	 * The maximum number of frames to encrypt before writing them to the
+	 * transport in a single write.
+	 */
+	private static final int FRAMES_PER_WRITE = 16;
+
 	private final CryptoComponent crypto;
 	private final TransportCrypto transportCrypto;
 	private final Provider<AuthenticatedCipher> cipherProvider;
@@ -47,7 +53,8 @@ class StreamEncrypterFactoryImpl implements StreamEncrypterFactory {
 		crypto.getSecureRandom().nextBytes(streamHeaderNonce);
 		SecretKey frameKey = crypto.generateSecretKey();
 		return new StreamEncrypterImpl(out, cipher, streamNumber, tag,
-				streamHeaderNonce, ctx.getHeaderKey(), frameKey);
+				streamHeaderNonce, ctx.getHeaderKey(), frameKey,
+				FRAMES_PER_WRITE);
 	}
 
 	@Override
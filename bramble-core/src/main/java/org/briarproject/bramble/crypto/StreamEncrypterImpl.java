@@ -22,6 +22,7 @@ import static org.briarproject.bramble.api.transport.TransportConstants.PROTOCOL
 import static org.briarproject.bramble.api.transport.TransportConstants.STREAM_HEADER_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.STREAM_HEADER_NONCE_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.STREAM_HEADER_PLAINTEXT_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.TAG_LENGTH;
 import static org.briarproject.bramble.util.ByteUtils.INT_16_BYTES;
 import static org.briarproject.bramble.util.ByteUtils.INT_64_BYTES;
 
@@ -36,15 +37,35 @@ class StreamEncrypterImpl implements StreamEncrypter {
 	@Nullable
 	private final byte[] tag;
 	private final byte[] streamHeaderNonce;
-	private final byte[] frameNonce, frameHeader;
-	private final byte[] framePlaintext, frameCiphertext;
+	private final byte[] frameNonce, frameHeader, framePlaintext;
+	/**
+	 * Holds the tag, stream header and any encrypted frames that haven't yet
+	 * been written to the output stream.
+	 */
+	private final byte[] buf;
 
+	private int bufLength;
 	private long frameNumber;
 	private boolean writeTag, writeStreamHeader;
 
 	StreamEncrypterImpl(OutputStream out, AuthenticatedCipher cipher,
 			long streamNumber, @Nullable byte[] tag, byte[] streamHeaderNonce,
 			SecretKey streamHeaderKey, SecretKey frameKey) {
+		this(out, cipher, streamNumber, tag, streamHeaderNonce,
+				streamHeaderKey, frameKey, 1);
+	}
+
+	/**
+	 * @param framesPerWrite The maximum number of frames to encrypt before
+	 * writing them to the output stream in a single write. If this is
+	 * greater than one, frames are only guaranteed to reach the output stream
+	 * when the final frame is written or the stream is flushed.
+	 */
+	StreamEncrypterImpl(OutputStream out, AuthenticatedCipher cipher,
+			long streamNumber, @Nullable byte[] tag, byte[] streamHeaderNonce,
+			SecretKey streamHeaderKey, SecretKey frameKey,
+			int framesPerWrite) {
+		if (framesPerWrite < 1) throw new IllegalArgumentException();
 		this.out = out;
 		this.cipher = cipher;
 		this.streamNumber = streamNumber;
@@ -55,7 +76,10 @@ class StreamEncrypterImpl implements StreamEncrypter {
 		frameNonce = new byte[FRAME_NONCE_LENGTH];
 		frameHeader = new byte[FRAME_HEADER_PLAINTEXT_LENGTH];
 		framePlaintext = new byte[MAX_PAYLOAD_LENGTH];
-		frameCiphertext = new byte[MAX_FRAME_LENGTH];
+		// Leave room for the tag and stream header before the first frame
+		buf = new byte[TAG_LENGTH + STREAM_HEADER_LENGTH
+				+ framesPerWrite * MAX_FRAME_LENGTH];
+		bufLength = 0;
 		frameNumber = 0;
 		writeTag = (tag != null);
 		writeStreamHeader = true;
@@ -70,10 +94,14 @@ class StreamEncrypterImpl implements StreamEncrypter {
 			throw new IllegalArgumentException();
 		// Don't allow the frame counter to wrap
 		if (frameNumber < 0) throw new IOException();
-		// Write the tag if required
-		if (writeTag) writeTag();
-		// Write the stream header if required
-		if (writeStreamHeader) writeStreamHeader();
+		// Buffer the tag if required
+		if (writeTag) bufferTag();
+		// Buffer the stream header if required
+		if (writeStreamHeader) bufferStreamHeader();
+		// Make room for the frame if necessary
+		int frameLength = FRAME_HEADER_LENGTH + payloadLength + paddingLength
+				+ MAC_LENGTH;
+		if (buf.length - bufLength < frameLength) writeBuffer();
 		// Encode the frame header
 		FrameEncoder.encodeHeader(frameHeader, finalFrame, payloadLength,
 				paddingLength);
@@ -82,7 +110,7 @@ class StreamEncrypterImpl implements StreamEncrypter {
 		try {
 			cipher.init(true, frameKey, frameNonce);
 			int encrypted = cipher.process(frameHeader, 0,
-					FRAME_HEADER_PLAINTEXT_LENGTH, frameCiphertext, 0);
+					FRAME_HEADER_PLAINTEXT_LENGTH, buf, bufLength);
 			if (encrypted != FRAME_HEADER_LENGTH) throw new RuntimeException();
 		} catch (GeneralSecurityException badCipher) {
 			throw new RuntimeException(badCipher);
@@ -96,57 +124,66 @@ class StreamEncrypterImpl implements StreamEncrypter {
 		try {
 			cipher.init(true, frameKey, frameNonce);
 			int encrypted = cipher.process(framePlaintext, 0,
-					payloadLength + paddingLength, frameCiphertext,
-					FRAME_HEADER_LENGTH);
+					payloadLength + paddingLength, buf,
+					bufLength + FRAME_HEADER_LENGTH);
 			if (encrypted != payloadLength + paddingLength + MAC_LENGTH)
 				throw new RuntimeException();
 		} catch (GeneralSecurityException badCipher) {
 			throw new RuntimeException(badCipher);
 		}
-		// Write the frame
-		out.write(frameCiphertext, 0, FRAME_HEADER_LENGTH + payloadLength
-				+ paddingLength + MAC_LENGTH);
+		bufLength += frameLength;
 		frameNumber++;
+		// Write the frame, along with any other buffered frames, unless
+		// there's room to buffer another frame of the maximum length
+		if (finalFrame || buf.length - bufLength < MAX_FRAME_LENGTH)
+			writeBuffer();
 	}
 
-	private void writeTag() throws IOException {
+	private void bufferTag() {
 		if (tag == null) throw new IllegalStateException();
-		out.write(tag, 0, tag.length);
+		System.arraycopy(tag, 0, buf, bufLength, tag.length);
+		bufLength += tag.length;
 		writeTag = false;
 	}
 
-	private void writeStreamHeader() throws IOException {
-		// The header contains the protocol version, stream number and frame key
-		byte[] streamHeaderPlaintext = new byte[STREAM_HEADER_PLAINTEXT_LENGTH];
-		ByteUtils.writeUint16(PROTOCOL_VERSION, streamHeaderPlaintext, 0);
-		ByteUtils.writeUint64(streamNumber, streamHeaderPlaintext,
-				INT_16_BYTES);
-		System.arraycopy(frameKey.getBytes(), 0, streamHeaderPlaintext,
+	private void bufferStreamHeader() {
+		// The header contains the protocol version, stream number and frame
+		// key. The plaintext is built in the frame plaintext buffer, which
+		// is big enough and not otherwise in use
+		ByteUtils.writeUint16(PROTOCOL_VERSION, framePlaintext, 0);
+		ByteUtils.writeUint64(streamNumber, framePlaintext, INT_16_BYTES);
+		System.arraycopy(frameKey.getBytes(), 0, framePlaintext,
 				INT_16_BYTES + INT_64_BYTES, SecretKey.LENGTH);
-		byte[] streamHeaderCiphertext = new byte[STREAM_HEADER_LENGTH];
-		System.arraycopy(streamHeaderNonce, 0, streamHeaderCiphertext, 0,
+		System.arraycopy(streamHeaderNonce, 0, buf, bufLength,
 				STREAM_HEADER_NONCE_LENGTH);
 		// Encrypt and authenticate the stream header key
 		try {
 			cipher.init(true, streamHeaderKey, streamHeaderNonce);
-			int encrypted = cipher.process(streamHeaderPlaintext, 0,
-					STREAM_HEADER_PLAINTEXT_LENGTH, streamHeaderCiphertext,
-					STREAM_HEADER_NONCE_LENGTH);
+			int encrypted = cipher.process(framePlaintext, 0,
+					STREAM_HEADER_PLAINTEXT_LENGTH, buf,
+					bufLength + STREAM_HEADER_NONCE_LENGTH);
 			if (encrypted != STREAM_HEADER_PLAINTEXT_LENGTH + MAC_LENGTH)
 				throw new RuntimeException();
 		} catch (GeneralSecurityException badCipher) {
 			throw new RuntimeException(badCipher);
 		}
-		out.write(streamHeaderCiphertext);
+		bufLength += STREAM_HEADER_LENGTH;
 		writeStreamHeader = false;
 	}
 
+	private void writeBuffer() throws IOException {
+		if (bufLength == 0) return;
+		out.write(buf, 0, bufLength);
+		bufLength = 0;
+	}
+
 	@Override
 	public void flush() throws IOException {
-		// Write the tag if required
-		if (writeTag) writeTag();
-		// Write the stream header if required
-		if (writeStreamHeader) writeStreamHeader();
+		// Buffer the tag if required
+		if (writeTag) bufferTag();
+		// Buffer the stream header if required
+		if (writeStreamHeader) bufferStreamHeader();
+		writeBuffer();
 		out.flush();
 	}
-}
\ No newline at end of file
+}
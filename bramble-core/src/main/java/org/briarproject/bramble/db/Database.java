@@ -80,6 +80,18 @@ interface Database<T> {
 	 */
 	T startTransaction() throws DbException;
 
+	/**
+	 * Starts a new read-only transaction using a connection from the
+	 * read-only pool and returns an object representing it. Read-only
+	 * transactions may run concurrently with each other and with a
+	 * read-write transaction. Blocks if all connections in the read-only pool
+	 * are in use.
+	 * <p/>
+	 * If the database has no read-only pool, this is equivalent to
+	 * {@link #startTransaction()}.
+	 */
+	T startReadOnlyTransaction() throws DbException;
+
 	/**
 	 * Aborts the given transaction - no changes made during the transaction
 	 * will be applied to the database.
@@ -92,6 +104,16 @@ interface Database<T> {
 	 */
 	void commitTransaction(T txn) throws DbException;
 
+	/**
+	 * Returns the number of idle read-write connections in the pool.
+	 */
+	int getIdleConnections();
+
+	/**
+	 * Returns the number of idle connections in the read-only pool.
+	 */
+	int getIdleReadOnlyConnections();
+
 	/**
 	 * Stores a contact associated with the given local and remote pseudonyms,
 	 * and returns an ID for the contact.
@@ -334,6 +356,15 @@ interface Database<T> {
 	 */
 	Metadata getGroupMetadata(T txn, GroupId g) throws DbException;
 
+	/**
+	 * Returns the metadata for all groups belonging to the given client.
+	 * Groups with no metadata are not included.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<GroupId, Metadata> getGroupMetadata(T txn, ClientId c,
+			int majorVersion) throws DbException;
+
 	/**
 	 * Returns all groups belonging to the given client.
 	 * <p/>
@@ -447,6 +478,29 @@ interface Database<T> {
 	Map<MessageId, Metadata> getMessageMetadata(T txn, GroupId g,
 			Metadata query) throws DbException;
 
+	/**
+	 * Returns the metadata for a page of delivered messages in the given
+	 * group with metadata that matches all entries in the given query, in
+	 * timestamp order. If the query is empty, all delivered messages that
+	 * have metadata are eligible. Messages without metadata, such as those
+	 * that have been deleted, are never included.
+	 * <p/>
+	 * If {@code before} is true, the page contains the latest messages with
+	 * timestamps earlier than the given timestamp, latest first. Otherwise
+	 * the page contains the earliest messages with timestamps later than the
+	 * given timestamp, earliest first.
+	 * <p/>
+	 * The page contains at most {@code limit} messages, unless other
+	 * messages share the timestamp of the last message in the page, in which
+	 * case they're also included. The timestamp of the last message can
+	 * therefore be used to fetch the next page.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<MessageId, Metadata> getMessageMetadata(T txn, GroupId g,
+			Metadata query, long timestamp, boolean before, int limit)
+			throws DbException;
+
 	/**
 	 * Returns the metadata for the given delivered or pending message.
 	 * This is only meant to be used by the ValidationManager.
@@ -16,6 +16,7 @@ import org.briarproject.bramble.api.crypto.PublicKey;
 import org.briarproject.bramble.api.crypto.SecretKey;
 import org.briarproject.bramble.api.db.CommitAction;
 import org.briarproject.bramble.api.db.CommitAction.Visitor;
+import org.briarproject.bramble.api.db.ConnectionPoolStats;
 import org.briarproject.bramble.api.db.ContactExistsException;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DbCallable;
@@ -79,6 +80,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Logger;
 
@@ -110,20 +112,37 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	private final EventBus eventBus;
 	private final Executor eventExecutor;
 	private final ShutdownManager shutdownManager;
+	// True if read-only transactions use the read-only connection pool
+	// rather than sharing the database lock
+	private final boolean concurrentReads;
 	private final AtomicBoolean closed = new AtomicBoolean(false);
 	private final ReentrantReadWriteLock lock =
 			new ReentrantReadWriteLock(true);
+	// True if the current thread has a transaction open. Read-only
+	// transactions using the pool don't hold the lock, so the lock's hold
+	// counts can't be used to detect reentrancy
+	private final ThreadLocal<Boolean> inTransaction =
+			new ThreadLocal<Boolean>() {
+				@Override
+				protected Boolean initialValue() {
+					return false;
+				}
+			};
 	private final Visitor visitor = new CommitActionVisitor();
+	private final AtomicLong checkouts = new AtomicLong(0);
+	private final AtomicLong readOnlyCheckouts = new AtomicLong(0);
+	private final AtomicLong waitTime = new AtomicLong(0);
 
 	@Inject
 	DatabaseComponentImpl(Database<T> db, Class<T> txnClass, EventBus eventBus,
 			@EventExecutor Executor eventExecutor,
-			ShutdownManager shutdownManager) {
+			ShutdownManager shutdownManager, boolean concurrentReads) {
 		this.db = db;
 		this.txnClass = txnClass;
 		this.eventBus = eventBus;
 		this.eventExecutor = eventExecutor;
 		this.shutdownManager = shutdownManager;
+		this.concurrentReads = concurrentReads;
 	}
 
 	@Override
@@ -146,12 +165,27 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		db.close();
 	}
 
+	@Override
+	public ConnectionPoolStats getConnectionPoolStats() {
+		return new ConnectionPoolStats(checkouts.get(),
+				readOnlyCheckouts.get(), waitTime.get(),
+				db.getIdleConnections(), db.getIdleReadOnlyConnections());
+	}
+
 	@Override
 	public Transaction startTransaction(boolean readOnly) throws DbException {
-		// Don't allow reentrant locking
-		if (lock.getReadHoldCount() > 0) throw new IllegalStateException();
-		if (lock.getWriteHoldCount() > 0) throw new IllegalStateException();
+		// Don't allow reentrant transactions
+		if (inTransaction.get()) throw new IllegalStateException();
 		long start = now();
+		if (readOnly && concurrentReads) {
+			T txn = db.startReadOnlyTransaction();
+			inTransaction.set(true);
+			logDuration(LOG, "Waiting for read-only connection", start);
+			waitTime.addAndGet(now() - start);
+			checkouts.incrementAndGet();
+			readOnlyCheckouts.incrementAndGet();
+			return new Transaction(txn, true);
+		}
 		if (readOnly) {
 			lock.readLock().lock();
 			logDuration(LOG, "Waiting for read lock", start);
@@ -159,8 +193,12 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			lock.writeLock().lock();
 			logDuration(LOG, "Waiting for write lock", start);
 		}
+		waitTime.addAndGet(now() - start);
+		checkouts.incrementAndGet();
 		try {
-			return new Transaction(db.startTransaction(), readOnly);
+			Transaction txn = new Transaction(db.startTransaction(), readOnly);
+			inTransaction.set(true);
+			return txn;
 		} catch (DbException | RuntimeException e) {
 			if (readOnly) lock.readLock().unlock();
 			else lock.writeLock().unlock();
@@ -187,8 +225,12 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 				db.abortTransaction(txn);
 			}
 		} finally {
-			if (transaction.isReadOnly()) lock.readLock().unlock();
-			else lock.writeLock().unlock();
+			inTransaction.set(false);
+			if (transaction.isReadOnly()) {
+				if (!concurrentReads) lock.readLock().unlock();
+			} else {
+				lock.writeLock().unlock();
+			}
 		}
 	}
 
@@ -573,6 +615,13 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return db.getGroupMetadata(txn, g);
 	}
 
+	@Override
+	public Map<GroupId, Metadata> getGroupMetadata(Transaction transaction,
+			ClientId c, int majorVersion) throws DbException {
+		T txn = unbox(transaction);
+		return db.getGroupMetadata(txn, c, majorVersion);
+	}
+
 	@Override
 	public Collection<Group> getGroups(Transaction transaction, ClientId c,
 			int majorVersion) throws DbException {
@@ -696,6 +745,16 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return db.getMessageMetadata(txn, g, query);
 	}
 
+	@Override
+	public Map<MessageId, Metadata> getMessageMetadata(Transaction transaction,
+			GroupId g, Metadata query, long timestamp, boolean before,
+			int limit) throws DbException {
+		T txn = unbox(transaction);
+		if (!db.containsGroup(txn, g))
+			throw new NoSuchGroupException();
+		return db.getMessageMetadata(txn, g, query, timestamp, before, limit);
+	}
+
 	@Override
 	public Metadata getMessageMetadata(Transaction transaction, MessageId m)
 			throws DbException {
@@ -1,7 +1,9 @@
 package org.briarproject.bramble.db;
 
 import org.briarproject.bramble.TimeLoggingExecutor;
+import org.briarproject.bramble.api.db.DatabaseConfig;
 import org.briarproject.bramble.api.db.DatabaseExecutor;
+import org.briarproject.bramble.api.db.DatabaseReadExecutor;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager;
 
 import java.util.concurrent.BlockingQueue;
@@ -26,6 +28,9 @@ public class DatabaseExecutorModule {
 		@Inject
 		@DatabaseExecutor
 		ExecutorService executorService;
+		@Inject
+		@DatabaseReadExecutor
+		ExecutorService readExecutorService;
 	}
 
 	private final ExecutorService databaseExecutor;
@@ -57,4 +62,39 @@ public class DatabaseExecutorModule {
 			@DatabaseExecutor ExecutorService dbExecutor) {
 		return dbExecutor;
 	}
+
+	@Provides
+	@Singleton
+	@DatabaseReadExecutor
+	ExecutorService provideDatabaseReadExecutorService(DatabaseConfig config,
+			LifecycleManager lifecycleManager,
+			@DatabaseExecutor ExecutorService dbExecutor) {
+		// Without a read-only connection pool, read-only transactions share
+		// the database lock, so extra threads wouldn't help
+		int threads = config.getReadOnlyConnectionPoolSize();
+		if (threads == 0) return dbExecutor;
+		// Use an unbounded queue
+		BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+		// Discard tasks that are submitted during shutdown
+		RejectedExecutionHandler policy =
+				new ThreadPoolExecutor.DiscardPolicy();
+		// Use one thread per pooled connection, as any further threads would
+		// just wait for a connection. With an unbounded queue the pool never
+		// grows beyond its core size, so the core threads are allowed to
+		// time out after 60 secs
+		ThreadPoolExecutor readExecutor = new TimeLoggingExecutor(
+				"DatabaseReadExecutor", threads, threads, 60, SECONDS, queue,
+				policy);
+		readExecutor.allowCoreThreadTimeOut(true);
+		lifecycleManager.registerForShutdown(readExecutor);
+		return readExecutor;
+	}
+
+	@Provides
+	@Singleton
+	@DatabaseReadExecutor
+	Executor provideDatabaseReadExecutor(
+			@DatabaseReadExecutor ExecutorService dbReadExecutor) {
+		return dbReadExecutor;
+	}
 }
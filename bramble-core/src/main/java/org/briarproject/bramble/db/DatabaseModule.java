@@ -30,10 +30,12 @@ public class DatabaseModule {
 	@Provides
 	@Singleton
 	DatabaseComponent provideDatabaseComponent(Database<Connection> db,
-			EventBus eventBus, @EventExecutor Executor eventExecutor,
+			DatabaseConfig config, EventBus eventBus,
+			@EventExecutor Executor eventExecutor,
 			ShutdownManager shutdownManager) {
+		boolean concurrentReads = config.getReadOnlyConnectionPoolSize() > 0;
 		return new DatabaseComponentImpl<>(db, Connection.class, eventBus,
-				eventExecutor, shutdownManager);
+				eventExecutor, shutdownManager, concurrentReads);
 	}
 
 	@Provides
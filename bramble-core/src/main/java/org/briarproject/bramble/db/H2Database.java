@@ -44,6 +44,12 @@ class H2Database extends JdbcDatabase {
 	private static final DatabaseTypes dbTypes = new DatabaseTypes(HASH_TYPE,
 			SECRET_TYPE, BINARY_TYPE, COUNTER_TYPE, STRING_TYPE);
 
+	/**
+	 * The maximum time in milliseconds to spend compacting the database
+	 * when closing it, if incremental compaction is enabled.
+	 */
+	private static final int MAX_COMPACT_TIME = 200;
+
 	private final DatabaseConfig config;
 	private final String url;
 
@@ -53,12 +59,21 @@ class H2Database extends JdbcDatabase {
 	@Inject
 	H2Database(DatabaseConfig config, MessageFactory messageFactory,
 			Clock clock) {
-		super(dbTypes, messageFactory, clock);
+		// The MVStore uses MVCC, so read-only connections can read
+		// committed data while a read-write transaction is in progress
+		super(dbTypes, messageFactory, clock,
+				config.getReadOnlyConnectionPoolSize());
 		this.config = config;
 		File dir = config.getDatabaseDirectory();
 		String path = new File(dir, "db").getAbsolutePath();
-		url = "jdbc:h2:split:" + path + ";CIPHER=AES;MULTI_THREADED=1"
-				+ ";WRITE_DELAY=0";
+		// With a non-zero write delay, H2's background writer stores
+		// committed transactions together
+		String baseUrl = "jdbc:h2:split:" + path
+				+ ";CIPHER=AES;MULTI_THREADED=1"
+				+ ";WRITE_DELAY=" + config.getDurability().getMaxWriteDelay();
+		if (config.isIncrementalCompactionEnabled())
+			url = baseUrl + ";MAX_COMPACT_TIME=" + MAX_COMPACT_TIME;
+		else url = baseUrl;
 	}
 
 	@Override
@@ -91,7 +106,7 @@ class H2Database extends JdbcDatabase {
 			closeAllConnections();
 			setDirty(c, false);
 			s = c.createStatement();
-			s.execute("SHUTDOWN COMPACT");
+			s.execute(getShutdownCommand());
 			s.close();
 			c.close();
 		} catch (SQLException e) {
@@ -101,6 +116,12 @@ class H2Database extends JdbcDatabase {
 		}
 	}
 
+	private String getShutdownCommand() {
+		// Without COMPACT, H2 compacts for at most MAX_COMPACT_TIME
+		return config.isIncrementalCompactionEnabled() ?
+				"SHUTDOWN" : "SHUTDOWN COMPACT";
+	}
+
 	@Override
 	protected Connection createConnection() throws DbException, SQLException {
 		SecretKey key = this.key;
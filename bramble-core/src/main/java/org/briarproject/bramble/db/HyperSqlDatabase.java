@@ -2,6 +2,7 @@ package org.briarproject.bramble.db;
 
 import org.briarproject.bramble.api.crypto.SecretKey;
 import org.briarproject.bramble.api.db.DatabaseConfig;
+import org.briarproject.bramble.api.db.DatabaseDurability;
 import org.briarproject.bramble.api.db.DbClosedException;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.MigrationListener;
@@ -23,6 +24,7 @@ import javax.inject.Inject;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
 import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.api.db.DatabaseDurability.STRICT;
 import static org.briarproject.bramble.db.JdbcUtils.tryToClose;
 import static org.briarproject.bramble.util.IoUtils.isNonEmptyDirectory;
 
@@ -53,13 +55,26 @@ class HyperSqlDatabase extends JdbcDatabase {
 	@Inject
 	HyperSqlDatabase(DatabaseConfig config, MessageFactory messageFactory,
 			Clock clock) {
-		super(dbTypes, messageFactory, clock);
+		super(dbTypes, messageFactory, clock,
+				config.getReadOnlyConnectionPoolSize());
 		this.config = config;
 		File dir = config.getDatabaseDirectory();
 		String path = new File(dir, "db").getAbsolutePath();
-		url = "jdbc:hsqldb:file:" + path
+		String baseUrl = "jdbc:hsqldb:file:" + path
 				+ ";sql.enforce_size=false;allow_empty_batch=true"
 				+ ";encrypt_lobs=true;crypt_type=AES";
+		// With the default durability, keep HyperSQL's own write delay, as
+		// before the durability was configurable
+		DatabaseDurability durability = config.getDurability();
+		if (durability != STRICT) {
+			baseUrl += ";hsqldb.write_delay_millis="
+					+ durability.getMaxWriteDelay();
+		}
+		// Read-only connections need MVCC to avoid blocking on the writer's
+		// locks
+		if (config.getReadOnlyConnectionPoolSize() > 0)
+			url = baseUrl + ";hsqldb.tx=mvcc";
+		else url = baseUrl;
 	}
 
 	@Override
@@ -83,7 +98,11 @@ class HyperSqlDatabase extends JdbcDatabase {
 			c = createConnection();
 			setDirty(c, false);
 			s = c.createStatement();
-			s.executeQuery("SHUTDOWN COMPACT");
+			// Compacting a HyperSQL database rewrites the whole file, so
+			// skip it if incremental compaction is enabled
+			if (config.isIncrementalCompactionEnabled())
+				s.executeQuery("SHUTDOWN");
+			else s.executeQuery("SHUTDOWN COMPACT");
 			s.close();
 			c.close();
 		} catch (SQLException e) {
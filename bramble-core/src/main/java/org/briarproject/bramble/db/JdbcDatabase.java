@@ -51,6 +51,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -101,10 +102,10 @@ import static org.briarproject.bramble.util.LogUtils.now;
 abstract class JdbcDatabase implements Database<Connection> {
 
 	// Package access for testing
-	static final int CODE_SCHEMA_VERSION = 50;
+	static final int CODE_SCHEMA_VERSION = 51;
 
 	/**
-	 * The maximum number of idle connections to keep open.
+	 * The maximum number of idle read-write connections to keep open.
 	 */
 	private static final int MAX_CONNECTION_POOL_SIZE = 1;
 
@@ -345,9 +346,13 @@ abstract class JdbcDatabase implements Database<Connection> {
 			"CREATE INDEX IF NOT EXISTS statusesByContactIdGroupId"
 					+ " ON statuses (contactId, groupId)";
 
-	private static final String INDEX_STATUSES_BY_CONTACT_ID_TIMESTAMP =
-			"CREATE INDEX IF NOT EXISTS statusesByContactIdTimestamp"
-					+ " ON statuses (contactId, timestamp)";
+	// Used for selecting messages to offer or send. The columns used in
+	// equality conditions come first so that each contact's sendable
+	// messages are a single range of the index, ordered by timestamp
+	private static final String INDEX_STATUSES_BY_CONTACT_ID_SENDABLE =
+			"CREATE INDEX IF NOT EXISTS statusesByContactIdSendable"
+					+ " ON statuses (contactId, state, groupShared,"
+					+ " messageShared, deleted, seen, timestamp)";
 
 	private static final String
 			INDEX_STATUSES_BY_CONTACT_ID_TX_COUNT_TIMESTAMP =
@@ -358,21 +363,36 @@ abstract class JdbcDatabase implements Database<Connection> {
 			"CREATE INDEX IF NOT EXISTS messagesByCleanupDeadline"
 					+ " ON messages (cleanupDeadline)";
 
+	// Used for reading a page of a group's messages in timestamp order
+	private static final String INDEX_MESSAGES_BY_GROUP_ID_STATE_TIMESTAMP =
+			"CREATE INDEX IF NOT EXISTS messagesByGroupIdStateTimestamp"
+					+ " ON messages (groupId, state, timestamp)";
+
 	private static final Logger LOG =
 			getLogger(JdbcDatabase.class.getName());
 
 	private final MessageFactory messageFactory;
 	private final Clock clock;
 	private final DatabaseTypes dbTypes;
+	private final int maxReadOnlyConnections;
 
 	private final Lock connectionsLock = new ReentrantLock();
 	private final Condition connectionsChanged = connectionsLock.newCondition();
 
 	@GuardedBy("connectionsLock")
 	private final LinkedList<Connection> connectionPool = new LinkedList<>();
+	@GuardedBy("connectionsLock")
+	private final LinkedList<Connection> readOnlyConnectionPool =
+			new LinkedList<>();
+	@GuardedBy("connectionsLock")
+	private final Set<Connection> readOnlyConnections = new HashSet<>();
 
+	// Includes read-only connections
 	@GuardedBy("connectionsLock")
 	private int openConnections = 0;
+	// Includes read-only connections that are being opened
+	@GuardedBy("connectionsLock")
+	private int openReadOnlyConnections = 0;
 	@GuardedBy("connectionsLock")
 	private boolean closed = false;
 
@@ -386,10 +406,12 @@ abstract class JdbcDatabase implements Database<Connection> {
 	protected abstract void compactAndClose() throws DbException;
 
 	JdbcDatabase(DatabaseTypes databaseTypes, MessageFactory messageFactory,
-			Clock clock) {
+			Clock clock, int maxReadOnlyConnections) {
+		if (maxReadOnlyConnections < 0) throw new IllegalArgumentException();
 		this.dbTypes = databaseTypes;
 		this.messageFactory = messageFactory;
 		this.clock = clock;
+		this.maxReadOnlyConnections = maxReadOnlyConnections;
 	}
 
 	protected void open(String driverClass, boolean reopen,
@@ -499,7 +521,8 @@ abstract class JdbcDatabase implements Database<Connection> {
 				new Migration46_47(dbTypes),
 				new Migration47_48(),
 				new Migration48_49(),
-				new Migration49_50()
+				new Migration49_50(),
+				new Migration50_51()
 		);
 	}
 
@@ -561,9 +584,10 @@ abstract class JdbcDatabase implements Database<Connection> {
 			s.executeUpdate(INDEX_MESSAGE_METADATA_BY_GROUP_ID_STATE);
 			s.executeUpdate(INDEX_MESSAGE_DEPENDENCIES_BY_DEPENDENCY_ID);
 			s.executeUpdate(INDEX_STATUSES_BY_CONTACT_ID_GROUP_ID);
-			s.executeUpdate(INDEX_STATUSES_BY_CONTACT_ID_TIMESTAMP);
+			s.executeUpdate(INDEX_STATUSES_BY_CONTACT_ID_SENDABLE);
 			s.executeUpdate(INDEX_STATUSES_BY_CONTACT_ID_TX_COUNT_TIMESTAMP);
 			s.executeUpdate(INDEX_MESSAGES_BY_CLEANUP_DEADLINE);
+			s.executeUpdate(INDEX_MESSAGES_BY_GROUP_ID_STATE_TIMESTAMP);
 			s.close();
 		} catch (SQLException e) {
 			tryToClose(s, LOG, WARNING);
@@ -607,11 +631,104 @@ abstract class JdbcDatabase implements Database<Connection> {
 		return txn;
 	}
 
+	@Override
+	public Connection startReadOnlyTransaction() throws DbException {
+		if (maxReadOnlyConnections == 0) return startTransaction();
+		Connection txn;
+		connectionsLock.lock();
+		try {
+			while (true) {
+				if (closed) throw new DbClosedException();
+				txn = readOnlyConnectionPool.poll();
+				if (txn != null) break;
+				if (openReadOnlyConnections < maxReadOnlyConnections) {
+					// Reserve a slot for a new connection
+					openReadOnlyConnections++;
+					break;
+				}
+				// Wait for a connection to be returned to the pool
+				try {
+					connectionsChanged.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new DbException(e);
+				}
+			}
+			logConnectionCounts();
+		} finally {
+			connectionsLock.unlock();
+		}
+		if (txn == null) txn = openReadOnlyConnection();
+		return txn;
+	}
+
+	private Connection openReadOnlyConnection() throws DbException {
+		Connection txn = null;
+		try {
+			txn = createConnection();
+			txn.setAutoCommit(false);
+			txn.setReadOnly(true);
+		} catch (DbException | SQLException e) {
+			if (txn != null) tryToClose(txn, LOG, WARNING);
+			releaseReadOnlyConnectionSlot();
+			if (e instanceof DbException) throw (DbException) e;
+			throw new DbException(e);
+		}
+		connectionsLock.lock();
+		try {
+			// The DB may have been closed since the slot was reserved
+			if (closed) {
+				openReadOnlyConnections--;
+				connectionsChanged.signalAll();
+				tryToClose(txn, LOG, WARNING);
+				throw new DbClosedException();
+			}
+			openConnections++;
+			readOnlyConnections.add(txn);
+			logConnectionCounts();
+			connectionsChanged.signalAll();
+		} finally {
+			connectionsLock.unlock();
+		}
+		return txn;
+	}
+
+	private void releaseReadOnlyConnectionSlot() {
+		connectionsLock.lock();
+		try {
+			openReadOnlyConnections--;
+			connectionsChanged.signalAll();
+		} finally {
+			connectionsLock.unlock();
+		}
+	}
+
+	@Override
+	public int getIdleConnections() {
+		connectionsLock.lock();
+		try {
+			return connectionPool.size();
+		} finally {
+			connectionsLock.unlock();
+		}
+	}
+
+	@Override
+	public int getIdleReadOnlyConnections() {
+		connectionsLock.lock();
+		try {
+			return readOnlyConnectionPool.size();
+		} finally {
+			connectionsLock.unlock();
+		}
+	}
+
 	@GuardedBy("connectionsLock")
 	private void logConnectionCounts() {
 		if (LOG.isLoggable(FINE)) {
 			LOG.fine(openConnections + " connections open, "
-					+ connectionPool.size() + " in pool");
+					+ connectionPool.size() + " in pool, "
+					+ readOnlyConnectionPool.size() + " in read-only pool");
 		}
 	}
 
@@ -632,6 +749,7 @@ abstract class JdbcDatabase implements Database<Connection> {
 		connectionsLock.lock();
 		try {
 			openConnections--;
+			if (readOnlyConnections.remove(txn)) openReadOnlyConnections--;
 			logConnectionCounts();
 			connectionsChanged.signalAll();
 		} finally {
@@ -657,9 +775,16 @@ abstract class JdbcDatabase implements Database<Connection> {
 		boolean shouldClose;
 		connectionsLock.lock();
 		try {
-			shouldClose = connectionPool.size() >= MAX_CONNECTION_POOL_SIZE;
-			if (shouldClose) openConnections--;
-			else connectionPool.add(txn);
+			if (readOnlyConnections.contains(txn)) {
+				// The read-only pool is bounded, so there's always room
+				shouldClose = false;
+				readOnlyConnectionPool.add(txn);
+			} else {
+				shouldClose =
+						connectionPool.size() >= MAX_CONNECTION_POOL_SIZE;
+				if (shouldClose) openConnections--;
+				else connectionPool.add(txn);
+			}
 			logConnectionCounts();
 			connectionsChanged.signalAll();
 		} finally {
@@ -673,10 +798,8 @@ abstract class JdbcDatabase implements Database<Connection> {
 		connectionsLock.lock();
 		try {
 			closed = true;
-			for (Connection c : connectionPool) tryToClose(c, LOG, WARNING);
-			openConnections -= connectionPool.size();
-			connectionPool.clear();
-			while (openConnections > 0) {
+			closeIdleConnections();
+			while (openConnections > 0 || openReadOnlyConnections > 0) {
 				if (LOG.isLoggable(INFO)) {
 					LOG.info("Waiting for " + openConnections
 							+ " connections to be closed");
@@ -687,9 +810,7 @@ abstract class JdbcDatabase implements Database<Connection> {
 					LOG.warning("Interrupted while closing connections");
 					interrupted = true;
 				}
-				for (Connection c : connectionPool) tryToClose(c, LOG, WARNING);
-				openConnections -= connectionPool.size();
-				connectionPool.clear();
+				closeIdleConnections();
 			}
 			LOG.info("All connections closed");
 		} finally {
@@ -699,6 +820,20 @@ abstract class JdbcDatabase implements Database<Connection> {
 		if (interrupted) Thread.currentThread().interrupt();
 	}
 
+	@GuardedBy("connectionsLock")
+	private void closeIdleConnections() {
+		for (Connection c : connectionPool) tryToClose(c, LOG, WARNING);
+		openConnections -= connectionPool.size();
+		connectionPool.clear();
+		for (Connection c : readOnlyConnectionPool) {
+			tryToClose(c, LOG, WARNING);
+			readOnlyConnections.remove(c);
+		}
+		openConnections -= readOnlyConnectionPool.size();
+		openReadOnlyConnections -= readOnlyConnectionPool.size();
+		readOnlyConnectionPool.clear();
+	}
+
 	@Override
 	public ContactId addContact(Connection txn, Author remote, AuthorId local,
 			@Nullable PublicKey handshake, boolean verified)
@@ -1922,28 +2057,16 @@ abstract class JdbcDatabase implements Database<Connection> {
 		PreparedStatement ps = null;
 		ResultSet rs = null;
 		try {
-			// Retrieve the message IDs for each query term and intersect
-			Set<MessageId> intersection = null;
-			String sql = "SELECT messageId FROM messageMetadata"
-					+ " WHERE groupId = ? AND state = ?"
-					+ " AND metaKey = ? AND value = ?";
-			for (Entry<String, byte[]> e : query.entrySet()) {
-				ps = txn.prepareStatement(sql);
-				ps.setBytes(1, g.getBytes());
-				ps.setInt(2, DELIVERED.getValue());
-				ps.setString(3, e.getKey());
-				ps.setBytes(4, e.getValue());
-				rs = ps.executeQuery();
-				Set<MessageId> ids = new HashSet<>();
-				while (rs.next()) ids.add(new MessageId(rs.getBytes(1)));
-				rs.close();
-				ps.close();
-				if (intersection == null) intersection = ids;
-				else intersection.retainAll(ids);
-				// Return early if there are no matches
-				if (intersection.isEmpty()) return Collections.emptySet();
-			}
-			return intersection;
+			// Retrieve the IDs of the messages that match all query terms
+			String sql = getMatchingMessageIdsQuery(query.size());
+			ps = txn.prepareStatement(sql);
+			setMatchingMessageIdsParameters(ps, 1, g, query);
+			rs = ps.executeQuery();
+			Set<MessageId> ids = new HashSet<>();
+			while (rs.next()) ids.add(new MessageId(rs.getBytes(1)));
+			rs.close();
+			ps.close();
+			return ids;
 		} catch (SQLException e) {
 			tryToClose(rs, LOG, WARNING);
 			tryToClose(ps, LOG, WARNING);
@@ -2012,13 +2135,189 @@ abstract class JdbcDatabase implements Database<Connection> {
 	@Override
 	public Map<MessageId, Metadata> getMessageMetadata(Connection txn,
 			GroupId g, Metadata query) throws DbException {
-		// Retrieve the matching message IDs
-		Collection<MessageId> matches = getMessageIds(txn, g, query);
-		if (matches.isEmpty()) return Collections.emptyMap();
-		// Retrieve the metadata for each match
-		Map<MessageId, Metadata> all = new HashMap<>(matches.size());
-		for (MessageId m : matches) all.put(m, getMessageMetadata(txn, m));
-		return all;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql;
+			if (query.isEmpty()) {
+				// Include delivered messages that have no metadata
+				sql = "SELECT m.messageId, md.metaKey, md.value"
+						+ " FROM messages AS m"
+						+ " LEFT OUTER JOIN messageMetadata AS md"
+						+ " ON m.messageId = md.messageId"
+						+ " WHERE m.groupId = ? AND m.state = ?";
+				ps = txn.prepareStatement(sql);
+				ps.setBytes(1, g.getBytes());
+				ps.setInt(2, DELIVERED.getValue());
+			} else {
+				// Join the metadata with the IDs of the matching messages
+				sql = "SELECT md.messageId, md.metaKey, md.value"
+						+ " FROM messageMetadata AS md"
+						+ " JOIN (" + getMatchingMessageIdsQuery(query.size())
+						+ ") AS matched"
+						+ " ON md.messageId = matched.messageId"
+						+ " WHERE md.state = ?";
+				ps = txn.prepareStatement(sql);
+				int index = setMatchingMessageIdsParameters(ps, 1, g, query);
+				ps.setInt(index, DELIVERED.getValue());
+			}
+			rs = ps.executeQuery();
+			Map<MessageId, Metadata> all = new HashMap<>();
+			while (rs.next()) {
+				MessageId messageId = new MessageId(rs.getBytes(1));
+				Metadata metadata = all.get(messageId);
+				if (metadata == null) {
+					metadata = new Metadata();
+					all.put(messageId, metadata);
+				}
+				String key = rs.getString(2);
+				if (key != null) metadata.put(key, rs.getBytes(3));
+			}
+			rs.close();
+			ps.close();
+			return all;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
+	@Override
+	public Map<MessageId, Metadata> getMessageMetadata(Connection txn,
+			GroupId g, Metadata query, long timestamp, boolean before,
+			int limit) throws DbException {
+		if (limit <= 0) throw new IllegalArgumentException();
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			// Select the messages that have metadata matching the query
+			String join = "", exists = "";
+			if (query.isEmpty()) {
+				exists = " AND EXISTS (SELECT NULL FROM messageMetadata AS md"
+						+ " WHERE md.messageId = m.messageId)";
+			} else {
+				join = " JOIN (" + getMatchingMessageIdsQuery(query.size())
+						+ ") AS matched ON m.messageId = matched.messageId";
+			}
+			String where = " WHERE m.groupId = ? AND m.state = ?";
+			// Find the timestamp of the last message in the page
+			String sql = "SELECT m.timestamp FROM messages AS m" + join + where
+					+ exists;
+			if (before) {
+				sql += " AND m.timestamp < ? ORDER BY m.timestamp DESC LIMIT ?";
+			} else {
+				sql += " AND m.timestamp > ? ORDER BY m.timestamp LIMIT ?";
+			}
+			ps = txn.prepareStatement(sql);
+			int index = setPageParameters(ps, g, query);
+			ps.setLong(index++, timestamp);
+			ps.setInt(index, limit);
+			rs = ps.executeQuery();
+			int count = 0;
+			long last = 0;
+			while (rs.next()) {
+				count++;
+				last = rs.getLong(1);
+			}
+			rs.close();
+			ps.close();
+			Map<MessageId, Metadata> page = new LinkedHashMap<>();
+			if (count == 0) return page;
+			// Retrieve the metadata of the messages in the page, in order.
+			// If the page is full, include any other messages with the same
+			// timestamp as the last message, so the caller can use that
+			// timestamp to fetch the next page without skipping any messages.
+			// Joining the metadata excludes messages without metadata
+			boolean full = count == limit;
+			sql = "SELECT m.messageId, md.metaKey, md.value"
+					+ " FROM messages AS m" + join
+					+ " JOIN messageMetadata AS md"
+					+ " ON m.messageId = md.messageId" + where;
+			if (before) {
+				sql += " AND m.timestamp < ?";
+				if (full) sql += " AND m.timestamp >= ?";
+				sql += " ORDER BY m.timestamp DESC, m.messageId";
+			} else {
+				sql += " AND m.timestamp > ?";
+				if (full) sql += " AND m.timestamp <= ?";
+				sql += " ORDER BY m.timestamp, m.messageId";
+			}
+			ps = txn.prepareStatement(sql);
+			index = setPageParameters(ps, g, query);
+			ps.setLong(index++, timestamp);
+			if (full) ps.setLong(index, last);
+			rs = ps.executeQuery();
+			while (rs.next()) {
+				MessageId messageId = new MessageId(rs.getBytes(1));
+				Metadata metadata = page.get(messageId);
+				if (metadata == null) {
+					metadata = new Metadata();
+					page.put(messageId, metadata);
+				}
+				metadata.put(rs.getString(2), rs.getBytes(3));
+			}
+			rs.close();
+			ps.close();
+			return page;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
+	/**
+	 * Sets the parameters that select the messages in a page, as used by
+	 * {@link #getMessageMetadata(Connection, GroupId, Metadata, long, boolean, int)},
+	 * and returns the index of the next parameter.
+	 */
+	private int setPageParameters(PreparedStatement ps, GroupId g,
+			Metadata query) throws SQLException {
+		int index = 1;
+		if (!query.isEmpty())
+			index = setMatchingMessageIdsParameters(ps, index, g, query);
+		ps.setBytes(index++, g.getBytes());
+		ps.setInt(index++, DELIVERED.getValue());
+		return index;
+	}
+
+	/**
+	 * Returns a query that selects the IDs of the delivered messages in a
+	 * group that match all of the given number of metadata terms. As each
+	 * message has at most one value per key, a message matches all the terms
+	 * if the number of matching rows equals the number of terms.
+	 * <p/>
+	 * The parameters are set by
+	 * {@link #setMatchingMessageIdsParameters(PreparedStatement, int, GroupId, Metadata)}.
+	 */
+	private String getMatchingMessageIdsQuery(int terms) {
+		StringBuilder sb = new StringBuilder("SELECT messageId"
+				+ " FROM messageMetadata"
+				+ " WHERE groupId = ? AND state = ? AND (");
+		for (int i = 0; i < terms; i++) {
+			if (i > 0) sb.append(" OR ");
+			sb.append("(metaKey = ? AND value = ?)");
+		}
+		sb.append(") GROUP BY messageId HAVING COUNT (*) = ?");
+		return sb.toString();
+	}
+
+	/**
+	 * Sets the parameters of the query returned by
+	 * {@link #getMatchingMessageIdsQuery(int)}, starting at the given index,
+	 * and returns the index of the next parameter.
+	 */
+	private int setMatchingMessageIdsParameters(PreparedStatement ps,
+			int index, GroupId g, Metadata query) throws SQLException {
+		ps.setBytes(index++, g.getBytes());
+		ps.setInt(index++, DELIVERED.getValue());
+		for (Entry<String, byte[]> e : query.entrySet()) {
+			ps.setString(index++, e.getKey());
+			ps.setBytes(index++, e.getValue());
+		}
+		ps.setInt(index++, query.size());
+		return index;
 	}
 
 	@Override
@@ -2044,6 +2343,41 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	public Map<GroupId, Metadata> getGroupMetadata(Connection txn, ClientId c,
+			int majorVersion) throws DbException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT g.groupId, md.metaKey, md.value"
+					+ " FROM groups AS g"
+					+ " JOIN groupMetadata AS md"
+					+ " ON g.groupId = md.groupId"
+					+ " WHERE g.clientId = ? AND g.majorVersion = ?";
+			ps = txn.prepareStatement(sql);
+			ps.setString(1, c.getString());
+			ps.setInt(2, majorVersion);
+			rs = ps.executeQuery();
+			Map<GroupId, Metadata> all = new HashMap<>();
+			while (rs.next()) {
+				GroupId groupId = new GroupId(rs.getBytes(1));
+				Metadata metadata = all.get(groupId);
+				if (metadata == null) {
+					metadata = new Metadata();
+					all.put(groupId, metadata);
+				}
+				metadata.put(rs.getString(2), rs.getBytes(3));
+			}
+			rs.close();
+			ps.close();
+			return all;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public Metadata getMessageMetadata(Connection txn, MessageId m)
 			throws DbException {
@@ -0,0 +1,63 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.db.DbException;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.db.JdbcUtils.tryToClose;
+
+/**
+ * Replaces the statuses index on (contactId, timestamp) with an index that
+ * also includes the columns used for selecting messages to offer or send.
+ * The new index is created by {@link JdbcDatabase} when the database is
+ * opened.
+ */
+class Migration50_51 implements Migration<Connection> {
+
+	private static final Logger LOG = getLogger(Migration50_51.class.getName());
+
+	private static final String OLD_INDEX_NAME = "statusesByContactIdTimestamp";
+
+	@Override
+	public int getStartVersion() {
+		return 50;
+	}
+
+	@Override
+	public int getEndVersion() {
+		return 51;
+	}
+
+	@Override
+	public void migrate(Connection txn) throws DbException {
+		ResultSet rs = null;
+		Statement s = null;
+		try {
+			// The syntax for dropping an index that may not exist differs
+			// between H2 and HyperSQL, so check the metadata instead
+			boolean found = false;
+			rs = txn.getMetaData().getIndexInfo(null, null, "STATUSES",
+					false, false);
+			while (rs.next()) {
+				if (OLD_INDEX_NAME.equalsIgnoreCase(rs.getString("INDEX_NAME")))
+					found = true;
+			}
+			rs.close();
+			if (found) {
+				s = txn.createStatement();
+				s.execute("DROP INDEX " + OLD_INDEX_NAME);
+				s.close();
+			}
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(s, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+}
@@ -2,24 +2,66 @@ package org.briarproject.bramble.event;
 
 import org.briarproject.bramble.api.event.Event;
 import org.briarproject.bramble.api.event.EventBus;
+import org.briarproject.bramble.api.event.EventBusStats;
 import org.briarproject.bramble.api.event.EventExecutor;
 import org.briarproject.bramble.api.event.EventListener;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
 
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Logger.getLogger;
+
 @ThreadSafe
 @NotNullByDefault
 class EventBusImpl implements EventBus {
 
-	private final Collection<EventListener> listeners =
-			new CopyOnWriteArrayList<>();
+	private static final Logger LOG = getLogger(EventBusImpl.class.getName());
+
+	private static final long NANOS_PER_MILLI = 1000 * 1000;
+
+	/**
+	 * Listeners that take longer than this to handle an event are logged
+	 * when fine logging is enabled.
+	 */
+	private static final long SLOW_LISTENER_NANOS = 20 * NANOS_PER_MILLI;
+
 	private final Executor eventExecutor;
+	private final Object lock = new Object();
+
+	@GuardedBy("lock")
+	private final List<Subscription> subscriptions = new ArrayList<>();
+
+	/**
+	 * The listeners subscribed to each event type, in the order they were
+	 * added. Entries are computed on first use and discarded whenever the
+	 * subscriptions change, so the lists themselves are never modified.
+	 * Writes are guarded by the lock so that a stale entry can't be stored
+	 * after the subscriptions change, but reads are lock-free.
+	 */
+	private final ConcurrentHashMap<Class<?>, List<EventListener>>
+			dispatchTable = new ConcurrentHashMap<>();
+
+	private final AtomicInteger queuedEvents = new AtomicInteger(0);
+	private final AtomicInteger maxQueuedEvents = new AtomicInteger(0);
+	private final AtomicLong dispatchedEvents = new AtomicLong(0);
+	private final AtomicLong deliveries = new AtomicLong(0);
+	private final AtomicLong queueNanos = new AtomicLong(0);
+	private final AtomicLong dispatchNanos = new AtomicLong(0);
 
 	@Inject
 	EventBusImpl(@EventExecutor Executor eventExecutor) {
@@ -28,18 +70,124 @@ class EventBusImpl implements EventBus {
 
 	@Override
 	public void addListener(EventListener l) {
-		listeners.add(l);
+		addSubscription(new Subscription(l, null));
+	}
+
+	@Override
+	public void addListener(EventListener l,
+			Collection<Class<? extends Event>> eventTypes) {
+		addSubscription(new Subscription(l, new ArrayList<>(eventTypes)));
+	}
+
+	private void addSubscription(Subscription s) {
+		synchronized (lock) {
+			subscriptions.add(s);
+			dispatchTable.clear();
+		}
 	}
 
 	@Override
 	public void removeListener(EventListener l) {
-		listeners.remove(l);
+		synchronized (lock) {
+			Iterator<Subscription> it = subscriptions.iterator();
+			while (it.hasNext()) {
+				if (it.next().listener == l) {
+					it.remove();
+					dispatchTable.clear();
+					return;
+				}
+			}
+		}
 	}
 
 	@Override
 	public void broadcast(Event e) {
+		long submitted = System.nanoTime();
+		int queued = queuedEvents.incrementAndGet();
+		updateMaxQueuedEvents(queued);
 		eventExecutor.execute(() -> {
-			for (EventListener l : listeners) l.eventOccurred(e);
+			long started = System.nanoTime();
+			queuedEvents.decrementAndGet();
+			queueNanos.addAndGet(started - submitted);
+			dispatch(e);
+			dispatchNanos.addAndGet(System.nanoTime() - started);
 		});
 	}
+
+	private void updateMaxQueuedEvents(int queued) {
+		while (true) {
+			int max = maxQueuedEvents.get();
+			if (queued <= max) return;
+			if (maxQueuedEvents.compareAndSet(max, queued)) return;
+		}
+	}
+
+	@EventExecutor
+	private void dispatch(Event e) {
+		List<EventListener> listeners = getListeners(e.getClass());
+		dispatchedEvents.incrementAndGet();
+		deliveries.addAndGet(listeners.size());
+		if (LOG.isLoggable(FINE)) {
+			for (EventListener l : listeners) {
+				long start = System.nanoTime();
+				l.eventOccurred(e);
+				long duration = System.nanoTime() - start;
+				if (duration > SLOW_LISTENER_NANOS) {
+					LOG.fine(l.getClass().getName() + " took "
+							+ duration / NANOS_PER_MILLI + " ms to handle "
+							+ e.getClass().getSimpleName());
+				}
+			}
+		} else {
+			for (EventListener l : listeners) l.eventOccurred(e);
+		}
+	}
+
+	private List<EventListener> getListeners(Class<?> eventType) {
+		List<EventListener> listeners = dispatchTable.get(eventType);
+		if (listeners != null) return listeners;
+		synchronized (lock) {
+			listeners = new ArrayList<>();
+			for (Subscription s : subscriptions) {
+				if (s.accepts(eventType)) listeners.add(s.listener);
+			}
+			dispatchTable.put(eventType, listeners);
+			return listeners;
+		}
+	}
+
+	@Override
+	public EventBusStats getStats() {
+		return new EventBusStats(queuedEvents.get(), maxQueuedEvents.get(),
+				dispatchedEvents.get(), deliveries.get(),
+				queueNanos.get() / NANOS_PER_MILLI,
+				dispatchNanos.get() / NANOS_PER_MILLI);
+	}
+
+	@Immutable
+	@NotNullByDefault
+	private static class Subscription {
+
+		private final EventListener listener;
+		/**
+		 * The event types the listener has subscribed to, or null if the
+		 * listener has subscribed to all events.
+		 */
+		@Nullable
+		private final List<Class<? extends Event>> eventTypes;
+
+		private Subscription(EventListener listener,
+				@Nullable List<Class<? extends Event>> eventTypes) {
+			this.listener = listener;
+			this.eventTypes = eventTypes;
+		}
+
+		private boolean accepts(Class<?> eventType) {
+			if (eventTypes == null) return true;
+			for (Class<? extends Event> c : eventTypes) {
+				if (c.isAssignableFrom(eventType)) return true;
+			}
+			return false;
+		}
+	}
 }
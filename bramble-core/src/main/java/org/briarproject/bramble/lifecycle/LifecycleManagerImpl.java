@@ -10,20 +10,28 @@ import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager;
 import org.briarproject.bramble.api.lifecycle.Service;
 import org.briarproject.bramble.api.lifecycle.ServiceException;
+import org.briarproject.bramble.api.lifecycle.StartupStats;
 import org.briarproject.bramble.api.lifecycle.event.LifecycleEvent;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
+import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
@@ -60,6 +68,7 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 	private final EventBus eventBus;
 	private final Clock clock;
 	private final List<Service> services;
+	private final Map<Service, Collection<Service>> serviceDependencies;
 	private final List<OpenDatabaseHook> openDatabaseHooks;
 	private final List<ExecutorService> executors;
 	private final CountDownLatch dbLatch = new CountDownLatch(1);
@@ -68,6 +77,9 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 	private final AtomicReference<LifecycleState> state =
 			new AtomicReference<>(CREATED);
 
+	@Nullable
+	private volatile StartupStats startupStats = null;
+
 	@Inject
 	LifecycleManagerImpl(DatabaseComponent db, EventBus eventBus,
 			Clock clock) {
@@ -75,6 +87,7 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 		this.eventBus = eventBus;
 		this.clock = clock;
 		services = new CopyOnWriteArrayList<>();
+		serviceDependencies = new ConcurrentHashMap<>();
 		openDatabaseHooks = new CopyOnWriteArrayList<>();
 		executors = new CopyOnWriteArrayList<>();
 	}
@@ -83,6 +96,20 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 	public void registerService(Service s) {
 		if (LOG.isLoggable(INFO))
 			LOG.info("Registering service " + s.getClass().getSimpleName());
+		// The service depends on all previously registered services
+		serviceDependencies.put(s, new ArrayList<>(services));
+		services.add(s);
+	}
+
+	@Override
+	public void registerService(Service s, Collection<Service> dependencies) {
+		if (LOG.isLoggable(INFO)) {
+			LOG.info("Registering service " + s.getClass().getSimpleName()
+					+ " with " + dependencies.size() + " dependencies");
+		}
+		if (!services.containsAll(dependencies))
+			throw new IllegalArgumentException();
+		serviceDependencies.put(s, new ArrayList<>(dependencies));
 		services.add(s);
 	}
 
@@ -116,21 +143,30 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 		}
 		try {
 			LOG.info("Opening database");
-			long start = now();
+			long startupStart = now();
 			boolean reopened = db.open(dbKey, this);
-			if (reopened) logDuration(LOG, "Reopening database", start);
-			else logDuration(LOG, "Creating database", start);
+			long databaseOpenTime = now() - startupStart;
+			if (reopened) {
+				logDuration(LOG, "Reopening database", startupStart);
+			} else {
+				logDuration(LOG, "Creating database", startupStart);
+			}
 
+			// The hooks share a single read-write transaction, so they're
+			// called sequentially
+			Map<String, Long> hookTimes = new LinkedHashMap<>();
 			db.transaction(false, txn -> {
-				long start1 = now();
+				long start = now();
 				db.removeTemporaryMessages(txn);
-				logDuration(LOG, "Removing temporary messages", start1);
+				logDuration(LOG, "Removing temporary messages", start);
 				for (OpenDatabaseHook hook : openDatabaseHooks) {
-					start1 = now();
+					start = now();
 					hook.onDatabaseOpened(txn);
+					String name = hook.getClass().getSimpleName();
+					hookTimes.put(name, now() - start);
 					if (LOG.isLoggable(FINE)) {
 						logDuration(LOG, "Calling open database hook "
-								+ hook.getClass().getSimpleName(), start1);
+								+ name, start);
 					}
 				}
 			});
@@ -140,14 +176,19 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 			dbLatch.countDown();
 			eventBus.broadcast(new LifecycleEvent(STARTING_SERVICES));
 
-			for (Service s : services) {
-				start = now();
-				s.startService();
-				if (LOG.isLoggable(FINE)) {
-					logDuration(LOG, "Starting service "
-							+ s.getClass().getSimpleName(), start);
-				}
+			long servicesStart = now();
+			Map<String, Long> serviceTimes;
+			ExecutorService startupExecutor = newCachedThreadPool();
+			try {
+				serviceTimes = new ServiceStarter(startupExecutor, services,
+						serviceDependencies).startServices();
+			} finally {
+				startupExecutor.shutdown();
 			}
+			long end = now();
+			logDuration(LOG, "Starting services", servicesStart);
+			startupStats = new StartupStats(databaseOpenTime, hookTimes,
+					serviceTimes, end - servicesStart, end - startupStart);
 
 			state.set(RUNNING);
 			startupLatch.countDown();
@@ -238,4 +279,10 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 	public LifecycleState getLifecycleState() {
 		return state.get();
 	}
+
+	@Nullable
+	@Override
+	public StartupStats getStartupStats() {
+		return startupStats;
+	}
 }
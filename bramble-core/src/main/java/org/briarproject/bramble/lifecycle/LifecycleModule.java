@@ -9,6 +9,7 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import javax.inject.Inject;
@@ -17,6 +18,7 @@ import javax.inject.Singleton;
 import dagger.Module;
 import dagger.Provides;
 
+import static java.util.concurrent.Executors.defaultThreadFactory;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 @Module
@@ -31,6 +33,16 @@ public class LifecycleModule {
 	private final ExecutorService ioExecutor;
 
 	public LifecycleModule() {
+		this(defaultThreadFactory());
+	}
+
+	/**
+	 * Creates a module whose {@link IoExecutor} uses the given thread
+	 * factory. This allows platforms with lightweight threads to run the
+	 * blocking I/O tasks of many connections without a platform thread
+	 * for each task.
+	 */
+	public LifecycleModule(ThreadFactory ioThreadFactory) {
 		// The thread pool is unbounded, so use direct handoff
 		BlockingQueue<Runnable> queue = new SynchronousQueue<>();
 		// Discard tasks that are submitted during shutdown
@@ -38,7 +50,7 @@ public class LifecycleModule {
 				new ThreadPoolExecutor.DiscardPolicy();
 		// Create threads as required and keep them in the pool for 60 seconds
 		ioExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
-				60, SECONDS, queue, policy);
+				60, SECONDS, queue, ioThreadFactory, policy);
 	}
 
 	@Provides
@@ -0,0 +1,192 @@
+package org.briarproject.bramble.lifecycle;
+
+import org.briarproject.bramble.api.lifecycle.Service;
+import org.briarproject.bramble.api.lifecycle.ServiceException;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.util.LogUtils.now;
+
+/**
+ * Starts a set of {@link Service Services}, starting each service on the
+ * given executor as soon as the services it depends on have started.
+ */
+@ThreadSafe
+@NotNullByDefault
+class ServiceStarter {
+
+	private static final Logger LOG =
+			getLogger(ServiceStarter.class.getName());
+
+	private final Executor executor;
+	private final List<Service> services;
+	private final Object lock = new Object();
+
+	/**
+	 * The services that depend on each service.
+	 */
+	@GuardedBy("lock")
+	private final Map<Service, List<Service>> dependents = new HashMap<>();
+
+	/**
+	 * The number of dependencies of each service that have not yet started.
+	 */
+	@GuardedBy("lock")
+	private final Map<Service, Integer> unstartedDependencies =
+			new HashMap<>();
+
+	@GuardedBy("lock")
+	private final Map<Service, Long> startupTimes = new HashMap<>();
+
+	/**
+	 * The number of services that have been submitted to the executor and
+	 * have not yet finished starting or failed.
+	 */
+	@GuardedBy("lock")
+	private int running = 0;
+
+	@GuardedBy("lock")
+	@Nullable
+	private Throwable failure = null;
+
+	/**
+	 * @param services The services to start, in the order they were
+	 * registered
+	 * @param dependencies The dependencies of each service, all of which
+	 * must appear earlier in the list of services
+	 */
+	ServiceStarter(Executor executor, List<Service> services,
+			Map<Service, Collection<Service>> dependencies) {
+		this.executor = executor;
+		this.services = services;
+		synchronized (lock) {
+			for (Service s : services) {
+				Collection<Service> deps = dependencies.get(s);
+				if (deps == null) throw new IllegalArgumentException();
+				unstartedDependencies.put(s, deps.size());
+				for (Service d : deps) {
+					List<Service> list = dependents.get(d);
+					if (list == null) {
+						list = new ArrayList<>();
+						dependents.put(d, list);
+					}
+					list.add(s);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Starts the services and waits for them all to start, or for any of
+	 * them to fail. If a service fails, this method waits for any services
+	 * that are still starting to finish before throwing the failure.
+	 *
+	 * @return The time in milliseconds taken to start each service, keyed by
+	 * class name, in the order the services were registered
+	 */
+	Map<String, Long> startServices() throws ServiceException {
+		List<Service> ready = new ArrayList<>();
+		synchronized (lock) {
+			for (Service s : services) {
+				if (unstartedDependencies.get(s) == 0) ready.add(s);
+			}
+		}
+		for (Service s : ready) submit(s);
+		Map<String, Long> times = new LinkedHashMap<>();
+		synchronized (lock) {
+			try {
+				while (running > 0 || (failure == null
+						&& startupTimes.size() < services.size())) {
+					lock.wait();
+				}
+			} catch (InterruptedException e) {
+				LOG.warning("Interrupted while starting services");
+				Thread.currentThread().interrupt();
+				throw new ServiceException(e);
+			}
+			if (failure instanceof ServiceException)
+				throw (ServiceException) failure;
+			if (failure instanceof RuntimeException)
+				throw (RuntimeException) failure;
+			if (failure instanceof Error) throw (Error) failure;
+			if (failure != null) throw new ServiceException(failure);
+			for (Service s : services) {
+				times.put(s.getClass().getSimpleName(), startupTimes.get(s));
+			}
+		}
+		return times;
+	}
+
+	private void submit(Service s) {
+		synchronized (lock) {
+			running++;
+		}
+		try {
+			executor.execute(() -> startService(s));
+		} catch (RuntimeException e) {
+			onFinished(e);
+		}
+	}
+
+	private void startService(Service s) {
+		try {
+			long start = now();
+			s.startService();
+			onStarted(s, now() - start);
+		} catch (Throwable t) {
+			// Record errors as well as exceptions, otherwise startServices()
+			// would wait forever for this service
+			onFinished(t);
+			return;
+		}
+		onFinished(null);
+	}
+
+	private void onStarted(Service s, long duration) {
+		if (LOG.isLoggable(FINE)) {
+			LOG.fine("Starting service " + s.getClass().getSimpleName()
+					+ " took " + duration + " ms");
+		}
+		List<Service> ready = new ArrayList<>();
+		synchronized (lock) {
+			startupTimes.put(s, duration);
+			// Don't start any more services if a service has failed
+			if (failure != null) return;
+			List<Service> list = dependents.get(s);
+			if (list != null) {
+				for (Service d : list) {
+					int unstarted = unstartedDependencies.get(d) - 1;
+					unstartedDependencies.put(d, unstarted);
+					if (unstarted == 0) ready.add(d);
+				}
+			}
+		}
+		for (Service d : ready) submit(d);
+	}
+
+	/**
+	 * Called when a service that was submitted to the executor has finished
+	 * starting, or has failed with the given throwable.
+	 */
+	private void onFinished(@Nullable Throwable t) {
+		synchronized (lock) {
+			if (t != null && failure == null) failure = t;
+			running--;
+			lock.notifyAll();
+		}
+	}
+}
@@ -12,6 +12,8 @@ import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
 import java.util.logging.Logger;
 
@@ -19,6 +21,7 @@ import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
+import static java.lang.Math.min;
 import static java.util.logging.Logger.getLogger;
 
 @ThreadSafe
@@ -37,6 +40,11 @@ abstract class MailboxDownloadWorker implements MailboxWorker,
 	 * tried and failed to connect to our hidden service before it was
 	 * reachable, and therefore uploaded a file to the mailbox instead, we'll
 	 * find the file in the second download cycle.
+	 * <p>
+	 * Within a download cycle, up to {@link #maxConcurrentDownloads} files
+	 * are downloaded and deleted concurrently. Each downloader takes the next
+	 * file from a shared queue when it has finished with the previous file,
+	 * and the last downloader to run out of files checks for files again.
 	 */
 	protected enum State {
 		CREATED,
@@ -51,12 +59,19 @@ abstract class MailboxDownloadWorker implements MailboxWorker,
 	protected static final Logger LOG =
 			getLogger(MailboxDownloadWorker.class.getName());
 
+	/**
+	 * The default maximum number of files to download and delete
+	 * concurrently.
+	 */
+	static final int MAX_CONCURRENT_DOWNLOADS = 4;
+
 	private final ConnectivityChecker connectivityChecker;
 	private final TorReachabilityMonitor torReachabilityMonitor;
 	protected final MailboxApiCaller mailboxApiCaller;
 	protected final MailboxApi mailboxApi;
 	private final MailboxFileManager mailboxFileManager;
 	protected final MailboxProperties mailboxProperties;
+	private final int maxConcurrentDownloads;
 	protected final Object lock = new Object();
 
 	@GuardedBy("lock")
@@ -66,6 +81,16 @@ abstract class MailboxDownloadWorker implements MailboxWorker,
 	@Nullable
 	protected Cancellable apiCall = null;
 
+	/**
+	 * The API call currently being made by each downloader, or null if the
+	 * downloader is idle.
+	 */
+	@GuardedBy("lock")
+	private final Cancellable[] downloadCalls;
+
+	@GuardedBy("lock")
+	private int activeDownloaders = 0;
+
 	/**
 	 * Creates the API call that starts the worker's download cycle.
 	 */
@@ -77,13 +102,17 @@ abstract class MailboxDownloadWorker implements MailboxWorker,
 			MailboxApiCaller mailboxApiCaller,
 			MailboxApi mailboxApi,
 			MailboxFileManager mailboxFileManager,
-			MailboxProperties mailboxProperties) {
+			MailboxProperties mailboxProperties,
+			int maxConcurrentDownloads) {
+		if (maxConcurrentDownloads < 1) throw new IllegalArgumentException();
 		this.connectivityChecker = connectivityChecker;
 		this.torReachabilityMonitor = torReachabilityMonitor;
 		this.mailboxApiCaller = mailboxApiCaller;
 		this.mailboxApi = mailboxApi;
 		this.mailboxFileManager = mailboxFileManager;
 		this.mailboxProperties = mailboxProperties;
+		this.maxConcurrentDownloads = maxConcurrentDownloads;
+		downloadCalls = new Cancellable[maxConcurrentDownloads];
 	}
 
 	@Override
@@ -107,13 +136,17 @@ abstract class MailboxDownloadWorker implements MailboxWorker,
 	@Override
 	public void destroy() {
 		LOG.info("Destroyed");
-		Cancellable apiCall;
+		List<Cancellable> apiCalls = new ArrayList<>();
 		synchronized (lock) {
 			state = State.DESTROYED;
-			apiCall = this.apiCall;
-			this.apiCall = null;
+			if (apiCall != null) apiCalls.add(apiCall);
+			apiCall = null;
+			for (int i = 0; i < downloadCalls.length; i++) {
+				if (downloadCalls[i] != null) apiCalls.add(downloadCalls[i]);
+				downloadCalls[i] = null;
+			}
 		}
-		if (apiCall != null) apiCall.cancel();
+		for (Cancellable c : apiCalls) c.cancel();
 		connectivityChecker.removeObserver(this);
 		torReachabilityMonitor.removeObserver(this);
 	}
@@ -156,25 +189,45 @@ abstract class MailboxDownloadWorker implements MailboxWorker,
 		}
 	}
 
-	void downloadNextFile(Queue<FolderFile> queue) {
+	/**
+	 * Starts downloading and deleting the given files, which must not be
+	 * empty. When all the files have been handled, checks for files again.
+	 */
+	void downloadFiles(Queue<FolderFile> queue) {
+		synchronized (lock) {
+			if (state == State.DESTROYED) return;
+			// The API call that listed the files has finished
+			apiCall = null;
+			activeDownloaders = min(maxConcurrentDownloads, queue.size());
+			for (int i = 0; i < activeDownloaders; i++) {
+				downloadNextFile(i, queue);
+			}
+		}
+	}
+
+	private void downloadNextFile(int downloader, Queue<FolderFile> queue) {
 		synchronized (lock) {
 			if (state == State.DESTROYED) return;
-			if (queue.isEmpty()) {
-				// Check for files again, as new files may have arrived while
-				// we were downloading
-				apiCall = mailboxApiCaller.retryWithBackoff(
-						createApiCallForDownloadCycle());
+			FolderFile file = queue.poll();
+			if (file == null) {
+				// This downloader has run out of files
+				downloadCalls[downloader] = null;
+				if (--activeDownloaders == 0) {
+					// Check for files again, as new files may have arrived
+					// while we were downloading
+					apiCall = mailboxApiCaller.retryWithBackoff(
+							createApiCallForDownloadCycle());
+				}
 			} else {
-				FolderFile file = queue.remove();
-				apiCall = mailboxApiCaller.retryWithBackoff(
+				downloadCalls[downloader] = mailboxApiCaller.retryWithBackoff(
 						new SimpleApiCall(() ->
-								apiCallDownloadFile(file, queue)));
+								apiCallDownloadFile(downloader, file, queue)));
 			}
 		}
 	}
 
-	private void apiCallDownloadFile(FolderFile file, Queue<FolderFile> queue)
-			throws IOException, ApiException {
+	private void apiCallDownloadFile(int downloader, FolderFile file,
+			Queue<FolderFile> queue) throws IOException, ApiException {
 		synchronized (lock) {
 			if (state == State.DESTROYED) return;
 		}
@@ -194,23 +247,25 @@ abstract class MailboxDownloadWorker implements MailboxWorker,
 			if (!tempFile.delete()) {
 				LOG.warning("Failed to delete temporary file");
 			}
-			downloadNextFile(queue);
+			downloadNextFile(downloader, queue);
 			return;
 		}
 		mailboxFileManager.handleDownloadedFile(tempFile);
-		deleteFile(file, queue);
+		deleteFile(downloader, file, queue);
 	}
 
-	private void deleteFile(FolderFile file, Queue<FolderFile> queue) {
+	private void deleteFile(int downloader, FolderFile file,
+			Queue<FolderFile> queue) {
 		synchronized (lock) {
 			if (state == State.DESTROYED) return;
-			apiCall = mailboxApiCaller.retryWithBackoff(
-					new SimpleApiCall(() -> apiCallDeleteFile(file, queue)));
+			downloadCalls[downloader] = mailboxApiCaller.retryWithBackoff(
+					new SimpleApiCall(() ->
+							apiCallDeleteFile(downloader, file, queue)));
 		}
 	}
 
-	private void apiCallDeleteFile(FolderFile file, Queue<FolderFile> queue)
-			throws IOException, ApiException {
+	private void apiCallDeleteFile(int downloader, FolderFile file,
+			Queue<FolderFile> queue) throws IOException, ApiException {
 		synchronized (lock) {
 			if (state == State.DESTROYED) return;
 		}
@@ -221,7 +276,7 @@ abstract class MailboxDownloadWorker implements MailboxWorker,
 			// File not found - continue to the next file
 			LOG.warning("File does not exist");
 		}
-		downloadNextFile(queue);
+		downloadNextFile(downloader, queue);
 	}
 
 	@Override
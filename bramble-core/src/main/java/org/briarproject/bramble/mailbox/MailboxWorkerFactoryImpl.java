@@ -17,6 +17,8 @@ import java.util.concurrent.Executor;
 import javax.annotation.concurrent.Immutable;
 import javax.inject.Inject;
 
+import static org.briarproject.bramble.mailbox.MailboxDownloadWorker.MAX_CONCURRENT_DOWNLOADS;
+
 @Immutable
 @NotNullByDefault
 class MailboxWorkerFactoryImpl implements MailboxWorkerFactory {
@@ -75,7 +77,7 @@ class MailboxWorkerFactoryImpl implements MailboxWorkerFactory {
 			MailboxProperties properties) {
 		return new ContactMailboxDownloadWorker(connectivityChecker,
 				reachabilityMonitor, mailboxApiCaller, mailboxApi,
-				mailboxFileManager, properties);
+				mailboxFileManager, properties, MAX_CONCURRENT_DOWNLOADS);
 	}
 
 	@Override
@@ -85,7 +87,7 @@ class MailboxWorkerFactoryImpl implements MailboxWorkerFactory {
 			MailboxProperties properties) {
 		return new OwnMailboxDownloadWorker(connectivityChecker,
 				reachabilityMonitor, mailboxApiCaller, mailboxApi,
-				mailboxFileManager, properties);
+				mailboxFileManager, properties, MAX_CONCURRENT_DOWNLOADS);
 	}
 
 	@Override
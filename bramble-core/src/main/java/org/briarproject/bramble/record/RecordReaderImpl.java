@@ -25,6 +25,10 @@ class RecordReaderImpl implements RecordReader {
 	private final DataInputStream in;
 	private final byte[] header = new byte[RECORD_HEADER_BYTES];
 
+	// Allocated on first use by readRecordIntoBuffer()
+	@Nullable
+	private byte[] buffer = null;
+
 	RecordReaderImpl(InputStream in) {
 		if (!in.markSupported()) in = new BufferedInputStream(in, 1);
 		this.in = new DataInputStream(in);
@@ -32,15 +36,10 @@ class RecordReaderImpl implements RecordReader {
 
 	@Override
 	public Record readRecord() throws IOException {
-		in.readFully(header);
-		byte protocolVersion = header[0];
-		byte recordType = header[1];
-		int payloadLength = ByteUtils.readUint16(header, 2);
-		if (payloadLength < 0 || payloadLength > MAX_RECORD_PAYLOAD_BYTES)
-			throw new FormatException();
+		int payloadLength = readHeader();
 		byte[] payload = new byte[payloadLength];
 		in.readFully(payload);
-		return new Record(protocolVersion, recordType, payload);
+		return new Record(header[0], header[1], payload);
 	}
 
 	@Nullable
@@ -55,11 +54,38 @@ class RecordReaderImpl implements RecordReader {
 		}
 	}
 
+	@Nullable
+	@Override
+	public Record readRecordIntoBuffer(Predicate<Record> accept,
+			Predicate<Record> ignore) throws IOException {
+		if (buffer == null) buffer = new byte[MAX_RECORD_PAYLOAD_BYTES];
+		while (true) {
+			if (eof()) return null;
+			int payloadLength = readHeader();
+			in.readFully(buffer, 0, payloadLength);
+			Record r = new Record(header[0], header[1], buffer, payloadLength);
+			if (accept.test(r)) return r;
+			if (!ignore.test(r)) throw new FormatException();
+		}
+	}
+
 	@Override
 	public void close() throws IOException {
 		in.close();
 	}
 
+	/**
+	 * Reads the next record header into the header buffer and returns the
+	 * payload length.
+	 */
+	private int readHeader() throws IOException {
+		in.readFully(header);
+		int payloadLength = ByteUtils.readUint16(header, 2);
+		if (payloadLength < 0 || payloadLength > MAX_RECORD_PAYLOAD_BYTES)
+			throw new FormatException();
+		return payloadLength;
+	}
+
 	private boolean eof() throws IOException {
 		in.mark(1);
 		int next = in.read();
@@ -27,13 +27,14 @@ class RecordWriterImpl implements RecordWriter {
 
 	@Override
 	public void writeRecord(Record r) throws IOException {
-		byte[] payload = r.getPayload();
+		// The payload array may be a buffer that's longer than the payload
+		int length = r.getPayloadLength();
 		header[0] = r.getProtocolVersion();
 		header[1] = r.getRecordType();
-		ByteUtils.writeUint16(payload.length, header, 2);
+		ByteUtils.writeUint16(length, header, 2);
 		out.write(header);
-		out.write(payload);
-		bytesWritten += RECORD_HEADER_BYTES + payload.length;
+		out.write(r.getPayload(), 0, length);
+		bytesWritten += RECORD_HEADER_BYTES + length;
 	}
 
 	@Override
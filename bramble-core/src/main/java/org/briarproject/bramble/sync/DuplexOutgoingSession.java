@@ -45,6 +45,7 @@ import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
 import static java.lang.Boolean.TRUE;
+import static java.util.Arrays.asList;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
@@ -86,6 +87,15 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 	private static final int BATCH_CAPACITY =
 			(RECORD_HEADER_BYTES + MAX_MESSAGE_LENGTH) * 2;
 
+	// The events handled by eventOccurred()
+	private static final Collection<Class<? extends Event>> EVENT_TYPES =
+			asList(ContactRemovedEvent.class, MessageSharedEvent.class,
+					GroupVisibilityUpdatedEvent.class,
+					MessageRequestedEvent.class, MessageToAckEvent.class,
+					MessageToRequestEvent.class, LifecycleEvent.class,
+					CloseSyncConnectionsEvent.class,
+					TransportInactiveEvent.class);
+
 	private final DatabaseComponent db;
 	private final Executor dbExecutor;
 	private final EventBus eventBus;
@@ -130,7 +140,7 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 	@IoExecutor
 	@Override
 	public void run() throws IOException {
-		eventBus.addListener(this);
+		eventBus.addListener(this, EVENT_TYPES);
 		try {
 			// Send our supported protocol versions
 			recordWriter.writeVersions(new Versions(SUPPORTED_VERSIONS));
@@ -6,12 +6,14 @@ import org.briarproject.bramble.api.contact.event.ContactRemovedEvent;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DatabaseExecutor;
 import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.DbRunnable;
 import org.briarproject.bramble.api.event.Event;
 import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.event.EventListener;
 import org.briarproject.bramble.api.lifecycle.IoExecutor;
 import org.briarproject.bramble.api.lifecycle.event.LifecycleEvent;
 import org.briarproject.bramble.api.sync.Ack;
+import org.briarproject.bramble.api.sync.IngestStats;
 import org.briarproject.bramble.api.sync.Message;
 import org.briarproject.bramble.api.sync.Offer;
 import org.briarproject.bramble.api.sync.Priority;
@@ -19,20 +21,31 @@ import org.briarproject.bramble.api.sync.PriorityHandler;
 import org.briarproject.bramble.api.sync.Request;
 import org.briarproject.bramble.api.sync.SyncRecordReader;
 import org.briarproject.bramble.api.sync.SyncSession;
-import org.briarproject.bramble.api.sync.Versions;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
+import javax.annotation.concurrent.Immutable;
 import javax.annotation.concurrent.ThreadSafe;
 
+import static java.lang.Math.max;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
 import static java.util.logging.Logger.getLogger;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.STOPPING;
 import static org.briarproject.bramble.util.LogUtils.logException;
+import static org.briarproject.bramble.util.LogUtils.now;
 
 /**
  * An incoming {@link SyncSession}.
@@ -44,30 +57,62 @@ class IncomingSession implements SyncSession, EventListener {
 	private static final Logger LOG =
 			getLogger(IncomingSession.class.getName());
 
+	// The events handled by eventOccurred()
+	private static final Collection<Class<? extends Event>> EVENT_TYPES =
+			asList(ContactRemovedEvent.class, LifecycleEvent.class);
+
+	/**
+	 * The maximum number of records that can be waiting to be stored. When
+	 * the queue is full, reading records blocks until there's space, so a
+	 * fast peer can't queue an unbounded amount of work.
+	 */
+	static final int MAX_QUEUED_RECORDS = 64;
+
+	/**
+	 * The maximum number of records to store in a single transaction.
+	 */
+	static final int MAX_RECORDS_PER_TRANSACTION = 32;
+
 	private final DatabaseComponent db;
 	private final Executor dbExecutor;
 	private final EventBus eventBus;
 	private final ContactId contactId;
 	private final SyncRecordReader recordReader;
 	private final PriorityHandler priorityHandler;
+	private final IngestCounters globalCounters;
+	private final IngestCounters sessionCounters = new IngestCounters();
+	private final BlockingQueue<QueuedRecord> queue =
+			new LinkedBlockingQueue<>(MAX_QUEUED_RECORDS);
+	private final AtomicBoolean storing = new AtomicBoolean(false);
 
 	private volatile boolean interrupted = false;
 
 	IncomingSession(DatabaseComponent db, Executor dbExecutor,
 			EventBus eventBus, ContactId contactId,
-			SyncRecordReader recordReader, PriorityHandler priorityHandler) {
+			SyncRecordReader recordReader, PriorityHandler priorityHandler,
+			IngestCounters globalCounters) {
 		this.db = db;
 		this.dbExecutor = dbExecutor;
 		this.eventBus = eventBus;
 		this.contactId = contactId;
 		this.recordReader = recordReader;
 		this.priorityHandler = priorityHandler;
+		this.globalCounters = globalCounters;
+	}
+
+	/**
+	 * Returns the ingest metrics for this session.
+	 */
+	IngestStats getIngestStats() {
+		return sessionCounters.getStats();
 	}
 
 	@IoExecutor
 	@Override
 	public void run() throws IOException {
-		eventBus.addListener(this);
+		eventBus.addListener(this, EVENT_TYPES);
+		long start = now();
+		int messages = 0;
 		try {
 			// Read records until interrupted or EOF
 			while (!interrupted) {
@@ -77,19 +122,27 @@ class IncomingSession implements SyncSession, EventListener {
 				}
 				if (recordReader.hasAck()) {
 					Ack a = recordReader.readAck();
-					dbExecutor.execute(new ReceiveAck(a));
+					queueRecord(txn -> db.receiveAck(txn, contactId, a), false);
 				} else if (recordReader.hasMessage()) {
 					Message m = recordReader.readMessage();
-					dbExecutor.execute(new ReceiveMessage(m));
+					if (queueRecord(txn -> db.receiveMessage(txn, contactId, m),
+							true)) {
+						messages++;
+					}
 				} else if (recordReader.hasOffer()) {
 					Offer o = recordReader.readOffer();
-					dbExecutor.execute(new ReceiveOffer(o));
+					queueRecord(txn -> db.receiveOffer(txn, contactId, o),
+							false);
 				} else if (recordReader.hasRequest()) {
 					Request r = recordReader.readRequest();
-					dbExecutor.execute(new ReceiveRequest(r));
+					queueRecord(txn -> db.receiveRequest(txn, contactId, r),
+							false);
 				} else if (recordReader.hasVersions()) {
-					Versions v = recordReader.readVersions();
-					dbExecutor.execute(new ReceiveVersions(v));
+					List<Byte> supported =
+							recordReader.readVersions().getSupportedVersions();
+					queueRecord(txn ->
+							db.setSyncVersions(txn, contactId, supported),
+							false);
 				} else if (recordReader.hasPriority()) {
 					Priority p = recordReader.readPriority();
 					priorityHandler.handle(p);
@@ -100,129 +153,119 @@ class IncomingSession implements SyncSession, EventListener {
 			}
 		} finally {
 			eventBus.removeListener(this);
+			long duration = now() - start;
+			sessionCounters.onSessionEnded(duration);
+			globalCounters.onSessionEnded(duration);
+			logIngestRate(messages, duration);
 		}
 	}
 
-	@Override
-	public void interrupt() {
-		// FIXME: This won't interrupt a blocking read
-		interrupted = true;
-	}
-
-	@Override
-	public void eventOccurred(Event e) {
-		if (e instanceof ContactRemovedEvent) {
-			ContactRemovedEvent c = (ContactRemovedEvent) e;
-			if (c.getContactId().equals(contactId)) interrupt();
-		} else if (e instanceof LifecycleEvent) {
-			LifecycleEvent l = (LifecycleEvent) e;
-			if (l.getLifecycleState() == STOPPING) interrupt();
-		}
-	}
-
-	private class ReceiveAck implements Runnable {
-
-		private final Ack ack;
-
-		private ReceiveAck(Ack ack) {
-			this.ack = ack;
-		}
-
-		@DatabaseExecutor
-		@Override
-		public void run() {
-			try {
-				db.transaction(false, txn ->
-						db.receiveAck(txn, contactId, ack));
-			} catch (DbException e) {
-				logException(LOG, WARNING, e);
-				interrupt();
+	/**
+	 * Adds a record to the queue of records waiting to be stored, blocking
+	 * while the queue is full, and starts a task to store the queued records
+	 * if one isn't already running.
+	 *
+	 * @param message True if the record is a message
+	 * @return True if the record was queued, or false if it was discarded
+	 * because the session has been interrupted
+	 */
+	@IoExecutor
+	private boolean queueRecord(DbRunnable<DbException> task, boolean message)
+			throws InterruptedIOException {
+		if (interrupted) return false;
+		QueuedRecord record = new QueuedRecord(task, message);
+		try {
+			while (!queue.offer(record, 1, SECONDS)) {
+				if (interrupted) return false;
 			}
+		} catch (InterruptedException e) {
+			LOG.info("Interrupted while waiting to queue record");
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
 		}
+		// If the session was interrupted while the record was being queued,
+		// discard the queued records rather than storing them
+		if (interrupted) {
+			queue.clear();
+			return false;
+		}
+		if (!storing.getAndSet(true)) dbExecutor.execute(this::storeRecords);
+		return true;
 	}
 
-	private class ReceiveMessage implements Runnable {
-
-		private final Message message;
-
-		private ReceiveMessage(Message message) {
-			this.message = message;
+	/**
+	 * Stores a batch of queued records in a single transaction. If there are
+	 * more records waiting, another task is started to store them, so other
+	 * tasks can use the executor in between. If the session has been
+	 * interrupted, the queued records are discarded.
+	 */
+	@DatabaseExecutor
+	private void storeRecords() {
+		if (interrupted) {
+			queue.clear();
+			storing.set(false);
+			return;
 		}
-
-		@DatabaseExecutor
-		@Override
-		public void run() {
+		List<QueuedRecord> batch = new ArrayList<>(MAX_RECORDS_PER_TRANSACTION);
+		queue.drainTo(batch, MAX_RECORDS_PER_TRANSACTION);
+		if (!batch.isEmpty()) {
 			try {
-				db.transaction(false, txn ->
-						db.receiveMessage(txn, contactId, message));
+				db.transaction(false, txn -> {
+					for (QueuedRecord r : batch) r.task.run(txn);
+				});
+				int messages = 0;
+				for (QueuedRecord r : batch) {
+					if (r.message) messages++;
+				}
+				sessionCounters.onRecordsStored(batch.size(), messages);
+				globalCounters.onRecordsStored(batch.size(), messages);
 			} catch (DbException e) {
 				logException(LOG, WARNING, e);
 				interrupt();
+				queue.clear();
 			}
 		}
+		storing.set(false);
+		// Check whether any records were queued after the batch was taken
+		if (!queue.isEmpty() && !storing.getAndSet(true))
+			dbExecutor.execute(this::storeRecords);
 	}
 
-	private class ReceiveOffer implements Runnable {
-
-		private final Offer offer;
-
-		private ReceiveOffer(Offer offer) {
-			this.offer = offer;
-		}
-
-		@DatabaseExecutor
-		@Override
-		public void run() {
-			try {
-				db.transaction(false, txn ->
-						db.receiveOffer(txn, contactId, offer));
-			} catch (DbException e) {
-				logException(LOG, WARNING, e);
-				interrupt();
-			}
+	private void logIngestRate(int messages, long duration) {
+		if (messages > 0 && LOG.isLoggable(INFO)) {
+			long rate = messages * 1000L / max(1, duration);
+			LOG.info("Received " + messages + " messages in " + duration
+					+ " ms (" + rate + " messages/s)");
 		}
 	}
 
-	private class ReceiveRequest implements Runnable {
-
-		private final Request request;
-
-		private ReceiveRequest(Request request) {
-			this.request = request;
-		}
+	@Override
+	public void interrupt() {
+		// FIXME: This won't interrupt a blocking read
+		interrupted = true;
+	}
 
-		@DatabaseExecutor
-		@Override
-		public void run() {
-			try {
-				db.transaction(false, txn ->
-						db.receiveRequest(txn, contactId, request));
-			} catch (DbException e) {
-				logException(LOG, WARNING, e);
-				interrupt();
-			}
+	@Override
+	public void eventOccurred(Event e) {
+		if (e instanceof ContactRemovedEvent) {
+			ContactRemovedEvent c = (ContactRemovedEvent) e;
+			if (c.getContactId().equals(contactId)) interrupt();
+		} else if (e instanceof LifecycleEvent) {
+			LifecycleEvent l = (LifecycleEvent) e;
+			if (l.getLifecycleState() == STOPPING) interrupt();
 		}
 	}
 
-	private class ReceiveVersions implements Runnable {
-
-		private final Versions versions;
+	@Immutable
+	@NotNullByDefault
+	private static class QueuedRecord {
 
-		private ReceiveVersions(Versions versions) {
-			this.versions = versions;
-		}
+		private final DbRunnable<DbException> task;
+		private final boolean message;
 
-		@DatabaseExecutor
-		@Override
-		public void run() {
-			try {
-				List<Byte> supported = versions.getSupportedVersions();
-				db.transaction(false,
-						txn -> db.setSyncVersions(txn, contactId, supported));
-			} catch (DbException e) {
-				logException(LOG, WARNING, e);
-				interrupt();
-			}
+		private QueuedRecord(DbRunnable<DbException> task, boolean message) {
+			this.task = task;
+			this.message = message;
 		}
 	}
 }
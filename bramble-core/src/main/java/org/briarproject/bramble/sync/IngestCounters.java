@@ -0,0 +1,44 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.sync.IngestStats;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Counts the records received and stored by incoming sessions.
+ */
+@ThreadSafe
+@NotNullByDefault
+class IngestCounters {
+
+	private final AtomicLong receivedMessages = new AtomicLong(0);
+	private final AtomicLong storedRecords = new AtomicLong(0);
+	private final AtomicLong transactions = new AtomicLong(0);
+	private final AtomicLong receiveTime = new AtomicLong(0);
+
+	/**
+	 * Called when the given number of records, including the given number
+	 * of messages, have been stored in a single transaction.
+	 */
+	void onRecordsStored(int records, int messages) {
+		receivedMessages.addAndGet(messages);
+		storedRecords.addAndGet(records);
+		transactions.incrementAndGet();
+	}
+
+	/**
+	 * Called when a session that spent the given number of milliseconds
+	 * receiving records has ended.
+	 */
+	void onSessionEnded(long duration) {
+		receiveTime.addAndGet(duration);
+	}
+
+	IngestStats getStats() {
+		return new IngestStats(receivedMessages.get(), storedRecords.get(),
+				transactions.get(), receiveTime.get());
+	}
+}
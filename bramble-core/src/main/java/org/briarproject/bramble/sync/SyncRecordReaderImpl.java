@@ -24,6 +24,7 @@ import java.util.List;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
+import static java.util.Arrays.copyOf;
 import static org.briarproject.bramble.api.sync.RecordTypes.ACK;
 import static org.briarproject.bramble.api.sync.RecordTypes.MESSAGE;
 import static org.briarproject.bramble.api.sync.RecordTypes.OFFER;
@@ -83,7 +84,10 @@ class SyncRecordReaderImpl implements SyncRecordReader {
 	public boolean eof() throws IOException {
 		if (nextRecord != null) return false;
 		if (eof) return true;
-		nextRecord = reader.readRecord(ACCEPT, IGNORE);
+		// The record's payload is only valid until the next record is read,
+		// so each read method extracts what it needs before clearing
+		// nextRecord
+		nextRecord = reader.readRecordIntoBuffer(ACCEPT, IGNORE);
 		if (nextRecord == null) eof = true;
 		return eof;
 	}
@@ -102,10 +106,11 @@ class SyncRecordReaderImpl implements SyncRecordReader {
 	private List<MessageId> readMessageIds() throws IOException {
 		if (nextRecord == null) throw new AssertionError();
 		byte[] payload = nextRecord.getPayload();
-		if (payload.length == 0) throw new FormatException();
-		if (payload.length % UniqueId.LENGTH != 0) throw new FormatException();
-		List<MessageId> ids = new ArrayList<>(payload.length / UniqueId.LENGTH);
-		for (int off = 0; off < payload.length; off += UniqueId.LENGTH) {
+		int length = nextRecord.getPayloadLength();
+		if (length == 0) throw new FormatException();
+		if (length % UniqueId.LENGTH != 0) throw new FormatException();
+		List<MessageId> ids = new ArrayList<>(length / UniqueId.LENGTH);
+		for (int off = 0; off < length; off += UniqueId.LENGTH) {
 			byte[] id = new byte[UniqueId.LENGTH];
 			System.arraycopy(payload, off, id, 0, UniqueId.LENGTH);
 			ids.add(new MessageId(id));
@@ -124,13 +129,13 @@ class SyncRecordReaderImpl implements SyncRecordReader {
 		if (!hasMessage()) throw new FormatException();
 		if (nextRecord == null) throw new AssertionError();
 		byte[] payload = nextRecord.getPayload();
-		if (payload.length <= MESSAGE_HEADER_LENGTH)
-			throw new FormatException();
+		int length = nextRecord.getPayloadLength();
+		if (length <= MESSAGE_HEADER_LENGTH) throw new FormatException();
 		// Validate timestamp
 		long timestamp = ByteUtils.readUint64(payload, UniqueId.LENGTH);
 		if (timestamp < 0) throw new FormatException();
 		nextRecord = null;
-		return messageFactory.createMessage(payload);
+		return messageFactory.createMessage(payload, 0, length);
 	}
 
 	@Override
@@ -169,11 +174,11 @@ class SyncRecordReaderImpl implements SyncRecordReader {
 	private List<Byte> readSupportedVersions() throws IOException {
 		if (nextRecord == null) throw new AssertionError();
 		byte[] payload = nextRecord.getPayload();
-		if (payload.length == 0) throw new FormatException();
-		if (payload.length > MAX_SUPPORTED_VERSIONS)
-			throw new FormatException();
-		List<Byte> supported = new ArrayList<>(payload.length);
-		for (byte b : payload) supported.add(b);
+		int length = nextRecord.getPayloadLength();
+		if (length == 0) throw new FormatException();
+		if (length > MAX_SUPPORTED_VERSIONS) throw new FormatException();
+		List<Byte> supported = new ArrayList<>(length);
+		for (int i = 0; i < length; i++) supported.add(payload[i]);
 		nextRecord = null;
 		return supported;
 	}
@@ -191,9 +196,10 @@ class SyncRecordReaderImpl implements SyncRecordReader {
 
 	private byte[] readNonce() throws IOException {
 		if (nextRecord == null) throw new AssertionError();
-		byte[] payload = nextRecord.getPayload();
-		if (payload.length != PRIORITY_NONCE_BYTES) throw new FormatException();
+		if (nextRecord.getPayloadLength() != PRIORITY_NONCE_BYTES)
+			throw new FormatException();
+		byte[] nonce = copyOf(nextRecord.getPayload(), PRIORITY_NONCE_BYTES);
 		nextRecord = null;
-		return payload;
+		return nonce;
 	}
 }
@@ -5,6 +5,7 @@ import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DatabaseExecutor;
 import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.sync.IngestStats;
 import org.briarproject.bramble.api.sync.OutgoingSessionRecord;
 import org.briarproject.bramble.api.sync.Priority;
 import org.briarproject.bramble.api.sync.PriorityHandler;
@@ -23,12 +24,12 @@ import java.io.OutputStream;
 import java.util.concurrent.Executor;
 
 import javax.annotation.Nullable;
-import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
 import static org.briarproject.bramble.api.mailbox.MailboxConstants.MAX_FILE_PAYLOAD_BYTES;
 
-@Immutable
+@ThreadSafe
 @NotNullByDefault
 class SyncSessionFactoryImpl implements SyncSessionFactory {
 
@@ -38,6 +39,7 @@ class SyncSessionFactoryImpl implements SyncSessionFactory {
 	private final Clock clock;
 	private final SyncRecordReaderFactory recordReaderFactory;
 	private final SyncRecordWriterFactory recordWriterFactory;
+	private final IngestCounters ingestCounters = new IngestCounters();
 
 	@Inject
 	SyncSessionFactoryImpl(DatabaseComponent db,
@@ -58,7 +60,12 @@ class SyncSessionFactoryImpl implements SyncSessionFactory {
 		SyncRecordReader recordReader =
 				recordReaderFactory.createRecordReader(in);
 		return new IncomingSession(db, dbExecutor, eventBus, c, recordReader,
-				handler);
+				handler, ingestCounters);
+	}
+
+	@Override
+	public IngestStats getIngestStats() {
+		return ingestCounters.getStats();
 	}
 
 	@Override
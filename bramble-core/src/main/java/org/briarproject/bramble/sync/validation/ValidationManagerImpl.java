@@ -3,6 +3,7 @@ package org.briarproject.bramble.sync.validation;
 import org.briarproject.bramble.api.Pair;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DatabaseExecutor;
+import org.briarproject.bramble.api.db.DatabaseReadExecutor;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.Metadata;
 import org.briarproject.bramble.api.db.NoSuchGroupException;
@@ -13,6 +14,7 @@ import org.briarproject.bramble.api.event.EventListener;
 import org.briarproject.bramble.api.lifecycle.Service;
 import org.briarproject.bramble.api.sync.ClientId;
 import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.InvalidMessageException;
 import org.briarproject.bramble.api.sync.Message;
 import org.briarproject.bramble.api.sync.MessageContext;
@@ -26,19 +28,31 @@ import org.briarproject.bramble.api.sync.validation.ValidationManager;
 import org.briarproject.bramble.api.versioning.ClientMajorVersion;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
+import static java.util.Collections.singletonList;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
 import static org.briarproject.bramble.api.sync.validation.IncomingMessageHook.DeliveryAction.ACCEPT_DO_NOT_SHARE;
@@ -49,6 +63,7 @@ import static org.briarproject.bramble.api.sync.validation.MessageState.DELIVERE
 import static org.briarproject.bramble.api.sync.validation.MessageState.INVALID;
 import static org.briarproject.bramble.api.sync.validation.MessageState.PENDING;
 import static org.briarproject.bramble.util.LogUtils.logException;
+import static org.briarproject.bramble.util.LogUtils.now;
 
 @ThreadSafe
 @NotNullByDefault
@@ -58,19 +73,38 @@ class ValidationManagerImpl implements ValidationManager, Service,
 	private static final Logger LOG =
 			Logger.getLogger(ValidationManagerImpl.class.getName());
 
+	/**
+	 * The maximum number of messages to load, store or deliver in a single
+	 * database transaction.
+	 */
+	static final int BATCH_SIZE = 32;
+
 	private final DatabaseComponent db;
-	private final Executor dbExecutor, validationExecutor;
+	private final Executor dbExecutor, dbReadExecutor, validationExecutor;
+	private final int batchSize;
 	private final Map<ClientMajorVersion, MessageValidator> validators;
 	private final Map<ClientMajorVersion, IncomingMessageHook> hooks;
+	private final Queue<Message> incoming = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean loadingIncoming = new AtomicBoolean(false);
 	private final AtomicBoolean used = new AtomicBoolean(false);
 
 	@Inject
 	ValidationManagerImpl(DatabaseComponent db,
 			@DatabaseExecutor Executor dbExecutor,
+			@DatabaseReadExecutor Executor dbReadExecutor,
 			@ValidationExecutor Executor validationExecutor) {
+		this(db, dbExecutor, dbReadExecutor, validationExecutor, BATCH_SIZE);
+	}
+
+	ValidationManagerImpl(DatabaseComponent db, Executor dbExecutor,
+			Executor dbReadExecutor, Executor validationExecutor,
+			int batchSize) {
+		if (batchSize < 1) throw new IllegalArgumentException();
 		this.db = db;
 		this.dbExecutor = dbExecutor;
+		this.dbReadExecutor = dbReadExecutor;
 		this.validationExecutor = validationExecutor;
+		this.batchSize = batchSize;
 		validators = new ConcurrentHashMap<>();
 		hooks = new ConcurrentHashMap<>();
 	}
@@ -100,48 +134,69 @@ class ValidationManagerImpl implements ValidationManager, Service,
 	}
 
 	private void validateOutstandingMessagesAsync() {
-		dbExecutor.execute(this::validateOutstandingMessages);
+		dbReadExecutor.execute(this::validateOutstandingMessages);
 	}
 
-	@DatabaseExecutor
+	@DatabaseReadExecutor
 	private void validateOutstandingMessages() {
 		try {
 			Queue<MessageId> unvalidated = new LinkedList<>(
 					db.transactionWithResult(true, db::getMessagesToValidate));
-			validateNextMessageAsync(unvalidated);
+			validateNextMessagesAsync(unvalidated);
 		} catch (DbException e) {
 			logException(LOG, WARNING, e);
 		}
 	}
 
-	private void validateNextMessageAsync(Queue<MessageId> unvalidated) {
+	private void validateNextMessagesAsync(Queue<MessageId> unvalidated) {
 		if (unvalidated.isEmpty()) return;
-		dbExecutor.execute(() -> validateNextMessage(unvalidated));
+		dbReadExecutor.execute(() -> validateNextMessages(unvalidated));
 	}
 
-	@DatabaseExecutor
-	private void validateNextMessage(Queue<MessageId> unvalidated) {
+	/**
+	 * Loads the next batch of raw messages and their groups from the
+	 * unvalidated queue in a single transaction and passes them to the
+	 * validation executor.
+	 */
+	@DatabaseReadExecutor
+	private void validateNextMessages(Queue<MessageId> unvalidated) {
+		List<MessageId> ids = pollBatch(unvalidated);
 		try {
-			Pair<Message, Group> mg = db.transactionWithResult(true, txn -> {
-				MessageId id = unvalidated.poll();
-				if (id == null) throw new AssertionError();
-				Message m = db.getMessage(txn, id);
-				Group g = db.getGroup(txn, m.getGroupId());
-				return new Pair<>(m, g);
-			});
-			validateMessageAsync(mg.getFirst(), mg.getSecond());
-			validateNextMessageAsync(unvalidated);
-		} catch (NoSuchMessageException e) {
-			LOG.info("Message removed before validation");
-			validateNextMessageAsync(unvalidated);
-		} catch (NoSuchGroupException e) {
-			LOG.info("Group removed before validation");
-			validateNextMessageAsync(unvalidated);
+			List<Pair<Message, Group>> batch =
+					db.transactionWithResult(true, txn -> {
+						List<Pair<Message, Group>> loaded = new ArrayList<>();
+						Map<GroupId, Group> groups = new HashMap<>();
+						for (MessageId id : ids) {
+							try {
+								Message m = db.getMessage(txn, id);
+								Group g = getGroup(txn, m.getGroupId(), groups);
+								loaded.add(new Pair<>(m, g));
+							} catch (NoSuchMessageException e) {
+								LOG.info("Message removed before validation");
+							} catch (NoSuchGroupException e) {
+								LOG.info("Group removed before validation");
+							}
+						}
+						return loaded;
+					});
+			validateBatchAsync(batch);
+			validateNextMessagesAsync(unvalidated);
 		} catch (DbException e) {
 			logException(LOG, WARNING, e);
 		}
 	}
 
+	@DatabaseReadExecutor
+	private Group getGroup(Transaction txn, GroupId g,
+			Map<GroupId, Group> cache) throws DbException {
+		Group group = cache.get(g);
+		if (group == null) {
+			group = db.getGroup(txn, g);
+			cache.put(g, group);
+		}
+		return group;
+	}
+
 	private void deliverOutstandingMessagesAsync() {
 		dbExecutor.execute(this::deliverOutstandingMessages);
 	}
@@ -149,87 +204,140 @@ class ValidationManagerImpl implements ValidationManager, Service,
 	@DatabaseExecutor
 	private void deliverOutstandingMessages() {
 		try {
-			Queue<MessageId> pending = new LinkedList<>(
-					db.transactionWithResult(true, db::getPendingMessages));
-			deliverNextPendingMessageAsync(pending);
+			Cascade pending = new Cascade("Delivering", new LinkedList<>(
+					db.transactionWithResult(true, db::getPendingMessages)));
+			deliverNextPendingMessagesAsync(pending);
 		} catch (DbException e) {
 			logException(LOG, WARNING, e);
 		}
 	}
 
-	private void deliverNextPendingMessageAsync(Queue<MessageId> pending) {
-		if (pending.isEmpty()) return;
-		dbExecutor.execute(() -> deliverNextPendingMessage(pending));
+	private void deliverNextPendingMessagesAsync(Cascade pending) {
+		if (pending.isFinished()) return;
+		dbExecutor.execute(() -> deliverNextPendingMessages(pending));
+	}
+
+	@DatabaseExecutor
+	private void deliverNextPendingMessages(Cascade pending) {
+		if (deliverPendingMessages(pollBatch(pending.queue), pending, true))
+			deliverNextPendingMessagesAsync(pending);
 	}
 
+	/**
+	 * Delivers a batch of pending messages in a single transaction. If
+	 * {@code followDependents} is true, any pending dependents of the
+	 * delivered messages are delivered in the same transaction, in
+	 * topological order, until {@link #batchSize} messages have been
+	 * processed. Any remaining dependents are added to the pending queue.
+	 * If any of the messages or their groups have been removed, the messages
+	 * are delivered separately instead, without following their dependents.
+	 *
+	 * @return False if delivery should stop due to a database error
+	 */
 	@DatabaseExecutor
-	private void deliverNextPendingMessage(Queue<MessageId> pending) {
+	private boolean deliverPendingMessages(List<MessageId> batch,
+			Cascade pending, boolean followDependents) {
 		try {
+			Queue<MessageId> queue = new LinkedList<>(batch);
 			Queue<MessageId> toShare = new LinkedList<>();
 			Queue<MessageId> invalidate = new LinkedList<>();
-			db.transaction(false, txn -> {
-				boolean anyInvalid = false, allDelivered = true;
-				MessageId id = pending.poll();
-				if (id == null) throw new AssertionError();
-				// Check if message is still pending
-				if (db.getMessageState(txn, id) == PENDING) {
-					// Check if dependencies are valid and delivered
-					Map<MessageId, MessageState> states =
-							db.getMessageDependencies(txn, id);
-					for (Entry<MessageId, MessageState> e : states.entrySet()) {
-						if (e.getValue() == INVALID) anyInvalid = true;
-						if (e.getValue() != DELIVERED) allDelivered = false;
-					}
-					if (anyInvalid) {
-						invalidateMessage(txn, id);
-						addDependentsToInvalidate(txn, id, invalidate);
-					} else if (allDelivered) {
-						Message m = db.getMessage(txn, id);
-						Group g = db.getGroup(txn, m.getGroupId());
-						ClientId c = g.getClientId();
-						int majorVersion = g.getMajorVersion();
-						Metadata meta =
-								db.getMessageMetadataForValidator(txn, id);
-						DeliveryAction action =
-								deliverMessage(txn, m, c, majorVersion, meta);
-						if (action == REJECT) {
-							invalidateMessage(txn, id);
-							addDependentsToInvalidate(txn, id, invalidate);
-						} else if (action == ACCEPT_SHARE) {
-							db.setMessageState(txn, m.getId(), DELIVERED);
-							addPendingDependents(txn, id, pending);
-							db.setMessageShared(txn, id);
-							toShare.addAll(states.keySet());
-						} else if (action == ACCEPT_DO_NOT_SHARE) {
-							db.setMessageState(txn, m.getId(), DELIVERED);
-							addPendingDependents(txn, id, pending);
-						}
-					}
+			int limit = followDependents ? batchSize : batch.size();
+			int processed = db.transactionWithResult(false, txn -> {
+				// Each dependent is queued after the message it depends on,
+				// so it's checked after that message has been delivered
+				int count = 0;
+				while (count < limit && !queue.isEmpty()) {
+					deliverPendingMessage(txn, queue.poll(), queue, toShare,
+							invalidate);
+					count++;
 				}
+				return count;
 			});
-			if (!invalidate.isEmpty()) invalidateNextMessageAsync(invalidate);
+			pending.addProcessed(processed, queue);
+			if (!invalidate.isEmpty())
+				invalidateNextMessagesAsync(new Cascade("Invalidating",
+						invalidate));
 			if (!toShare.isEmpty()) shareNextMessageAsync(toShare);
-			deliverNextPendingMessageAsync(pending);
+			return true;
 		} catch (NoSuchMessageException e) {
 			LOG.info("Message removed before delivery");
-			deliverNextPendingMessageAsync(pending);
+			return deliverPendingMessagesSeparately(batch, pending);
 		} catch (NoSuchGroupException e) {
 			LOG.info("Group removed before delivery");
-			deliverNextPendingMessageAsync(pending);
+			return deliverPendingMessagesSeparately(batch, pending);
 		} catch (DbException e) {
 			logException(LOG, WARNING, e);
+			return false;
 		}
 	}
 
-	private void validateMessageAsync(Message m, Group g) {
-		validationExecutor.execute(() -> validateMessage(m, g));
+	@DatabaseExecutor
+	private boolean deliverPendingMessagesSeparately(List<MessageId> batch,
+			Cascade pending) {
+		if (batch.size() == 1) return true;
+		for (MessageId id : batch) {
+			if (!deliverPendingMessages(singletonList(id), pending, false))
+				return false;
+		}
+		return true;
+	}
+
+	@DatabaseExecutor
+	private void deliverPendingMessage(Transaction txn, MessageId id,
+			Queue<MessageId> pending, Queue<MessageId> toShare,
+			Queue<MessageId> invalidate) throws DbException {
+		boolean anyInvalid = false, allDelivered = true;
+		// Check if message is still pending
+		if (db.getMessageState(txn, id) != PENDING) return;
+		// Check if dependencies are valid and delivered
+		Map<MessageId, MessageState> states =
+				db.getMessageDependencies(txn, id);
+		for (Entry<MessageId, MessageState> e : states.entrySet()) {
+			if (e.getValue() == INVALID) anyInvalid = true;
+			if (e.getValue() != DELIVERED) allDelivered = false;
+		}
+		if (anyInvalid) {
+			invalidateMessage(txn, id);
+			addDependentsToInvalidate(txn, id, invalidate);
+		} else if (allDelivered) {
+			Message m = db.getMessage(txn, id);
+			Group g = db.getGroup(txn, m.getGroupId());
+			ClientId c = g.getClientId();
+			int majorVersion = g.getMajorVersion();
+			Metadata meta = db.getMessageMetadataForValidator(txn, id);
+			DeliveryAction action =
+					deliverMessage(txn, m, c, majorVersion, meta);
+			if (action == REJECT) {
+				invalidateMessage(txn, id);
+				addDependentsToInvalidate(txn, id, invalidate);
+			} else if (action == ACCEPT_SHARE) {
+				db.setMessageState(txn, m.getId(), DELIVERED);
+				addPendingDependents(txn, id, pending);
+				db.setMessageShared(txn, id);
+				toShare.addAll(states.keySet());
+			} else if (action == ACCEPT_DO_NOT_SHARE) {
+				db.setMessageState(txn, m.getId(), DELIVERED);
+				addPendingDependents(txn, id, pending);
+			}
+		}
+	}
+
+	private void validateBatchAsync(List<Pair<Message, Group>> batch) {
+		if (batch.isEmpty()) return;
+		ValidationBatch results = new ValidationBatch(batch.size());
+		for (Pair<Message, Group> mg : batch) {
+			Message m = mg.getFirst();
+			Group g = mg.getSecond();
+			validationExecutor.execute(() -> validateMessage(m, g, results));
+		}
 	}
 
 	@ValidationExecutor
-	private void validateMessage(Message m, Group g) {
+	private void validateMessage(Message m, Group g, ValidationBatch batch) {
 		ClientMajorVersion cv =
 				new ClientMajorVersion(g.getClientId(), g.getMajorVersion());
 		MessageValidator v = validators.get(cv);
+		ValidationResult result = null;
 		if (v == null) {
 			if (LOG.isLoggable(WARNING)) LOG.warning("No validator for " + cv);
 		} else {
@@ -238,87 +346,168 @@ class ValidationManagerImpl implements ValidationManager, Service,
 			}
 			try {
 				MessageContext context = v.validateMessage(m, g);
-				storeMessageContextAsync(m, g.getClientId(),
-						g.getMajorVersion(), context);
+				result = new ValidationResult(m, g, context);
 			} catch (InvalidMessageException e) {
 				logException(LOG, INFO, e);
-				Queue<MessageId> invalidate = new LinkedList<>();
-				invalidate.add(m.getId());
-				invalidateNextMessageAsync(invalidate);
+				result = new ValidationResult(m, g, null);
 			}
 		}
+		// Store the results when the whole batch has been validated
+		List<ValidationResult> results = batch.addResult(result);
+		if (results != null && !results.isEmpty())
+			storeValidationResultsAsync(results);
 	}
 
-	private void storeMessageContextAsync(Message m, ClientId c,
-			int majorVersion, MessageContext result) {
-		dbExecutor.execute(() ->
-				storeMessageContext(m, c, majorVersion, result));
+	private void storeValidationResultsAsync(List<ValidationResult> results) {
+		dbExecutor.execute(() -> storeValidationResults(results));
 	}
 
+	/**
+	 * Stores a batch of validation results in a single transaction. If any
+	 * of the messages or their groups have been removed, the results are
+	 * stored separately instead.
+	 */
 	@DatabaseExecutor
-	private void storeMessageContext(Message m, ClientId c, int majorVersion,
-			MessageContext context) {
+	private void storeValidationResults(List<ValidationResult> unsorted) {
+		List<ValidationResult> results = sortByDependencies(unsorted);
 		try {
-			MessageId id = m.getId();
 			Queue<MessageId> invalidate = new LinkedList<>();
 			Queue<MessageId> pending = new LinkedList<>();
 			Queue<MessageId> toShare = new LinkedList<>();
 			db.transaction(false, txn -> {
-				boolean anyInvalid = false, allDelivered = true;
-				// Check if message has any dependencies
-				Collection<MessageId> dependencies = context.getDependencies();
-				if (!dependencies.isEmpty()) {
-					db.addMessageDependencies(txn, m, dependencies);
-					// Check if dependencies are valid and delivered
-					Map<MessageId, MessageState> states =
-							db.getMessageDependencies(txn, id);
-					for (Entry<MessageId, MessageState> e : states.entrySet()) {
-						if (e.getValue() == INVALID) anyInvalid = true;
-						if (e.getValue() != DELIVERED) allDelivered = false;
-					}
-				}
-				if (anyInvalid) {
-					if (db.getMessageState(txn, id) != INVALID) {
-						invalidateMessage(txn, id);
-						addDependentsToInvalidate(txn, id, invalidate);
-					}
-				} else {
-					Metadata meta = context.getMetadata();
-					db.mergeMessageMetadata(txn, id, meta);
-					if (allDelivered) {
-						DeliveryAction action =
-								deliverMessage(txn, m, c, majorVersion, meta);
-						if (action == REJECT) {
+				for (ValidationResult r : results) {
+					MessageContext context = r.context;
+					if (context == null) {
+						MessageId id = r.message.getId();
+						if (db.getMessageState(txn, id) != INVALID) {
 							invalidateMessage(txn, id);
 							addDependentsToInvalidate(txn, id, invalidate);
-						} else if (action == DEFER) {
-							db.setMessageState(txn, id, PENDING);
-						} else if (action == ACCEPT_SHARE) {
-							db.setMessageState(txn, id, DELIVERED);
-							addPendingDependents(txn, id, pending);
-							db.setMessageShared(txn, id);
-							toShare.addAll(dependencies);
-						} else if (action == ACCEPT_DO_NOT_SHARE) {
-							db.setMessageState(txn, id, DELIVERED);
-							addPendingDependents(txn, id, pending);
 						}
 					} else {
-						db.setMessageState(txn, id, PENDING);
+						storeMessageContext(txn, r.message, r.clientId,
+								r.majorVersion, context, invalidate, pending,
+								toShare);
 					}
 				}
 			});
-			if (!invalidate.isEmpty()) invalidateNextMessageAsync(invalidate);
-			if (!pending.isEmpty()) deliverNextPendingMessageAsync(pending);
+			if (!invalidate.isEmpty()) {
+				invalidateNextMessagesAsync(
+						new Cascade("Invalidating", invalidate));
+			}
+			if (!pending.isEmpty()) {
+				deliverNextPendingMessagesAsync(
+						new Cascade("Delivering", pending));
+			}
 			if (!toShare.isEmpty()) shareNextMessageAsync(toShare);
 		} catch (NoSuchMessageException e) {
 			LOG.info("Message removed during validation");
+			storeValidationResultsSeparately(results);
 		} catch (NoSuchGroupException e) {
 			LOG.info("Group removed during validation");
+			storeValidationResultsSeparately(results);
 		} catch (DbException e) {
 			logException(LOG, WARNING, e);
 		}
 	}
 
+	/**
+	 * Orders a batch of validation results so that each message comes after
+	 * any messages in the batch that it depends on. The messages are
+	 * validated concurrently, so otherwise a message might be stored before
+	 * its dependencies and left pending until they're delivered.
+	 */
+	private List<ValidationResult> sortByDependencies(
+			List<ValidationResult> results) {
+		Map<MessageId, ValidationResult> unsorted = new LinkedHashMap<>();
+		for (ValidationResult r : results) unsorted.put(r.message.getId(), r);
+		List<ValidationResult> sorted = new ArrayList<>(results.size());
+		while (!unsorted.isEmpty()) {
+			boolean added = false;
+			Iterator<ValidationResult> it = unsorted.values().iterator();
+			while (it.hasNext()) {
+				ValidationResult r = it.next();
+				if (!dependsOnAny(r, unsorted.keySet())) {
+					sorted.add(r);
+					it.remove();
+					added = true;
+				}
+			}
+			// If the remaining messages depend on each other in a cycle,
+			// store them in the order they were validated
+			if (!added) {
+				sorted.addAll(unsorted.values());
+				break;
+			}
+		}
+		return sorted;
+	}
+
+	private boolean dependsOnAny(ValidationResult r, Set<MessageId> ids) {
+		if (r.context == null) return false;
+		for (MessageId dependency : r.context.getDependencies()) {
+			if (ids.contains(dependency)) return true;
+		}
+		return false;
+	}
+
+	@DatabaseExecutor
+	private void storeValidationResultsSeparately(
+			List<ValidationResult> results) {
+		if (results.size() == 1) return;
+		for (ValidationResult r : results)
+			storeValidationResults(singletonList(r));
+	}
+
+	@DatabaseExecutor
+	private void storeMessageContext(Transaction txn, Message m, ClientId c,
+			int majorVersion, MessageContext context,
+			Queue<MessageId> invalidate, Queue<MessageId> pending,
+			Queue<MessageId> toShare) throws DbException {
+		MessageId id = m.getId();
+		boolean anyInvalid = false, allDelivered = true;
+		// Check if message has any dependencies
+		Collection<MessageId> dependencies = context.getDependencies();
+		if (!dependencies.isEmpty()) {
+			db.addMessageDependencies(txn, m, dependencies);
+			// Check if dependencies are valid and delivered
+			Map<MessageId, MessageState> states =
+					db.getMessageDependencies(txn, id);
+			for (Entry<MessageId, MessageState> e : states.entrySet()) {
+				if (e.getValue() == INVALID) anyInvalid = true;
+				if (e.getValue() != DELIVERED) allDelivered = false;
+			}
+		}
+		if (anyInvalid) {
+			if (db.getMessageState(txn, id) != INVALID) {
+				invalidateMessage(txn, id);
+				addDependentsToInvalidate(txn, id, invalidate);
+			}
+		} else {
+			Metadata meta = context.getMetadata();
+			db.mergeMessageMetadata(txn, id, meta);
+			if (allDelivered) {
+				DeliveryAction action =
+						deliverMessage(txn, m, c, majorVersion, meta);
+				if (action == REJECT) {
+					invalidateMessage(txn, id);
+					addDependentsToInvalidate(txn, id, invalidate);
+				} else if (action == DEFER) {
+					db.setMessageState(txn, id, PENDING);
+				} else if (action == ACCEPT_SHARE) {
+					db.setMessageState(txn, id, DELIVERED);
+					addPendingDependents(txn, id, pending);
+					db.setMessageShared(txn, id);
+					toShare.addAll(dependencies);
+				} else if (action == ACCEPT_DO_NOT_SHARE) {
+					db.setMessageState(txn, id, DELIVERED);
+					addPendingDependents(txn, id, pending);
+				}
+			} else {
+				db.setMessageState(txn, id, PENDING);
+			}
+		}
+	}
+
 	@DatabaseExecutor
 	private DeliveryAction deliverMessage(Transaction txn, Message m,
 			ClientId c, int majorVersion, Metadata meta) {
@@ -396,28 +585,59 @@ class ValidationManagerImpl implements ValidationManager, Service,
 		}
 	}
 
-	private void invalidateNextMessageAsync(Queue<MessageId> invalidate) {
-		if (invalidate.isEmpty()) return;
-		dbExecutor.execute(() -> invalidateNextMessage(invalidate));
+	private void invalidateNextMessagesAsync(Cascade invalidate) {
+		if (invalidate.isFinished()) return;
+		dbExecutor.execute(() -> invalidateNextMessages(invalidate));
+	}
+
+	@DatabaseExecutor
+	private void invalidateNextMessages(Cascade invalidate) {
+		if (invalidateMessages(pollBatch(invalidate.queue), invalidate, true))
+			invalidateNextMessagesAsync(invalidate);
 	}
 
+	/**
+	 * Invalidates a batch of messages in a single transaction. If
+	 * {@code followDependents} is true, the dependents of the invalidated
+	 * messages are invalidated in the same transaction until
+	 * {@link #batchSize} messages have been processed. Any remaining
+	 * dependents are added to the invalidation queue. If any of the messages
+	 * have been removed, the messages are invalidated separately instead,
+	 * without following their dependents.
+	 *
+	 * @return False if invalidation should stop due to a database error
+	 */
 	@DatabaseExecutor
-	private void invalidateNextMessage(Queue<MessageId> invalidate) {
+	private boolean invalidateMessages(List<MessageId> batch,
+			Cascade invalidate, boolean followDependents) {
 		try {
-			db.transaction(false, txn -> {
-				MessageId id = invalidate.poll();
-				if (id == null) throw new AssertionError();
-				if (db.getMessageState(txn, id) != INVALID) {
-					invalidateMessage(txn, id);
-					addDependentsToInvalidate(txn, id, invalidate);
+			Queue<MessageId> queue = new LinkedList<>(batch);
+			int limit = followDependents ? batchSize : batch.size();
+			int processed = db.transactionWithResult(false, txn -> {
+				int count = 0;
+				while (count < limit && !queue.isEmpty()) {
+					MessageId id = queue.poll();
+					if (db.getMessageState(txn, id) != INVALID) {
+						invalidateMessage(txn, id);
+						addDependentsToInvalidate(txn, id, queue);
+					}
+					count++;
 				}
+				return count;
 			});
-			invalidateNextMessageAsync(invalidate);
+			invalidate.addProcessed(processed, queue);
+			return true;
 		} catch (NoSuchMessageException e) {
 			LOG.info("Message removed before invalidation");
-			invalidateNextMessageAsync(invalidate);
+			if (batch.size() == 1) return true;
+			for (MessageId id : batch) {
+				if (!invalidateMessages(singletonList(id), invalidate, false))
+					return false;
+			}
+			return true;
 		} catch (DbException e) {
 			logException(LOG, WARNING, e);
+			return false;
 		}
 	}
 
@@ -443,25 +663,158 @@ class ValidationManagerImpl implements ValidationManager, Service,
 		if (e instanceof MessageAddedEvent) {
 			// Validate the message if it wasn't created locally
 			MessageAddedEvent m = (MessageAddedEvent) e;
-			if (m.getContactId() != null)
-				loadGroupAndValidateAsync(m.getMessage());
+			if (m.getContactId() != null) {
+				incoming.add(m.getMessage());
+				loadGroupsAndValidateAsync();
+			}
 		}
 	}
 
-	private void loadGroupAndValidateAsync(Message m) {
-		dbExecutor.execute(() -> loadGroupAndValidate(m));
+	private void loadGroupsAndValidateAsync() {
+		// Only one task at a time loads incoming messages, so messages that
+		// arrive while a batch is being loaded are collected into the next
+		// batch
+		if (incoming.isEmpty() || loadingIncoming.getAndSet(true)) return;
+		dbReadExecutor.execute(this::loadGroupsAndValidate);
 	}
 
-	@DatabaseExecutor
-	private void loadGroupAndValidate(Message m) {
+	@DatabaseReadExecutor
+	private void loadGroupsAndValidate() {
+		List<Message> messages = pollBatch(incoming);
 		try {
-			Group g = db.transactionWithResult(true, txn ->
-					db.getGroup(txn, m.getGroupId()));
-			validateMessageAsync(m, g);
-		} catch (NoSuchGroupException e) {
-			LOG.info("Group removed before validation");
+			List<Pair<Message, Group>> batch =
+					db.transactionWithResult(true, txn -> {
+						List<Pair<Message, Group>> loaded = new ArrayList<>();
+						Map<GroupId, Group> groups = new HashMap<>();
+						for (Message m : messages) {
+							try {
+								Group g = getGroup(txn, m.getGroupId(), groups);
+								loaded.add(new Pair<>(m, g));
+							} catch (NoSuchGroupException e) {
+								LOG.info("Group removed before validation");
+							}
+						}
+						return loaded;
+					});
+			validateBatchAsync(batch);
 		} catch (DbException e) {
 			logException(LOG, WARNING, e);
+			// The messages are still waiting to be validated in the DB, so
+			// they'll be validated the next time the service starts
+			if (LOG.isLoggable(WARNING)) {
+				LOG.warning("Skipped validating " + messages.size()
+						+ " messages");
+			}
+		} finally {
+			loadingIncoming.set(false);
+			loadGroupsAndValidateAsync();
+		}
+	}
+
+	private <E> List<E> pollBatch(Queue<E> queue) {
+		List<E> batch = new ArrayList<>(batchSize);
+		while (batch.size() < batchSize) {
+			E e = queue.poll();
+			if (e == null) break;
+			batch.add(e);
+		}
+		return batch;
+	}
+
+	/**
+	 * A queue of messages to deliver or invalidate, which grows as the
+	 * dependents of processed messages are added to it. The queue is
+	 * processed in batches, one batch at a time, and the size and duration
+	 * of the cascade are logged when the queue is empty.
+	 */
+	@NotThreadSafe
+	@NotNullByDefault
+	private static class Cascade {
+
+		private final String task;
+		private final Queue<MessageId> queue;
+		private final long start = now();
+		private int processed = 0, transactions = 0;
+
+		private Cascade(String task, Queue<MessageId> queue) {
+			this.task = task;
+			this.queue = queue;
+		}
+
+		/**
+		 * Records that a batch has been processed in a single transaction,
+		 * and adds any messages that remain to be processed to the queue.
+		 */
+		private void addProcessed(int count, Collection<MessageId> remaining) {
+			processed += count;
+			transactions++;
+			queue.addAll(remaining);
+		}
+
+		/**
+		 * Returns true if the queue is empty, logging the size and duration
+		 * of the cascade if any messages were processed.
+		 */
+		private boolean isFinished() {
+			if (!queue.isEmpty()) return false;
+			if (processed > 0 && LOG.isLoggable(INFO)) {
+				LOG.info(task + " " + processed + " messages in "
+						+ transactions + " transactions took "
+						+ (now() - start) + " ms");
+			}
+			return true;
+		}
+	}
+
+	@Immutable
+	@NotNullByDefault
+	private static class ValidationResult {
+
+		private final Message message;
+		private final ClientId clientId;
+		private final int majorVersion;
+		@Nullable
+		private final MessageContext context; // Null if the message is invalid
+
+		private ValidationResult(Message message, Group group,
+				@Nullable MessageContext context) {
+			this.message = message;
+			this.context = context;
+			clientId = group.getClientId();
+			majorVersion = group.getMajorVersion();
+		}
+	}
+
+	/**
+	 * Collects the results of validating a batch of messages, which may be
+	 * validated concurrently.
+	 */
+	@ThreadSafe
+	@NotNullByDefault
+	private static class ValidationBatch {
+
+		@GuardedBy("this")
+		private final List<ValidationResult> results = new ArrayList<>();
+		@GuardedBy("this")
+		private int remaining;
+
+		private ValidationBatch(int size) {
+			remaining = size;
+		}
+
+		/**
+		 * Adds the result of validating a message, or null if the message
+		 * could not be validated.
+		 *
+		 * @return The results for the batch if this was the last message in
+		 * the batch to be validated, otherwise null
+		 */
+		@Nullable
+		private synchronized List<ValidationResult> addResult(
+				@Nullable ValidationResult result) {
+			if (result != null) results.add(result);
+			if (--remaining > 0) return null;
+			return results;
 		}
 	}
 }
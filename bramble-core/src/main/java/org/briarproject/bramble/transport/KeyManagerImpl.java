@@ -210,17 +210,18 @@ class KeyManagerImpl implements KeyManager, Service, EventListener {
 	@Override
 	public StreamContext getStreamContext(TransportId t, byte[] tag)
 			throws DbException {
-		return withManager(t, m ->
-				db.transactionWithNullableResult(false, txn ->
-						m.getStreamContext(txn, tag)));
+		return withManager(t, m -> {
+			// Don't start a transaction for a tag we don't recognise
+			if (m.getStreamContextOnly(tag) == null) return null;
+			return db.transactionWithNullableResult(false, txn ->
+					m.getStreamContext(txn, tag));
+		});
 	}
 
 	@Override
 	public StreamContext getStreamContextOnly(TransportId t, byte[] tag)
 			throws DbException {
-		return withManager(t, m ->
-				db.transactionWithNullableResult(false, txn ->
-						m.getStreamContextOnly(txn, tag)));
+		return withManager(t, m -> m.getStreamContextOnly(tag));
 	}
 
 	@Override
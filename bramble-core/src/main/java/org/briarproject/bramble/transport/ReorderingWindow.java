@@ -3,7 +3,6 @@ package org.briarproject.bramble.transport;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import javax.annotation.concurrent.NotThreadSafe;
@@ -14,19 +13,28 @@ import static org.briarproject.bramble.util.ByteUtils.MAX_32_BIT_UNSIGNED;
 @NotNullByDefault
 class ReorderingWindow {
 
+	private final int size;
+
+	/**
+	 * A ring buffer with one bit per element, which is set if the element
+	 * has been seen. The bit for the element at offset i from the base is
+	 * at position (head + i) % size, so sliding the window only clears the
+	 * bits of the elements that slide out of it.
+	 */
+	private final long[] seen;
+
 	private long base;
-	private boolean[] seen;
+	private int head = 0;
 
 	ReorderingWindow(long base, byte[] bitmap) {
 		if (base < 0) throw new IllegalArgumentException();
 		if (base > MAX_32_BIT_UNSIGNED + 1)
 			throw new IllegalArgumentException();
 		this.base = base;
-		seen = new boolean[bitmap.length * 8];
-		for (int i = 0; i < bitmap.length; i++) {
-			for (int j = 0; j < 8; j++) {
-				if ((bitmap[i] & (128 >> j)) != 0) seen[i * 8 + j] = true;
-			}
+		size = bitmap.length * 8;
+		seen = new long[(size + 63) / 64];
+		for (int i = 0; i < size; i++) {
+			if ((bitmap[i / 8] & (128 >> (i % 8))) != 0) mark(i);
 		}
 	}
 
@@ -35,69 +43,83 @@ class ReorderingWindow {
 	}
 
 	byte[] getBitmap() {
-		byte[] bitmap = new byte[seen.length / 8];
-		for (int i = 0; i < bitmap.length; i++) {
-			for (int j = 0; j < 8; j++) {
-				if (seen[i * 8 + j]) bitmap[i] |= 128 >> j;
-			}
+		byte[] bitmap = new byte[size / 8];
+		for (int i = 0; i < size; i++) {
+			if (isSeen(i)) bitmap[i / 8] |= 128 >> (i % 8);
 		}
 		return bitmap;
 	}
 
 	List<Long> getUnseen() {
-		List<Long> unseen = new ArrayList<>(seen.length);
-		for (int i = 0; i < seen.length; i++)
-			if (!seen[i]) unseen.add(base + i);
+		List<Long> unseen = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+			if (!isSeen(i)) unseen.add(base + i);
 		return unseen;
 	}
 
-	Change setSeen(long index) {
+	/**
+	 * Marks the given element as seen and slides the window if necessary.
+	 * The listener is called for each element added to the window, for
+	 * each unseen element that slides out of the window, and for the given
+	 * element, which is removed from the set of unseen elements.
+	 */
+	void setSeen(long index, ChangeListener listener) {
 		if (index < base) throw new IllegalArgumentException();
-		if (index >= base + seen.length) throw new IllegalArgumentException();
+		if (index >= base + size) throw new IllegalArgumentException();
 		if (index > MAX_32_BIT_UNSIGNED) throw new IllegalArgumentException();
 		int offset = (int) (index - base);
-		if (seen[offset]) throw new IllegalArgumentException();
-		seen[offset] = true;
+		if (isSeen(offset)) throw new IllegalArgumentException();
+		mark(offset);
 		// Rule 1: Slide until all elements above the midpoint are unseen
-		int slide = Math.max(0, offset + 1 - seen.length / 2);
+		int slide = Math.max(0, offset + 1 - size / 2);
 		// Rule 2: Slide until the lowest element is unseen
-		while (seen[slide]) slide++;
-		// If the window doesn't need to slide, return
-		if (slide == 0) {
-			List<Long> added = Collections.emptyList();
-			List<Long> removed = Collections.singletonList(index);
-			return new Change(added, removed);
-		}
-		// Record the elements that will be added and removed
-		List<Long> added = new ArrayList<>(slide);
-		List<Long> removed = new ArrayList<>(slide);
+		while (isSeen(slide)) slide++;
+		// Report the elements that will be added and removed. The bits of
+		// the elements that slide out are cleared for the elements that
+		// slide in
 		for (int i = 0; i < slide; i++) {
-			if (!seen[i]) removed.add(base + i);
-			added.add(base + seen.length + i);
+			if (isSeen(i)) clear(i);
+			else listener.onRemoved(base + i);
+			listener.onAdded(base + size + i);
 		}
-		removed.add(index);
+		listener.onRemoved(index);
 		// Update the window
 		base += slide;
-		for (int i = 0; i + slide < seen.length; i++) seen[i] = seen[i + slide];
-		for (int i = seen.length - slide; i < seen.length; i++) seen[i] = false;
-		return new Change(added, removed);
+		head = getPosition(slide);
 	}
 
-	static class Change {
+	private int getPosition(int offset) {
+		int position = head + offset;
+		return position >= size ? position - size : position;
+	}
 
-		private final List<Long> added, removed;
+	private boolean isSeen(int offset) {
+		int position = getPosition(offset);
+		return (seen[position >>> 6] & (1L << position)) != 0;
+	}
 
-		Change(List<Long> added, List<Long> removed) {
-			this.added = added;
-			this.removed = removed;
-		}
+	private void mark(int offset) {
+		int position = getPosition(offset);
+		seen[position >>> 6] |= 1L << position;
+	}
 
-		List<Long> getAdded() {
-			return added;
-		}
+	private void clear(int offset) {
+		int position = getPosition(offset);
+		seen[position >>> 6] &= ~(1L << position);
+	}
 
-		List<Long> getRemoved() {
-			return removed;
-		}
+	interface ChangeListener {
+
+		/**
+		 * Called when the given element is added to the window.
+		 */
+		void onAdded(long index);
+
+		/**
+		 * Called when the given element is removed from the set of unseen
+		 * elements, either because it has been seen or because it has slid
+		 * out of the window.
+		 */
+		void onRemoved(long index);
 	}
 }
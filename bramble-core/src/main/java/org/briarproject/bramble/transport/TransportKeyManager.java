@@ -48,8 +48,13 @@ interface TransportKeyManager {
 	StreamContext getStreamContext(Transaction txn, byte[] tag)
 			throws DbException;
 
+	/**
+	 * Returns the stream context for the given tag without marking the tag
+	 * as recognised, or null if the tag isn't expected. This method doesn't
+	 * block or access the database.
+	 */
 	@Nullable
-	StreamContext getStreamContextOnly(Transaction txn, byte[] tag);
+	StreamContext getStreamContextOnly(byte[] tag);
 
 	void markTagAsRecognised(Transaction txn, byte[] tag) throws DbException;
 
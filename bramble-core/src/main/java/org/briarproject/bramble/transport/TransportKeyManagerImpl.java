@@ -17,7 +17,7 @@ import org.briarproject.bramble.api.transport.KeySetId;
 import org.briarproject.bramble.api.transport.StreamContext;
 import org.briarproject.bramble.api.transport.TransportKeySet;
 import org.briarproject.bramble.api.transport.TransportKeys;
-import org.briarproject.bramble.transport.ReorderingWindow.Change;
+import org.briarproject.bramble.transport.ReorderingWindow.ChangeListener;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.ArrayList;
@@ -25,6 +25,9 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
@@ -32,6 +35,7 @@ import java.util.logging.Logger;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.NotThreadSafe;
 import javax.annotation.concurrent.ThreadSafe;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -43,6 +47,7 @@ import static org.briarproject.bramble.api.transport.TransportConstants.TAG_LENG
 import static org.briarproject.bramble.util.ByteUtils.MAX_32_BIT_UNSIGNED;
 import static org.briarproject.bramble.util.LogUtils.logException;
 import static org.briarproject.nullsafety.NullSafety.requireExactlyOneNull;
+import static org.briarproject.nullsafety.NullSafety.requireNonNull;
 
 @ThreadSafe
 @NotNullByDefault
@@ -63,14 +68,21 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 
 	@GuardedBy("lock")
 	private final Map<KeySetId, MutableTransportKeySet> keys = new HashMap<>();
-	@GuardedBy("lock")
-	private final Map<Bytes, TagContext> inContexts = new HashMap<>();
+	/**
+	 * The incoming tags we expect to see. Modifications are guarded by the
+	 * lock, but lookups are lock-free so that tags can be recognised without
+	 * contending with other connections or key updates.
+	 */
+	private final ConcurrentMap<Bytes, TagContext> inContexts =
+			new ConcurrentHashMap<>();
 	@GuardedBy("lock")
 	private final Map<ContactId, MutableTransportKeySet>
 			contactOutContexts = new HashMap<>();
 	@GuardedBy("lock")
 	private final Map<PendingContactId, MutableTransportKeySet>
 			pendingContactOutContexts = new HashMap<>();
+	@GuardedBy("lock")
+	private final WindowUpdater windowUpdater = new WindowUpdater();
 
 	TransportKeyManagerImpl(DatabaseComponent db,
 			TransportCrypto transportCrypto,
@@ -391,11 +403,17 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 	@Override
 	public StreamContext getStreamContext(Transaction txn, byte[] tag)
 			throws DbException {
+		Bytes key = new Bytes(tag);
+		// Most unrecognised tags can be rejected without taking the lock
+		if (!inContexts.containsKey(key)) return null;
 		lock.lock();
 		try {
-			StreamContext ctx = streamContextFromTag(tag);
-			if (ctx == null) return null;
-			markTagAsRecognised(txn, tag);
+			// Look up the tag again, as another connection may have
+			// recognised it or the keys may have been updated
+			TagContext tagCtx = inContexts.get(key);
+			if (tagCtx == null) return null;
+			StreamContext ctx = streamContextFromTag(tagCtx);
+			markTagAsRecognised(txn, key);
 			return ctx;
 		} finally {
 			lock.unlock();
@@ -403,21 +421,14 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 	}
 
 	@Override
-	public StreamContext getStreamContextOnly(Transaction txn, byte[] tag) {
-		lock.lock();
-		try {
-			return streamContextFromTag(tag);
-		} finally {
-			lock.unlock();
-		}
-	}
-
-	@GuardedBy("lock")
-	@Nullable
-	private StreamContext streamContextFromTag(byte[] tag) {
+	public StreamContext getStreamContextOnly(byte[] tag) {
 		// Look up the incoming keys for the tag
 		TagContext tagCtx = inContexts.get(new Bytes(tag));
 		if (tagCtx == null) return null;
+		return streamContextFromTag(tagCtx);
+	}
+
+	private StreamContext streamContextFromTag(TagContext tagCtx) {
 		MutableIncomingKeys inKeys = tagCtx.inKeys;
 		// Create a stream context
 		return new StreamContext(tagCtx.contactId,
@@ -429,29 +440,28 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 	@Override
 	public void markTagAsRecognised(Transaction txn, byte[] tag)
 			throws DbException {
-		TagContext tagCtx = inContexts.remove(new Bytes(tag));
+		lock.lock();
+		try {
+			markTagAsRecognised(txn, new Bytes(tag));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@GuardedBy("lock")
+	private void markTagAsRecognised(Transaction txn, Bytes tag)
+			throws DbException {
+		TagContext tagCtx = inContexts.remove(tag);
 		if (tagCtx == null) return;
 		MutableIncomingKeys inKeys = tagCtx.inKeys;
-		// Update the reordering window
+		// Update the reordering window, adding and removing tags for any
+		// stream numbers added to or removed from the window
 		ReorderingWindow window = inKeys.getWindow();
-		Change change = window.setSeen(tagCtx.streamNumber);
-		// Add tags for any stream numbers added to the window
-		for (long streamNumber : change.getAdded()) {
-			byte[] addTag = new byte[TAG_LENGTH];
-			transportCrypto.encodeTag(addTag, inKeys.getTagKey(),
-					PROTOCOL_VERSION, streamNumber);
-			TagContext tagCtx1 = new TagContext(tagCtx.keySetId,
-					tagCtx.contactId, tagCtx.pendingContactId, inKeys,
-					streamNumber, tagCtx.handshakeMode);
-			inContexts.put(new Bytes(addTag), tagCtx1);
-		}
-		// Remove tags for any stream numbers removed from the window
-		for (long streamNumber : change.getRemoved()) {
-			if (streamNumber == tagCtx.streamNumber) continue;
-			byte[] removeTag = new byte[TAG_LENGTH];
-			transportCrypto.encodeTag(removeTag, inKeys.getTagKey(),
-					PROTOCOL_VERSION, streamNumber);
-			inContexts.remove(new Bytes(removeTag));
+		windowUpdater.recognised = tagCtx;
+		try {
+			window.setSeen(tagCtx.streamNumber, windowUpdater);
+		} finally {
+			windowUpdater.recognised = null;
 		}
 		// Write the window back to the DB
 		db.setReorderingWindow(txn, tagCtx.keySetId, transportId,
@@ -483,12 +493,18 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 						ks.getKeys().snapshot()));
 			}
 			UpdateResult updateResult = updateKeys(snapshot, now);
-			// Rebuild the mutable state for all contacts
-			inContexts.clear();
+			// Rebuild the mutable state for all contacts. The tag table is
+			// updated in place rather than cleared, so that lock-free lookups
+			// don't miss tags that are still valid
+			Map<Bytes, TagContext> oldInContexts = new HashMap<>(inContexts);
 			contactOutContexts.clear();
 			pendingContactOutContexts.clear();
 			keys.clear();
 			addKeys(updateResult.current);
+			// Remove any tags that weren't replaced by the new keys
+			for (Entry<Bytes, TagContext> e : oldInContexts.entrySet()) {
+				inContexts.remove(e.getKey(), e.getValue());
+			}
 			// Write any updated keys back to the DB
 			if (!updateResult.updated.isEmpty())
 				db.updateTransportKeys(txn, updateResult.updated);
@@ -524,6 +540,43 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 		}
 	}
 
+	/**
+	 * Updates the expected incoming tags when a tag is recognised. The same
+	 * instance is used for every recognised tag.
+	 */
+	@NotThreadSafe
+	private class WindowUpdater implements ChangeListener {
+
+		@GuardedBy("lock")
+		@Nullable
+		private TagContext recognised = null;
+
+		@Override
+		@GuardedBy("lock")
+		public void onAdded(long streamNumber) {
+			TagContext tagCtx = requireNonNull(recognised);
+			byte[] addTag = new byte[TAG_LENGTH];
+			transportCrypto.encodeTag(addTag, tagCtx.inKeys.getTagKey(),
+					PROTOCOL_VERSION, streamNumber);
+			TagContext tagCtx1 = new TagContext(tagCtx.keySetId,
+					tagCtx.contactId, tagCtx.pendingContactId, tagCtx.inKeys,
+					streamNumber, tagCtx.handshakeMode);
+			inContexts.put(new Bytes(addTag), tagCtx1);
+		}
+
+		@Override
+		@GuardedBy("lock")
+		public void onRemoved(long streamNumber) {
+			TagContext tagCtx = requireNonNull(recognised);
+			// The recognised tag has already been removed
+			if (streamNumber == tagCtx.streamNumber) return;
+			byte[] removeTag = new byte[TAG_LENGTH];
+			transportCrypto.encodeTag(removeTag, tagCtx.inKeys.getTagKey(),
+					PROTOCOL_VERSION, streamNumber);
+			inContexts.remove(new Bytes(removeTag));
+		}
+	}
+
 	private static class UpdateResult {
 
 		private final Collection<TransportKeySet> current = new ArrayList<>();
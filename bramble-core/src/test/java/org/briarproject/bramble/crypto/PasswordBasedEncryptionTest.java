@@ -5,6 +5,7 @@ import org.briarproject.bramble.api.crypto.KeyStrengthener;
 import org.briarproject.bramble.api.crypto.SecretKey;
 import org.briarproject.bramble.system.SystemClock;
 import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.bramble.test.ImmediateExecutor;
 import org.briarproject.bramble.test.TestSecureRandomProvider;
 import org.jmock.Expectations;
 import org.junit.Test;
@@ -25,7 +26,7 @@ public class PasswordBasedEncryptionTest extends BrambleMockTestCase {
 
 	private final CryptoComponentImpl crypto =
 			new CryptoComponentImpl(new TestSecureRandomProvider(),
-					new ScryptKdf(new SystemClock()));
+					new ScryptKdf(new SystemClock(), new ImmediateExecutor()));
 
 	@Test
 	public void testEncryptionAndDecryption() throws Exception {
@@ -36,6 +37,38 @@ public class PasswordBasedEncryptionTest extends BrambleMockTestCase {
 		assertArrayEquals(input, output);
 	}
 
+	@Test
+	public void testEncryptionAndDecryptionWithParallelization()
+			throws Exception {
+		testEncryptionAndDecryption(4, (byte) 2);
+	}
+
+	@Test
+	public void testEncryptionAndDecryptionWithoutParallelization()
+			throws Exception {
+		// Without parallelization the original format should be used
+		testEncryptionAndDecryption(1, (byte) 0);
+	}
+
+	private void testEncryptionAndDecryption(int parallelization,
+			byte formatVersion) throws Exception {
+		PasswordBasedKdf kdf = new ScryptKdf(new SystemClock(),
+				new ImmediateExecutor()) {
+			@Override
+			public int chooseParallelizationParameter() {
+				return parallelization;
+			}
+		};
+		CryptoComponentImpl crypto =
+				new CryptoComponentImpl(new TestSecureRandomProvider(), kdf);
+		byte[] input = getRandomBytes(1234);
+		String password = "password";
+		byte[] ciphertext = crypto.encryptWithPassword(input, password, null);
+		assertEquals(formatVersion, ciphertext[0]);
+		byte[] output = crypto.decryptWithPassword(ciphertext, password, null);
+		assertArrayEquals(input, output);
+	}
+
 	@Test
 	public void testInvalidFormatVersionThrowsException() {
 		byte[] input = getRandomBytes(1234);
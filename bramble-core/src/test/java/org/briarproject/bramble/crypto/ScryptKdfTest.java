@@ -1,55 +1,65 @@
 package org.briarproject.bramble.crypto;
 
+import org.bouncycastle.crypto.generators.SCrypt;
 import org.briarproject.bramble.api.Bytes;
 import org.briarproject.bramble.api.crypto.SecretKey;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.bramble.system.SystemClock;
 import org.briarproject.bramble.test.ArrayClock;
 import org.briarproject.bramble.test.BrambleTestCase;
+import org.briarproject.bramble.test.ImmediateExecutor;
 import org.junit.Test;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
 import static org.briarproject.bramble.util.StringUtils.getRandomString;
+import static org.briarproject.bramble.util.StringUtils.toUtf8;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 public class ScryptKdfTest extends BrambleTestCase {
 
 	@Test
 	public void testPasswordAffectsKey() throws Exception {
-		PasswordBasedKdf kdf = new ScryptKdf(new SystemClock());
+		PasswordBasedKdf kdf = new ScryptKdf(new SystemClock(),
+				new ImmediateExecutor());
 		byte[] salt = getRandomBytes(32);
 		Set<Bytes> keys = new HashSet<>();
 		for (int i = 0; i < 100; i++) {
 			String password = getRandomString(16);
-			SecretKey key = kdf.deriveKey(password, salt, 256);
+			SecretKey key = kdf.deriveKey(password, salt, 256, 1);
 			assertTrue(keys.add(new Bytes(key.getBytes())));
 		}
 	}
 
 	@Test
 	public void testSaltAffectsKey() throws Exception {
-		PasswordBasedKdf kdf = new ScryptKdf(new SystemClock());
+		PasswordBasedKdf kdf = new ScryptKdf(new SystemClock(),
+				new ImmediateExecutor());
 		String password = getRandomString(16);
 		Set<Bytes> keys = new HashSet<>();
 		for (int i = 0; i < 100; i++) {
 			byte[] salt = getRandomBytes(32);
-			SecretKey key = kdf.deriveKey(password, salt, 256);
+			SecretKey key = kdf.deriveKey(password, salt, 256, 1);
 			assertTrue(keys.add(new Bytes(key.getBytes())));
 		}
 	}
 
 	@Test
 	public void testCostParameterAffectsKey() throws Exception {
-		PasswordBasedKdf kdf = new ScryptKdf(new SystemClock());
+		PasswordBasedKdf kdf = new ScryptKdf(new SystemClock(),
+				new ImmediateExecutor());
 		String password = getRandomString(16);
 		byte[] salt = getRandomBytes(32);
 		Set<Bytes> keys = new HashSet<>();
 		for (int cost = 2; cost <= 256; cost *= 2) {
-			SecretKey key = kdf.deriveKey(password, salt, cost);
+			SecretKey key = kdf.deriveKey(password, salt, cost, 1);
 			assertTrue(keys.add(new Bytes(key.getBytes())));
 		}
 	}
@@ -63,8 +73,8 @@ public class ScryptKdfTest extends BrambleTestCase {
 				0, 400, // Duration for cost 2048
 				0, 800 // Duration for cost 4096
 		);
-		PasswordBasedKdf kdf = new ScryptKdf(clock);
-		assertEquals(4096, kdf.chooseCostParameter());
+		PasswordBasedKdf kdf = new ScryptKdf(clock, new ImmediateExecutor());
+		assertEquals(4096, kdf.chooseCostParameter(1));
 	}
 
 	@Test
@@ -72,7 +82,54 @@ public class ScryptKdfTest extends BrambleTestCase {
 		Clock clock = new ArrayClock(
 				0, 2000 // Duration for cost 256 is already too high
 		);
-		PasswordBasedKdf kdf = new ScryptKdf(clock);
-		assertEquals(256, kdf.chooseCostParameter());
+		PasswordBasedKdf kdf = new ScryptKdf(clock, new ImmediateExecutor());
+		assertEquals(256, kdf.chooseCostParameter(1));
+	}
+
+	@Test
+	public void testParallelizationParameterAffectsKey() throws Exception {
+		PasswordBasedKdf kdf = new ScryptKdf(new SystemClock(),
+				new ImmediateExecutor());
+		String password = getRandomString(16);
+		byte[] salt = getRandomBytes(32);
+		Set<Bytes> keys = new HashSet<>();
+		for (int parallelization = 1; parallelization <= 8;
+				parallelization++) {
+			SecretKey key = kdf.deriveKey(password, salt, 256,
+					parallelization);
+			assertTrue(keys.add(new Bytes(key.getBytes())));
+		}
+	}
+
+	@Test
+	public void testParallelKeyDerivationMatchesScrypt() throws Exception {
+		ExecutorService executor = newFixedThreadPool(3);
+		try {
+			PasswordBasedKdf kdf = new ScryptKdf(new SystemClock(), executor);
+			String password = getRandomString(16);
+			byte[] salt = getRandomBytes(32);
+			for (int parallelization = 1; parallelization <= 8;
+					parallelization++) {
+				byte[] expected = SCrypt.generate(toUtf8(password), salt,
+						1024, 8, parallelization, SecretKey.LENGTH);
+				SecretKey key = kdf.deriveKey(password, salt, 1024,
+						parallelization);
+				assertArrayEquals(expected, key.getBytes());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testParallelCalibration() throws Exception {
+		Clock clock = new ArrayClock(
+				0, 100, // Duration for cost 256
+				0, 200, // Duration for cost 512
+				0, 400, // Duration for cost 1024
+				0, 800 // Duration for cost 2048
+		);
+		PasswordBasedKdf kdf = new ScryptKdf(clock, new ImmediateExecutor());
+		assertEquals(2048, kdf.chooseCostParameter(4));
 	}
 }
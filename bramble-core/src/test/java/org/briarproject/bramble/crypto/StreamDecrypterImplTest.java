@@ -8,7 +8,9 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import static junit.framework.Assert.assertEquals;
 import static org.briarproject.bramble.api.transport.TransportConstants.FRAME_HEADER_LENGTH;
@@ -284,6 +286,48 @@ public class StreamDecrypterImplTest extends BrambleTestCase {
 		assertEquals(-1, s.readFrame(buffer));
 	}
 
+	@Test
+	public void testReadValidFramesWithReadAhead() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(streamHeaderNonce);
+		out.write(protocolVersionBytes);
+		out.write(streamNumberBytes);
+		out.write(frameKey.getBytes());
+		out.write(new byte[MAC_LENGTH]);
+		byte[][] payloads = new byte[5][];
+		for (int i = 0; i < payloads.length; i++) {
+			payloads[i] = TestUtils.getRandomBytes(100 * (i + 1));
+			byte[] frameHeader = new byte[FRAME_HEADER_LENGTH];
+			FrameEncoder.encodeHeader(frameHeader, i == payloads.length - 1,
+					payloads[i].length, paddingLength);
+			out.write(frameHeader);
+			out.write(payloads[i]);
+			out.write(new byte[paddingLength]);
+			out.write(new byte[MAC_LENGTH]);
+		}
+
+		// Return no more than 300 bytes per read, so frames are split
+		// across reads and the buffer has to be compacted
+		InputStream in = new FilterInputStream(
+				new ByteArrayInputStream(out.toByteArray())) {
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return super.read(b, off, Math.min(len, 300));
+			}
+		};
+		StreamDecrypterImpl s = new StreamDecrypterImpl(in, cipher,
+				streamNumber, streamHeaderKey, 3);
+
+		byte[] buffer = new byte[MAX_PAYLOAD_LENGTH];
+		for (byte[] p : payloads) {
+			assertEquals(p.length, s.readFrame(buffer));
+			assertArrayStartsWith(p, buffer, p.length);
+		}
+
+		// End of stream
+		assertEquals(-1, s.readFrame(buffer));
+	}
+
 	private static void assertArrayStartsWith(byte[] expected, byte[] actual,
 			int len) {
 		byte[] prefix = new byte[len];
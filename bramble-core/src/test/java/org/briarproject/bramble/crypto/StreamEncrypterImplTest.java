@@ -417,4 +417,54 @@ public class StreamEncrypterImplTest extends BrambleTestCase {
 
 		assertArrayEquals(expected.toByteArray(), out.toByteArray());
 	}
+
+	@Test
+	public void testBuffersFramesUntilFlushed() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StreamEncrypterImpl s = new StreamEncrypterImpl(out, cipher,
+				streamNumber, tag, streamHeaderNonce, streamHeaderKey,
+				frameKey, 4);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		StreamEncrypterImpl unbuffered = new StreamEncrypterImpl(expected,
+				cipher, streamNumber, tag, streamHeaderNonce, streamHeaderKey,
+				frameKey);
+
+		// Write two non-final frames
+		s.writeFrame(payload, payloadLength, paddingLength, false);
+		s.writeFrame(payload, payloadLength, 0, false);
+		unbuffered.writeFrame(payload, payloadLength, paddingLength, false);
+		unbuffered.writeFrame(payload, payloadLength, 0, false);
+
+		// Nothing should have been written yet
+		assertEquals(0, out.size());
+
+		// Flushing should write the same bytes as the unbuffered encrypter
+		s.flush();
+		assertArrayEquals(expected.toByteArray(), out.toByteArray());
+	}
+
+	@Test
+	public void testWritesBufferedFramesWhenFullOrFinal() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StreamEncrypterImpl s = new StreamEncrypterImpl(out, cipher,
+				streamNumber, tag, streamHeaderNonce, streamHeaderKey,
+				frameKey, 2);
+
+		// The first full-size frame should be buffered
+		byte[] bigPayload = new byte[MAX_PAYLOAD_LENGTH];
+		s.writeFrame(bigPayload, MAX_PAYLOAD_LENGTH, 0, false);
+		assertEquals(0, out.size());
+
+		// There's no room for a third full-size frame, so the buffer should
+		// be written after the second frame
+		s.writeFrame(bigPayload, MAX_PAYLOAD_LENGTH, 0, false);
+		assertEquals(TAG_LENGTH + STREAM_HEADER_LENGTH + 2 * MAX_FRAME_LENGTH,
+				out.size());
+
+		// The final frame should be written without flushing
+		s.writeFrame(payload, payloadLength, 0, true);
+		assertEquals(TAG_LENGTH + STREAM_HEADER_LENGTH + 2 * MAX_FRAME_LENGTH
+						+ FRAME_HEADER_LENGTH + payloadLength + MAC_LENGTH,
+				out.size());
+	}
 }
@@ -9,6 +9,7 @@ import org.briarproject.bramble.api.contact.event.ContactRemovedEvent;
 import org.briarproject.bramble.api.crypto.PrivateKey;
 import org.briarproject.bramble.api.crypto.PublicKey;
 import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.db.ConnectionPoolStats;
 import org.briarproject.bramble.api.db.ContactExistsException;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.Metadata;
@@ -161,8 +162,15 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 	private DatabaseComponent createDatabaseComponent(Database<Object> database,
 			EventBus eventBus, Executor eventExecutor,
 			ShutdownManager shutdownManager) {
+		return createDatabaseComponent(database, eventBus, eventExecutor,
+				shutdownManager, false);
+	}
+
+	private DatabaseComponent createDatabaseComponent(Database<Object> database,
+			EventBus eventBus, Executor eventExecutor,
+			ShutdownManager shutdownManager, boolean concurrentReads) {
 		return new DatabaseComponentImpl<>(database, Object.class, eventBus,
-				eventExecutor, shutdownManager);
+				eventExecutor, shutdownManager, concurrentReads);
 	}
 
 	@Test
@@ -1774,6 +1782,18 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 		testCannotStartTransactionDuringTransaction(false, false);
 	}
 
+	@Test(expected = IllegalStateException.class)
+	public void testCannotStartReadTransactionDuringPooledReadTransaction()
+			throws Exception {
+		testCannotStartTransactionDuringPooledReadTransaction(true);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testCannotStartWriteTransactionDuringPooledReadTransaction()
+			throws Exception {
+		testCannotStartTransactionDuringPooledReadTransaction(false);
+	}
+
 	private void testCannotStartTransactionDuringTransaction(
 			boolean firstTxnReadOnly, boolean secondTxnReadOnly)
 			throws Exception {
@@ -1790,6 +1810,22 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 		fail();
 	}
 
+	private void testCannotStartTransactionDuringPooledReadTransaction(
+			boolean secondTxnReadOnly) throws Exception {
+		context.checking(new Expectations() {{
+			oneOf(database).startReadOnlyTransaction();
+			will(returnValue(txn));
+		}});
+
+		// The read-only transaction doesn't hold the database lock
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager, true);
+
+		assertNotNull(db.startTransaction(true));
+		db.startTransaction(secondTxnReadOnly);
+		fail();
+	}
+
 	@Test
 	public void testCannotAddLocalIdentityAsContact() throws Exception {
 		context.checking(new Expectations() {{
@@ -1954,6 +1990,55 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 		});
 	}
 
+	@Test
+	public void testReadOnlyTransactionsUseReadOnlyPool() throws Exception {
+		context.checking(new Expectations() {{
+			// The read-only transaction uses the read-only pool
+			oneOf(database).startReadOnlyTransaction();
+			will(returnValue(txn));
+			oneOf(database).commitTransaction(txn);
+			// The read-write transaction uses the read-write connection
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).commitTransaction(txn);
+			// getConnectionPoolStats()
+			oneOf(database).getIdleConnections();
+			will(returnValue(1));
+			oneOf(database).getIdleReadOnlyConnections();
+			will(returnValue(2));
+		}});
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager, true);
+
+		// The read-only transaction doesn't hold the database lock, so a
+		// read-write transaction can start on another thread while it's in
+		// progress
+		AtomicReference<Exception> error = new AtomicReference<>();
+		db.transaction(true, readTxn -> {
+			Thread t = new Thread(() -> {
+				try {
+					db.transaction(false, writeTxn -> {
+					});
+				} catch (Exception e) {
+					error.set(e);
+				}
+			});
+			t.start();
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				throw new AssertionError(e);
+			}
+		});
+		assertNull(error.get());
+
+		ConnectionPoolStats stats = db.getConnectionPoolStats();
+		assertEquals(2, stats.getCheckouts());
+		assertEquals(1, stats.getReadOnlyCheckouts());
+		assertEquals(1, stats.getIdleConnections());
+		assertEquals(2, stats.getIdleReadOnlyConnections());
+	}
+
 	private static class TestEvent extends Event {
 	}
 }
@@ -382,6 +382,43 @@ public abstract class DatabasePerformanceTest extends BrambleTestCase {
 		});
 	}
 
+	@Test
+	public void testGetMessageMetadataWithMatchingQuery() throws Exception {
+		String name = "getMessageMetadata(T, GroupId, Metadata) [match]";
+		benchmark(name, db -> {
+			Connection txn = db.startTransaction();
+			GroupId g = pickRandom(groups).getId();
+			db.getMessageMetadata(txn, g, pickRandom(messageMeta.get(g)));
+			db.commitTransaction(txn);
+		});
+	}
+
+	@Test
+	public void testGetMessageMetadataWithPartialMatchingQuery()
+			throws Exception {
+		String name = "getMessageMetadata(T, GroupId, Metadata) [partial]";
+		benchmark(name, db -> {
+			Connection txn = db.startTransaction();
+			GroupId g = pickRandom(groups).getId();
+			// One term matches a message, the other doesn't match anything
+			Metadata query = getMetadata(1);
+			query.putAll(getMetadataSubset(pickRandom(messageMeta.get(g))));
+			db.getMessageMetadata(txn, g, query);
+			db.commitTransaction(txn);
+		});
+	}
+
+	@Test
+	public void testGetMessageMetadataWithNonMatchingQuery() throws Exception {
+		String name = "getMessageMetadata(T, GroupId, Metadata) [no match]";
+		benchmark(name, db -> {
+			Connection txn = db.startTransaction();
+			Metadata query = getMetadata(METADATA_KEYS_PER_MESSAGE);
+			db.getMessageMetadata(txn, pickRandom(groups).getId(), query);
+			db.commitTransaction(txn);
+		});
+	}
+
 	@Test
 	public void testGetMessageMetadataByMessageId() throws Exception {
 		String name = "getMessageMetadata(T, MessageId)";
@@ -532,6 +569,29 @@ public abstract class DatabasePerformanceTest extends BrambleTestCase {
 		});
 	}
 
+	@Test
+	public void testRaiseSeenFlag() throws Exception {
+		String name = "raiseSeenFlag(T, ContactId, MessageId)";
+		benchmark(name, db -> {
+			Connection txn = db.startTransaction();
+			ContactId c = pickRandom(contacts).getId();
+			GroupId g = pickRandom(contactGroups.get(c)).getId();
+			db.raiseSeenFlag(txn, c, pickRandom(groupMessages.get(g)));
+			db.commitTransaction(txn);
+		});
+	}
+
+	@Test
+	public void testSetMessageShared() throws Exception {
+		String name = "setMessageShared(T, MessageId, boolean)";
+		benchmark(name, db -> {
+			Connection txn = db.startTransaction();
+			db.setMessageShared(txn, pickRandom(messages).getId(),
+					random.nextBoolean());
+			db.commitTransaction(txn);
+		});
+	}
+
 	private <T> T pickRandom(List<T> list) {
 		return list.get(random.nextInt(list.size()));
 	}
@@ -633,6 +693,15 @@ public abstract class DatabasePerformanceTest extends BrambleTestCase {
 		return meta;
 	}
 
+	private Metadata getMetadataSubset(Metadata meta) {
+		Metadata subset = new Metadata();
+		for (Map.Entry<String, byte[]> e : meta.entrySet()) {
+			subset.put(e.getKey(), e.getValue());
+			break;
+		}
+		return subset;
+	}
+
 	long measureOne(Database<Connection> db,
 			BenchmarkTask<Database<Connection>> task) throws Exception {
 		long start = System.nanoTime();
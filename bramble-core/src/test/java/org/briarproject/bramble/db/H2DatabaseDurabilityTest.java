@@ -0,0 +1,168 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.db.DatabaseConfig;
+import org.briarproject.bramble.api.db.DatabaseDurability;
+import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.system.SystemClock;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.briarproject.bramble.test.TestDatabaseConfig;
+import org.briarproject.bramble.test.TestMessageFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import static org.briarproject.bramble.api.db.DatabaseDurability.GROUP_COMMIT;
+import static org.briarproject.bramble.api.db.DatabaseDurability.RELAXED;
+import static org.briarproject.bramble.api.db.DatabaseDurability.STRICT;
+import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getClientId;
+import static org.briarproject.bramble.test.TestUtils.getGroup;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class H2DatabaseDurabilityTest extends BrambleTestCase {
+
+	private final SecretKey key = getSecretKey();
+	private final File testDir = getTestDirectory();
+	private final Group group = getGroup(getClientId(), 123);
+	private final GroupId groupId = group.getId();
+	private final Group group1 = getGroup(getClientId(), 123);
+
+	@Before
+	public void setUp() {
+		assertTrue(testDir.mkdirs());
+	}
+
+	@After
+	public void tearDown() {
+		deleteTestDirectory(testDir);
+	}
+
+	@Test
+	public void testStrictModeRecoversCommittedTransactionAfterCrash()
+			throws Exception {
+		testCrashRecovery(STRICT);
+	}
+
+	@Test
+	public void testGroupCommitModeRecoversCommittedTransactionAfterCrash()
+			throws Exception {
+		testCrashRecovery(GROUP_COMMIT);
+	}
+
+	@Test
+	public void testRelaxedModeRecoversCommittedTransactionAfterCrash()
+			throws Exception {
+		testCrashRecovery(RELAXED);
+	}
+
+	@Test
+	public void testRelaxedModeMayLoseLastTransactionAfterCrash()
+			throws Exception {
+		DatabaseConfig config = new TestDatabaseConfig(testDir, RELAXED, false);
+		H2Database db = open(config);
+		Connection txn = db.startTransaction();
+		db.addGroup(txn, group);
+		db.commitTransaction(txn);
+
+		// Wait for the first transaction to be written to disk
+		Thread.sleep(RELAXED.getMaxWriteDelay() * 2);
+
+		txn = db.startTransaction();
+		db.addGroup(txn, group1);
+		db.commitTransaction(txn);
+
+		// Close the database within the write delay, without writing any
+		// pending changes
+		Connection c = db.createConnection();
+		Statement s = c.createStatement();
+		s.execute("SHUTDOWN IMMEDIATELY");
+
+		// The database should be recovered. The first transaction should be
+		// visible, but the second may have been lost
+		db = open(config);
+		assertTrue(db.wasDirtyOnInitialisation());
+		txn = db.startTransaction();
+		assertTrue(db.containsGroup(txn, groupId));
+		db.commitTransaction(txn);
+		db.close();
+	}
+
+	@Test
+	public void testStrictModeWithIncrementalCompactionSurvivesClose()
+			throws Exception {
+		testClose(STRICT);
+	}
+
+	@Test
+	public void testGroupCommitModeWithIncrementalCompactionSurvivesClose()
+			throws Exception {
+		testClose(GROUP_COMMIT);
+	}
+
+	@Test
+	public void testRelaxedModeWithIncrementalCompactionSurvivesClose()
+			throws Exception {
+		testClose(RELAXED);
+	}
+
+	private void testCrashRecovery(DatabaseDurability durability)
+			throws Exception {
+		DatabaseConfig config =
+				new TestDatabaseConfig(testDir, durability, false);
+		H2Database db = open(config);
+		Connection txn = db.startTransaction();
+		db.addGroup(txn, group);
+		db.commitTransaction(txn);
+
+		// Wait for the transaction to be written to disk
+		Thread.sleep(durability.getMaxWriteDelay() * 2);
+
+		// Close the database without writing any pending changes
+		Connection c = db.createConnection();
+		Statement s = c.createStatement();
+		s.execute("SHUTDOWN IMMEDIATELY");
+
+		// The database should be recovered and the transaction should be
+		// visible
+		db = open(config);
+		assertTrue(db.wasDirtyOnInitialisation());
+		txn = db.startTransaction();
+		assertTrue(db.containsGroup(txn, groupId));
+		db.commitTransaction(txn);
+		db.close();
+	}
+
+	private void testClose(DatabaseDurability durability) throws Exception {
+		DatabaseConfig config =
+				new TestDatabaseConfig(testDir, durability, true);
+		H2Database db = open(config);
+		Connection txn = db.startTransaction();
+		db.addGroup(txn, group);
+		db.commitTransaction(txn);
+		// Closing the database should write any pending changes
+		db.close();
+
+		db = open(config);
+		assertFalse(db.wasDirtyOnInitialisation());
+		txn = db.startTransaction();
+		assertTrue(db.containsGroup(txn, groupId));
+		db.commitTransaction(txn);
+		db.close();
+	}
+
+	private H2Database open(DatabaseConfig config) throws Exception {
+		H2Database db = new H2Database(config, new TestMessageFactory(),
+				new SystemClock());
+		db.open(key, null);
+		return db;
+	}
+}
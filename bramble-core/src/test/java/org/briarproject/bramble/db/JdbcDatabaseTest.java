@@ -47,6 +47,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -59,6 +60,7 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.briarproject.bramble.api.db.DatabaseComponent.NO_CLEANUP_DEADLINE;
 import static org.briarproject.bramble.api.db.DatabaseComponent.TIMER_NOT_STARTED;
@@ -519,6 +521,77 @@ public abstract class JdbcDatabaseTest extends BrambleTestCase {
 		assertFalse(error.get());
 	}
 
+	@Test
+	public void testReadOnlyTransactionsRunConcurrentlyWithWriter()
+			throws Exception {
+		Database<Connection> db = open(false, 2);
+		Connection txn = db.startTransaction();
+		db.addGroup(txn, group);
+		db.commitTransaction(txn);
+
+		// Start a read-write transaction that adds a message
+		txn = db.startTransaction();
+		db.addMessage(txn, message, DELIVERED, true, false, null);
+
+		// Read-only transactions can start while the read-write transaction
+		// is in progress. They should see committed data but not the
+		// uncommitted message
+		Connection readTxn1 = db.startReadOnlyTransaction();
+		Connection readTxn2 = db.startReadOnlyTransaction();
+		assertTrue(db.containsGroup(readTxn1, groupId));
+		assertFalse(db.containsMessage(readTxn1, messageId));
+		assertTrue(db.containsGroup(readTxn2, groupId));
+		assertFalse(db.containsMessage(readTxn2, messageId));
+		db.commitTransaction(readTxn1);
+		db.commitTransaction(readTxn2);
+		assertEquals(2, db.getIdleReadOnlyConnections());
+
+		// Once the read-write transaction commits, the message is visible
+		db.commitTransaction(txn);
+		readTxn1 = db.startReadOnlyTransaction();
+		assertTrue(db.containsMessage(readTxn1, messageId));
+		db.commitTransaction(readTxn1);
+
+		// Connections from both pools should have been returned
+		assertEquals(1, db.getIdleConnections());
+		assertEquals(2, db.getIdleReadOnlyConnections());
+
+		db.close();
+	}
+
+	@Test
+	public void testReadOnlyTransactionWaitsForPooledConnection()
+			throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		AtomicBoolean firstTransactionFinished = new AtomicBoolean(false);
+		AtomicBoolean error = new AtomicBoolean(false);
+		Database<Connection> db = open(false, 1);
+
+		// Use the only connection in the read-only pool
+		Connection txn = db.startReadOnlyTransaction();
+		// In another thread, start a second read-only transaction
+		Thread reader = new Thread(() -> {
+			try {
+				Connection txn1 = db.startReadOnlyTransaction();
+				if (!firstTransactionFinished.get()) error.set(true);
+				db.commitTransaction(txn1);
+				started.countDown();
+			} catch (Exception e) {
+				error.set(true);
+			}
+		});
+		reader.start();
+		// The second transaction should not start until the first finishes
+		assertFalse(started.await(100, MILLISECONDS));
+		firstTransactionFinished.set(true);
+		db.commitTransaction(txn);
+		assertTrue(started.await(5, SECONDS));
+		// Check that the other thread didn't encounter an error
+		assertFalse(error.get());
+
+		db.close();
+	}
+
 	@Test
 	public void testUpdateSettings() throws Exception {
 		Database<Connection> db = open(false);
@@ -1250,6 +1323,51 @@ public abstract class JdbcDatabaseTest extends BrambleTestCase {
 		db.close();
 	}
 
+	@Test
+	public void testGroupMetadataForClient() throws Exception {
+		// Another group belonging to the same client, one belonging to
+		// another version of the client, and one with no metadata
+		Group group1 = getGroup(clientId, majorVersion);
+		Group group2 = getGroup(clientId, majorVersion + 1);
+		Group group3 = getGroup(clientId, majorVersion);
+
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add the groups
+		db.addGroup(txn, group);
+		db.addGroup(txn, group1);
+		db.addGroup(txn, group2);
+		db.addGroup(txn, group3);
+
+		// Attach some metadata to the first three groups
+		Metadata metadata = new Metadata();
+		metadata.put("foo", new byte[] {'b', 'a', 'r'});
+		Metadata metadata1 = new Metadata();
+		metadata1.put("foo", new byte[] {'b', 'a', 'z'});
+		metadata1.put("bam", new byte[] {'q', 'u', 'x'});
+		db.mergeGroupMetadata(txn, groupId, metadata);
+		db.mergeGroupMetadata(txn, group1.getId(), metadata1);
+		db.mergeGroupMetadata(txn, group2.getId(), metadata);
+
+		// Retrieve the metadata for the client's groups
+		Map<GroupId, Metadata> all =
+				db.getGroupMetadata(txn, clientId, majorVersion);
+		assertEquals(2, all.size());
+		Metadata retrieved = all.get(groupId);
+		assertNotNull(retrieved);
+		assertEquals(1, retrieved.size());
+		assertArrayEquals(metadata.get("foo"), retrieved.get("foo"));
+		retrieved = all.get(group1.getId());
+		assertNotNull(retrieved);
+		assertEquals(2, retrieved.size());
+		assertArrayEquals(metadata1.get("foo"), retrieved.get("foo"));
+		assertArrayEquals(metadata1.get("bam"), retrieved.get("bam"));
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
 	@Test
 	public void testMessageMetadata() throws Exception {
 		Database<Connection> db = open(false);
@@ -1483,6 +1601,43 @@ public abstract class JdbcDatabaseTest extends BrambleTestCase {
 		db.close();
 	}
 
+	@Test
+	public void testEmptyMetadataQueryReturnsMessagesWithoutMetadata()
+			throws Exception {
+		Message message1 = getMessage(groupId);
+		MessageId messageId1 = message1.getId();
+
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add a group and two messages, one of which has metadata
+		db.addGroup(txn, group);
+		db.addMessage(txn, message, DELIVERED, true, false, null);
+		db.addMessage(txn, message1, DELIVERED, true, false, null);
+		Metadata metadata = new Metadata();
+		metadata.put("foo", new byte[] {'b', 'a', 'r'});
+		db.mergeMessageMetadata(txn, messageId, metadata);
+
+		// An empty query should return both messages
+		Map<MessageId, Metadata> all =
+				db.getMessageMetadata(txn, groupId, new Metadata());
+		assertEquals(2, all.size());
+		assertMetadataEquals(metadata, all.get(messageId));
+		assertTrue(all.get(messageId1).isEmpty());
+		assertEquals(new HashSet<>(asList(messageId, messageId1)),
+				new HashSet<>(db.getMessageIds(txn, groupId, new Metadata())));
+
+		// A query that matches one of two terms should not match
+		Metadata query = new Metadata();
+		query.put("foo", new byte[] {'b', 'a', 'r'});
+		query.put("baz", new byte[] {'b', 'a', 'm'});
+		assertTrue(db.getMessageIds(txn, groupId, query).isEmpty());
+		assertTrue(db.getMessageMetadata(txn, groupId, query).isEmpty());
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
 	@Test
 	public void testMetadataQueriesOnlyForDeliveredMessages() throws Exception {
 		Message message1 = getMessage(groupId);
@@ -1547,6 +1702,79 @@ public abstract class JdbcDatabaseTest extends BrambleTestCase {
 		db.close();
 	}
 
+	@Test
+	public void testMessageMetadataPages() throws Exception {
+		// Add messages with timestamps 1, 2, 2, 3, and one at 4 without
+		// metadata
+		Message m1 = getMessage(groupId, 100, 1);
+		Message m2 = getMessage(groupId, 100, 2);
+		Message m3 = getMessage(groupId, 100, 2);
+		Message m4 = getMessage(groupId, 100, 3);
+		Message m5 = getMessage(groupId, 100, 4);
+
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		db.addGroup(txn, group);
+		Metadata foo = new Metadata();
+		foo.put("foo", new byte[] {'b', 'a', 'r'});
+		Metadata baz = new Metadata();
+		baz.put("baz", new byte[] {'b', 'a', 'm'});
+		for (Message m : asList(m1, m2, m3, m4, m5))
+			db.addMessage(txn, m, DELIVERED, true, false, null);
+		db.mergeMessageMetadata(txn, m1.getId(), foo);
+		db.mergeMessageMetadata(txn, m2.getId(), baz);
+		db.mergeMessageMetadata(txn, m3.getId(), foo);
+		db.mergeMessageMetadata(txn, m4.getId(), foo);
+
+		// The latest page should skip the message without metadata and
+		// include both messages that share the timestamp at the end
+		Metadata query = new Metadata();
+		List<MessageId> page = new ArrayList<>(db.getMessageMetadata(txn,
+				groupId, query, Long.MAX_VALUE, true, 2).keySet());
+		assertEquals(3, page.size());
+		assertEquals(m4.getId(), page.get(0));
+		assertEquals(new HashSet<>(asList(m2.getId(), m3.getId())),
+				new HashSet<>(page.subList(1, 3)));
+
+		// The next page should start after the shared timestamp
+		Map<MessageId, Metadata> next = db.getMessageMetadata(txn, groupId,
+				query, 2, true, 2);
+		assertEquals(singletonList(m1.getId()), new ArrayList<>(next.keySet()));
+		assertMetadataEquals(foo, next.get(m1.getId()));
+
+		// Pages in the other direction should be in ascending order
+		page = new ArrayList<>(db.getMessageMetadata(txn, groupId, query, 1,
+				false, 1).keySet());
+		assertEquals(2, page.size());
+		assertEquals(new HashSet<>(asList(m2.getId(), m3.getId())),
+				new HashSet<>(page));
+		page = new ArrayList<>(db.getMessageMetadata(txn, groupId, query, 0,
+				false, 10).keySet());
+		assertEquals(4, page.size());
+		assertEquals(m1.getId(), page.get(0));
+		assertEquals(new HashSet<>(asList(m2.getId(), m3.getId())),
+				new HashSet<>(page.subList(1, 3)));
+		assertEquals(m4.getId(), page.get(3));
+
+		// A query should only match messages with matching metadata
+		page = new ArrayList<>(db.getMessageMetadata(txn, groupId, foo,
+				Long.MAX_VALUE, true, 2).keySet());
+		assertEquals(asList(m4.getId(), m3.getId()), page);
+		page = new ArrayList<>(db.getMessageMetadata(txn, groupId, foo,
+				2, true, 2).keySet());
+		assertEquals(singletonList(m1.getId()), page);
+
+		// Messages that aren't delivered should not be included
+		db.setMessageState(txn, m4.getId(), PENDING);
+		page = new ArrayList<>(db.getMessageMetadata(txn, groupId, foo,
+				Long.MAX_VALUE, true, 1).keySet());
+		assertEquals(singletonList(m3.getId()), page);
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
 	private void assertMetadataEquals(Metadata m1, Metadata m2) {
 		assertEquals(m1.keySet(), m2.keySet());
 		for (Entry<String, byte[]> e : m1.entrySet()) {
@@ -2504,10 +2732,23 @@ public abstract class JdbcDatabaseTest extends BrambleTestCase {
 		return open(resume, new TestMessageFactory(), new SystemClock());
 	}
 
+	private Database<Connection> open(boolean resume,
+			int readOnlyConnectionPoolSize) throws Exception {
+		return open(resume, new TestMessageFactory(), new SystemClock(),
+				readOnlyConnectionPoolSize);
+	}
+
 	private Database<Connection> open(boolean resume,
 			MessageFactory messageFactory, Clock clock) throws Exception {
+		return open(resume, messageFactory, clock, 0);
+	}
+
+	private Database<Connection> open(boolean resume,
+			MessageFactory messageFactory, Clock clock,
+			int readOnlyConnectionPoolSize) throws Exception {
 		Database<Connection> db = createDatabase(
-				new TestDatabaseConfig(testDir), messageFactory, clock);
+				new TestDatabaseConfig(testDir, readOnlyConnectionPoolSize),
+				messageFactory, clock);
 		if (!resume) deleteTestDirectory(testDir);
 		db.open(key, null);
 		return db;
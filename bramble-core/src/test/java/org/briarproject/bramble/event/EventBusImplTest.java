@@ -0,0 +1,145 @@
+package org.briarproject.bramble.event;
+
+import org.briarproject.bramble.api.event.Event;
+import org.briarproject.bramble.api.event.EventBus;
+import org.briarproject.bramble.api.event.EventBusStats;
+import org.briarproject.bramble.api.event.EventListener;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.briarproject.bramble.test.ImmediateExecutor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EventBusImplTest extends BrambleTestCase {
+
+	private final EventBus eventBus =
+			new EventBusImpl(new ImmediateExecutor());
+
+	@Test
+	public void testUnfilteredListenerReceivesAllEvents() {
+		RecordingListener listener = new RecordingListener();
+		eventBus.addListener(listener);
+
+		Event a = new EventA(), b = new EventB(), c = new SubEventA();
+		eventBus.broadcast(a);
+		eventBus.broadcast(b);
+		eventBus.broadcast(c);
+
+		assertEquals(asList(a, b, c), listener.events);
+	}
+
+	@Test
+	public void testFilteredListenerReceivesOnlySubscribedTypes() {
+		RecordingListener listener = new RecordingListener();
+		eventBus.addListener(listener, singletonList(EventA.class));
+
+		Event a = new EventA(), b = new EventB(), c = new SubEventA();
+		eventBus.broadcast(a);
+		eventBus.broadcast(b);
+		eventBus.broadcast(c);
+
+		// Subtypes of the subscribed type should be delivered
+		assertEquals(asList(a, c), listener.events);
+	}
+
+	@Test
+	public void testListenersAreNotifiedInOrderAdded() {
+		List<String> calls = new ArrayList<>();
+		eventBus.addListener(e -> calls.add("first"));
+		eventBus.addListener(e -> calls.add("second"),
+				singletonList(EventA.class));
+		eventBus.addListener(e -> calls.add("third"));
+
+		eventBus.broadcast(new EventA());
+
+		assertEquals(asList("first", "second", "third"), calls);
+	}
+
+	@Test
+	public void testRemovedListenerIsNotNotified() {
+		RecordingListener filtered = new RecordingListener();
+		RecordingListener unfiltered = new RecordingListener();
+		eventBus.addListener(filtered, singletonList(EventA.class));
+		eventBus.addListener(unfiltered);
+
+		// Dispatch once so the listeners for EventA are cached
+		Event a = new EventA();
+		eventBus.broadcast(a);
+		eventBus.removeListener(filtered);
+		eventBus.broadcast(new EventA());
+
+		assertEquals(singletonList(a), filtered.events);
+		assertEquals(2, unfiltered.events.size());
+	}
+
+	@Test
+	public void testListenerAddedAfterDispatchIsNotified() {
+		RecordingListener first = new RecordingListener();
+		eventBus.addListener(first, singletonList(EventA.class));
+		eventBus.broadcast(new EventA());
+
+		RecordingListener second = new RecordingListener();
+		eventBus.addListener(second, singletonList(EventA.class));
+		Event a = new EventA();
+		eventBus.broadcast(a);
+
+		assertEquals(2, first.events.size());
+		assertEquals(singletonList(a), second.events);
+	}
+
+	@Test
+	public void testStatsCountQueuedAndDeliveredEvents() {
+		List<Runnable> tasks = new ArrayList<>();
+		Executor queueingExecutor = tasks::add;
+		EventBus eventBus = new EventBusImpl(queueingExecutor);
+		eventBus.addListener(new RecordingListener());
+		eventBus.addListener(new RecordingListener(),
+				singletonList(EventB.class));
+
+		eventBus.broadcast(new EventA());
+		eventBus.broadcast(new EventB());
+
+		EventBusStats stats = eventBus.getStats();
+		assertEquals(2, stats.getQueuedEvents());
+		assertEquals(2, stats.getMaxQueuedEvents());
+		assertEquals(0, stats.getDispatchedEvents());
+		assertEquals(0, stats.getDeliveries());
+
+		for (Runnable task : tasks) task.run();
+
+		stats = eventBus.getStats();
+		assertEquals(0, stats.getQueuedEvents());
+		assertEquals(2, stats.getMaxQueuedEvents());
+		assertEquals(2, stats.getDispatchedEvents());
+		// The filtered listener should only receive EventB
+		assertEquals(3, stats.getDeliveries());
+		assertTrue(stats.getQueueTime() >= 0);
+		assertTrue(stats.getDispatchTime() >= 0);
+	}
+
+	private static class EventA extends Event {
+	}
+
+	private static class SubEventA extends EventA {
+	}
+
+	private static class EventB extends Event {
+	}
+
+	private static class RecordingListener implements EventListener {
+
+		private final List<Event> events = new ArrayList<>();
+
+		@Override
+		public void eventOccurred(Event e) {
+			events.add(e);
+		}
+	}
+}
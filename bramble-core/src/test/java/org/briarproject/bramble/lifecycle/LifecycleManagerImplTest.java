@@ -6,6 +6,8 @@ import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager.OpenDatabaseHook;
 import org.briarproject.bramble.api.lifecycle.Service;
+import org.briarproject.bramble.api.lifecycle.ServiceException;
+import org.briarproject.bramble.api.lifecycle.StartupStats;
 import org.briarproject.bramble.api.lifecycle.event.LifecycleEvent;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.bramble.test.BrambleMockTestCase;
@@ -13,16 +15,34 @@ import org.briarproject.bramble.test.DbExpectations;
 import org.jmock.Expectations;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.synchronizedList;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.RUNNING;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.STARTING;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.STOPPED;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.ALREADY_RUNNING;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.CLOCK_ERROR;
+import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.SERVICE_ERROR;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.SUCCESS;
 import static org.briarproject.bramble.api.system.Clock.MAX_REASONABLE_TIME_MS;
 import static org.briarproject.bramble.api.system.Clock.MIN_REASONABLE_TIME_MS;
 import static org.briarproject.bramble.test.TestUtils.getSecretKey;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class LifecycleManagerImplTest extends BrambleMockTestCase {
 
@@ -173,4 +193,155 @@ public class LifecycleManagerImplTest extends BrambleMockTestCase {
 		lifecycleManager.stopServices();
 		assertEquals(STOPPED, lifecycleManager.getLifecycleState());
 	}
+
+	@Test
+	public void testIndependentServicesAreStartedConcurrently()
+			throws Exception {
+		expectOpenDatabase();
+
+		// The first service can't finish starting until the second service
+		// has started, so startup only succeeds if they run concurrently
+		CountDownLatch latch = new CountDownLatch(1);
+		lifecycleManager.registerService(new TestService(() -> {
+			if (!latch.await(10, SECONDS)) throw new ServiceException();
+		}), emptyList());
+		lifecycleManager.registerService(new TestService(latch::countDown),
+				emptyList());
+
+		assertEquals(SUCCESS, lifecycleManager.startServices(dbKey));
+		assertEquals(RUNNING, lifecycleManager.getLifecycleState());
+	}
+
+	@Test
+	public void testServicesAreStartedAfterTheirDependencies()
+			throws Exception {
+		expectOpenDatabase();
+
+		List<String> started = synchronizedList(new ArrayList<>());
+		Service first = new TestService(() -> started.add("first"));
+		Service second = new TestService(() -> started.add("second"));
+		Service third = new TestService(() -> started.add("third"));
+		lifecycleManager.registerService(first, emptyList());
+		lifecycleManager.registerService(second, singletonList(first));
+		// The third service depends on all previously registered services
+		lifecycleManager.registerService(third);
+
+		assertEquals(SUCCESS, lifecycleManager.startServices(dbKey));
+		assertEquals(asList("first", "second", "third"), started);
+
+		StartupStats stats = lifecycleManager.getStartupStats();
+		assertNotNull(stats);
+		// Startup times are keyed by class name, so the three services share
+		// a single entry
+		assertEquals(singleton(TestService.class.getSimpleName()),
+				stats.getServiceStartupTimes().keySet());
+	}
+
+	@Test
+	public void testDependentServicesAreNotStartedIfServiceFails()
+			throws Exception {
+		expectOpenDatabase();
+
+		AtomicBoolean dependentStarted = new AtomicBoolean(false);
+		Service failing = new TestService(() -> {
+			throw new ServiceException();
+		});
+		lifecycleManager.registerService(failing, emptyList());
+		lifecycleManager.registerService(new TestService(() ->
+				dependentStarted.set(true)), singletonList(failing));
+
+		assertEquals(SERVICE_ERROR, lifecycleManager.startServices(dbKey));
+		assertFalse(dependentStarted.get());
+		assertNull(lifecycleManager.getStartupStats());
+	}
+
+	@Test
+	public void testStartupWaitsForRunningServicesIfServiceFails()
+			throws Exception {
+		expectOpenDatabase();
+
+		// The second service fails while the first service is still
+		// starting, so startup must wait for the first service to finish
+		CountDownLatch firstStarting = new CountDownLatch(1);
+		AtomicBoolean firstFinished = new AtomicBoolean(false);
+		lifecycleManager.registerService(new TestService(() -> {
+			firstStarting.countDown();
+			Thread.sleep(100);
+			firstFinished.set(true);
+		}), emptyList());
+		lifecycleManager.registerService(new TestService(() -> {
+			if (!firstStarting.await(10, SECONDS))
+				throw new AssertionError();
+			throw new ServiceException();
+		}), emptyList());
+
+		assertEquals(SERVICE_ERROR, lifecycleManager.startServices(dbKey));
+		assertTrue(firstFinished.get());
+	}
+
+	@Test
+	public void testErrorFromServiceIsRethrown() throws Exception {
+		expectOpenDatabase();
+
+		Error error = new Error();
+		lifecycleManager.registerService(new TestService(() -> {
+			throw error;
+		}), emptyList());
+
+		try {
+			lifecycleManager.startServices(dbKey);
+			fail();
+		} catch (Error expected) {
+			assertSame(error, expected);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDependenciesMustBeRegistered() {
+		lifecycleManager.registerService(new TestService(() -> {
+		}), singletonList(service));
+	}
+
+	private void expectOpenDatabase() throws Exception {
+		long now = System.currentTimeMillis();
+		Transaction txn = new Transaction(null, false);
+
+		context.checking(new DbExpectations() {{
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
+			oneOf(db).open(dbKey, lifecycleManager);
+			will(returnValue(false));
+			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).removeTemporaryMessages(txn);
+			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+		}});
+	}
+
+	private interface StartupTask {
+		void run() throws Exception;
+	}
+
+	private static class TestService implements Service {
+
+		private final StartupTask task;
+
+		private TestService(StartupTask task) {
+			this.task = task;
+		}
+
+		@Override
+		public void startService() throws ServiceException {
+			try {
+				task.run();
+			} catch (ServiceException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new ServiceException(e);
+			}
+		}
+
+		@Override
+		public void stopService() {
+		}
+	}
 }
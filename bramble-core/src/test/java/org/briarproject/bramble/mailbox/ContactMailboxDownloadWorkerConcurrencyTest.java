@@ -0,0 +1,318 @@
+package org.briarproject.bramble.mailbox;
+
+import org.briarproject.bramble.api.Bytes;
+import org.briarproject.bramble.api.Cancellable;
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.mailbox.MailboxFileId;
+import org.briarproject.bramble.api.mailbox.MailboxFolderId;
+import org.briarproject.bramble.api.mailbox.MailboxProperties;
+import org.briarproject.bramble.api.mailbox.MailboxVersion;
+import org.briarproject.bramble.api.sync.OutgoingSessionRecord;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.briarproject.bramble.util.IoUtils;
+import org.briarproject.nullsafety.NotNullByDefault;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.briarproject.bramble.api.mailbox.MailboxConstants.CLIENT_SUPPORTS;
+import static org.briarproject.bramble.mailbox.MailboxDownloadWorker.MAX_CONCURRENT_DOWNLOADS;
+import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getMailboxProperties;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a {@link ContactMailboxDownloadWorker} against an in-memory mailbox
+ * and checks that it downloads files concurrently.
+ */
+public class ContactMailboxDownloadWorkerConcurrencyTest
+		extends BrambleTestCase {
+
+	private static final int FILES = MAX_CONCURRENT_DOWNLOADS * 5;
+	private static final int FILE_LENGTH = 1024;
+	private static final int TIMEOUT_SECONDS = 30;
+
+	private final ExecutorService executor = newCachedThreadPool();
+	private final MailboxProperties mailboxProperties =
+			getMailboxProperties(false, CLIENT_SUPPORTS);
+	private final FakeMailboxApi mailboxApi = new FakeMailboxApi();
+	private final FakeMailboxFileManager mailboxFileManager =
+			new FakeMailboxFileManager();
+	private final CountDownLatch cycleFinished = new CountDownLatch(1);
+
+	private File testDir;
+	private ContactMailboxDownloadWorker worker;
+
+	@Before
+	public void setUp() {
+		testDir = getTestDirectory();
+		assertTrue(testDir.mkdirs());
+		worker = new ContactMailboxDownloadWorker(new FakeConnectivityChecker(),
+				new FakeTorReachabilityMonitor(), new FakeMailboxApiCaller(),
+				mailboxApi, mailboxFileManager, mailboxProperties,
+				MAX_CONCURRENT_DOWNLOADS);
+	}
+
+	@After
+	public void tearDown() {
+		worker.destroy();
+		executor.shutdownNow();
+		deleteTestDirectory(testDir);
+	}
+
+	@Test
+	public void testDownloadsFilesConcurrently() throws Exception {
+		Map<MailboxFileId, byte[]> uploaded = new ConcurrentHashMap<>();
+		for (int i = 0; i < FILES; i++) {
+			uploaded.put(new MailboxFileId(getRandomId()),
+					getRandomBytes(FILE_LENGTH));
+		}
+		mailboxApi.inbox.putAll(uploaded);
+
+		worker.start();
+
+		// The first download cycle should finish when the inbox is empty
+		assertTrue(cycleFinished.await(TIMEOUT_SECONDS, SECONDS));
+		assertTrue(mailboxApi.inbox.isEmpty());
+		assertEquals(0, mailboxApi.failures.get());
+
+		// Every file should have been downloaded and handled once
+		assertEquals(FILES, mailboxFileManager.handled.size());
+		Set<Bytes> expected = new HashSet<>();
+		for (byte[] b : uploaded.values()) expected.add(new Bytes(b));
+		Set<Bytes> handled = new HashSet<>();
+		for (byte[] b : mailboxFileManager.handled) handled.add(new Bytes(b));
+		assertEquals(expected, handled);
+
+		// The maximum number of downloads should have run at the same time
+		assertEquals(MAX_CONCURRENT_DOWNLOADS,
+				mailboxApi.maxConcurrentDownloads.get());
+	}
+
+	@NotNullByDefault
+	private class FakeMailboxApi implements MailboxApi {
+
+		private final Map<MailboxFileId, byte[]> inbox =
+				new ConcurrentHashMap<>();
+		private final AtomicInteger concurrentDownloads = new AtomicInteger(0);
+		private final AtomicInteger maxConcurrentDownloads =
+				new AtomicInteger(0);
+		private final AtomicInteger failures = new AtomicInteger(0);
+		// The first downloads wait for each other, so the test fails rather
+		// than passing by luck if the worker doesn't run them concurrently
+		private final CountDownLatch firstDownloadsStarted =
+				new CountDownLatch(MAX_CONCURRENT_DOWNLOADS);
+
+		@Override
+		public List<MailboxFile> getFiles(MailboxProperties properties,
+				MailboxFolderId folderId) {
+			if (!folderId.equals(properties.getInboxId()))
+				failures.incrementAndGet();
+			List<MailboxFile> files = new ArrayList<>();
+			for (MailboxFileId fileId : inbox.keySet()) {
+				files.add(new MailboxFile(fileId, 0));
+			}
+			return files;
+		}
+
+		@Override
+		public void getFile(MailboxProperties properties,
+				MailboxFolderId folderId, MailboxFileId fileId, File file)
+				throws IOException, TolerableFailureException {
+			int concurrent = concurrentDownloads.incrementAndGet();
+			try {
+				int max = maxConcurrentDownloads.get();
+				while (concurrent > max &&
+						!maxConcurrentDownloads.compareAndSet(max, concurrent)) {
+					max = maxConcurrentDownloads.get();
+				}
+				firstDownloadsStarted.countDown();
+				if (!firstDownloadsStarted.await(TIMEOUT_SECONDS, SECONDS))
+					failures.incrementAndGet();
+				byte[] b = inbox.get(fileId);
+				if (b == null) throw new TolerableFailureException();
+				OutputStream out = new FileOutputStream(file);
+				out.write(b);
+				out.close();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			} finally {
+				concurrentDownloads.decrementAndGet();
+			}
+		}
+
+		@Override
+		public void deleteFile(MailboxProperties properties,
+				MailboxFolderId folderId, MailboxFileId fileId)
+				throws TolerableFailureException {
+			if (inbox.remove(fileId) == null)
+				throw new TolerableFailureException();
+		}
+
+		@Override
+		public List<MailboxVersion> getServerSupports(
+				MailboxProperties properties) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public MailboxProperties setup(MailboxProperties properties) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean checkStatus(MailboxProperties properties) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void wipeMailbox(MailboxProperties properties) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void addContact(MailboxProperties properties,
+				MailboxContact contact) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void deleteContact(MailboxProperties properties,
+				ContactId contactId) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Collection<ContactId> getContacts(
+				MailboxProperties properties) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void addFile(MailboxProperties properties,
+				MailboxFolderId folderId, File file) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public List<MailboxFolderId> getFolders(
+				MailboxProperties properties) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Runs each API call on the executor, retrying immediately if the call
+	 * asks to be retried.
+	 */
+	@NotNullByDefault
+	private class FakeMailboxApiCaller implements MailboxApiCaller {
+
+		@Override
+		public Cancellable retryWithBackoff(ApiCall apiCall) {
+			executor.execute(() -> {
+				while (apiCall.callApi()) {
+					if (Thread.currentThread().isInterrupted()) return;
+				}
+			});
+			return () -> {
+			};
+		}
+	}
+
+	@NotNullByDefault
+	private class FakeMailboxFileManager implements MailboxFileManager {
+
+		private final List<byte[]> handled = new CopyOnWriteArrayList<>();
+
+		@Override
+		public File createTempFileForDownload() throws IOException {
+			return File.createTempFile("mailbox", ".tmp", testDir);
+		}
+
+		@Override
+		public File createAndWriteTempFileForUpload(ContactId contactId,
+				OutgoingSessionRecord sessionRecord) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void handleDownloadedFile(File f) {
+			try {
+				InputStream in = new FileInputStream(f);
+				byte[] b = new byte[FILE_LENGTH];
+				IoUtils.read(in, b);
+				in.close();
+				handled.add(b);
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+			if (!f.delete()) throw new AssertionError();
+		}
+	}
+
+	@NotNullByDefault
+	private class FakeConnectivityChecker implements ConnectivityChecker {
+
+		@Override
+		public void checkConnectivity(MailboxProperties properties,
+				ConnectivityObserver o) {
+			executor.execute(o::onConnectivityCheckSucceeded);
+		}
+
+		@Override
+		public void removeObserver(ConnectivityObserver o) {
+		}
+
+		@Override
+		public void destroy() {
+		}
+	}
+
+	@NotNullByDefault
+	private class FakeTorReachabilityMonitor
+			implements TorReachabilityMonitor {
+
+		@Override
+		public void addOneShotObserver(TorReachabilityObserver o) {
+			cycleFinished.countDown();
+		}
+
+		@Override
+		public void removeObserver(TorReachabilityObserver o) {
+		}
+
+		@Override
+		public void start() {
+		}
+
+		@Override
+		public void destroy() {
+		}
+	}
+}
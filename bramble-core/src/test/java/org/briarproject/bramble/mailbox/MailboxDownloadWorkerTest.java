@@ -76,6 +76,12 @@ abstract class MailboxDownloadWorkerTest<W extends MailboxDownloadWorker>
 		}});
 	}
 
+	void expectCancelTasks(int tasks) {
+		context.checking(new Expectations() {{
+			exactly(tasks).of(apiCall).cancel();
+		}});
+	}
+
 	void expectCheckForFoldersWithAvailableFiles(
 			List<MailboxFolderId> folderIds) throws Exception {
 		context.checking(new Expectations() {{
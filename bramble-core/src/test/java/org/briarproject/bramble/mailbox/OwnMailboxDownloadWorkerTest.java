@@ -37,7 +37,7 @@ public class OwnMailboxDownloadWorkerTest
 		mailboxProperties = getMailboxProperties(true, CLIENT_SUPPORTS);
 		worker = new OwnMailboxDownloadWorker(connectivityChecker,
 				torReachabilityMonitor, mailboxApiCaller, mailboxApi,
-				mailboxFileManager, mailboxProperties);
+				mailboxFileManager, mailboxProperties, 1);
 	}
 
 	@Override
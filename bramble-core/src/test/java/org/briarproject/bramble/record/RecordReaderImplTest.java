@@ -12,6 +12,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 
+import static java.util.Arrays.copyOf;
 import static org.briarproject.bramble.api.record.Record.MAX_RECORD_PAYLOAD_BYTES;
 import static org.briarproject.bramble.api.record.Record.RECORD_HEADER_BYTES;
 import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
@@ -19,6 +20,7 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 public class RecordReaderImplTest extends BrambleTestCase {
@@ -210,4 +212,81 @@ public class RecordReaderImplTest extends BrambleTestCase {
 		// The reader should have reached the end of the stream
 		assertNull(reader.readRecord(accept, ignore));
 	}
+
+	@Test
+	public void testReadsRecordsIntoReusedBuffer() throws Exception {
+		// Version 0, type 0, payload length 123
+		byte[] header1 = new byte[] {0, 0, 0, 123};
+		// Version 0, type 2, payload length 45
+		byte[] header2 = new byte[] {0, 2, 0, 45};
+		// Version 0, type 1, payload length 67
+		byte[] header3 = new byte[] {0, 1, 0, 67};
+		byte[] payload1 = getRandomBytes(123);
+		byte[] payload2 = getRandomBytes(45);
+		byte[] payload3 = getRandomBytes(67);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(header1);
+		out.write(payload1);
+		out.write(header2);
+		out.write(payload2);
+		out.write(header3);
+		out.write(payload3);
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		RecordReader reader = new RecordReaderImpl(in);
+
+		// Accept records with version 0, type 0 or 1
+		Predicate<Record> accept = r -> {
+			byte version = r.getProtocolVersion(), type = r.getRecordType();
+			return version == 0 && (type == 0 || type == 1);
+		};
+		// Ignore records with version 0, any other type
+		Predicate<Record> ignore = r -> {
+			byte version = r.getProtocolVersion(), type = r.getRecordType();
+			return version == 0 && !(type == 0 || type == 1);
+		};
+
+		// The first record should be accepted
+		Record r = reader.readRecordIntoBuffer(accept, ignore);
+		assertNotNull(r);
+		assertEquals(0, r.getProtocolVersion());
+		assertEquals(0, r.getRecordType());
+		assertEquals(123, r.getPayloadLength());
+		assertArrayEquals(payload1, copyOf(r.getPayload(), 123));
+		byte[] buffer = r.getPayload();
+		assertEquals(MAX_RECORD_PAYLOAD_BYTES, buffer.length);
+
+		// The second record should be ignored, the third should be accepted
+		// and read into the same buffer
+		r = reader.readRecordIntoBuffer(accept, ignore);
+		assertNotNull(r);
+		assertEquals(0, r.getProtocolVersion());
+		assertEquals(1, r.getRecordType());
+		assertEquals(67, r.getPayloadLength());
+		assertSame(buffer, r.getPayload());
+		assertArrayEquals(payload3, copyOf(r.getPayload(), 67));
+
+		// The reader should have reached the end of the stream
+		assertNull(reader.readRecordIntoBuffer(accept, ignore));
+	}
+
+	@Test(expected = FormatException.class)
+	public void testReadingIntoBufferRejectsRecords() throws Exception {
+		// Version 1, type 0, payload length 0
+		byte[] header = new byte[] {1, 0, 0, 0};
+		ByteArrayInputStream in = new ByteArrayInputStream(header);
+		RecordReader reader = new RecordReaderImpl(in);
+		reader.readRecordIntoBuffer(r -> r.getProtocolVersion() == 0,
+				r -> false);
+	}
+
+	@Test(expected = EOFException.class)
+	public void testReadingIntoBufferThrowsEofExceptionIfPayloadIsTruncated()
+			throws Exception {
+		// Version 0, type 0, payload length 1
+		byte[] header = new byte[] {0, 0, 0, 1};
+		ByteArrayInputStream in = new ByteArrayInputStream(header);
+		RecordReader reader = new RecordReaderImpl(in);
+		reader.readRecordIntoBuffer(r -> true, r -> false);
+	}
 }
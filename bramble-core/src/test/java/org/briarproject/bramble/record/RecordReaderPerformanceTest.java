@@ -0,0 +1,90 @@
+package org.briarproject.bramble.record;
+
+import org.briarproject.bramble.api.Predicate;
+import org.briarproject.bramble.api.record.Record;
+import org.briarproject.bramble.api.record.RecordReader;
+import org.briarproject.bramble.util.ByteUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.briarproject.bramble.api.record.Record.RECORD_HEADER_BYTES;
+import static org.briarproject.bramble.test.TestUtils.getMedian;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+
+// Not a JUnit test
+public class RecordReaderPerformanceTest {
+
+	private static final int SAMPLES = 50;
+	private static final int RECORDS_PER_STREAM = 1024;
+	private static final int[] PAYLOAD_LENGTHS = {1024, 8 * 1024, 32 * 1024};
+
+	private static final Predicate<Record> ACCEPT = r -> true;
+	private static final Predicate<Record> IGNORE = r -> false;
+
+	private static final com.sun.management.ThreadMXBean threadMXBean =
+			(com.sun.management.ThreadMXBean)
+					ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws IOException {
+		System.out.println("Payload bytes,"
+				+ " copying bytes allocated per record, copying MB/s,"
+				+ " buffered bytes allocated per record, buffered MB/s");
+		for (int length : PAYLOAD_LENGTHS) runTest(length);
+	}
+
+	private static void runTest(int payloadLength) throws IOException {
+		byte[] stream = createStream(payloadLength);
+		List<Long> copyingTimes = new ArrayList<>();
+		List<Long> copyingAllocations = new ArrayList<>();
+		List<Long> bufferedTimes = new ArrayList<>();
+		List<Long> bufferedAllocations = new ArrayList<>();
+		for (int i = 0; i < SAMPLES; i++) {
+			measure(stream, false, copyingTimes, copyingAllocations);
+			measure(stream, true, bufferedTimes, bufferedAllocations);
+		}
+		System.out.println(String.format("%d, %.0f, %.1f, %.0f, %.1f",
+				payloadLength,
+				getMedian(copyingAllocations) / RECORDS_PER_STREAM,
+				getMegabytesPerSecond(stream, getMedian(copyingTimes)),
+				getMedian(bufferedAllocations) / RECORDS_PER_STREAM,
+				getMegabytesPerSecond(stream, getMedian(bufferedTimes))));
+	}
+
+	private static void measure(byte[] stream, boolean buffered,
+			List<Long> times, List<Long> allocations) throws IOException {
+		long threadId = Thread.currentThread().getId();
+		RecordReader reader =
+				new RecordReaderImpl(new ByteArrayInputStream(stream));
+		long allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		while (true) {
+			Record r = buffered ? reader.readRecordIntoBuffer(ACCEPT, IGNORE)
+					: reader.readRecord(ACCEPT, IGNORE);
+			if (r == null) break;
+		}
+		times.add(System.nanoTime() - start);
+		allocations.add(threadMXBean.getThreadAllocatedBytes(threadId)
+				- allocated);
+	}
+
+	private static byte[] createStream(int payloadLength) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] header = new byte[RECORD_HEADER_BYTES];
+		ByteUtils.writeUint16(payloadLength, header, 2);
+		byte[] payload = getRandomBytes(payloadLength);
+		for (int i = 0; i < RECORDS_PER_STREAM; i++) {
+			out.write(header);
+			out.write(payload);
+		}
+		return out.toByteArray();
+	}
+
+	private static double getMegabytesPerSecond(byte[] stream, double nanos) {
+		return stream.length / (1024.0 * 1024) / (nanos / 1_000_000_000.0);
+	}
+}
@@ -46,4 +46,33 @@ public class RecordWriterImplTest extends BrambleTestCase {
 				payloadLength);
 		assertArrayEquals(payload, writtenPayload);
 	}
+
+	@Test
+	public void testWritesPayloadOfBufferBackedRecord() throws Exception {
+		byte protocolVersion = 123;
+		byte recordType = 45;
+		int payloadLength = 123;
+		byte[] buffer = getRandomBytes(MAX_RECORD_PAYLOAD_BYTES);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RecordWriter writer = new RecordWriterImpl(out);
+		writer.writeRecord(new Record(protocolVersion, recordType, buffer,
+				payloadLength));
+		writer.flush();
+		byte[] written = out.toByteArray();
+
+		// Only the payload should be written, not the rest of the buffer
+		assertEquals(RECORD_HEADER_BYTES + payloadLength, written.length);
+		assertEquals(RECORD_HEADER_BYTES + payloadLength,
+				writer.getBytesWritten());
+		assertEquals(protocolVersion, written[0]);
+		assertEquals(recordType, written[1]);
+		assertEquals(payloadLength, ByteUtils.readUint16(written, 2));
+		byte[] expectedPayload = new byte[payloadLength];
+		System.arraycopy(buffer, 0, expectedPayload, 0, payloadLength);
+		byte[] writtenPayload = new byte[payloadLength];
+		System.arraycopy(written, RECORD_HEADER_BYTES, writtenPayload, 0,
+				payloadLength);
+		assertArrayEquals(expectedPayload, writtenPayload);
+	}
 }
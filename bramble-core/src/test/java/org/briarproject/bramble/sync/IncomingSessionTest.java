@@ -0,0 +1,283 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.event.EventBus;
+import org.briarproject.bramble.api.sync.Ack;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.IngestStats;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.sync.PriorityHandler;
+import org.briarproject.bramble.api.sync.SyncRecordReader;
+import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.bramble.test.DbExpectations;
+import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static java.util.Collections.singletonList;
+import static org.briarproject.bramble.sync.IncomingSession.MAX_RECORDS_PER_TRANSACTION;
+import static org.briarproject.bramble.test.TestUtils.getContactId;
+import static org.briarproject.bramble.test.TestUtils.getMessage;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.junit.Assert.assertEquals;
+
+public class IncomingSessionTest extends BrambleMockTestCase {
+
+	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
+	private final EventBus eventBus = context.mock(EventBus.class);
+	private final SyncRecordReader recordReader =
+			context.mock(SyncRecordReader.class);
+	private final PriorityHandler priorityHandler =
+			context.mock(PriorityHandler.class);
+
+	private final ContactId contactId = getContactId();
+	private final GroupId groupId = new GroupId(getRandomId());
+	private final Ack ack =
+			new Ack(singletonList(new MessageId(getRandomId())));
+
+	// Tasks submitted to the DB executor are run when the test is ready
+	private final List<Runnable> tasks = new ArrayList<>();
+	private final Executor dbExecutor = tasks::add;
+
+	private final IngestCounters globalCounters = new IngestCounters();
+	private final IncomingSession session = new IncomingSession(db,
+			dbExecutor, eventBus, contactId, recordReader, priorityHandler,
+			globalCounters);
+
+	@Test
+	public void testRecordsAreStoredInSingleTransaction() throws Exception {
+		Message message = getMessage(groupId);
+		Message message1 = getMessage(groupId);
+		Transaction txn = new Transaction(null, false);
+
+		context.checking(new Expectations() {{
+			oneOf(eventBus).addListener(with(session),
+					with(any(Collection.class)));
+			// Read a message, an ack and another message
+			exactly(4).of(recordReader).eof();
+			will(onConsecutiveCalls(returnValue(false), returnValue(false),
+					returnValue(false), returnValue(true)));
+			oneOf(recordReader).hasAck();
+			will(returnValue(false));
+			oneOf(recordReader).hasMessage();
+			will(returnValue(true));
+			oneOf(recordReader).readMessage();
+			will(returnValue(message));
+			oneOf(recordReader).hasAck();
+			will(returnValue(true));
+			oneOf(recordReader).readAck();
+			will(returnValue(ack));
+			oneOf(recordReader).hasAck();
+			will(returnValue(false));
+			oneOf(recordReader).hasMessage();
+			will(returnValue(true));
+			oneOf(recordReader).readMessage();
+			will(returnValue(message1));
+			oneOf(eventBus).removeListener(session);
+		}});
+
+		session.run();
+
+		// Only one task should have been submitted to store the records
+		assertEquals(1, tasks.size());
+
+		context.checking(new DbExpectations() {{
+			// Store all three records in one transaction, in order
+			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).receiveMessage(txn, contactId, message);
+			oneOf(db).receiveAck(txn, contactId, ack);
+			oneOf(db).receiveMessage(txn, contactId, message1);
+		}});
+
+		tasks.remove(0).run();
+		assertEquals(0, tasks.size());
+
+		// The session and global counters should both include the records
+		assertIngestStats(session.getIngestStats(), 2, 3, 1);
+		assertIngestStats(globalCounters.getStats(), 2, 3, 1);
+	}
+
+	@Test
+	public void testRecordsAreStoredInBatches() throws Exception {
+		int count = MAX_RECORDS_PER_TRANSACTION + 1;
+		Transaction txn = new Transaction(null, false);
+		Transaction txn1 = new Transaction(null, false);
+
+		context.checking(new Expectations() {{
+			oneOf(eventBus).addListener(with(session),
+					with(any(Collection.class)));
+			// Read one ack more than fits in a transaction
+			exactly(count + 1).of(recordReader).eof();
+			will(new EofAfterRecords(count));
+			exactly(count).of(recordReader).hasAck();
+			will(returnValue(true));
+			exactly(count).of(recordReader).readAck();
+			will(returnValue(ack));
+			oneOf(eventBus).removeListener(session);
+		}});
+
+		session.run();
+
+		assertEquals(1, tasks.size());
+
+		context.checking(new DbExpectations() {{
+			// Store a full batch in the first transaction
+			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			exactly(MAX_RECORDS_PER_TRANSACTION).of(db)
+					.receiveAck(txn, contactId, ack);
+		}});
+
+		// Storing the first batch should start another task
+		tasks.remove(0).run();
+		assertEquals(1, tasks.size());
+
+		context.checking(new DbExpectations() {{
+			// Store the remaining record in the second transaction
+			oneOf(db).transaction(with(false), withDbRunnable(txn1));
+			oneOf(db).receiveAck(txn1, contactId, ack);
+		}});
+
+		tasks.remove(0).run();
+		assertEquals(0, tasks.size());
+
+		assertIngestStats(session.getIngestStats(), 0, count, 2);
+	}
+
+	@Test
+	public void testQueuedRecordsAreDiscardedAfterDbException()
+			throws Exception {
+		Transaction txn = new Transaction(null, false);
+
+		context.checking(new Expectations() {{
+			oneOf(eventBus).addListener(with(session),
+					with(any(Collection.class)));
+			exactly(2).of(recordReader).eof();
+			will(onConsecutiveCalls(returnValue(false), returnValue(true)));
+			oneOf(recordReader).hasAck();
+			will(returnValue(true));
+			oneOf(recordReader).readAck();
+			will(returnValue(ack));
+			oneOf(eventBus).removeListener(session);
+		}});
+
+		session.run();
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).receiveAck(txn, contactId, ack);
+			will(throwException(new DbException()));
+		}});
+
+		tasks.remove(0).run();
+		assertEquals(0, tasks.size());
+
+		// Records that weren't stored shouldn't be counted
+		assertIngestStats(session.getIngestStats(), 0, 0, 0);
+	}
+
+	@Test
+	public void testRecordIsDiscardedIfInterruptedWhileReading()
+			throws Exception {
+		Message message = getMessage(groupId);
+
+		context.checking(new Expectations() {{
+			oneOf(eventBus).addListener(with(session),
+					with(any(Collection.class)));
+			oneOf(recordReader).eof();
+			will(returnValue(false));
+			oneOf(recordReader).hasAck();
+			will(returnValue(false));
+			oneOf(recordReader).hasMessage();
+			will(returnValue(true));
+			// The session is interrupted while the message is being read
+			oneOf(recordReader).readMessage();
+			will(new InterruptAndReturn(message));
+			oneOf(eventBus).removeListener(session);
+		}});
+
+		session.run();
+
+		// The message should be discarded without starting a task
+		assertEquals(0, tasks.size());
+		assertIngestStats(session.getIngestStats(), 0, 0, 0);
+	}
+
+	@Test
+	public void testQueuedRecordsAreDiscardedIfInterruptedBeforeStoring()
+			throws Exception {
+		Message message = getMessage(groupId);
+
+		context.checking(new Expectations() {{
+			oneOf(eventBus).addListener(with(session),
+					with(any(Collection.class)));
+			exactly(2).of(recordReader).eof();
+			will(onConsecutiveCalls(returnValue(false), returnValue(true)));
+			oneOf(recordReader).hasAck();
+			will(returnValue(false));
+			oneOf(recordReader).hasMessage();
+			will(returnValue(true));
+			oneOf(recordReader).readMessage();
+			will(returnValue(message));
+			oneOf(eventBus).removeListener(session);
+		}});
+
+		session.run();
+		assertEquals(1, tasks.size());
+
+		// The task should not start a transaction after the interrupt
+		session.interrupt();
+		tasks.remove(0).run();
+		assertEquals(0, tasks.size());
+
+		// The discarded message shouldn't be counted
+		assertIngestStats(session.getIngestStats(), 0, 0, 0);
+	}
+
+	private void assertIngestStats(IngestStats stats, long receivedMessages,
+			long storedRecords, long transactions) {
+		assertEquals(receivedMessages, stats.getReceivedMessages());
+		assertEquals(storedRecords, stats.getStoredRecords());
+		assertEquals(transactions, stats.getTransactions());
+	}
+
+	private class InterruptAndReturn extends CustomAction {
+
+		private final Object result;
+
+		private InterruptAndReturn(Object result) {
+			super("interrupt the session and return " + result);
+			this.result = result;
+		}
+
+		@Override
+		public Object invoke(Invocation invocation) {
+			session.interrupt();
+			return result;
+		}
+	}
+
+	private static class EofAfterRecords extends CustomAction {
+
+		private int remaining;
+
+		private EofAfterRecords(int records) {
+			super("return true after " + records + " records");
+			remaining = records;
+		}
+
+		@Override
+		public Object invoke(Invocation invocation) {
+			return remaining-- == 0;
+		}
+	}
+}
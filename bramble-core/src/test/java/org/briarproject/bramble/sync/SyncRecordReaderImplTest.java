@@ -6,7 +6,10 @@ import org.briarproject.bramble.api.UniqueId;
 import org.briarproject.bramble.api.record.Record;
 import org.briarproject.bramble.api.record.RecordReader;
 import org.briarproject.bramble.api.sync.Ack;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.Message;
 import org.briarproject.bramble.api.sync.MessageFactory;
+import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.sync.Offer;
 import org.briarproject.bramble.api.sync.Priority;
 import org.briarproject.bramble.api.sync.Request;
@@ -17,24 +20,33 @@ import org.jmock.Expectations;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.annotation.Nullable;
 
+import static java.util.Arrays.copyOf;
+import static java.util.Arrays.copyOfRange;
 import static org.briarproject.bramble.api.record.Record.MAX_RECORD_PAYLOAD_BYTES;
 import static org.briarproject.bramble.api.sync.RecordTypes.ACK;
+import static org.briarproject.bramble.api.sync.RecordTypes.MESSAGE;
 import static org.briarproject.bramble.api.sync.RecordTypes.OFFER;
 import static org.briarproject.bramble.api.sync.RecordTypes.PRIORITY;
 import static org.briarproject.bramble.api.sync.RecordTypes.REQUEST;
 import static org.briarproject.bramble.api.sync.RecordTypes.VERSIONS;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SUPPORTED_VERSIONS;
+import static org.briarproject.bramble.api.sync.SyncConstants.MESSAGE_HEADER_LENGTH;
 import static org.briarproject.bramble.api.sync.SyncConstants.PRIORITY_NONCE_BYTES;
 import static org.briarproject.bramble.api.sync.SyncConstants.PROTOCOL_VERSION;
+import static org.briarproject.bramble.test.TestUtils.getMessage;
 import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
 import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class SyncRecordReaderImplTest extends BrambleMockTestCase {
@@ -158,11 +170,54 @@ public class SyncRecordReaderImplTest extends BrambleMockTestCase {
 		assertTrue(reader.eof());
 	}
 
+	@Test
+	public void testReadsAckFromStartOfBuffer() throws Exception {
+		byte[] buffer = getRandomBytes(MAX_RECORD_PAYLOAD_BYTES);
+		expectReadRecord(new Record(PROTOCOL_VERSION, ACK, buffer,
+				UniqueId.LENGTH * 2));
+
+		Ack ack = reader.readAck();
+		List<MessageId> ids = new ArrayList<>(ack.getMessageIds());
+		assertEquals(2, ids.size());
+		assertArrayEquals(copyOfRange(buffer, 0, UniqueId.LENGTH),
+				ids.get(0).getBytes());
+		assertArrayEquals(copyOfRange(buffer, UniqueId.LENGTH,
+				UniqueId.LENGTH * 2), ids.get(1).getBytes());
+	}
+
+	@Test
+	public void testReadsMessageFromStartOfBuffer() throws Exception {
+		byte[] buffer = new byte[MAX_RECORD_PAYLOAD_BYTES];
+		int length = MESSAGE_HEADER_LENGTH + 123;
+		Message message = getMessage(new GroupId(getRandomId()));
+		expectReadRecord(new Record(PROTOCOL_VERSION, MESSAGE, buffer,
+				length));
+
+		context.checking(new Expectations() {{
+			oneOf(messageFactory).createMessage(buffer, 0, length);
+			will(returnValue(message));
+		}});
+
+		assertSame(message, reader.readMessage());
+	}
+
+	@Test
+	public void testPriorityNonceIsCopiedFromBuffer() throws Exception {
+		byte[] buffer = getRandomBytes(MAX_RECORD_PAYLOAD_BYTES);
+		expectReadRecord(new Record(PROTOCOL_VERSION, PRIORITY, buffer,
+				PRIORITY_NONCE_BYTES));
+
+		Priority priority = reader.readPriority();
+		byte[] nonce = priority.getNonce();
+		assertNotSame(buffer, nonce);
+		assertArrayEquals(copyOf(buffer, PRIORITY_NONCE_BYTES), nonce);
+	}
+
 	private void expectReadRecord(@Nullable Record record) throws Exception {
 		context.checking(new Expectations() {{
 			//noinspection unchecked
-			oneOf(recordReader).readRecord(with(any(Predicate.class)),
-					with(any(Predicate.class)));
+			oneOf(recordReader).readRecordIntoBuffer(
+					with(any(Predicate.class)), with(any(Predicate.class)));
 			will(returnValue(record));
 		}});
 	}
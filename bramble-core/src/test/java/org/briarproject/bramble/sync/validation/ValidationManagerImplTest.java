@@ -2,6 +2,7 @@ package org.briarproject.bramble.sync.validation;
 
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.Metadata;
 import org.briarproject.bramble.api.db.NoSuchGroupException;
 import org.briarproject.bramble.api.db.NoSuchMessageException;
@@ -20,6 +21,7 @@ import org.briarproject.bramble.api.sync.validation.MessageValidator;
 import org.briarproject.bramble.test.BrambleMockTestCase;
 import org.briarproject.bramble.test.DbExpectations;
 import org.briarproject.bramble.test.ImmediateExecutor;
+import org.jmock.Sequence;
 import org.junit.Test;
 
 import java.util.LinkedHashMap;
@@ -69,12 +71,15 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 	private final MessageContext validResultWithDependencies =
 			new MessageContext(metadata, singletonList(messageId1));
 
-	private final ValidationManagerImpl vm =
-			new ValidationManagerImpl(db, dbExecutor, validationExecutor);
+	// Use a batch size of one unless a test is specifically about batching
+	private final ValidationManagerImpl vm = createValidationManager(1);
 
-	public ValidationManagerImplTest() {
+	private ValidationManagerImpl createValidationManager(int batchSize) {
+		ValidationManagerImpl vm = new ValidationManagerImpl(db, dbExecutor,
+				dbExecutor, validationExecutor, batchSize);
 		vm.registerMessageValidator(clientId, majorVersion, validator);
 		vm.registerIncomingMessageHook(clientId, majorVersion, hook);
+		return vm;
 	}
 
 	@Test
@@ -153,7 +158,8 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 
 		context.checking(new DbExpectations() {{
 			// Check whether the message is ready to deliver
-			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn));
 			oneOf(db).getMessageState(txn, messageId);
 			will(returnValue(PENDING));
 			oneOf(db).getMessageDependencies(txn, messageId);
@@ -173,7 +179,8 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).getMessageDependents(txn, messageId);
 			will(returnValue(singletonMap(messageId2, PENDING)));
 			// Check whether the dependent is ready to deliver
-			oneOf(db).transaction(with(false), withDbRunnable(txn1));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn1));
 			oneOf(db).getMessageState(txn1, messageId2);
 			will(returnValue(PENDING));
 			oneOf(db).getMessageDependencies(txn1, messageId2);
@@ -349,6 +356,41 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 		vm.startService();
 	}
 
+	@Test
+	public void testIncomingValidationContinuesAfterDbException()
+			throws Exception {
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, true);
+		Transaction txn2 = new Transaction(null, false);
+
+		context.checking(new DbExpectations() {{
+			// Load the first message's group - the DB throws an exception
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
+			oneOf(db).getGroup(txn, groupId);
+			will(throwException(new DbException()));
+			// Load the second message's group
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn1));
+			oneOf(db).getGroup(txn1, groupId);
+			will(returnValue(group));
+			// Validate the second message: invalid
+			oneOf(validator).validateMessage(message1, group);
+			will(throwException(new InvalidMessageException()));
+			// Invalidate the second message
+			oneOf(db).transaction(with(false), withDbRunnable(txn2));
+			oneOf(db).getMessageState(txn2, messageId1);
+			will(returnValue(UNKNOWN));
+			oneOf(db).setMessageState(txn2, messageId1, INVALID);
+			oneOf(db).deleteMessage(txn2, messageId1);
+			oneOf(db).deleteMessageMetadata(txn2, messageId1);
+			oneOf(db).getMessageDependents(txn2, messageId1);
+			will(returnValue(emptyMap()));
+		}});
+
+		// The first message is skipped, but later messages are still loaded
+		vm.eventOccurred(new MessageAddedEvent(message, contactId));
+		vm.eventOccurred(new MessageAddedEvent(message1, contactId));
+	}
+
 	@Test
 	public void testNonLocalMessagesAreValidatedWhenAdded() throws Exception {
 		Transaction txn = new Transaction(null, true);
@@ -474,7 +516,8 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).getMessageDependents(txn1, messageId);
 			will(returnValue(singletonMap(messageId2, UNKNOWN)));
 			// Invalidate dependent in a new transaction
-			oneOf(db).transaction(with(false), withDbRunnable(txn2));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn2));
 			oneOf(db).getMessageState(txn2, messageId2);
 			will(returnValue(UNKNOWN));
 			oneOf(db).setMessageState(txn2, messageId2, INVALID);
@@ -521,7 +564,8 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).getMessageDependents(txn1, messageId);
 			will(returnValue(twoDependents));
 			// Invalidate message 1
-			oneOf(db).transaction(with(false), withDbRunnable(txn2));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn2));
 			oneOf(db).getMessageState(txn2, messageId1);
 			will(returnValue(PENDING));
 			oneOf(db).setMessageState(txn2, messageId1, INVALID);
@@ -531,7 +575,8 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).getMessageDependents(txn2, messageId1);
 			will(returnValue(singletonMap(messageId3, PENDING)));
 			// Invalidate message 2
-			oneOf(db).transaction(with(false), withDbRunnable(txn3));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn3));
 			oneOf(db).getMessageState(txn3, messageId2);
 			will(returnValue(PENDING));
 			oneOf(db).setMessageState(txn3, messageId2, INVALID);
@@ -541,7 +586,8 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).getMessageDependents(txn3, messageId2);
 			will(returnValue(singletonMap(messageId3, PENDING)));
 			// Invalidate message 3 (via 1)
-			oneOf(db).transaction(with(false), withDbRunnable(txn4));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn4));
 			oneOf(db).getMessageState(txn4, messageId3);
 			will(returnValue(PENDING));
 			oneOf(db).setMessageState(txn4, messageId3, INVALID);
@@ -551,11 +597,13 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).getMessageDependents(txn4, messageId3);
 			will(returnValue(singletonMap(messageId4, PENDING)));
 			// Invalidate message 3 (again, via 2)
-			oneOf(db).transaction(with(false), withDbRunnable(txn5));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn5));
 			oneOf(db).getMessageState(txn5, messageId3);
 			will(returnValue(INVALID)); // Already invalidated
 			// Invalidate message 4 (via 1 and 3)
-			oneOf(db).transaction(with(false), withDbRunnable(txn6));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn6));
 			oneOf(db).getMessageState(txn6, messageId4);
 			will(returnValue(PENDING));
 			oneOf(db).setMessageState(txn6, messageId4, INVALID);
@@ -608,7 +656,8 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).getMessageDependents(txn1, messageId);
 			will(returnValue(twoDependents));
 			// Check whether message 1 is ready to be delivered
-			oneOf(db).transaction(with(false), withDbRunnable(txn2));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn2));
 			oneOf(db).getMessageState(txn2, messageId1);
 			will(returnValue(PENDING));
 			oneOf(db).getMessageDependencies(txn2, messageId1);
@@ -628,7 +677,8 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).getMessageDependents(txn2, messageId1);
 			will(returnValue(singletonMap(messageId3, PENDING)));
 			// Check whether message 2 is ready to be delivered
-			oneOf(db).transaction(with(false), withDbRunnable(txn3));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn3));
 			oneOf(db).getMessageState(txn3, messageId2);
 			will(returnValue(PENDING));
 			oneOf(db).getMessageDependencies(txn3, messageId2);
@@ -648,7 +698,8 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).getMessageDependents(txn3, messageId2);
 			will(returnValue(singletonMap(messageId3, PENDING)));
 			// Check whether message 3 is ready to be delivered (via 1)
-			oneOf(db).transaction(with(false), withDbRunnable(txn4));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn4));
 			oneOf(db).getMessageState(txn4, messageId3);
 			will(returnValue(PENDING));
 			oneOf(db).getMessageDependencies(txn4, messageId3);
@@ -668,11 +719,13 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).getMessageDependents(txn4, messageId3);
 			will(returnValue(singletonMap(messageId4, PENDING)));
 			// Check whether message 3 is ready to be delivered (again, via 2)
-			oneOf(db).transaction(with(false), withDbRunnable(txn5));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn5));
 			oneOf(db).getMessageState(txn5, messageId3);
 			will(returnValue(DELIVERED)); // Already delivered
 			// Check whether message 4 is ready to be delivered (via 1 and 3)
-			oneOf(db).transaction(with(false), withDbRunnable(txn6));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn6));
 			oneOf(db).getMessageState(txn6, messageId4);
 			will(returnValue(PENDING));
 			oneOf(db).getMessageDependencies(txn6, messageId4);
@@ -724,7 +777,8 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).getMessageDependents(txn1, messageId);
 			will(returnValue(singletonMap(messageId1, PENDING)));
 			// Check whether the pending dependent is ready to be delivered
-			oneOf(db).transaction(with(false), withDbRunnable(txn2));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn2));
 			oneOf(db).getMessageState(txn2, messageId1);
 			will(returnValue(PENDING));
 			oneOf(db).getMessageDependencies(txn2, messageId1);
@@ -734,6 +788,424 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 		vm.eventOccurred(new MessageAddedEvent(message, contactId));
 	}
 
+	@Test
+	public void testMessagesAreValidatedInBatchesAtStartup() throws Exception {
+		ValidationManagerImpl vm = createValidationManager(2);
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, false);
+		Transaction txn2 = new Transaction(null, true);
+		Transaction txn3 = new Transaction(null, false);
+
+		expectGetMessagesToValidate(messageId, messageId1, messageId2);
+
+		context.checking(new DbExpectations() {{
+			// Load the first two raw messages and their group
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
+			oneOf(db).getMessage(txn, messageId);
+			will(returnValue(message));
+			oneOf(db).getGroup(txn, groupId);
+			will(returnValue(group));
+			oneOf(db).getMessage(txn, messageId1);
+			will(returnValue(message1));
+			// Validate the first message: valid
+			oneOf(validator).validateMessage(message, group);
+			will(returnValue(validResult));
+			// Validate the second message: invalid
+			oneOf(validator).validateMessage(message1, group);
+			will(throwException(new InvalidMessageException()));
+			// Store the validation results for both messages
+			oneOf(db).transaction(with(false), withDbRunnable(txn1));
+			oneOf(db).mergeMessageMetadata(txn1, messageId, metadata);
+			oneOf(hook).incomingMessage(txn1, message, metadata);
+			will(returnValue(ACCEPT_DO_NOT_SHARE));
+			oneOf(db).setMessageState(txn1, messageId, DELIVERED);
+			oneOf(db).getMessageDependents(txn1, messageId);
+			will(returnValue(emptyMap()));
+			oneOf(db).getMessageState(txn1, messageId1);
+			will(returnValue(UNKNOWN));
+			oneOf(db).setMessageState(txn1, messageId1, INVALID);
+			oneOf(db).deleteMessage(txn1, messageId1);
+			oneOf(db).deleteMessageMetadata(txn1, messageId1);
+			oneOf(db).getMessageDependents(txn1, messageId1);
+			will(returnValue(emptyMap()));
+			// Load the third raw message and group
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn2));
+			oneOf(db).getMessage(txn2, messageId2);
+			will(returnValue(message2));
+			oneOf(db).getGroup(txn2, groupId);
+			will(returnValue(group));
+			// Validate the third message: valid
+			oneOf(validator).validateMessage(message2, group);
+			will(returnValue(validResult));
+			// Store the validation result for the third message
+			oneOf(db).transaction(with(false), withDbRunnable(txn3));
+			oneOf(db).mergeMessageMetadata(txn3, messageId2, metadata);
+			oneOf(hook).incomingMessage(txn3, message2, metadata);
+			will(returnValue(ACCEPT_DO_NOT_SHARE));
+			oneOf(db).setMessageState(txn3, messageId2, DELIVERED);
+			oneOf(db).getMessageDependents(txn3, messageId2);
+			will(returnValue(emptyMap()));
+		}});
+
+		expectGetPendingMessages();
+		expectGetMessagesToShare();
+
+		vm.startService();
+	}
+
+	@Test
+	public void testDependenciesInBatchAreStoredFirst() throws Exception {
+		ValidationManagerImpl vm = createValidationManager(2);
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, false);
+		Sequence sequence = context.sequence("store");
+
+		// The first message depends on the second
+		expectGetMessagesToValidate(messageId, messageId1);
+
+		context.checking(new DbExpectations() {{
+			// Load both raw messages and their group
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
+			oneOf(db).getMessage(txn, messageId);
+			will(returnValue(message));
+			oneOf(db).getGroup(txn, groupId);
+			will(returnValue(group));
+			oneOf(db).getMessage(txn, messageId1);
+			will(returnValue(message1));
+			// Validate both messages: valid
+			oneOf(validator).validateMessage(message, group);
+			will(returnValue(validResultWithDependencies));
+			oneOf(validator).validateMessage(message1, group);
+			will(returnValue(validResult));
+			// Store the result for the second message first and deliver it
+			oneOf(db).transaction(with(false), withDbRunnable(txn1));
+			oneOf(db).mergeMessageMetadata(txn1, messageId1, metadata);
+			inSequence(sequence);
+			oneOf(hook).incomingMessage(txn1, message1, metadata);
+			will(returnValue(ACCEPT_DO_NOT_SHARE));
+			inSequence(sequence);
+			oneOf(db).setMessageState(txn1, messageId1, DELIVERED);
+			inSequence(sequence);
+			oneOf(db).getMessageDependents(txn1, messageId1);
+			will(returnValue(emptyMap()));
+			inSequence(sequence);
+			// The first message's dependency has been delivered, so the
+			// first message is delivered rather than left pending
+			oneOf(db).addMessageDependencies(txn1, message,
+					validResultWithDependencies.getDependencies());
+			inSequence(sequence);
+			oneOf(db).getMessageDependencies(txn1, messageId);
+			will(returnValue(singletonMap(messageId1, DELIVERED)));
+			inSequence(sequence);
+			oneOf(db).mergeMessageMetadata(txn1, messageId, metadata);
+			inSequence(sequence);
+			oneOf(hook).incomingMessage(txn1, message, metadata);
+			will(returnValue(ACCEPT_DO_NOT_SHARE));
+			inSequence(sequence);
+			oneOf(db).setMessageState(txn1, messageId, DELIVERED);
+			inSequence(sequence);
+			oneOf(db).getMessageDependents(txn1, messageId);
+			will(returnValue(emptyMap()));
+			inSequence(sequence);
+		}});
+
+		expectGetPendingMessages();
+		expectGetMessagesToShare();
+
+		vm.startService();
+	}
+
+	@Test
+	public void testBatchIsStoredSeparatelyAfterNoSuchMessageException()
+			throws Exception {
+		ValidationManagerImpl vm = createValidationManager(2);
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, false);
+		Transaction txn2 = new Transaction(null, false);
+		Transaction txn3 = new Transaction(null, false);
+
+		expectGetMessagesToValidate(messageId, messageId1);
+
+		context.checking(new DbExpectations() {{
+			// Load both raw messages and their group
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
+			oneOf(db).getMessage(txn, messageId);
+			will(returnValue(message));
+			oneOf(db).getGroup(txn, groupId);
+			will(returnValue(group));
+			oneOf(db).getMessage(txn, messageId1);
+			will(returnValue(message1));
+			// Validate both messages: valid
+			oneOf(validator).validateMessage(message, group);
+			will(returnValue(validResult));
+			oneOf(validator).validateMessage(message1, group);
+			will(returnValue(validResult));
+			// Store the validation results - the second message is gone!
+			oneOf(db).transaction(with(false), withDbRunnable(txn1));
+			oneOf(db).mergeMessageMetadata(txn1, messageId, metadata);
+			oneOf(hook).incomingMessage(txn1, message, metadata);
+			will(returnValue(ACCEPT_DO_NOT_SHARE));
+			oneOf(db).setMessageState(txn1, messageId, DELIVERED);
+			oneOf(db).getMessageDependents(txn1, messageId);
+			will(returnValue(emptyMap()));
+			oneOf(db).mergeMessageMetadata(txn1, messageId1, metadata);
+			will(throwException(new NoSuchMessageException()));
+			// Store the validation result for the first message separately
+			oneOf(db).transaction(with(false), withDbRunnable(txn2));
+			oneOf(db).mergeMessageMetadata(txn2, messageId, metadata);
+			oneOf(hook).incomingMessage(txn2, message, metadata);
+			will(returnValue(ACCEPT_DO_NOT_SHARE));
+			oneOf(db).setMessageState(txn2, messageId, DELIVERED);
+			oneOf(db).getMessageDependents(txn2, messageId);
+			will(returnValue(emptyMap()));
+			// Try to store the validation result for the second message
+			oneOf(db).transaction(with(false), withDbRunnable(txn3));
+			oneOf(db).mergeMessageMetadata(txn3, messageId1, metadata);
+			will(throwException(new NoSuchMessageException()));
+		}});
+
+		expectGetPendingMessages();
+		expectGetMessagesToShare();
+
+		vm.startService();
+	}
+
+	@Test
+	public void testPendingMessagesAreDeliveredInBatches() throws Exception {
+		ValidationManagerImpl vm = createValidationManager(2);
+		Transaction txn = new Transaction(null, false);
+
+		expectGetMessagesToValidate();
+		expectGetPendingMessages(messageId, messageId2);
+
+		context.checking(new DbExpectations() {{
+			// Deliver both messages in a single transaction
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn));
+			oneOf(db).getMessageState(txn, messageId);
+			will(returnValue(PENDING));
+			oneOf(db).getMessageDependencies(txn, messageId);
+			will(returnValue(singletonMap(messageId1, DELIVERED)));
+			oneOf(db).getMessage(txn, messageId);
+			will(returnValue(message));
+			oneOf(db).getGroup(txn, groupId);
+			will(returnValue(group));
+			oneOf(db).getMessageMetadataForValidator(txn, messageId);
+			will(returnValue(metadata));
+			oneOf(hook).incomingMessage(txn, message, metadata);
+			will(returnValue(ACCEPT_DO_NOT_SHARE));
+			oneOf(db).setMessageState(txn, messageId, DELIVERED);
+			oneOf(db).getMessageDependents(txn, messageId);
+			will(returnValue(emptyMap()));
+			oneOf(db).getMessageState(txn, messageId2);
+			will(returnValue(PENDING));
+			oneOf(db).getMessageDependencies(txn, messageId2);
+			will(returnValue(singletonMap(messageId1, DELIVERED)));
+			oneOf(db).getMessage(txn, messageId2);
+			will(returnValue(message2));
+			oneOf(db).getGroup(txn, groupId);
+			will(returnValue(group));
+			oneOf(db).getMessageMetadataForValidator(txn, messageId2);
+			will(returnValue(metadata));
+			oneOf(hook).incomingMessage(txn, message2, metadata);
+			will(returnValue(ACCEPT_DO_NOT_SHARE));
+			oneOf(db).setMessageState(txn, messageId2, DELIVERED);
+			oneOf(db).getMessageDependents(txn, messageId2);
+			will(returnValue(emptyMap()));
+		}});
+
+		expectGetMessagesToShare();
+
+		vm.startService();
+	}
+
+	@Test
+	public void testPendingDependentsAreDeliveredInSameTransaction()
+			throws Exception {
+		ValidationManagerImpl vm = createValidationManager(3);
+		Transaction txn = new Transaction(null, false);
+
+		expectGetMessagesToValidate();
+		expectGetPendingMessages(messageId);
+
+		context.checking(new DbExpectations() {{
+			// Deliver the message and its chain of dependents in a single
+			// transaction: message 1 depends on the message, and message 2
+			// depends on message 1
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn));
+			oneOf(db).getMessageState(txn, messageId);
+			will(returnValue(PENDING));
+			oneOf(db).getMessageDependencies(txn, messageId);
+			will(returnValue(emptyMap()));
+			oneOf(db).getMessage(txn, messageId);
+			will(returnValue(message));
+			oneOf(db).getGroup(txn, groupId);
+			will(returnValue(group));
+			oneOf(db).getMessageMetadataForValidator(txn, messageId);
+			will(returnValue(metadata));
+			oneOf(hook).incomingMessage(txn, message, metadata);
+			will(returnValue(ACCEPT_DO_NOT_SHARE));
+			oneOf(db).setMessageState(txn, messageId, DELIVERED);
+			oneOf(db).getMessageDependents(txn, messageId);
+			will(returnValue(singletonMap(messageId1, PENDING)));
+			// Message 1 is ready to deliver
+			oneOf(db).getMessageState(txn, messageId1);
+			will(returnValue(PENDING));
+			oneOf(db).getMessageDependencies(txn, messageId1);
+			will(returnValue(singletonMap(messageId, DELIVERED)));
+			oneOf(db).getMessage(txn, messageId1);
+			will(returnValue(message1));
+			oneOf(db).getGroup(txn, groupId);
+			will(returnValue(group));
+			oneOf(db).getMessageMetadataForValidator(txn, messageId1);
+			will(returnValue(metadata));
+			oneOf(hook).incomingMessage(txn, message1, metadata);
+			will(returnValue(ACCEPT_DO_NOT_SHARE));
+			oneOf(db).setMessageState(txn, messageId1, DELIVERED);
+			oneOf(db).getMessageDependents(txn, messageId1);
+			will(returnValue(singletonMap(messageId2, PENDING)));
+			// Message 2 is ready to deliver
+			oneOf(db).getMessageState(txn, messageId2);
+			will(returnValue(PENDING));
+			oneOf(db).getMessageDependencies(txn, messageId2);
+			will(returnValue(singletonMap(messageId1, DELIVERED)));
+			oneOf(db).getMessage(txn, messageId2);
+			will(returnValue(message2));
+			oneOf(db).getGroup(txn, groupId);
+			will(returnValue(group));
+			oneOf(db).getMessageMetadataForValidator(txn, messageId2);
+			will(returnValue(metadata));
+			oneOf(hook).incomingMessage(txn, message2, metadata);
+			will(returnValue(ACCEPT_DO_NOT_SHARE));
+			oneOf(db).setMessageState(txn, messageId2, DELIVERED);
+			oneOf(db).getMessageDependents(txn, messageId2);
+			will(returnValue(emptyMap()));
+		}});
+
+		expectGetMessagesToShare();
+
+		vm.startService();
+	}
+
+	@Test
+	public void testPendingDependentsAreDeliveredInNextTransactionWhenFull()
+			throws Exception {
+		ValidationManagerImpl vm = createValidationManager(2);
+		Transaction txn = new Transaction(null, false);
+		Transaction txn1 = new Transaction(null, false);
+
+		expectGetMessagesToValidate();
+		expectGetPendingMessages(messageId);
+
+		context.checking(new DbExpectations() {{
+			// Deliver the message and message 1, which depends on it
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn));
+			oneOf(db).getMessageState(txn, messageId);
+			will(returnValue(PENDING));
+			oneOf(db).getMessageDependencies(txn, messageId);
+			will(returnValue(emptyMap()));
+			oneOf(db).getMessage(txn, messageId);
+			will(returnValue(message));
+			oneOf(db).getGroup(txn, groupId);
+			will(returnValue(group));
+			oneOf(db).getMessageMetadataForValidator(txn, messageId);
+			will(returnValue(metadata));
+			oneOf(hook).incomingMessage(txn, message, metadata);
+			will(returnValue(ACCEPT_DO_NOT_SHARE));
+			oneOf(db).setMessageState(txn, messageId, DELIVERED);
+			oneOf(db).getMessageDependents(txn, messageId);
+			will(returnValue(singletonMap(messageId1, PENDING)));
+			oneOf(db).getMessageState(txn, messageId1);
+			will(returnValue(PENDING));
+			oneOf(db).getMessageDependencies(txn, messageId1);
+			will(returnValue(singletonMap(messageId, DELIVERED)));
+			oneOf(db).getMessage(txn, messageId1);
+			will(returnValue(message1));
+			oneOf(db).getGroup(txn, groupId);
+			will(returnValue(group));
+			oneOf(db).getMessageMetadataForValidator(txn, messageId1);
+			will(returnValue(metadata));
+			oneOf(hook).incomingMessage(txn, message1, metadata);
+			will(returnValue(ACCEPT_DO_NOT_SHARE));
+			oneOf(db).setMessageState(txn, messageId1, DELIVERED);
+			oneOf(db).getMessageDependents(txn, messageId1);
+			will(returnValue(singletonMap(messageId2, PENDING)));
+			// The transaction is full, so deliver message 2 in a new
+			// transaction
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn1));
+			oneOf(db).getMessageState(txn1, messageId2);
+			will(returnValue(PENDING));
+			oneOf(db).getMessageDependencies(txn1, messageId2);
+			will(returnValue(singletonMap(messageId1, DELIVERED)));
+			oneOf(db).getMessage(txn1, messageId2);
+			will(returnValue(message2));
+			oneOf(db).getGroup(txn1, groupId);
+			will(returnValue(group));
+			oneOf(db).getMessageMetadataForValidator(txn1, messageId2);
+			will(returnValue(metadata));
+			oneOf(hook).incomingMessage(txn1, message2, metadata);
+			will(returnValue(ACCEPT_DO_NOT_SHARE));
+			oneOf(db).setMessageState(txn1, messageId2, DELIVERED);
+			oneOf(db).getMessageDependents(txn1, messageId2);
+			will(returnValue(emptyMap()));
+		}});
+
+		expectGetMessagesToShare();
+
+		vm.startService();
+	}
+
+	@Test
+	public void testDependentsAreInvalidatedInSameTransaction()
+			throws Exception {
+		ValidationManagerImpl vm = createValidationManager(2);
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, false);
+		Transaction txn2 = new Transaction(null, false);
+
+		context.checking(new DbExpectations() {{
+			// Load the group
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
+			oneOf(db).getGroup(txn, groupId);
+			will(returnValue(group));
+			// Validate the message: invalid
+			oneOf(validator).validateMessage(message, group);
+			will(throwException(new InvalidMessageException()));
+			// Invalidate the message
+			oneOf(db).transaction(with(false), withDbRunnable(txn1));
+			oneOf(db).getMessageState(txn1, messageId);
+			will(returnValue(UNKNOWN));
+			oneOf(db).setMessageState(txn1, messageId, INVALID);
+			oneOf(db).deleteMessage(txn1, messageId);
+			oneOf(db).deleteMessageMetadata(txn1, messageId);
+			oneOf(db).getMessageDependents(txn1, messageId);
+			will(returnValue(singletonMap(messageId1, PENDING)));
+			// Invalidate message 1 and its dependent, message 2, in a
+			// single transaction
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn2));
+			oneOf(db).getMessageState(txn2, messageId1);
+			will(returnValue(PENDING));
+			oneOf(db).setMessageState(txn2, messageId1, INVALID);
+			oneOf(db).deleteMessage(txn2, messageId1);
+			oneOf(db).deleteMessageMetadata(txn2, messageId1);
+			oneOf(db).getMessageDependents(txn2, messageId1);
+			will(returnValue(singletonMap(messageId2, PENDING)));
+			oneOf(db).getMessageState(txn2, messageId2);
+			will(returnValue(PENDING));
+			oneOf(db).setMessageState(txn2, messageId2, INVALID);
+			oneOf(db).deleteMessage(txn2, messageId2);
+			oneOf(db).deleteMessageMetadata(txn2, messageId2);
+			oneOf(db).getMessageDependents(txn2, messageId2);
+			will(returnValue(emptyMap()));
+		}});
+
+		vm.eventOccurred(new MessageAddedEvent(message, contactId));
+	}
+
 	private void expectGetMessagesToValidate(MessageId... ids)
 			throws Exception {
 		Transaction txn = new Transaction(null, true);
@@ -0,0 +1,129 @@
+package org.briarproject.bramble.sync.validation;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.Metadata;
+import org.briarproject.bramble.api.identity.Identity;
+import org.briarproject.bramble.api.sync.ClientId;
+import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageContext;
+import org.briarproject.bramble.api.sync.event.MessageAddedEvent;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.briarproject.bramble.test.TestDatabaseConfigModule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
+import static org.briarproject.bramble.api.sync.validation.IncomingMessageHook.DeliveryAction.ACCEPT_DO_NOT_SHARE;
+import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getAuthor;
+import static org.briarproject.bramble.test.TestUtils.getClientId;
+import static org.briarproject.bramble.test.TestUtils.getGroup;
+import static org.briarproject.bramble.test.TestUtils.getIdentity;
+import static org.briarproject.bramble.test.TestUtils.getMessage;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how many incoming messages per second the validation manager can
+ * validate and deliver for different batch sizes, using a real database.
+ */
+@Ignore
+public class ValidationManagerPerformanceTest extends BrambleTestCase {
+
+	private static final int MESSAGES = 5000;
+	private static final int[] BATCH_SIZES = {1, 8, 32, 128};
+
+	private final File testDir = getTestDirectory();
+	private final ClientId clientId = getClientId();
+	private final int majorVersion = 123;
+
+	@Before
+	public void setUp() {
+		assertTrue(testDir.mkdirs());
+	}
+
+	@After
+	public void tearDown() {
+		deleteTestDirectory(testDir);
+	}
+
+	@Test
+	public void testValidationThroughputAtStartup() throws Exception {
+		for (int batchSize : BATCH_SIZES) {
+			benchmark("startup", batchSize, false);
+		}
+	}
+
+	@Test
+	public void testValidationThroughputForIncomingMessages()
+			throws Exception {
+		for (int batchSize : BATCH_SIZES) {
+			benchmark("incoming", batchSize, true);
+		}
+	}
+
+	private void benchmark(String name, int batchSize, boolean incoming)
+			throws Exception {
+		File dir = new File(testDir, name + "-" + batchSize);
+		ValidationPerformanceTestComponent c =
+				DaggerValidationPerformanceTestComponent.builder()
+						.testDatabaseConfigModule(
+								new TestDatabaseConfigModule(dir))
+						.build();
+		DatabaseComponent db = c.getDatabaseComponent();
+		db.open(getSecretKey(), null);
+		// Store some messages that haven't been validated yet
+		Group group = getGroup(clientId, majorVersion);
+		List<Message> messages = new ArrayList<>(MESSAGES);
+		for (int i = 0; i < MESSAGES; i++) {
+			messages.add(getMessage(group.getId()));
+		}
+		Identity identity = getIdentity();
+		ContactId contactId = db.transactionWithResult(false, txn -> {
+			db.addIdentity(txn, identity);
+			ContactId id = db.addContact(txn, getAuthor(),
+					identity.getLocalAuthor().getId(), null, true);
+			db.addGroup(txn, group);
+			db.setGroupVisibility(txn, id, group.getId(), SHARED);
+			for (Message m : messages) db.receiveMessage(txn, id, m);
+			return id;
+		});
+		// Validate and deliver the messages
+		CountDownLatch delivered = new CountDownLatch(MESSAGES);
+		ValidationManagerImpl vm = new ValidationManagerImpl(db,
+				c.getDatabaseExecutor(), c.getDatabaseReadExecutor(),
+				c.getValidationExecutor(), batchSize);
+		vm.registerMessageValidator(clientId, majorVersion,
+				(m, g) -> new MessageContext(new Metadata()));
+		vm.registerIncomingMessageHook(clientId, majorVersion,
+				(txn, m, meta) -> {
+					delivered.countDown();
+					return ACCEPT_DO_NOT_SHARE;
+				});
+		long start = System.nanoTime();
+		if (incoming) {
+			for (Message m : messages) {
+				vm.eventOccurred(new MessageAddedEvent(m, contactId));
+			}
+		} else {
+			vm.startService();
+		}
+		assertTrue(delivered.await(5, MINUTES));
+		long duration = System.nanoTime() - start;
+		db.close();
+		double perSecond = MESSAGES * 1_000_000_000.0 / duration;
+		System.out.println(String.format("%s\tbatch size %d\t%,.0f msg/s",
+				name, batchSize, perSecond));
+	}
+}
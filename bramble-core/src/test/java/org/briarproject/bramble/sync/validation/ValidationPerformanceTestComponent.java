@@ -0,0 +1,40 @@
+package org.briarproject.bramble.sync.validation;
+
+import org.briarproject.bramble.BrambleCoreModule;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DatabaseExecutor;
+import org.briarproject.bramble.api.db.DatabaseReadExecutor;
+import org.briarproject.bramble.mailbox.UrlConverterModule;
+import org.briarproject.bramble.test.BrambleCoreIntegrationTestModule;
+import org.briarproject.bramble.test.TestDnsModule;
+import org.briarproject.bramble.test.TestPluginConfigModule;
+import org.briarproject.bramble.test.TestSocksModule;
+
+import java.util.concurrent.Executor;
+
+import javax.inject.Singleton;
+
+import dagger.Component;
+
+@Singleton
+@Component(modules = {
+		BrambleCoreIntegrationTestModule.class,
+		BrambleCoreModule.class,
+		UrlConverterModule.class,
+		TestDnsModule.class,
+		TestSocksModule.class,
+		TestPluginConfigModule.class,
+})
+interface ValidationPerformanceTestComponent {
+
+	DatabaseComponent getDatabaseComponent();
+
+	@DatabaseExecutor
+	Executor getDatabaseExecutor();
+
+	@DatabaseReadExecutor
+	Executor getDatabaseReadExecutor();
+
+	@ValidationExecutor
+	Executor getValidationExecutor();
+}
@@ -2,20 +2,43 @@ package org.briarproject.bramble.test;
 
 import org.briarproject.bramble.api.crypto.KeyStrengthener;
 import org.briarproject.bramble.api.db.DatabaseConfig;
+import org.briarproject.bramble.api.db.DatabaseDurability;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.io.File;
 
 import javax.annotation.Nullable;
 
+import static org.briarproject.bramble.api.db.DatabaseDurability.STRICT;
+
 @NotNullByDefault
 public class TestDatabaseConfig implements DatabaseConfig {
 
 	private final File dbDir, keyDir;
+	private final int readOnlyConnectionPoolSize;
+	private final DatabaseDurability durability;
+	private final boolean incrementalCompaction;
 
 	public TestDatabaseConfig(File testDir) {
+		this(testDir, 0);
+	}
+
+	public TestDatabaseConfig(File testDir, int readOnlyConnectionPoolSize) {
+		this(testDir, readOnlyConnectionPoolSize, STRICT, false);
+	}
+
+	public TestDatabaseConfig(File testDir, DatabaseDurability durability,
+			boolean incrementalCompaction) {
+		this(testDir, 0, durability, incrementalCompaction);
+	}
+
+	private TestDatabaseConfig(File testDir, int readOnlyConnectionPoolSize,
+			DatabaseDurability durability, boolean incrementalCompaction) {
 		dbDir = new File(testDir, "db");
 		keyDir = new File(testDir, "key");
+		this.readOnlyConnectionPoolSize = readOnlyConnectionPoolSize;
+		this.durability = durability;
+		this.incrementalCompaction = incrementalCompaction;
 	}
 
 	@Override
@@ -33,4 +56,19 @@ public class TestDatabaseConfig implements DatabaseConfig {
 	public KeyStrengthener getKeyStrengthener() {
 		return null;
 	}
+
+	@Override
+	public int getReadOnlyConnectionPoolSize() {
+		return readOnlyConnectionPoolSize;
+	}
+
+	@Override
+	public DatabaseDurability getDurability() {
+		return durability;
+	}
+
+	@Override
+	public boolean isIncrementalCompactionEnabled() {
+		return incrementalCompaction;
+	}
 }
@@ -20,6 +20,11 @@ public class TestMessageFactory implements MessageFactory {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public Message createMessage(byte[] buf, int off, int length) {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public byte[] getRawMessage(Message m) {
 		byte[] body = m.getBody();
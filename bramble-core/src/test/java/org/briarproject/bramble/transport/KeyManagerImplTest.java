@@ -218,9 +218,22 @@ public class KeyManagerImplTest extends BrambleMockTestCase {
 		assertNull(keyManager.getStreamContext(unknownTransportId, tag));
 	}
 
+	@Test
+	public void testGetStreamContextForUnrecognisedTag() throws Exception {
+		context.checking(new Expectations() {{
+			// The tag isn't recognised, so no transaction should be started
+			oneOf(transportKeyManager).getStreamContextOnly(tag);
+			will(returnValue(null));
+		}});
+
+		assertNull(keyManager.getStreamContext(transportId, tag));
+	}
+
 	@Test
 	public void testGetStreamContextForTag() throws Exception {
 		context.checking(new DbExpectations() {{
+			oneOf(transportKeyManager).getStreamContextOnly(tag);
+			will(returnValue(contactStreamContext));
 			oneOf(db).transactionWithNullableResult(with(false),
 					withNullableDbCallable(txn));
 			oneOf(transportKeyManager).getStreamContext(txn, tag);
@@ -0,0 +1,59 @@
+package org.briarproject.bramble.transport;
+
+import org.briarproject.bramble.transport.ReorderingWindow.ChangeListener;
+
+import static org.briarproject.bramble.api.transport.TransportConstants.REORDERING_WINDOW_SIZE;
+
+/**
+ * Measures the throughput of marking stream numbers as seen in a reordering
+ * window, when streams arrive in order and when they're reordered within
+ * the window.
+ */
+// Not a JUnit test
+public class ReorderingWindowPerformanceTest {
+
+	private static final int ITERATIONS = 10_000_000;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) {
+		System.out.println("Arrival order, streams per second");
+		for (int round = 0; round < ROUNDS; round++) {
+			System.out.println(String.format("In order, %.0f",
+					runTest(false)));
+			System.out.println(String.format("Reordered, %.0f",
+					runTest(true)));
+		}
+	}
+
+	private static double runTest(boolean reordered) {
+		ReorderingWindow window = new ReorderingWindow(0L,
+				new byte[REORDERING_WINDOW_SIZE / 8]);
+		CountingListener listener = new CountingListener();
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			// Reordered streams arrive in groups of four in reverse order
+			long index = reordered ? i - i % 4 + 3 - i % 4 : i;
+			window.setSeen(index, listener);
+		}
+		long duration = System.nanoTime() - start;
+		// Use the result so the loop isn't optimised away
+		if (listener.added + listener.removed < ITERATIONS)
+			throw new AssertionError();
+		return ITERATIONS / (duration / 1_000_000_000.0);
+	}
+
+	private static class CountingListener implements ChangeListener {
+
+		private long added = 0, removed = 0;
+
+		@Override
+		public void onAdded(long index) {
+			added++;
+		}
+
+		@Override
+		public void onRemoved(long index) {
+			removed++;
+		}
+	}
+}
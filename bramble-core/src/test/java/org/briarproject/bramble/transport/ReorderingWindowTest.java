@@ -2,11 +2,14 @@ package org.briarproject.bramble.transport;
 
 import org.briarproject.bramble.test.BrambleTestCase;
 import org.briarproject.bramble.test.TestUtils;
-import org.briarproject.bramble.transport.ReorderingWindow.Change;
+import org.briarproject.bramble.transport.ReorderingWindow.ChangeListener;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 import static org.briarproject.bramble.api.transport.TransportConstants.REORDERING_WINDOW_SIZE;
 import static org.junit.Assert.assertArrayEquals;
@@ -30,12 +33,13 @@ public class ReorderingWindowTest extends BrambleTestCase {
 		byte[] bitmap = new byte[BITMAP_BYTES];
 		ReorderingWindow window = new ReorderingWindow(0L, bitmap);
 		// Set the first element seen
-		Change change = window.setSeen(0L);
+		Changes change = new Changes();
+		window.setSeen(0L, change);
 		// The window should slide by one element
 		assertEquals(1L, window.getBase());
 		assertEquals(Collections.singletonList((long) REORDERING_WINDOW_SIZE),
-				change.getAdded());
-		assertEquals(Collections.singletonList(0L), change.getRemoved());
+				change.added);
+		assertEquals(Collections.singletonList(0L), change.removed);
 		// All elements in the window should be unseen
 		assertArrayEquals(bitmap, window.getBitmap());
 	}
@@ -45,11 +49,12 @@ public class ReorderingWindowTest extends BrambleTestCase {
 		byte[] bitmap = new byte[BITMAP_BYTES];
 		ReorderingWindow window = new ReorderingWindow(0L, bitmap);
 		// Set an element below the midpoint seen
-		Change change = window.setSeen(1L);
+		Changes change = new Changes();
+		window.setSeen(1L, change);
 		// The window should not slide
 		assertEquals(0L, window.getBase());
-		assertEquals(Collections.emptyList(), change.getAdded());
-		assertEquals(Collections.singletonList(1L), change.getRemoved());
+		assertEquals(Collections.emptyList(), change.added);
+		assertEquals(Collections.singletonList(1L), change.removed);
 		// The second element in the window should be seen
 		bitmap[0] = 0x40; // 0100 0000
 		assertArrayEquals(bitmap, window.getBitmap());
@@ -61,12 +66,13 @@ public class ReorderingWindowTest extends BrambleTestCase {
 		ReorderingWindow window = new ReorderingWindow(0, bitmap);
 		long aboveMidpoint = REORDERING_WINDOW_SIZE / 2;
 		// Set an element above the midpoint seen
-		Change change = window.setSeen(aboveMidpoint);
+		Changes change = new Changes();
+		window.setSeen(aboveMidpoint, change);
 		// The window should slide by one element
 		assertEquals(1L, window.getBase());
 		assertEquals(Collections.singletonList((long) REORDERING_WINDOW_SIZE),
-				change.getAdded());
-		assertEquals(Arrays.asList(0L, aboveMidpoint), change.getRemoved());
+				change.added);
+		assertEquals(Arrays.asList(0L, aboveMidpoint), change.removed);
 		// The highest element below the midpoint should be seen
 		bitmap[bitmap.length / 2 - 1] = (byte) 0x01; // 0000 0001
 		assertArrayEquals(bitmap, window.getBitmap());
@@ -76,14 +82,15 @@ public class ReorderingWindowTest extends BrambleTestCase {
 	public void testWindowSlidesUntilLowestElementIsUnseenWhenFirstElementIsSeen() {
 		byte[] bitmap = new byte[BITMAP_BYTES];
 		ReorderingWindow window = new ReorderingWindow(0L, bitmap);
-		window.setSeen(1L);
+		window.setSeen(1L, new Changes());
 		// Set the first element seen
-		Change change = window.setSeen(0L);
+		Changes change = new Changes();
+		window.setSeen(0L, change);
 		// The window should slide by two elements
 		assertEquals(2L, window.getBase());
 		assertEquals(Arrays.asList((long) REORDERING_WINDOW_SIZE,
-				(long) (REORDERING_WINDOW_SIZE + 1)), change.getAdded());
-		assertEquals(Collections.singletonList(0L), change.getRemoved());
+				(long) (REORDERING_WINDOW_SIZE + 1)), change.added);
+		assertEquals(Collections.singletonList(0L), change.removed);
 		// All elements in the window should be unseen
 		assertArrayEquals(bitmap, window.getBitmap());
 	}
@@ -92,17 +99,99 @@ public class ReorderingWindowTest extends BrambleTestCase {
 	public void testWindowSlidesUntilLowestElementIsUnseenWhenElementAboveMidpointIsSeen() {
 		byte[] bitmap = new byte[BITMAP_BYTES];
 		ReorderingWindow window = new ReorderingWindow(0L, bitmap);
-		window.setSeen(1L);
+		window.setSeen(1L, new Changes());
 		long aboveMidpoint = REORDERING_WINDOW_SIZE / 2;
 		// Set an element above the midpoint seen
-		Change change = window.setSeen(aboveMidpoint);
+		Changes change = new Changes();
+		window.setSeen(aboveMidpoint, change);
 		// The window should slide by two elements
 		assertEquals(2L, window.getBase());
 		assertEquals(Arrays.asList((long) REORDERING_WINDOW_SIZE,
-				(long) (REORDERING_WINDOW_SIZE + 1)), change.getAdded());
-		assertEquals(Arrays.asList(0L, aboveMidpoint), change.getRemoved());
+				(long) (REORDERING_WINDOW_SIZE + 1)), change.added);
+		assertEquals(Arrays.asList(0L, aboveMidpoint), change.removed);
 		// The second-highest element below the midpoint should be seen
 		bitmap[bitmap.length / 2 - 1] = (byte) 0x02; // 0000 0010
 		assertArrayEquals(bitmap, window.getBitmap());
 	}
+
+	@Test
+	public void testWindowMatchesArrayImplementation() {
+		Random random = new Random();
+		for (int i = 0; i < 100; i++) {
+			// Use sizes that aren't multiples of 64 to test wrapping
+			int bitmapBytes = 1 + random.nextInt(BITMAP_BYTES * 4);
+			byte[] bitmap = new byte[bitmapBytes];
+			ReorderingWindow window = new ReorderingWindow(0L, bitmap);
+			ArrayWindow expected = new ArrayWindow(bitmapBytes * 8);
+			for (int j = 0; j < 1000; j++) {
+				// Choose an unseen element, preferring low elements
+				List<Long> unseen = window.getUnseen();
+				assertEquals(expected.getUnseen(), unseen);
+				int choice = random.nextInt(unseen.size());
+				long index = unseen.get(random.nextInt(choice + 1));
+				Changes change = new Changes();
+				window.setSeen(index, change);
+				Changes expectedChange = expected.setSeen(index);
+				assertEquals(expected.base, window.getBase());
+				assertEquals(expectedChange.added, change.added);
+				assertEquals(expectedChange.removed, change.removed);
+			}
+		}
+	}
+
+	private static class Changes implements ChangeListener {
+
+		private final List<Long> added = new ArrayList<>();
+		private final List<Long> removed = new ArrayList<>();
+
+		@Override
+		public void onAdded(long index) {
+			added.add(index);
+		}
+
+		@Override
+		public void onRemoved(long index) {
+			removed.add(index);
+		}
+	}
+
+	/**
+	 * A straightforward implementation of the window that shifts an array
+	 * when the window slides.
+	 */
+	private static class ArrayWindow {
+
+		private final boolean[] seen;
+		private long base = 0;
+
+		private ArrayWindow(int size) {
+			seen = new boolean[size];
+		}
+
+		private List<Long> getUnseen() {
+			List<Long> unseen = new ArrayList<>();
+			for (int i = 0; i < seen.length; i++)
+				if (!seen[i]) unseen.add(base + i);
+			return unseen;
+		}
+
+		private Changes setSeen(long index) {
+			int offset = (int) (index - base);
+			seen[offset] = true;
+			int slide = Math.max(0, offset + 1 - seen.length / 2);
+			while (seen[slide]) slide++;
+			Changes change = new Changes();
+			for (int i = 0; i < slide; i++) {
+				if (!seen[i]) change.onRemoved(base + i);
+				change.onAdded(base + seen.length + i);
+			}
+			change.onRemoved(index);
+			base += slide;
+			for (int i = 0; i + slide < seen.length; i++)
+				seen[i] = seen[i + slide];
+			for (int i = seen.length - slide; i < seen.length; i++)
+				seen[i] = false;
+			return change;
+		}
+	}
 }
@@ -436,14 +436,14 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		assertEquals(REORDERING_WINDOW_SIZE * 3, tags.size());
 		byte[] tag = tags.get(0);
 		// Repeated request should return same stream context
-		StreamContext ctx = transportKeyManager.getStreamContextOnly(txn, tag);
+		StreamContext ctx = transportKeyManager.getStreamContextOnly(tag);
 		assertNotNull(ctx);
 		assertEquals(contactId, ctx.getContactId());
 		assertEquals(transportId, ctx.getTransportId());
 		assertEquals(tagKey, ctx.getTagKey());
 		assertEquals(headerKey, ctx.getHeaderKey());
 		assertEquals(0L, ctx.getStreamNumber());
-		ctx = transportKeyManager.getStreamContextOnly(txn, tag);
+		ctx = transportKeyManager.getStreamContextOnly(tag);
 		assertNotNull(ctx);
 		assertEquals(contactId, ctx.getContactId());
 		assertEquals(transportId, ctx.getTransportId());
@@ -455,7 +455,7 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		// Another tag should have been encoded
 		assertEquals(REORDERING_WINDOW_SIZE * 3 + 1, tags.size());
 		// Finally ensure the used tag is not recognised again
-		assertNull(transportKeyManager.getStreamContextOnly(txn, tag));
+		assertNull(transportKeyManager.getStreamContextOnly(tag));
 	}
 
 	@Test
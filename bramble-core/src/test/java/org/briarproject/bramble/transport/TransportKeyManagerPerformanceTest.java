@@ -0,0 +1,203 @@
+package org.briarproject.bramble.transport;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.crypto.TransportCrypto;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.system.Clock;
+import org.briarproject.bramble.api.system.TaskScheduler;
+import org.briarproject.bramble.api.transport.IncomingKeys;
+import org.briarproject.bramble.api.transport.KeySetId;
+import org.briarproject.bramble.api.transport.OutgoingKeys;
+import org.briarproject.bramble.api.transport.TransportKeySet;
+import org.briarproject.bramble.api.transport.TransportKeys;
+import org.hamcrest.Description;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.api.Action;
+import org.jmock.api.Invocation;
+import org.jmock.lib.concurrent.Synchroniser;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Collections.synchronizedList;
+import static org.briarproject.bramble.api.transport.TransportConstants.MAX_CLOCK_DIFFERENCE;
+import static org.briarproject.bramble.api.transport.TransportConstants.TAG_LENGTH;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.test.TestUtils.getTransportId;
+
+/**
+ * Measures the throughput of incoming tag lookups as the number of
+ * concurrent connections grows, while another thread repeatedly takes the
+ * key manager's lock to create outgoing stream contexts.
+ */
+// Not a JUnit test
+public class TransportKeyManagerPerformanceTest {
+
+	private static final int CONTACTS = 100;
+	private static final int LOOKUPS_PER_THREAD = 1_000_000;
+	private static final int[] THREADS = {1, 2, 4, 8};
+	private static final long MAX_LATENCY = 30 * 1000;
+	private static final long TIME_PERIOD = 1000;
+
+	private static final Mockery context = new Mockery();
+	private static final TransportId transportId = getTransportId();
+	private static final List<byte[]> tags =
+			synchronizedList(new ArrayList<>());
+
+	public static void main(String[] args) throws Exception {
+		context.setThreadingPolicy(new Synchroniser());
+		TransportKeyManager transportKeyManager = createTransportKeyManager();
+		System.out.println("Threads, lookups per second");
+		for (int threads : THREADS) {
+			double lookups = runTest(transportKeyManager, threads);
+			System.out.println(String.format("%d, %.0f", threads, lookups));
+		}
+	}
+
+	private static double runTest(TransportKeyManager transportKeyManager,
+			int threads) throws InterruptedException {
+		Transaction txn = new Transaction(null, false);
+		AtomicBoolean running = new AtomicBoolean(true);
+		// Create outgoing stream contexts until the lookups are done
+		Thread writer = new Thread(() -> {
+			int i = 0;
+			while (running.get()) {
+				ContactId c = new ContactId(i++ % CONTACTS + 1);
+				try {
+					transportKeyManager.getStreamContext(txn, c);
+				} catch (Exception e) {
+					throw new AssertionError(e);
+				}
+			}
+		});
+		writer.start();
+		CountDownLatch latch = new CountDownLatch(threads);
+		long start = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			Random random = new Random(t);
+			byte[] unknown = getRandomBytes(TAG_LENGTH);
+			new Thread(() -> {
+				for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+					// Half the lookups are for tags we expect to see, and
+					// half are for tags we don't recognise
+					try {
+						if (i % 2 == 0) {
+							byte[] tag = tags.get(random.nextInt(tags.size()));
+							if (transportKeyManager.getStreamContextOnly(tag)
+									== null) {
+								throw new AssertionError();
+							}
+						} else if (transportKeyManager.getStreamContext(txn,
+								unknown) != null) {
+							throw new AssertionError();
+						}
+					} catch (Exception e) {
+						throw new AssertionError(e);
+					}
+				}
+				latch.countDown();
+			}).start();
+		}
+		latch.await();
+		long duration = System.nanoTime() - start;
+		running.set(false);
+		writer.join();
+		double lookups = (double) threads * LOOKUPS_PER_THREAD;
+		return lookups / (duration / 1_000_000_000.0);
+	}
+
+	private static TransportKeyManager createTransportKeyManager()
+			throws Exception {
+		DatabaseComponent db = context.mock(DatabaseComponent.class);
+		TransportCrypto transportCrypto = context.mock(TransportCrypto.class);
+		Executor dbExecutor = context.mock(Executor.class);
+		TaskScheduler scheduler = context.mock(TaskScheduler.class);
+		Clock clock = context.mock(Clock.class);
+		long timePeriodLength = MAX_LATENCY + MAX_CLOCK_DIFFERENCE;
+		Collection<TransportKeySet> loaded = new ArrayList<>();
+		for (int i = 1; i <= CONTACTS; i++) {
+			loaded.add(new TransportKeySet(new KeySetId(i), new ContactId(i),
+					null, createTransportKeys()));
+		}
+		Transaction txn = new Transaction(null, false);
+
+		context.checking(new Expectations() {{
+			allowing(clock).currentTimeMillis();
+			will(returnValue(timePeriodLength * TIME_PERIOD));
+			oneOf(db).getTransportKeys(txn, transportId);
+			will(returnValue(loaded));
+			allowing(transportCrypto).updateTransportKeys(
+					with(any(TransportKeys.class)), with(TIME_PERIOD));
+			will(new ReturnFirstArgumentAction());
+			allowing(transportCrypto).encodeTag(with(any(byte[].class)),
+					with(any(SecretKey.class)), with(any(int.class)),
+					with(any(long.class)));
+			will(new EncodeTagAction());
+			allowing(scheduler).schedule(with(any(Runnable.class)),
+					with(any(Executor.class)), with(any(long.class)),
+					with(any(TimeUnit.class)));
+			allowing(db).incrementStreamCounter(with(any(Transaction.class)),
+					with(transportId), with(any(KeySetId.class)));
+		}});
+
+		TransportKeyManager transportKeyManager =
+				new TransportKeyManagerImpl(db, transportCrypto, dbExecutor,
+						scheduler, clock, transportId, MAX_LATENCY);
+		transportKeyManager.start(txn);
+		return transportKeyManager;
+	}
+
+	private static TransportKeys createTransportKeys() {
+		IncomingKeys inPrev = new IncomingKeys(getSecretKey(),
+				getSecretKey(), TIME_PERIOD - 1);
+		IncomingKeys inCurr = new IncomingKeys(getSecretKey(),
+				getSecretKey(), TIME_PERIOD);
+		IncomingKeys inNext = new IncomingKeys(getSecretKey(),
+				getSecretKey(), TIME_PERIOD + 1);
+		OutgoingKeys outCurr = new OutgoingKeys(getSecretKey(),
+				getSecretKey(), TIME_PERIOD, 0, true);
+		return new TransportKeys(transportId, inPrev, inCurr, inNext,
+				outCurr);
+	}
+
+	private static class EncodeTagAction implements Action {
+
+		@Override
+		public Object invoke(Invocation invocation) {
+			byte[] tag = (byte[]) invocation.getParameter(0);
+			byte[] random = getRandomBytes(tag.length);
+			System.arraycopy(random, 0, tag, 0, tag.length);
+			tags.add(tag);
+			return null;
+		}
+
+		@Override
+		public void describeTo(Description description) {
+			description.appendText("encodes a tag");
+		}
+	}
+
+	private static class ReturnFirstArgumentAction implements Action {
+
+		@Override
+		public Object invoke(Invocation invocation) {
+			return invocation.getParameter(0);
+		}
+
+		@Override
+		public void describeTo(Description description) {
+			description.appendText("returns the first argument");
+		}
+	}
+}
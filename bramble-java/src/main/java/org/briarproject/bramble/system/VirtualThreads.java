@@ -0,0 +1,79 @@
+package org.briarproject.bramble.system;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.util.LogUtils.logException;
+
+/**
+ * Creates virtual threads when running on a JVM that supports them.
+ * <p>
+ * A virtual thread that blocks on a socket doesn't occupy a platform
+ * thread, so the reader and writer tasks of many connections can share a
+ * small number of platform threads. Before Java 24, a virtual thread that
+ * blocks while holding a monitor pins its platform thread, and much of the
+ * sync code blocks while holding monitors, so virtual threads are only used
+ * on Java 24 and later.
+ */
+@NotNullByDefault
+public class VirtualThreads {
+
+	private static final Logger LOG = getLogger(VirtualThreads.class.getName());
+
+	/**
+	 * The first Java version where blocking while holding a monitor doesn't
+	 * pin a virtual thread's platform thread.
+	 */
+	private static final int MIN_JAVA_VERSION = 24;
+
+	/**
+	 * Returns a factory for virtual threads with the given name prefix, or
+	 * null if virtual threads aren't supported by this JVM.
+	 */
+	@Nullable
+	public static ThreadFactory getVirtualThreadFactory(String namePrefix) {
+		int javaVersion = getJavaVersion();
+		if (javaVersion < MIN_JAVA_VERSION) {
+			if (LOG.isLoggable(INFO))
+				LOG.info("Not using virtual threads on Java " + javaVersion);
+			return null;
+		}
+		try {
+			// Thread.ofVirtual().name(namePrefix, 0).factory()
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			Method name = builderClass.getMethod("name", String.class,
+					long.class);
+			Method factory = builderClass.getMethod("factory");
+			Object builder = ofVirtual.invoke(null);
+			builder = name.invoke(builder, namePrefix, 0L);
+			ThreadFactory f = (ThreadFactory) factory.invoke(builder);
+			if (LOG.isLoggable(INFO))
+				LOG.info("Using virtual threads for " + namePrefix);
+			return f;
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			logException(LOG, WARNING, e);
+			return null;
+		}
+	}
+
+	private static int getJavaVersion() {
+		// "1.8" before Java 9, "9", "10" etc afterwards
+		String version = System.getProperty("java.specification.version");
+		if (version == null) return 0;
+		if (version.startsWith("1.")) version = version.substring(2);
+		try {
+			return Integer.parseInt(version);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package org.briarproject.bramble.plugin.tcp;
+
+import org.briarproject.bramble.api.plugin.Plugin;
+import org.briarproject.bramble.api.plugin.TransportConnectionReader;
+import org.briarproject.bramble.api.plugin.TransportConnectionWriter;
+import org.briarproject.bramble.api.plugin.duplex.DuplexTransportConnection;
+import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static java.lang.management.ManagementFactory.getThreadMXBean;
+import static java.util.concurrent.Executors.defaultThreadFactory;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.system.VirtualThreads.getVirtualThreadFactory;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Opens many TCP connections over the loopback interface and transfers data
+ * in both directions, with a reader and a writer task for each end of each
+ * connection, as the connection manager does. The tasks run on an executor
+ * that's configured like the IoExecutor, using virtual threads if the JVM
+ * supports them.
+ */
+public class TcpConnectionLoadTest extends BrambleMockTestCase {
+
+	private static final Logger LOG =
+			getLogger(TcpConnectionLoadTest.class.getName());
+
+	private static final int PEERS = 200;
+	private static final int BYTES_PER_DIRECTION = 16 * 1024;
+	private static final int TIMEOUT_SECONDS = 60;
+
+	private final Plugin plugin = context.mock(Plugin.class);
+
+	private final ThreadFactory virtualThreadFactory =
+			getVirtualThreadFactory("IoExecutor-");
+	private final ExecutorService ioExecutor = newCachedThreadPool(
+			virtualThreadFactory == null ? defaultThreadFactory() :
+					virtualThreadFactory);
+
+	private final byte[] data = getRandomBytes(BYTES_PER_DIRECTION);
+	// Each writer sends half its data, then waits for all the writers to
+	// start, so all the connections are open and blocked at the same time
+	private final CountDownLatch writersStarted =
+			new CountDownLatch(PEERS * 2);
+	private final CountDownLatch finished = new CountDownLatch(PEERS * 4);
+	private final AtomicInteger failures = new AtomicInteger(0);
+
+	@After
+	public void tearDown() {
+		ioExecutor.shutdownNow();
+	}
+
+	@Test
+	public void testManyConcurrentConnections() throws Exception {
+		int threadsBefore = getThreadMXBean().getThreadCount();
+		ServerSocket ss = new ServerSocket();
+		ss.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		ioExecutor.execute(() -> acceptConnections(ss));
+		for (int i = 0; i < PEERS; i++) {
+			Socket s = new Socket();
+			s.connect(ss.getLocalSocketAddress());
+			handleConnection(new TcpTransportConnection(plugin, s));
+		}
+
+		assertTrue(writersStarted.await(TIMEOUT_SECONDS, SECONDS));
+		int threadsDuring = getThreadMXBean().getThreadCount();
+		assertTrue(finished.await(TIMEOUT_SECONDS, SECONDS));
+		ss.close();
+		assertEquals(0, failures.get());
+
+		LOG.info(PEERS + " peers used " + (threadsDuring - threadsBefore)
+				+ " platform threads, virtual threads "
+				+ (virtualThreadFactory == null ? "disabled" : "enabled"));
+		if (virtualThreadFactory != null) {
+			// The connections' tasks shouldn't each need a platform thread
+			assertTrue(threadsDuring - threadsBefore < PEERS);
+		}
+	}
+
+	private void acceptConnections(ServerSocket ss) {
+		for (int i = 0; i < PEERS; i++) {
+			try {
+				Socket s = ss.accept();
+				handleConnection(new TcpTransportConnection(plugin, s));
+			} catch (IOException e) {
+				failures.incrementAndGet();
+				return;
+			}
+		}
+	}
+
+	private void handleConnection(DuplexTransportConnection c) {
+		ioExecutor.execute(() -> read(c.getReader()));
+		ioExecutor.execute(() -> write(c.getWriter()));
+	}
+
+	private void read(TransportConnectionReader r) {
+		boolean exception = false;
+		try {
+			InputStream in = r.getInputStream();
+			byte[] received = new byte[BYTES_PER_DIRECTION];
+			new DataInputStream(in).readFully(received);
+			if (!Arrays.equals(data, received)) failures.incrementAndGet();
+		} catch (IOException e) {
+			exception = true;
+			failures.incrementAndGet();
+		} finally {
+			dispose(r, exception);
+			finished.countDown();
+		}
+	}
+
+	private void write(TransportConnectionWriter w) {
+		boolean exception = false;
+		try {
+			OutputStream out = w.getOutputStream();
+			int half = BYTES_PER_DIRECTION / 2;
+			out.write(data, 0, half);
+			out.flush();
+			writersStarted.countDown();
+			if (!writersStarted.await(TIMEOUT_SECONDS, SECONDS))
+				throw new IOException("Timed out");
+			out.write(data, half, BYTES_PER_DIRECTION - half);
+			out.flush();
+		} catch (IOException e) {
+			exception = true;
+			failures.incrementAndGet();
+		} catch (InterruptedException e) {
+			exception = true;
+			failures.incrementAndGet();
+			Thread.currentThread().interrupt();
+		} finally {
+			try {
+				w.dispose(exception);
+			} catch (IOException e) {
+				failures.incrementAndGet();
+			}
+			finished.countDown();
+		}
+	}
+
+	private void dispose(TransportConnectionReader r, boolean exception) {
+		try {
+			r.dispose(exception, true);
+		} catch (IOException e) {
+			failures.incrementAndGet();
+		}
+	}
+}
@@ -2,12 +2,15 @@ package org.briarproject.briar.android;
 
 import org.briarproject.bramble.api.crypto.KeyStrengthener;
 import org.briarproject.bramble.api.db.DatabaseConfig;
+import org.briarproject.bramble.api.db.DatabaseDurability;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.io.File;
 
 import javax.annotation.Nullable;
 
+import static org.briarproject.bramble.api.db.DatabaseDurability.STRICT;
+
 @NotNullByDefault
 class AndroidDatabaseConfig implements DatabaseConfig {
 
@@ -37,4 +40,20 @@ class AndroidDatabaseConfig implements DatabaseConfig {
 	public KeyStrengthener getKeyStrengthener() {
 		return keyStrengthener;
 	}
+
+	@Override
+	public int getReadOnlyConnectionPoolSize() {
+		// Read-only transactions share the database lock
+		return 0;
+	}
+
+	@Override
+	public DatabaseDurability getDurability() {
+		return STRICT;
+	}
+
+	@Override
+	public boolean isIncrementalCompactionEnabled() {
+		return false;
+	}
 }
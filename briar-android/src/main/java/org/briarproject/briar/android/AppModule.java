@@ -80,6 +80,7 @@ import dagger.Provides;
 import static android.content.Context.MODE_PRIVATE;
 import static android.os.Build.VERSION.SDK_INT;
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
 import static org.briarproject.bramble.api.plugin.TorConstants.DEFAULT_CONTROL_PORT;
@@ -295,7 +296,7 @@ public class AppModule {
 			ScreenFilterMonitorImpl screenFilterMonitor) {
 		if (SDK_INT <= 29) {
 			// this keeps track of installed apps and does not work on API 30+
-			lifecycleManager.registerService(screenFilterMonitor);
+			lifecycleManager.registerService(screenFilterMonitor, emptyList());
 		}
 		return screenFilterMonitor;
 	}
@@ -305,7 +306,7 @@ public class AppModule {
 	NetworkUsageMetrics provideNetworkUsageMetrics(
 			LifecycleManager lifecycleManager) {
 		NetworkUsageMetrics networkUsageMetrics = new NetworkUsageMetricsImpl();
-		lifecycleManager.registerService(networkUsageMetrics);
+		lifecycleManager.registerService(networkUsageMetrics, emptyList());
 		return networkUsageMetrics;
 	}
 
@@ -313,7 +314,7 @@ public class AppModule {
 	@Singleton
 	DozeWatchdog provideDozeWatchdog(LifecycleManager lifecycleManager) {
 		DozeWatchdogImpl dozeWatchdog = new DozeWatchdogImpl(application);
-		lifecycleManager.registerService(dozeWatchdog);
+		lifecycleManager.registerService(dozeWatchdog, emptyList());
 		return dozeWatchdog;
 	}
 
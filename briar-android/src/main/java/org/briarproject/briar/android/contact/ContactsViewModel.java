@@ -33,6 +33,7 @@ import org.briarproject.nullsafety.NotNullByDefault;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
@@ -93,14 +94,18 @@ public class ContactsViewModel extends DbViewModel implements EventListener {
 			throws DbException {
 		long start = now();
 		List<ContactListItem> contacts = new ArrayList<>();
+		Map<ContactId, MessageTracker.GroupCount> counts =
+				conversationManager.getGroupCounts(txn);
 		for (Contact c : contactManager.getContacts(txn)) {
 			ContactId id = c.getId();
 			if (!displayContact(id)) {
 				continue;
 			}
 			AuthorInfo authorInfo = authorManager.getAuthorInfo(txn, c);
-			MessageTracker.GroupCount count =
-					conversationManager.getGroupCount(txn, id);
+			MessageTracker.GroupCount count = counts.get(id);
+			if (count == null) {
+				count = conversationManager.getGroupCount(txn, id);
+			}
 			boolean connected = connectionRegistry.isConnected(c.getId());
 			contacts.add(new ContactListItem(c, authorInfo, connected, count));
 		}
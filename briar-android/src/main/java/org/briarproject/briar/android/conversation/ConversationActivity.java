@@ -127,8 +127,8 @@ import static android.widget.Toast.LENGTH_SHORT;
 import static androidx.core.app.ActivityOptionsCompat.makeSceneTransitionAnimation;
 import static androidx.lifecycle.Lifecycle.State.STARTED;
 import static androidx.recyclerview.widget.SortedList.INVALID_POSITION;
+import static java.lang.Math.min;
 import static java.util.Collections.singletonList;
-import static java.util.Collections.sort;
 import static java.util.Objects.requireNonNull;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
@@ -167,6 +167,17 @@ public class ConversationActivity extends BriarActivity
 	private static final int TRANSITION_DURATION_MS = 500;
 	private static final int ONBOARDING_DELAY_MS = 250;
 
+	/**
+	 * The number of messages to load at a time.
+	 */
+	private static final int PAGE_SIZE = 50;
+
+	/**
+	 * Older messages are loaded when the user scrolls to within this many
+	 * items of the top of the conversation.
+	 */
+	private static final int LOAD_OLDER_MESSAGES_THRESHOLD = 10;
+
 	@Inject
 	AndroidNotificationManager notificationManager;
 	@Inject
@@ -232,6 +243,13 @@ public class ConversationActivity extends BriarActivity
 
 	private volatile ContactId contactId;
 
+	/**
+	 * The timestamp of the oldest loaded message, or Long.MAX_VALUE if no
+	 * messages have been loaded. Only written on the UI thread.
+	 */
+	private volatile long oldestTimestamp = Long.MAX_VALUE;
+	private boolean hasOlderMessages = false, loadingOlderMessages = false;
+
 	@Override
 	public void injectActivity(ActivityComponent component) {
 		component.inject(this);
@@ -292,6 +310,17 @@ public class ConversationActivity extends BriarActivity
 		ConversationScrollListener scrollListener =
 				new ConversationScrollListener(adapter, viewModel);
 		list.getRecyclerView().addOnScrollListener(scrollListener);
+		list.getRecyclerView().addOnScrollListener(
+				new RecyclerView.OnScrollListener() {
+					@Override
+					public void onScrolled(RecyclerView recyclerView, int dx,
+							int dy) {
+						if (dy >= 0) return;
+						int first = layoutManager.findFirstVisibleItemPosition();
+						if (first < LOAD_OLDER_MESSAGES_THRESHOLD)
+							loadOlderMessages();
+					}
+				});
 		addSelectionTracker();
 
 		textInputView = findViewById(R.id.text_input_container);
@@ -543,30 +572,59 @@ public class ConversationActivity extends BriarActivity
 
 	private void loadMessages() {
 		int revision = adapter.getRevision();
+		long oldest = oldestTimestamp;
+		boolean firstPage = oldest == Long.MAX_VALUE;
 		runOnDbThread(() -> {
 			try {
 				long start = now();
-				Collection<ConversationMessageHeader> headers =
-						conversationManager.getMessageHeaders(contactId);
+				List<ConversationMessageHeader> headers;
+				if (firstPage) {
+					// Load the latest page of messages
+					headers = conversationManager.getMessageHeaders(contactId,
+							Long.MAX_VALUE, true, PAGE_SIZE);
+				} else {
+					// Reload all the messages that have already been loaded
+					headers = conversationManager.getMessageHeaders(contactId,
+							oldest - 1, false, Integer.MAX_VALUE);
+				}
 				logDuration(LOG, "Loading messages", start);
-				// Sort headers by timestamp in *descending* order
-				List<ConversationMessageHeader> sorted =
-						new ArrayList<>(headers);
-				sort(sorted, (a, b) ->
-						Long.compare(b.getTimestamp(), a.getTimestamp()));
-				if (!sorted.isEmpty()) {
+				if (!headers.isEmpty()) {
 					// If the latest header is a private message, eagerly load
 					// its size so we can set the scroll position correctly
-					ConversationMessageHeader latest = sorted.get(0);
+					ConversationMessageHeader latest =
+							headers.get(headers.size() - 1);
 					if (latest instanceof PrivateMessageHeader) {
 						eagerlyLoadMessageSize((PrivateMessageHeader) latest);
 					}
 				}
-				displayMessages(revision, sorted);
+				displayMessages(revision, headers, firstPage);
+			} catch (NoSuchContactException e) {
+				finishOnUiThread();
+			} catch (DbException e) {
+				logException(LOG, WARNING, e);
+			}
+		});
+	}
+
+	@UiThread
+	private void loadOlderMessages() {
+		if (!hasOlderMessages || loadingOlderMessages) return;
+		loadingOlderMessages = true;
+		long before = oldestTimestamp;
+		runOnDbThread(() -> {
+			try {
+				long start = now();
+				List<ConversationMessageHeader> headers =
+						conversationManager.getMessageHeaders(contactId,
+								before, true, PAGE_SIZE);
+				logDuration(LOG, "Loading older messages", start);
+				displayOlderMessages(headers);
 			} catch (NoSuchContactException e) {
 				finishOnUiThread();
 			} catch (DbException e) {
 				logException(LOG, WARNING, e);
+				runOnUiThreadUnlessDestroyed(() ->
+						loadingOlderMessages = false);
 			}
 		});
 	}
@@ -600,10 +658,15 @@ public class ConversationActivity extends BriarActivity
 	}
 
 	private void displayMessages(int revision,
-			Collection<ConversationMessageHeader> headers) {
+			List<ConversationMessageHeader> headers, boolean firstPage) {
 		runOnUiThreadUnlessDestroyed(() -> {
 			if (revision == adapter.getRevision()) {
 				adapter.incrementRevision();
+				if (firstPage) hasOlderMessages = headers.size() >= PAGE_SIZE;
+				if (!headers.isEmpty()) {
+					oldestTimestamp = min(oldestTimestamp,
+							headers.get(0).getTimestamp());
+				}
 				textInputView.setReady(true);
 				// start observing onboarding after enabling
 				if (featureFlags.shouldEnableImageAttachments()) {
@@ -626,6 +689,17 @@ public class ConversationActivity extends BriarActivity
 		});
 	}
 
+	private void displayOlderMessages(List<ConversationMessageHeader> headers) {
+		runOnUiThreadUnlessDestroyed(() -> {
+			loadingOlderMessages = false;
+			hasOlderMessages = headers.size() >= PAGE_SIZE;
+			if (headers.isEmpty()) return;
+			oldestTimestamp = min(oldestTimestamp,
+					headers.get(0).getTimestamp());
+			adapter.addAll(createItems(headers));
+		});
+	}
+
 	/**
 	 * Creates ConversationItems from headers loaded from the database.
 	 * <p>
@@ -8,6 +8,10 @@ public interface AttachmentReader {
 
 	/**
 	 * Returns the attachment with the given attachment header.
+	 * <p>
+	 * If the attachment is split into chunks, the chunks are loaded from the
+	 * database in separate transactions as the attachment's stream is read,
+	 * so the stream should not be read while holding a transaction.
 	 *
 	 * @throws NoSuchMessageException If the header refers to a message in
 	 * a different group from the one specified in the header, to a message
@@ -20,6 +24,10 @@ public interface AttachmentReader {
 
 	/**
 	 * Returns the attachment with the given attachment header.
+	 * <p>
+	 * If the attachment is split into chunks, the chunks are loaded from the
+	 * database in separate transactions as the attachment's stream is read,
+	 * so the stream should not be read while holding a transaction.
 	 *
 	 * @throws NoSuchMessageException If the header refers to a message in
 	 * a different group from the one specified in the header, to a message
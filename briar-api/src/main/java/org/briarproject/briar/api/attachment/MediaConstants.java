@@ -7,6 +7,8 @@ public interface MediaConstants {
 	// Metadata keys for messages
 	String MSG_KEY_CONTENT_TYPE = "contentType";
 	String MSG_KEY_DESCRIPTOR_LENGTH = "descriptorLength";
+	String MSG_KEY_CHUNK_IDS = "chunkIds";
+	String MSG_KEY_CHUNK_INDEX = "chunkIndex";
 
 	/**
 	 * The maximum length of an attachment's content type in UTF-8 bytes.
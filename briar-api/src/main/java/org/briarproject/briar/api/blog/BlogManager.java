@@ -11,6 +11,7 @@ import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -120,6 +121,19 @@ public interface BlogManager {
 	 */
 	String getPostText(Transaction txn, MessageId m) throws DbException;
 
+	/**
+	 * Returns the text of each of the given blog posts, loaded in a single
+	 * transaction.
+	 */
+	Map<MessageId, String> getPostTexts(Collection<MessageId> m)
+			throws DbException;
+
+	/**
+	 * Returns the text of each of the given blog posts.
+	 */
+	Map<MessageId, String> getPostTexts(Transaction txn,
+			Collection<MessageId> m) throws DbException;
+
 	/**
 	 * Returns the headers of all posts in the given blog.
 	 */
@@ -1,13 +1,17 @@
 package org.briarproject.briar.api.client;
 
+import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.sync.ClientId;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
 import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.briar.api.conversation.ConversationManager;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.Map;
+
 import javax.annotation.Nullable;
 
 @NotNullByDefault
@@ -31,6 +35,14 @@ public interface MessageTracker {
 	 **/
 	GroupCount getGroupCount(Transaction txn, GroupId g) throws DbException;
 
+	/**
+	 * Gets the group counts of all contact groups belonging to the given
+	 * client, keyed by contact. Groups that are not associated with a
+	 * contact are not included.
+	 */
+	Map<ContactId, GroupCount> getContactGroupCounts(Transaction txn,
+			ClientId c, int majorVersion) throws DbException;
+
 	/**
 	 * Updates the group count for the given incoming message.
 	 * <p>
@@ -19,6 +19,23 @@ public interface MessageTree<T extends MessageTree.MessageNode> {
 
 	List<T> depthFirstOrder();
 
+	/**
+	 * Returns up to {@code limit} nodes in depth-first order, starting at
+	 * the given offset.
+	 */
+	List<T> depthFirstOrder(int offset, int limit);
+
+	/**
+	 * Returns the number of nodes in the tree.
+	 */
+	int size();
+
+	/**
+	 * Returns the position of the given node in depth-first order, or -1 if
+	 * the node is not in the tree.
+	 */
+	int indexOf(MessageId m);
+
 	boolean contains(MessageId m);
 
 	@NotNullByDefault
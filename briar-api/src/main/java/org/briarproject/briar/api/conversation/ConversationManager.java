@@ -13,6 +13,8 @@ import org.briarproject.briar.api.messaging.MessagingManager;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @NotNullByDefault
@@ -47,6 +49,35 @@ public interface ConversationManager {
 	Collection<ConversationMessageHeader> getMessageHeaders(Transaction txn, ContactId c)
 			throws DbException;
 
+	/**
+	 * Returns the headers of a page of messages in the given private
+	 * conversation, sorted by timestamp, earliest first.
+	 * <p>
+	 * If {@code before} is true, the page contains the latest messages with
+	 * timestamps earlier than the given timestamp. Pass
+	 * {@link Long#MAX_VALUE} to fetch the latest messages in the
+	 * conversation. Otherwise the page contains the earliest messages with
+	 * timestamps later than the given timestamp.
+	 * <p>
+	 * The page contains at most {@code limit} headers, unless other messages
+	 * share the timestamp of the header furthest from the given timestamp, in
+	 * which case they're also included. The timestamp of that header can
+	 * therefore be used to fetch the next page without skipping any
+	 * messages. A page with fewer than {@code limit} headers is the last.
+	 */
+	List<ConversationMessageHeader> getMessageHeaders(ContactId c,
+			long timestamp, boolean before, int limit) throws DbException;
+
+	/**
+	 * Returns the headers of a page of messages in the given private
+	 * conversation, sorted by timestamp, earliest first.
+	 *
+	 * @see #getMessageHeaders(ContactId, long, boolean, int)
+	 */
+	List<ConversationMessageHeader> getMessageHeaders(Transaction txn,
+			ContactId c, long timestamp, boolean before, int limit)
+			throws DbException;
+
 	/**
 	 * Returns the unified group count for all private conversation messages.
 	 */
@@ -57,6 +88,19 @@ public interface ConversationManager {
 	 */
 	GroupCount getGroupCount(Transaction txn, ContactId c) throws DbException;
 
+	/**
+	 * Returns the unified group count for all private conversation messages
+	 * with each contact, keyed by contact.
+	 */
+	Map<ContactId, GroupCount> getGroupCounts() throws DbException;
+
+	/**
+	 * Returns the unified group count for all private conversation messages
+	 * with each contact, keyed by contact.
+	 */
+	Map<ContactId, GroupCount> getGroupCounts(Transaction txn)
+			throws DbException;
+
 	/**
 	 * Updates the group count for the given incoming private conversation message
 	 * and broadcasts a corresponding event.
@@ -110,6 +154,21 @@ public interface ConversationManager {
 		Collection<ConversationMessageHeader> getMessageHeaders(Transaction txn,
 				ContactId contactId) throws DbException;
 
+		/**
+		 * Returns the headers of a page of messages in the given private
+		 * conversation, selected as described by the ConversationManager.
+		 * The headers may be returned in any order.
+		 * <p>
+		 * The page must include every header this client is responsible for
+		 * with a timestamp between the given timestamp and the furthest
+		 * timestamp in the page. The page must contain at least
+		 * {@code limit} headers, unless there are no more headers in that
+		 * direction.
+		 */
+		Collection<ConversationMessageHeader> getMessageHeaders(Transaction txn,
+				ContactId contactId, long timestamp, boolean before, int limit)
+				throws DbException;
+
 		/**
 		 * Returns all conversation {@link MessageId}s for the given contact
 		 * this client is responsible for.
@@ -120,6 +179,14 @@ public interface ConversationManager {
 		GroupCount getGroupCount(Transaction txn, ContactId c)
 				throws DbException;
 
+		/**
+		 * Returns the group count for each contact's conversation with this
+		 * client, keyed by contact. Contacts with no group count may be
+		 * omitted.
+		 */
+		Map<ContactId, GroupCount> getGroupCounts(Transaction txn)
+				throws DbException;
+
 		/**
 		 * Deletes all messages associated with the given contact.
 		 */
@@ -12,6 +12,7 @@ import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -96,6 +97,19 @@ public interface ForumManager {
 	 */
 	String getPostText(Transaction txn, MessageId m) throws DbException;
 
+	/**
+	 * Returns the text of each of the given forum posts, loaded in a single
+	 * transaction.
+	 */
+	Map<MessageId, String> getPostTexts(Collection<MessageId> m)
+			throws DbException;
+
+	/**
+	 * Returns the text of each of the given forum posts.
+	 */
+	Map<MessageId, String> getPostTexts(Transaction txn,
+			Collection<MessageId> m) throws DbException;
+
 	/**
 	 * Returns the headers of all posts in the given forum.
 	 */
@@ -24,4 +24,10 @@ public interface MessagingConstants {
 	 */
 	int MAX_ATTACHMENTS_PER_MESSAGE = 10;
 
+	/**
+	 * The maximum number of chunks an attachment can be split into. Chunked
+	 * attachments are supported by client version 0.4 and later.
+	 */
+	int MAX_ATTACHMENT_CHUNKS = 256;
+
 }
@@ -13,6 +13,8 @@ import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -32,7 +34,7 @@ public interface MessagingManager extends ConversationClient {
 	/**
 	 * The current minor version of the messaging client.
 	 */
-	int MINOR_VERSION = 3;
+	int MINOR_VERSION = 4;
 
 	/**
 	 * Stores a local private message.
@@ -45,7 +47,9 @@ public interface MessagingManager extends ConversationClient {
 	void addLocalMessage(Transaction txn, PrivateMessage m) throws DbException;
 
 	/**
-	 * Stores a local attachment message.
+	 * Stores a local attachment message. Attachments that don't fit in a
+	 * single message are split into chunks if the contact supports chunked
+	 * attachments. The stream is read one chunk at a time.
 	 *
 	 * @throws FileTooBigException If the attachment is too big
 	 */
@@ -86,6 +90,21 @@ public interface MessagingManager extends ConversationClient {
 	@Nullable
 	String getMessageText(Transaction txn, MessageId m) throws DbException;
 
+	/**
+	 * Returns the text of each of the given private messages, loaded in a
+	 * single transaction. Private messages that have no text are not
+	 * included in the returned map.
+	 */
+	Map<MessageId, String> getMessageTexts(Collection<MessageId> m)
+			throws DbException;
+
+	/**
+	 * Returns the text of each of the given private messages. Private
+	 * messages that have no text are not included in the returned map.
+	 */
+	Map<MessageId, String> getMessageTexts(Transaction txn,
+			Collection<MessageId> m) throws DbException;
+
 	/**
 	 * Returns the private message format supported by the given contact.
 	 */
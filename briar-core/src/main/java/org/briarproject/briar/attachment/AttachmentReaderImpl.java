@@ -3,6 +3,7 @@ package org.briarproject.briar.attachment;
 import org.briarproject.bramble.api.FormatException;
 import org.briarproject.bramble.api.client.ClientHelper;
 import org.briarproject.bramble.api.data.BdfDictionary;
+import org.briarproject.bramble.api.data.BdfList;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.NoSuchMessageException;
 import org.briarproject.bramble.api.db.Transaction;
@@ -15,9 +16,12 @@ import org.briarproject.briar.api.attachment.AttachmentReader;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.inject.Inject;
 
+import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CHUNK_IDS;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CONTENT_TYPE;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_DESCRIPTOR_LENGTH;
 
@@ -41,7 +45,6 @@ public class AttachmentReaderImpl implements AttachmentReader {
 	@Override
 	public Attachment getAttachment(Transaction txn, AttachmentHeader h)
 			throws DbException {
-		// TODO: Support large messages
 		MessageId m = h.getMessageId();
 		Message message = clientHelper.getMessage(txn, m);
 		// Check that the message is in the expected group, to prevent it from
@@ -56,6 +59,17 @@ public class AttachmentReaderImpl implements AttachmentReader {
 			String contentType = meta.getString(MSG_KEY_CONTENT_TYPE);
 			if (!contentType.equals(h.getContentType()))
 				throw new NoSuchMessageException();
+			BdfList chunkIds = meta.getOptionalList(MSG_KEY_CHUNK_IDS);
+			if (chunkIds != null) {
+				// The data is split into chunks, which are loaded from the
+				// database as the stream is read
+				List<MessageId> ids = new ArrayList<>(chunkIds.size());
+				for (int i = 0; i < chunkIds.size(); i++) {
+					ids.add(new MessageId(chunkIds.getRaw(i)));
+				}
+				return new Attachment(h, new ChunkedAttachmentInputStream(db,
+						clientHelper, h.getGroupId(), ids));
+			}
 			int offset = meta.getLong(MSG_KEY_DESCRIPTOR_LENGTH).intValue();
 			InputStream stream = new ByteArrayInputStream(body, offset,
 					body.length - offset);
@@ -0,0 +1,113 @@
+package org.briarproject.briar.attachment;
+
+import org.briarproject.bramble.api.FormatException;
+import org.briarproject.bramble.api.client.ClientHelper;
+import org.briarproject.bramble.api.data.BdfDictionary;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.TransactionManager;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static java.lang.Math.min;
+import static java.lang.System.arraycopy;
+import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CHUNK_INDEX;
+import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_DESCRIPTOR_LENGTH;
+
+/**
+ * An {@link InputStream} that reads the data of a chunked attachment. Each
+ * chunk is loaded from the database in its own transaction when the previous
+ * chunk has been read, so only one chunk is held in memory at a time.
+ */
+@NotThreadSafe
+@NotNullByDefault
+class ChunkedAttachmentInputStream extends InputStream {
+
+	private final TransactionManager db;
+	private final ClientHelper clientHelper;
+	private final GroupId groupId;
+	private final List<MessageId> chunkIds;
+
+	private int nextChunk = 0;
+	private byte[] chunk = new byte[0];
+	private int offset = 0;
+
+	ChunkedAttachmentInputStream(TransactionManager db,
+			ClientHelper clientHelper, GroupId groupId,
+			List<MessageId> chunkIds) {
+		this.db = db;
+		this.clientHelper = clientHelper;
+		this.groupId = groupId;
+		this.chunkIds = chunkIds;
+	}
+
+	@Override
+	public int available() {
+		return chunk.length - offset;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!readChunkIfNeeded()) return -1;
+		return chunk[offset++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+		if (!readChunkIfNeeded()) return -1;
+		int n = min(len, chunk.length - offset);
+		arraycopy(chunk, offset, b, off, n);
+		offset += n;
+		return n;
+	}
+
+	/**
+	 * Loads the next chunk if all the data in the current chunk has been
+	 * read. Returns false if the end of the attachment has been reached.
+	 */
+	private boolean readChunkIfNeeded() throws IOException {
+		while (offset == chunk.length) {
+			if (nextChunk == chunkIds.size()) return false;
+			readChunk(chunkIds.get(nextChunk), nextChunk);
+			nextChunk++;
+		}
+		return true;
+	}
+
+	private void readChunk(MessageId m, int index) throws IOException {
+		try {
+			db.transaction(true, txn -> {
+				Message message = clientHelper.getMessage(txn, m);
+				// Check that the chunk is in the expected group
+				if (!message.getGroupId().equals(groupId))
+					throw new FormatException();
+				BdfDictionary meta =
+						clientHelper.getMessageMetadataAsDictionary(txn, m);
+				// Check that the message is a chunk, and that it's listed at
+				// its own index, so the attachment can't include data from
+				// other messages or from chunks in the wrong order. Only
+				// chunks have an index
+				Long chunkIndex = meta.getOptionalLong(MSG_KEY_CHUNK_INDEX);
+				if (chunkIndex == null || chunkIndex != index)
+					throw new FormatException();
+				int descriptorLength =
+						meta.getLong(MSG_KEY_DESCRIPTOR_LENGTH).intValue();
+				byte[] body = message.getBody();
+				if (descriptorLength < 0 || descriptorLength > body.length)
+					throw new FormatException();
+				chunk = body;
+				offset = descriptorLength;
+			});
+		} catch (DbException e) {
+			throw new IOException(e);
+		}
+	}
+}
@@ -486,6 +486,27 @@ class BlogManagerImpl extends BdfIncomingMessageHook implements BlogManager,
 		}
 	}
 
+	@Override
+	public Map<MessageId, String> getPostTexts(Collection<MessageId> m)
+			throws DbException {
+		return db.transactionWithResult(true, txn -> getPostTexts(txn, m));
+	}
+
+	@Override
+	public Map<MessageId, String> getPostTexts(Transaction txn,
+			Collection<MessageId> m) throws DbException {
+		Map<MessageId, String> texts = new HashMap<>(m.size());
+		try {
+			for (MessageId id : m) {
+				texts.put(id, getPostText(clientHelper.getMessageAsList(txn,
+						id)));
+			}
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+		return texts;
+	}
+
 	private String getPostText(BdfList message) throws FormatException {
 		MessageType type = MessageType.valueOf(message.getLong(0).intValue());
 		if (type == POST) {
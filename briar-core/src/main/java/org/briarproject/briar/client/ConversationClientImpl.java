@@ -8,12 +8,15 @@ import org.briarproject.bramble.api.data.MetadataParser;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.sync.ClientId;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.briar.api.client.MessageTracker;
 import org.briarproject.briar.api.client.MessageTracker.GroupCount;
 import org.briarproject.briar.api.conversation.ConversationManager.ConversationClient;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.Map;
+
 import javax.annotation.concurrent.Immutable;
 
 @Immutable
@@ -30,6 +33,10 @@ public abstract class ConversationClientImpl extends BdfIncomingMessageHook
 		this.messageTracker = messageTracker;
 	}
 
+	protected abstract ClientId getClientId();
+
+	protected abstract int getMajorVersion();
+
 	@Override
 	public GroupCount getGroupCount(Transaction txn, ContactId contactId)
 			throws DbException {
@@ -38,4 +45,11 @@ public abstract class ConversationClientImpl extends BdfIncomingMessageHook
 		return messageTracker.getGroupCount(txn, groupId);
 	}
 
+	@Override
+	public Map<ContactId, GroupCount> getGroupCounts(Transaction txn)
+			throws DbException {
+		return messageTracker.getContactGroupCounts(txn, getClientId(),
+				getMajorVersion());
+	}
+
 }
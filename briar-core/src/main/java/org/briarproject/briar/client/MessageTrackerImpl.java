@@ -2,11 +2,13 @@ package org.briarproject.briar.client;
 
 import org.briarproject.bramble.api.FormatException;
 import org.briarproject.bramble.api.client.ClientHelper;
+import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.data.BdfDictionary;
 import org.briarproject.bramble.api.data.BdfEntry;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.sync.ClientId;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
 import org.briarproject.bramble.api.sync.MessageId;
@@ -14,10 +16,14 @@ import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.briar.api.client.MessageTracker;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 import javax.inject.Inject;
 
+import static org.briarproject.bramble.api.client.ContactGroupConstants.GROUP_KEY_CONTACT_ID;
 import static org.briarproject.briar.client.MessageTrackerConstants.GROUP_KEY_LATEST_MSG;
 import static org.briarproject.briar.client.MessageTrackerConstants.GROUP_KEY_MSG_COUNT;
 import static org.briarproject.briar.client.MessageTrackerConstants.GROUP_KEY_STORED_MESSAGE_ID;
@@ -113,16 +119,41 @@ class MessageTrackerImpl implements MessageTracker {
 			throws DbException {
 		try {
 			BdfDictionary d = clientHelper.getGroupMetadataAsDictionary(txn, g);
-			return new GroupCount(
-					d.getLong(GROUP_KEY_MSG_COUNT, 0L).intValue(),
-					d.getLong(GROUP_KEY_UNREAD_COUNT, 0L).intValue(),
-					d.getLong(GROUP_KEY_LATEST_MSG, 0L)
-			);
+			return parseGroupCount(d);
 		} catch (FormatException e) {
 			throw new DbException(e);
 		}
 	}
 
+	@Override
+	public Map<ContactId, GroupCount> getContactGroupCounts(Transaction txn,
+			ClientId c, int majorVersion) throws DbException {
+		try {
+			Map<GroupId, BdfDictionary> metadata =
+					clientHelper.getGroupMetadataAsDictionary(txn, c,
+							majorVersion);
+			Map<ContactId, GroupCount> counts = new HashMap<>();
+			for (BdfDictionary d : metadata.values()) {
+				Long contactId = d.getOptionalLong(GROUP_KEY_CONTACT_ID);
+				if (contactId == null) continue;
+				counts.put(new ContactId(contactId.intValue()),
+						parseGroupCount(d));
+			}
+			return counts;
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+	}
+
+	private GroupCount parseGroupCount(BdfDictionary d)
+			throws FormatException {
+		return new GroupCount(
+				d.getLong(GROUP_KEY_MSG_COUNT, 0L).intValue(),
+				d.getLong(GROUP_KEY_UNREAD_COUNT, 0L).intValue(),
+				d.getLong(GROUP_KEY_LATEST_MSG, 0L)
+		);
+	}
+
 	private void storeGroupCount(Transaction txn, GroupId g, GroupCount c)
 			throws DbException {
 		try {
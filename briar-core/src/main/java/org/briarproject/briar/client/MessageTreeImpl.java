@@ -4,108 +4,234 @@ import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.briar.api.client.MessageTree;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
+import static java.lang.Math.min;
+import static java.util.Collections.singletonList;
+
+/**
+ * A {@link MessageTree} that keeps its nodes in depth-first order as they're
+ * added, so adding a node doesn't require the tree to be sorted or
+ * traversed again.
+ */
 @ThreadSafe
 @NotNullByDefault
 public class MessageTreeImpl<T extends MessageTree.MessageNode>
 		implements MessageTree<T> {
 
 	@GuardedBy("this")
-	private final Map<MessageId, List<T>> nodeMap = new HashMap<>();
+	private final Map<MessageId, Entry<T>> entries = new HashMap<>();
 
+	/**
+	 * The roots of the tree, sorted by timestamp.
+	 */
 	@GuardedBy("this")
-	private final List<T> roots = new ArrayList<>();
+	private final List<Entry<T>> roots = new ArrayList<>();
 
+	/**
+	 * All the nodes in the tree, in depth-first order.
+	 */
 	@GuardedBy("this")
-	private final List<List<T>> unsortedLists = new ArrayList<>();
-
-	@SuppressWarnings("UseCompareMethod")
-	private final Comparator<T> comparator = (o1, o2) ->
-			Long.valueOf(o1.getTimestamp()).compareTo(o2.getTimestamp());
+	private final List<T> ordered = new ArrayList<>();
 
 	@Override
 	public synchronized void clear() {
+		entries.clear();
 		roots.clear();
-		nodeMap.clear();
+		ordered.clear();
 	}
 
 	@Override
 	public synchronized void add(Collection<T> nodes) {
-		// add all nodes to the node map
+		// Create entries for any nodes that aren't already in the tree
+		List<Entry<T>> added = new ArrayList<>(nodes.size());
+		Map<MessageId, Entry<T>> batch = new HashMap<>();
 		for (T node : nodes) {
-			nodeMap.put(node.getId(), new ArrayList<>());
+			MessageId id = node.getId();
+			if (entries.containsKey(id) || batch.containsKey(id)) continue;
+			Entry<T> e = new Entry<>(node);
+			batch.put(id, e);
+			added.add(e);
 		}
-		// parse the nodes for dependencies
-		for (T node : nodes) {
-			parseNode(node);
+		// Check that the parent of each node is in the tree or the batch
+		for (Entry<T> e : added) {
+			MessageId parentId = e.node.getParentId();
+			if (parentId != null && !entries.containsKey(parentId)
+					&& !batch.containsKey(parentId)) {
+				throw new IllegalArgumentException();
+			}
+		}
+		// Link each node to its parent, keeping siblings sorted
+		entries.putAll(batch);
+		for (Entry<T> e : added) {
+			MessageId parentId = e.node.getParentId();
+			if (parentId != null) e.parent = entries.get(parentId);
+			insertSorted(getSiblings(e), e);
+		}
+		// Insert each new subtree into the depth-first order. The nodes in
+		// the batch whose parents were already in the tree are the roots of
+		// the new subtrees
+		for (Entry<T> e : added) {
+			if (e.parent == null || !batch.containsKey(e.parent.getId())) {
+				insertSubtree(e);
+			}
 		}
-		sortUnsorted();
 	}
 
 	@Override
 	public synchronized void add(T node) {
-		add(Collections.singletonList(node));
+		add(singletonList(node));
 	}
 
-	@GuardedBy("this")
-	private void markAsUnsorted(List<T> list) {
-		if (!unsortedLists.contains(list))
-			unsortedLists.add(list);
+	@Override
+	public synchronized List<T> depthFirstOrder() {
+		return new ArrayList<>(ordered);
+	}
+
+	@Override
+	public synchronized List<T> depthFirstOrder(int offset, int limit) {
+		if (offset < 0 || limit < 0) throw new IllegalArgumentException();
+		if (offset >= ordered.size()) return new ArrayList<>();
+		int end = min(ordered.size(), offset + limit);
+		return new ArrayList<>(ordered.subList(offset, end));
+	}
+
+	@Override
+	public synchronized int size() {
+		return ordered.size();
+	}
+
+	@Override
+	public synchronized int indexOf(MessageId m) {
+		Entry<T> e = entries.get(m);
+		return e == null ? -1 : getPosition(e);
+	}
+
+	@Override
+	public synchronized boolean contains(MessageId m) {
+		return entries.containsKey(m);
 	}
 
 	@GuardedBy("this")
-	private void parseNode(T node) {
-		if (node.getParentId() == null) {
-			roots.add(node);
-			markAsUnsorted(roots);
-		} else {
-			// retrieve the parent's children
-			List<T> pChildren = nodeMap.get(node.getParentId());
-			pChildren.add(node);
-			markAsUnsorted(pChildren);
+	private List<Entry<T>> getSiblings(Entry<T> e) {
+		return e.parent == null ? roots : e.parent.children;
+	}
+
+	/**
+	 * Inserts the given entry into the given list of entries, which is sorted
+	 * by timestamp. Entries with equal timestamps are kept in the order they
+	 * were added.
+	 */
+	private void insertSorted(List<Entry<T>> list, Entry<T> e) {
+		long timestamp = e.node.getTimestamp();
+		int low = 0, high = list.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (list.get(mid).node.getTimestamp() <= timestamp) low = mid + 1;
+			else high = mid;
 		}
+		list.add(low, e);
 	}
 
+	/**
+	 * Returns the position of the given entry in the depth-first order, by
+	 * walking up the tree and counting the nodes before it at each level.
+	 * Subtrees that haven't been inserted into the depth-first order have a
+	 * size of zero, so they're not counted.
+	 */
 	@GuardedBy("this")
-	private void sortUnsorted() {
-		for (List<T> list : unsortedLists) {
-			//noinspection Java8ListSort
-			Collections.sort(list, comparator);
+	private int getPosition(Entry<T> e) {
+		int position = 0;
+		Entry<T> current = e;
+		while (true) {
+			for (Entry<T> sibling : getSiblings(current)) {
+				if (sibling == current) break;
+				position += sibling.size;
+			}
+			if (current.parent == null) return position;
+			// Count the parent itself
+			position++;
+			current = current.parent;
 		}
-		unsortedLists.clear();
 	}
 
+	/**
+	 * Inserts the subtree rooted at the given entry, none of which is in the
+	 * depth-first order yet, into the depth-first order.
+	 */
 	@GuardedBy("this")
-	private void traverse(List<T> list, T node, int level) {
-		list.add(node);
-		List<T> children = nodeMap.get(node.getId());
-		node.setLevel(level);
-		for (T child : children) {
-			traverse(list, child, level + 1);
+	private void insertSubtree(Entry<T> root) {
+		int position = getPosition(root);
+		root.level = root.parent == null ? 0 : root.parent.level + 1;
+		// Traverse the subtree iteratively, collecting the nodes in
+		// depth-first order and setting their levels
+		List<T> subtree = new ArrayList<>();
+		List<Entry<T>> visited = new ArrayList<>();
+		Deque<Entry<T>> stack = new ArrayDeque<>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			Entry<T> e = stack.pop();
+			e.node.setLevel(e.level);
+			subtree.add(e.node);
+			visited.add(e);
+			// Push the children in reverse order so the earliest is next
+			for (int i = e.children.size() - 1; i >= 0; i--) {
+				Entry<T> child = e.children.get(i);
+				child.level = e.level + 1;
+				stack.push(child);
+			}
+		}
+		// Calculate the sizes of the subtrees bottom-up. Each entry appears
+		// after its parent in depth-first order, so iterate in reverse
+		for (int i = visited.size() - 1; i >= 0; i--) {
+			Entry<T> e = visited.get(i);
+			e.size = 1;
+			for (Entry<T> child : e.children) e.size += child.size;
 		}
+		// Update the sizes of the subtree's ancestors
+		for (Entry<T> a = root.parent; a != null; a = a.parent) {
+			a.size += root.size;
+		}
+		ordered.addAll(position, subtree);
 	}
 
-	@Override
-	public synchronized List<T> depthFirstOrder() {
-		List<T> orderedList = new ArrayList<>();
-		for (T root : roots) {
-			traverse(orderedList, root, 0);
+	@NotNullByDefault
+	private static class Entry<T extends MessageNode> {
+
+		private final T node;
+
+		/**
+		 * The entry's children, sorted by timestamp.
+		 */
+		private final List<Entry<T>> children = new ArrayList<>();
+
+		@Nullable
+		private Entry<T> parent = null;
+
+		/**
+		 * The number of nodes in the subtree rooted at this entry that have
+		 * been inserted into the depth-first order.
+		 */
+		private int size = 0;
+
+		private int level = 0;
+
+		private Entry(T node) {
+			this.node = node;
 		}
-		return orderedList;
-	}
 
-	@Override
-	public synchronized boolean contains(MessageId m) {
-		return nodeMap.containsKey(m);
+		private MessageId getId() {
+			return node.getId();
+		}
 	}
 }
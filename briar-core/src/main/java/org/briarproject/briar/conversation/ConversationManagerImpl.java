@@ -20,7 +20,10 @@ import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 
@@ -28,6 +31,8 @@ import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
 import static java.lang.Math.max;
+import static java.util.Collections.reverse;
+import static java.util.Collections.sort;
 
 @ThreadSafe
 @NotNullByDefault
@@ -72,6 +77,47 @@ class ConversationManagerImpl implements ConversationManager {
 		return messages;
 	}
 
+	@Override
+	public List<ConversationMessageHeader> getMessageHeaders(ContactId c,
+			long timestamp, boolean before, int limit) throws DbException {
+		return db.transactionWithResult(true,
+				txn -> getMessageHeaders(txn, c, timestamp, before, limit));
+	}
+
+	@SuppressWarnings("UseCompareMethod")
+	@Override
+	public List<ConversationMessageHeader> getMessageHeaders(Transaction txn,
+			ContactId c, long timestamp, boolean before, int limit)
+			throws DbException {
+		if (limit <= 0) throw new IllegalArgumentException();
+		// Each client returns at least a full page unless it has run out of
+		// headers, so the nearest headers from all clients are in the union
+		List<ConversationMessageHeader> messages = new ArrayList<>();
+		for (ConversationClient client : clients) {
+			messages.addAll(client.getMessageHeaders(txn, c, timestamp,
+					before, limit));
+		}
+		// Sort the headers, nearest to the given timestamp first
+		sort(messages, (a, b) -> before ?
+				Long.valueOf(b.getTimestamp()).compareTo(a.getTimestamp()) :
+				Long.valueOf(a.getTimestamp()).compareTo(b.getTimestamp()));
+		// Keep the first page, plus any headers that share the timestamp of
+		// the last header in the page
+		int end = messages.size();
+		if (end > limit) {
+			long last = messages.get(limit - 1).getTimestamp();
+			end = limit;
+			while (end < messages.size() &&
+					messages.get(end).getTimestamp() == last) {
+				end++;
+			}
+		}
+		List<ConversationMessageHeader> page =
+				new ArrayList<>(messages.subList(0, end));
+		if (before) reverse(page);
+		return page;
+	}
+
 	@Override
 	public GroupCount getGroupCount(ContactId contactId) throws DbException {
 		return db.transactionWithResult(true,
@@ -93,6 +139,33 @@ class ConversationManagerImpl implements ConversationManager {
 		return new GroupCount(msgCount, unreadCount, latestTime);
 	}
 
+	@Override
+	public Map<ContactId, GroupCount> getGroupCounts() throws DbException {
+		return db.transactionWithResult(true, this::getGroupCounts);
+	}
+
+	@Override
+	public Map<ContactId, GroupCount> getGroupCounts(Transaction txn)
+			throws DbException {
+		Map<ContactId, GroupCount> counts = new HashMap<>();
+		for (ConversationClient client : clients) {
+			for (Entry<ContactId, GroupCount> e :
+					client.getGroupCounts(txn).entrySet()) {
+				GroupCount count = e.getValue();
+				GroupCount total = counts.get(e.getKey());
+				if (total != null) {
+					count = new GroupCount(
+							total.getMsgCount() + count.getMsgCount(),
+							total.getUnreadCount() + count.getUnreadCount(),
+							max(total.getLatestMsgTime(),
+									count.getLatestMsgTime()));
+				}
+				counts.put(e.getKey(), count);
+			}
+		}
+		return counts;
+	}
+
 	@Override
 	public void trackIncomingMessage(Transaction txn, Message m)
 			throws DbException {
@@ -20,6 +20,7 @@ import org.briarproject.bramble.api.identity.AuthorId;
 import org.briarproject.bramble.api.identity.IdentityManager;
 import org.briarproject.bramble.api.identity.LocalAuthor;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager.OpenDatabaseHook;
+import org.briarproject.bramble.api.sync.ClientId;
 import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.Group.Visibility;
 import org.briarproject.bramble.api.sync.GroupId;
@@ -165,6 +166,16 @@ class IntroductionManagerImpl extends ConversationClientImpl
 		db.setGroupVisibility(txn, c.getId(), g.getId(), v);
 	}
 
+	@Override
+	protected ClientId getClientId() {
+		return CLIENT_ID;
+	}
+
+	@Override
+	protected int getMajorVersion() {
+		return MAJOR_VERSION;
+	}
+
 	@Override
 	public Group getContactGroup(Contact c) {
 		return contactGroupFactory
@@ -430,34 +441,59 @@ class IntroductionManagerImpl extends ConversationClientImpl
 			BdfDictionary query = messageParser.getMessagesVisibleInUiQuery();
 			Map<MessageId, BdfDictionary> results = clientHelper
 					.getMessageMetadataAsDictionary(txn, contactGroupId, query);
-			List<ConversationMessageHeader> messages =
-					new ArrayList<>(results.size());
-			Map<AuthorId, AuthorInfo> authorInfos = new HashMap<>();
-			for (Entry<MessageId, BdfDictionary> e : results.entrySet()) {
-				MessageId m = e.getKey();
-				MessageMetadata meta =
-						messageParser.parseMetadata(e.getValue());
-				MessageStatus status = db.getMessageStatus(txn, c, m);
-				StoredSession ss = getSession(txn, meta.getSessionId());
-				if (ss == null) throw new AssertionError();
-				MessageType type = meta.getMessageType();
-				if (type == REQUEST) {
-					messages.add(parseInvitationRequest(txn, contactGroupId, m,
-							meta, status, meta.getSessionId(), authorInfos));
-				} else if (type == ACCEPT) {
-					messages.add(parseInvitationResponse(txn, contactGroupId, m,
-							meta, status, ss.bdfSession, authorInfos, true));
-				} else if (type == DECLINE) {
-					messages.add(parseInvitationResponse(txn, contactGroupId, m,
-							meta, status, ss.bdfSession, authorInfos, false));
-				}
-			}
-			return messages;
+			return parseMessageHeaders(txn, c, contactGroupId, results);
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+	}
+
+	@Override
+	public Collection<ConversationMessageHeader> getMessageHeaders(
+			Transaction txn, ContactId c, long timestamp, boolean before,
+			int limit) throws DbException {
+		try {
+			Contact contact = db.getContact(txn, c);
+			GroupId contactGroupId = getContactGroup(contact).getId();
+			// The query matches exactly the messages that have headers, so
+			// a single page of metadata is enough
+			BdfDictionary query = messageParser.getMessagesVisibleInUiQuery();
+			Map<MessageId, BdfDictionary> results = clientHelper
+					.getMessageMetadataAsDictionary(txn, contactGroupId, query,
+							timestamp, before, limit);
+			return parseMessageHeaders(txn, c, contactGroupId, results);
 		} catch (FormatException e) {
 			throw new DbException(e);
 		}
 	}
 
+	private List<ConversationMessageHeader> parseMessageHeaders(
+			Transaction txn, ContactId c, GroupId contactGroupId,
+			Map<MessageId, BdfDictionary> results)
+			throws DbException, FormatException {
+		List<ConversationMessageHeader> messages =
+				new ArrayList<>(results.size());
+		Map<AuthorId, AuthorInfo> authorInfos = new HashMap<>();
+		for (Entry<MessageId, BdfDictionary> e : results.entrySet()) {
+			MessageId m = e.getKey();
+			MessageMetadata meta = messageParser.parseMetadata(e.getValue());
+			MessageStatus status = db.getMessageStatus(txn, c, m);
+			StoredSession ss = getSession(txn, meta.getSessionId());
+			if (ss == null) throw new AssertionError();
+			MessageType type = meta.getMessageType();
+			if (type == REQUEST) {
+				messages.add(parseInvitationRequest(txn, contactGroupId, m,
+						meta, status, meta.getSessionId(), authorInfos));
+			} else if (type == ACCEPT) {
+				messages.add(parseInvitationResponse(txn, contactGroupId, m,
+						meta, status, ss.bdfSession, authorInfos, true));
+			} else if (type == DECLINE) {
+				messages.add(parseInvitationResponse(txn, contactGroupId, m,
+						meta, status, ss.bdfSession, authorInfos, false));
+			}
+		}
+		return messages;
+	}
+
 	private IntroductionRequest parseInvitationRequest(Transaction txn,
 			GroupId contactGroupId, MessageId m, MessageMetadata meta,
 			MessageStatus status, SessionId sessionId,
@@ -4,4 +4,5 @@ interface MessageTypes {
 
 	int PRIVATE_MESSAGE = 0;
 	int ATTACHMENT = 1;
+	int ATTACHMENT_CHUNK = 2;
 }
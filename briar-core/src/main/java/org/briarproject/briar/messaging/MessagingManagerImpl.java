@@ -45,11 +45,13 @@ import org.briarproject.briar.api.messaging.event.AttachmentReceivedEvent;
 import org.briarproject.briar.api.messaging.event.PrivateMessageReceivedEvent;
 import org.briarproject.nullsafety.NotNullByDefault;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -57,25 +59,33 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.logging.Logger;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 import javax.inject.Inject;
 
+import static java.lang.System.arraycopy;
+import static java.util.Arrays.copyOf;
 import static java.util.Collections.emptyList;
+import static java.util.logging.Level.WARNING;
 import static java.util.logging.Logger.getLogger;
 import static org.briarproject.bramble.api.client.ContactGroupConstants.GROUP_KEY_CONTACT_ID;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_BODY_LENGTH;
 import static org.briarproject.bramble.api.sync.validation.IncomingMessageHook.DeliveryAction.ACCEPT_DO_NOT_SHARE;
-import static org.briarproject.bramble.util.IoUtils.copyAndClose;
+import static org.briarproject.bramble.util.IoUtils.tryToClose;
 import static org.briarproject.bramble.util.LogUtils.logDuration;
 import static org.briarproject.bramble.util.LogUtils.now;
+import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CHUNK_IDS;
+import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CHUNK_INDEX;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CONTENT_TYPE;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_DESCRIPTOR_LENGTH;
 import static org.briarproject.briar.api.autodelete.AutoDeleteConstants.NO_AUTO_DELETE_TIMER;
+import static org.briarproject.briar.api.messaging.MessagingConstants.MAX_ATTACHMENT_CHUNKS;
 import static org.briarproject.briar.api.messaging.PrivateMessageFormat.TEXT_IMAGES;
 import static org.briarproject.briar.api.messaging.PrivateMessageFormat.TEXT_IMAGES_AUTO_DELETE;
 import static org.briarproject.briar.api.messaging.PrivateMessageFormat.TEXT_ONLY;
 import static org.briarproject.briar.client.MessageTrackerConstants.MSG_KEY_READ;
 import static org.briarproject.briar.messaging.MessageTypes.ATTACHMENT;
+import static org.briarproject.briar.messaging.MessageTypes.ATTACHMENT_CHUNK;
 import static org.briarproject.briar.messaging.MessageTypes.PRIVATE_MESSAGE;
 import static org.briarproject.briar.messaging.MessagingConstants.MISSING_ATTACHMENT_CLEANUP_DURATION_MS;
 import static org.briarproject.briar.messaging.MessagingConstants.MSG_KEY_ATTACHMENT_HEADERS;
@@ -131,6 +141,13 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 		return messageTracker.getGroupCount(txn, groupId);
 	}
 
+	@Override
+	public Map<ContactId, GroupCount> getGroupCounts(Transaction txn)
+			throws DbException {
+		return messageTracker.getContactGroupCounts(txn, CLIENT_ID,
+				MAJOR_VERSION);
+	}
+
 	@Override
 	public void onDatabaseOpened(Transaction txn) throws DbException {
 		// Create a local group to indicate that we've set this client up
@@ -191,7 +208,9 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 						parseAttachmentHeaders(m.getGroupId(), metaDict);
 				incomingPrivateMessage(txn, m, metaDict, hasText, headers);
 			} else if (messageType == ATTACHMENT) {
-				incomingAttachment(txn, m);
+				incomingAttachment(txn, m, parseChunkIds(metaDict));
+			} else if (messageType == ATTACHMENT_CHUNK) {
+				incomingAttachmentChunk(txn, m);
 			} else {
 				throw new InvalidMessageException();
 			}
@@ -259,11 +278,14 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 		}
 	}
 
-	private void incomingAttachment(Transaction txn, Message m)
-			throws DbException {
+	private void incomingAttachment(Transaction txn, Message m,
+			List<MessageId> chunkIds) throws DbException {
 		long start = now();
 		ContactId contactId = getContactId(txn, m.getGroupId());
 		txn.attach(new AttachmentReceivedEvent(m.getId(), contactId));
+		// The chunks of a chunked attachment are delivered before the
+		// attachment. From now on they'll be deleted with the attachment
+		for (MessageId chunkId : chunkIds) db.stopCleanupTimer(txn, chunkId);
 		// If no private messages that list this attachment have been
 		// delivered, start the cleanup timer. It will be stopped when a
 		// private message that lists this attachment is delivered
@@ -290,6 +312,32 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 		logDuration(LOG, "Receiving attachment", start);
 	}
 
+	private void incomingAttachmentChunk(Transaction txn, Message m)
+			throws DbException {
+		// Start the cleanup timer. It will be stopped when the attachment
+		// that lists this chunk is delivered
+		db.setCleanupTimerDuration(txn, m.getId(),
+				MISSING_ATTACHMENT_CLEANUP_DURATION_MS);
+		db.startCleanupTimer(txn, m.getId());
+	}
+
+	private List<MessageId> parseChunkIds(BdfDictionary meta)
+			throws FormatException {
+		BdfList chunkIds = meta.getOptionalList(MSG_KEY_CHUNK_IDS);
+		if (chunkIds == null) return emptyList();
+		List<MessageId> ids = new ArrayList<>(chunkIds.size());
+		for (int i = 0; i < chunkIds.size(); i++) {
+			ids.add(new MessageId(chunkIds.getRaw(i)));
+		}
+		return ids;
+	}
+
+	private List<MessageId> getChunkIds(Transaction txn, MessageId attachment)
+			throws DbException, FormatException {
+		return parseChunkIds(
+				clientHelper.getMessageMetadataAsDictionary(txn, attachment));
+	}
+
 	@Override
 	public void addLocalMessage(PrivateMessage m) throws DbException {
 		db.transaction(false, txn -> addLocalMessage(txn, m));
@@ -318,8 +366,13 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 					meta.put(MSG_KEY_AUTO_DELETE_TIMER, timer);
 				}
 			}
-			// Mark attachments as shared and permanent now we're ready to send
+			// Mark attachments and their chunks as shared and permanent now
+			// we're ready to send
 			for (AttachmentHeader a : m.getAttachmentHeaders()) {
+				for (MessageId chunkId : getChunkIds(txn, a.getMessageId())) {
+					db.setMessageShared(txn, chunkId);
+					db.setMessagePermanent(txn, chunkId);
+				}
 				db.setMessageShared(txn, a.getMessageId());
 				db.setMessagePermanent(txn, a.getMessageId());
 			}
@@ -338,21 +391,91 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 	public AttachmentHeader addLocalAttachment(GroupId groupId, long timestamp,
 			String contentType, InputStream in)
 			throws DbException, IOException {
-		// TODO: Support large messages
-		ByteArrayOutputStream bodyOut = new ByteArrayOutputStream();
-		byte[] descriptor =
-				clientHelper.toByteArray(BdfList.of(ATTACHMENT, contentType));
-		bodyOut.write(descriptor);
-		copyAndClose(in, bodyOut);
-		if (bodyOut.size() > MAX_MESSAGE_BODY_LENGTH)
-			throw new FileTooBigException();
-		byte[] body = bodyOut.toByteArray();
+		try {
+			byte[] descriptor = clientHelper.toByteArray(
+					BdfList.of(ATTACHMENT, contentType));
+			// Read enough data to tell whether the attachment fits in a
+			// single message
+			byte[] body = new byte[MAX_MESSAGE_BODY_LENGTH + 1];
+			arraycopy(descriptor, 0, body, 0, descriptor.length);
+			int length = read(in, body, descriptor.length);
+			if (length <= MAX_MESSAGE_BODY_LENGTH) {
+				return addLocalAttachment(groupId, timestamp, contentType,
+						copyOf(body, length), descriptor.length, null);
+			}
+			if (!contactSupportsChunkedAttachments(groupId))
+				throw new FileTooBigException();
+			// Split the data we've already read and the rest of the stream
+			// into chunks
+			InputStream data = new SequenceInputStream(
+					new ByteArrayInputStream(body, descriptor.length,
+							length - descriptor.length), in);
+			return addLocalChunkedAttachment(groupId, timestamp, contentType,
+					data);
+		} finally {
+			tryToClose(in, LOG, WARNING);
+		}
+	}
+
+	private AttachmentHeader addLocalChunkedAttachment(GroupId groupId,
+			long timestamp, String contentType, InputStream in)
+			throws DbException, IOException {
+		BdfList chunkIds = new BdfList();
+		boolean success = false;
+		try {
+			byte[] chunk = new byte[MAX_MESSAGE_BODY_LENGTH];
+			while (true) {
+				byte[] descriptor = clientHelper.toByteArray(
+						BdfList.of(ATTACHMENT_CHUNK, chunkIds.size()));
+				arraycopy(descriptor, 0, chunk, 0, descriptor.length);
+				int length = read(in, chunk, descriptor.length);
+				if (length == descriptor.length) break; // End of stream
+				if (chunkIds.size() == MAX_ATTACHMENT_CHUNKS)
+					throw new FileTooBigException();
+				// Store each chunk as it's read, so the whole attachment
+				// doesn't have to be held in memory
+				chunkIds.add(addLocalAttachmentChunk(groupId, timestamp,
+						copyOf(chunk, length), descriptor.length,
+						chunkIds.size()));
+			}
+			byte[] body = clientHelper.toByteArray(
+					BdfList.of(ATTACHMENT, contentType, chunkIds));
+			AttachmentHeader h = addLocalAttachment(groupId, timestamp,
+					contentType, body, body.length, chunkIds);
+			success = true;
+			return h;
+		} finally {
+			if (!success) removeAttachmentChunks(chunkIds);
+		}
+	}
+
+	private MessageId addLocalAttachmentChunk(GroupId groupId, long timestamp,
+			byte[] body, int descriptorLength, int index)
+			throws DbException, FormatException {
+		BdfDictionary meta = new BdfDictionary();
+		meta.put(MSG_KEY_TIMESTAMP, timestamp);
+		meta.put(MSG_KEY_LOCAL, true);
+		meta.put(MSG_KEY_MSG_TYPE, ATTACHMENT_CHUNK);
+		meta.put(MSG_KEY_DESCRIPTOR_LENGTH, descriptorLength);
+		meta.put(MSG_KEY_CHUNK_INDEX, index);
+		Message m = clientHelper.createMessage(groupId, timestamp, body);
+		// Mark chunks as temporary, not shared until we're ready to send
+		db.transaction(false, txn ->
+				clientHelper.addLocalMessage(txn, m, meta, false, true));
+		return m.getId();
+	}
+
+	private AttachmentHeader addLocalAttachment(GroupId groupId,
+			long timestamp, String contentType, byte[] body,
+			int descriptorLength, @Nullable BdfList chunkIds)
+			throws DbException, FormatException {
 		BdfDictionary meta = new BdfDictionary();
 		meta.put(MSG_KEY_TIMESTAMP, timestamp);
 		meta.put(MSG_KEY_LOCAL, true);
 		meta.put(MSG_KEY_MSG_TYPE, ATTACHMENT);
 		meta.put(MSG_KEY_CONTENT_TYPE, contentType);
-		meta.put(MSG_KEY_DESCRIPTOR_LENGTH, descriptor.length);
+		meta.put(MSG_KEY_DESCRIPTOR_LENGTH, descriptorLength);
+		if (chunkIds != null) meta.put(MSG_KEY_CHUNK_IDS, chunkIds);
 		Message m = clientHelper.createMessage(groupId, timestamp, body);
 		// Mark attachments as temporary, not shared until we're ready to send
 		db.transaction(false, txn ->
@@ -360,10 +483,52 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 		return new AttachmentHeader(groupId, m.getId(), contentType);
 	}
 
+	private void removeAttachmentChunks(BdfList chunkIds) throws DbException {
+		if (chunkIds.isEmpty()) return;
+		db.transaction(false, txn -> {
+			for (int i = 0; i < chunkIds.size(); i++) {
+				db.removeMessage(txn, (MessageId) chunkIds.get(i));
+			}
+		});
+	}
+
+	private boolean contactSupportsChunkedAttachments(GroupId g)
+			throws DbException {
+		return db.transactionWithResult(true, txn -> {
+			ContactId c = getContactId(txn, g);
+			return clientVersioningManager
+					.getClientMinorVersion(txn, c, CLIENT_ID, 0) >= 4;
+		});
+	}
+
+	/**
+	 * Reads from the given stream into the given buffer, starting at the
+	 * given offset, until the buffer is full or the end of the stream is
+	 * reached. Returns the offset of the end of the data in the buffer.
+	 */
+	private static int read(InputStream in, byte[] b, int offset)
+			throws IOException {
+		while (offset < b.length) {
+			int read = in.read(b, offset, b.length - offset);
+			if (read == -1) break;
+			offset += read;
+		}
+		return offset;
+	}
+
 	@Override
 	public void removeAttachment(AttachmentHeader header) throws DbException {
-		db.transaction(false,
-				txn -> db.removeMessage(txn, header.getMessageId()));
+		db.transaction(false, txn -> {
+			MessageId m = header.getMessageId();
+			try {
+				for (MessageId chunkId : getChunkIds(txn, m)) {
+					db.removeMessage(txn, chunkId);
+				}
+			} catch (FormatException e) {
+				throw new DbException(e);
+			}
+			db.removeMessage(txn, m);
+		});
 	}
 
 	private ContactId getContactId(Transaction txn, GroupId g)
@@ -418,25 +583,8 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 			BdfDictionary meta = metadata.get(id);
 			if (meta == null) continue;
 			try {
-				// Message type is null for version 0.0 private messages
-				Long messageType = meta.getOptionalLong(MSG_KEY_MSG_TYPE);
-				if (messageType != null && messageType != PRIVATE_MESSAGE)
-					continue;
-				long timestamp = meta.getLong(MSG_KEY_TIMESTAMP);
-				boolean local = meta.getBoolean(MSG_KEY_LOCAL);
-				boolean read = meta.getBoolean(MSG_KEY_READ);
-				if (messageType == null) {
-					headers.add(new PrivateMessageHeader(id, g, timestamp,
-							local, read, s.isSent(), s.isSeen(), true,
-							emptyList(), NO_AUTO_DELETE_TIMER));
-				} else {
-					boolean hasText = meta.getBoolean(MSG_KEY_HAS_TEXT);
-					long timer = meta.getLong(MSG_KEY_AUTO_DELETE_TIMER,
-							NO_AUTO_DELETE_TIMER);
-					headers.add(new PrivateMessageHeader(id, g, timestamp,
-							local, read, s.isSent(), s.isSeen(), hasText,
-							parseAttachmentHeaders(g, meta), timer));
-				}
+				if (isPrivateMessage(meta))
+					headers.add(parseMessageHeader(g, id, meta, s));
 			} catch (FormatException e) {
 				throw new DbException(e);
 			}
@@ -444,6 +592,64 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 		return headers;
 	}
 
+	@Override
+	public Collection<ConversationMessageHeader> getMessageHeaders(
+			Transaction txn, ContactId c, long timestamp, boolean before,
+			int limit) throws DbException {
+		GroupId g = getContactGroup(db.getContact(txn, c)).getId();
+		Collection<ConversationMessageHeader> headers = new ArrayList<>();
+		try {
+			// The contact group also contains attachments, which don't have
+			// headers, so keep fetching pages until we have enough headers
+			while (true) {
+				Map<MessageId, BdfDictionary> page =
+						clientHelper.getMessageMetadataAsDictionary(txn, g,
+								new BdfDictionary(), timestamp, before, limit);
+				for (Entry<MessageId, BdfDictionary> e : page.entrySet()) {
+					MessageId id = e.getKey();
+					BdfDictionary meta = e.getValue();
+					// The page is in order, so this ends up as the
+					// timestamp of the last message in the page
+					timestamp = meta.getLong(MSG_KEY_TIMESTAMP);
+					if (isPrivateMessage(meta)) {
+						MessageStatus s = db.getMessageStatus(txn, c, id);
+						headers.add(parseMessageHeader(g, id, meta, s));
+					}
+				}
+				// A page with fewer than the limit is the last page
+				if (page.size() < limit || headers.size() >= limit) break;
+			}
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+		return headers;
+	}
+
+	private boolean isPrivateMessage(BdfDictionary meta)
+			throws FormatException {
+		// Message type is null for version 0.0 private messages
+		Long messageType = meta.getOptionalLong(MSG_KEY_MSG_TYPE);
+		return messageType == null || messageType == PRIVATE_MESSAGE;
+	}
+
+	private PrivateMessageHeader parseMessageHeader(GroupId g, MessageId id,
+			BdfDictionary meta, MessageStatus s) throws FormatException {
+		long timestamp = meta.getLong(MSG_KEY_TIMESTAMP);
+		boolean local = meta.getBoolean(MSG_KEY_LOCAL);
+		boolean read = meta.getBoolean(MSG_KEY_READ);
+		if (meta.getOptionalLong(MSG_KEY_MSG_TYPE) == null) {
+			return new PrivateMessageHeader(id, g, timestamp, local, read,
+					s.isSent(), s.isSeen(), true, emptyList(),
+					NO_AUTO_DELETE_TIMER);
+		}
+		boolean hasText = meta.getBoolean(MSG_KEY_HAS_TEXT);
+		long timer = meta.getLong(MSG_KEY_AUTO_DELETE_TIMER,
+				NO_AUTO_DELETE_TIMER);
+		return new PrivateMessageHeader(id, g, timestamp, local, read,
+				s.isSent(), s.isSeen(), hasText,
+				parseAttachmentHeaders(g, meta), timer);
+	}
+
 	@Override
 	public Set<MessageId> getMessageIds(Transaction txn, ContactId c)
 			throws DbException {
@@ -472,12 +678,38 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 	@Override
 	public String getMessageText(Transaction txn, MessageId m) throws DbException {
 		try {
-			BdfList body = clientHelper.getMessageAsList(txn, m);
-			if (body.size() == 1) return body.getString(0); // Legacy format
-			else return body.getOptionalString(1);
+			return getMessageText(clientHelper.getMessageAsList(txn, m));
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+	}
+
+	@Override
+	public Map<MessageId, String> getMessageTexts(Collection<MessageId> m)
+			throws DbException {
+		return db.transactionWithResult(true, txn -> getMessageTexts(txn, m));
+	}
+
+	@Override
+	public Map<MessageId, String> getMessageTexts(Transaction txn,
+			Collection<MessageId> m) throws DbException {
+		Map<MessageId, String> texts = new HashMap<>(m.size());
+		try {
+			for (MessageId id : m) {
+				String text = getMessageText(clientHelper.getMessageAsList(txn,
+						id));
+				if (text != null) texts.put(id, text);
+			}
 		} catch (FormatException e) {
 			throw new DbException(e);
 		}
+		return texts;
+	}
+
+	@Nullable
+	private String getMessageText(BdfList body) throws FormatException {
+		if (body.size() == 1) return body.getString(0); // Legacy format
+		else return body.getOptionalString(1);
 	}
 
 	@Override
@@ -531,12 +763,15 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 			if (messageType != null && messageType == PRIVATE_MESSAGE) {
 				for (AttachmentHeader h : parseAttachmentHeaders(g, meta)) {
 					try {
+						deleteChunks(txn, getChunkIds(txn, h.getMessageId()));
 						db.deleteMessage(txn, h.getMessageId());
 						db.deleteMessageMetadata(txn, h.getMessageId());
 					} catch (NoSuchMessageException e) {
 						// Continue
 					}
 				}
+			} else if (messageType != null && messageType == ATTACHMENT) {
+				deleteChunks(txn, parseChunkIds(meta));
 			}
 			db.deleteMessage(txn, m);
 			db.deleteMessageMetadata(txn, m);
@@ -545,6 +780,18 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 		}
 	}
 
+	private void deleteChunks(Transaction txn, List<MessageId> chunkIds)
+			throws DbException {
+		for (MessageId chunkId : chunkIds) {
+			try {
+				db.deleteMessage(txn, chunkId);
+				db.deleteMessageMetadata(txn, chunkId);
+			} catch (NoSuchMessageException e) {
+				// Continue
+			}
+		}
+	}
+
 	private void recalculateGroupCount(Transaction txn, GroupId g)
 			throws DbException {
 		try {
@@ -13,6 +13,7 @@ import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.InvalidMessageException;
 import org.briarproject.bramble.api.sync.Message;
 import org.briarproject.bramble.api.sync.MessageContext;
+import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.sync.validation.MessageValidator;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.briar.attachment.CountingInputStream;
@@ -21,21 +22,28 @@ import org.briarproject.nullsafety.NotNullByDefault;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.annotation.concurrent.Immutable;
 
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_BODY_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAX_CLOCK_DIFFERENCE;
 import static org.briarproject.bramble.util.ValidationUtils.checkLength;
+import static org.briarproject.bramble.util.ValidationUtils.checkRange;
 import static org.briarproject.bramble.util.ValidationUtils.checkSize;
 import static org.briarproject.briar.api.attachment.MediaConstants.MAX_CONTENT_TYPE_BYTES;
+import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CHUNK_IDS;
+import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CHUNK_INDEX;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CONTENT_TYPE;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_DESCRIPTOR_LENGTH;
 import static org.briarproject.briar.api.autodelete.AutoDeleteConstants.NO_AUTO_DELETE_TIMER;
 import static org.briarproject.briar.api.messaging.MessagingConstants.MAX_ATTACHMENTS_PER_MESSAGE;
+import static org.briarproject.briar.api.messaging.MessagingConstants.MAX_ATTACHMENT_CHUNKS;
 import static org.briarproject.briar.api.messaging.MessagingConstants.MAX_PRIVATE_MESSAGE_INCOMING_TEXT_LENGTH;
 import static org.briarproject.briar.client.MessageTrackerConstants.MSG_KEY_READ;
 import static org.briarproject.briar.messaging.MessageTypes.ATTACHMENT;
+import static org.briarproject.briar.messaging.MessageTypes.ATTACHMENT_CHUNK;
 import static org.briarproject.briar.messaging.MessageTypes.PRIVATE_MESSAGE;
 import static org.briarproject.briar.messaging.MessagingConstants.MSG_KEY_ATTACHMENT_HEADERS;
 import static org.briarproject.briar.messaging.MessagingConstants.MSG_KEY_AUTO_DELETE_TIMER;
@@ -89,7 +97,9 @@ class PrivateMessageValidator implements MessageValidator {
 					if (!reader.eof()) throw new FormatException();
 					context = validatePrivateMessage(m, list);
 				} else if (messageType == ATTACHMENT) {
-					context = validateAttachment(m, list, bytesRead);
+					context = validateAttachment(m, list, bytesRead, reader);
+				} else if (messageType == ATTACHMENT_CHUNK) {
+					context = validateAttachmentChunk(m, list, bytesRead);
 				} else {
 					throw new InvalidMessageException();
 				}
@@ -155,9 +165,11 @@ class PrivateMessageValidator implements MessageValidator {
 	}
 
 	private BdfMessageContext validateAttachment(Message m, BdfList descriptor,
-			long descriptorLength) throws FormatException {
-		// Message type, content type
-		checkSize(descriptor, 2);
+			long descriptorLength, BdfReader reader) throws IOException {
+		// Client version 0.1 to 0.3: Message type, content type.
+		// Client version 0.4: Message type, content type, optional list of
+		// chunk IDs.
+		checkSize(descriptor, 2, 3);
 		String contentType = descriptor.getString(1);
 		checkLength(contentType, 1, MAX_CONTENT_TYPE_BYTES);
 		// Return the metadata
@@ -167,6 +179,41 @@ class PrivateMessageValidator implements MessageValidator {
 		meta.put(MSG_KEY_MSG_TYPE, ATTACHMENT);
 		meta.put(MSG_KEY_DESCRIPTOR_LENGTH, descriptorLength);
 		meta.put(MSG_KEY_CONTENT_TYPE, contentType);
+		if (descriptor.size() == 2) return new BdfMessageContext(meta);
+		// The data is in the chunks, so there should be no trailing data
+		BdfList chunkIds = descriptor.getList(2);
+		checkSize(chunkIds, 1, MAX_ATTACHMENT_CHUNKS);
+		List<MessageId> dependencies = new ArrayList<>(chunkIds.size());
+		for (int i = 0; i < chunkIds.size(); i++) {
+			byte[] id = chunkIds.getRaw(i);
+			checkLength(id, UniqueId.LENGTH);
+			dependencies.add(new MessageId(id));
+		}
+		if (!reader.eof()) throw new FormatException();
+		meta.put(MSG_KEY_CHUNK_IDS, chunkIds);
+		// The attachment won't be delivered until all its chunks have been
+		// delivered
+		return new BdfMessageContext(meta, dependencies);
+	}
+
+	private BdfMessageContext validateAttachmentChunk(Message m,
+			BdfList descriptor, long descriptorLength) throws FormatException {
+		// Client version 0.4: Message type, chunk index
+		checkSize(descriptor, 2);
+		long index = descriptor.getLong(1);
+		checkRange(index, 0, MAX_ATTACHMENT_CHUNKS - 1);
+		// The descriptor should be followed by the chunk's data
+		if (descriptorLength >= m.getBody().length) {
+			throw new FormatException();
+		}
+		// Return the metadata
+		BdfDictionary meta = new BdfDictionary();
+		meta.put(MSG_KEY_TIMESTAMP, m.getTimestamp());
+		meta.put(MSG_KEY_LOCAL, false);
+		meta.put(MSG_KEY_MSG_TYPE, ATTACHMENT_CHUNK);
+		meta.put(MSG_KEY_DESCRIPTOR_LENGTH, descriptorLength);
+		// The reader checks that each chunk is at its index in the list
+		meta.put(MSG_KEY_CHUNK_INDEX, index);
 		return new BdfMessageContext(meta);
 	}
 }
@@ -16,6 +16,7 @@ import org.briarproject.bramble.api.db.Metadata;
 import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.identity.Author;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager.OpenDatabaseHook;
+import org.briarproject.bramble.api.sync.ClientId;
 import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.Group.Visibility;
 import org.briarproject.bramble.api.sync.GroupId;
@@ -185,6 +186,16 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 		db.removeGroup(txn, getContactGroup(c));
 	}
 
+	@Override
+	protected ClientId getClientId() {
+		return CLIENT_ID;
+	}
+
+	@Override
+	protected int getMajorVersion() {
+		return MAJOR_VERSION;
+	}
+
 	@Override
 	public Group getContactGroup(Contact c) {
 		return contactGroupFactory.createContactGroup(CLIENT_ID,
@@ -432,31 +443,56 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 			BdfDictionary query = messageParser.getMessagesVisibleInUiQuery();
 			Map<MessageId, BdfDictionary> results = clientHelper
 					.getMessageMetadataAsDictionary(txn, contactGroupId, query);
-			List<ConversationMessageHeader> messages =
-					new ArrayList<>(results.size());
-			for (Entry<MessageId, BdfDictionary> e : results.entrySet()) {
-				MessageId m = e.getKey();
-				MessageMetadata meta =
-						messageParser.parseMetadata(e.getValue());
-				MessageStatus status = db.getMessageStatus(txn, c, m);
-				MessageType type = meta.getMessageType();
-				if (type == INVITE) {
-					messages.add(parseInvitationRequest(txn, contactGroupId, m,
-							meta, status));
-				} else if (type == JOIN) {
-					messages.add(parseInvitationResponse(contactGroupId, m,
-							meta, status, true));
-				} else if (type == LEAVE) {
-					messages.add(parseInvitationResponse(contactGroupId, m,
-							meta, status, false));
-				}
-			}
-			return messages;
+			return parseMessageHeaders(txn, c, contactGroupId, results);
 		} catch (FormatException e) {
 			throw new DbException(e);
 		}
 	}
 
+	@Override
+	public Collection<ConversationMessageHeader> getMessageHeaders(
+			Transaction txn, ContactId c, long timestamp, boolean before,
+			int limit) throws DbException {
+		try {
+			Contact contact = db.getContact(txn, c);
+			GroupId contactGroupId = getContactGroup(contact).getId();
+			// The query matches exactly the messages that have headers, so
+			// a single page of metadata is enough
+			BdfDictionary query = messageParser.getMessagesVisibleInUiQuery();
+			Map<MessageId, BdfDictionary> results = clientHelper
+					.getMessageMetadataAsDictionary(txn, contactGroupId, query,
+							timestamp, before, limit);
+			return parseMessageHeaders(txn, c, contactGroupId, results);
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+	}
+
+	private List<ConversationMessageHeader> parseMessageHeaders(
+			Transaction txn, ContactId c, GroupId contactGroupId,
+			Map<MessageId, BdfDictionary> results)
+			throws DbException, FormatException {
+		List<ConversationMessageHeader> messages =
+				new ArrayList<>(results.size());
+		for (Entry<MessageId, BdfDictionary> e : results.entrySet()) {
+			MessageId m = e.getKey();
+			MessageMetadata meta = messageParser.parseMetadata(e.getValue());
+			MessageStatus status = db.getMessageStatus(txn, c, m);
+			MessageType type = meta.getMessageType();
+			if (type == INVITE) {
+				messages.add(parseInvitationRequest(txn, contactGroupId, m,
+						meta, status));
+			} else if (type == JOIN) {
+				messages.add(parseInvitationResponse(contactGroupId, m,
+						meta, status, true));
+			} else if (type == LEAVE) {
+				messages.add(parseInvitationResponse(contactGroupId, m,
+						meta, status, false));
+			}
+		}
+		return messages;
+	}
+
 	private GroupInvitationRequest parseInvitationRequest(Transaction txn,
 			GroupId contactGroupId, MessageId m, MessageMetadata meta,
 			MessageStatus status) throws DbException, FormatException {
@@ -90,10 +90,6 @@ abstract class SharingManagerImpl<S extends Shareable>
 		this.invitationFactory = invitationFactory;
 	}
 
-	protected abstract ClientId getClientId();
-
-	protected abstract int getMajorVersion();
-
 	protected abstract ClientId getShareableClientId();
 
 	protected abstract int getShareableMajorVersion();
@@ -338,31 +334,55 @@ abstract class SharingManagerImpl<S extends Shareable>
 			BdfDictionary query = messageParser.getMessagesVisibleInUiQuery();
 			Map<MessageId, BdfDictionary> results = clientHelper
 					.getMessageMetadataAsDictionary(txn, contactGroupId, query);
-			Collection<ConversationMessageHeader> messages =
-					new ArrayList<>(results.size());
-			for (Entry<MessageId, BdfDictionary> e : results.entrySet()) {
-				MessageId m = e.getKey();
-				MessageMetadata meta =
-						messageParser.parseMetadata(e.getValue());
-				MessageStatus status = db.getMessageStatus(txn, c, m);
-				MessageType type = meta.getMessageType();
-				if (type == INVITE) {
-					messages.add(parseInvitationRequest(txn, c, m,
-							meta, status));
-				} else if (type == ACCEPT) {
-					messages.add(parseInvitationResponse(contactGroupId, m,
-							meta, status, true));
-				} else if (type == DECLINE) {
-					messages.add(parseInvitationResponse(contactGroupId, m,
-							meta, status, false));
-				}
-			}
-			return messages;
+			return parseMessageHeaders(txn, c, contactGroupId, results);
 		} catch (FormatException e) {
 			throw new DbException(e);
 		}
 	}
 
+	@Override
+	public Collection<ConversationMessageHeader> getMessageHeaders(
+			Transaction txn, ContactId c, long timestamp, boolean before,
+			int limit) throws DbException {
+		try {
+			Contact contact = db.getContact(txn, c);
+			GroupId contactGroupId = getContactGroup(contact).getId();
+			// The query matches exactly the messages that have headers, so
+			// a single page of metadata is enough
+			BdfDictionary query = messageParser.getMessagesVisibleInUiQuery();
+			Map<MessageId, BdfDictionary> results = clientHelper
+					.getMessageMetadataAsDictionary(txn, contactGroupId, query,
+							timestamp, before, limit);
+			return parseMessageHeaders(txn, c, contactGroupId, results);
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+	}
+
+	private Collection<ConversationMessageHeader> parseMessageHeaders(
+			Transaction txn, ContactId c, GroupId contactGroupId,
+			Map<MessageId, BdfDictionary> results)
+			throws DbException, FormatException {
+		Collection<ConversationMessageHeader> messages =
+				new ArrayList<>(results.size());
+		for (Entry<MessageId, BdfDictionary> e : results.entrySet()) {
+			MessageId m = e.getKey();
+			MessageMetadata meta = messageParser.parseMetadata(e.getValue());
+			MessageStatus status = db.getMessageStatus(txn, c, m);
+			MessageType type = meta.getMessageType();
+			if (type == INVITE) {
+				messages.add(parseInvitationRequest(txn, c, m, meta, status));
+			} else if (type == ACCEPT) {
+				messages.add(parseInvitationResponse(contactGroupId, m,
+						meta, status, true));
+			} else if (type == DECLINE) {
+				messages.add(parseInvitationResponse(contactGroupId, m,
+						meta, status, false));
+			}
+		}
+		return messages;
+	}
+
 	private ConversationRequest<S> parseInvitationRequest(Transaction txn,
 			ContactId c, MessageId m, MessageMetadata meta,
 			MessageStatus status) throws DbException, FormatException {
@@ -3,6 +3,7 @@ package org.briarproject.briar.attachment;
 import org.briarproject.bramble.api.client.ClientHelper;
 import org.briarproject.bramble.api.data.BdfDictionary;
 import org.briarproject.bramble.api.data.BdfEntry;
+import org.briarproject.bramble.api.data.BdfList;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.NoSuchMessageException;
 import org.briarproject.bramble.api.db.Transaction;
@@ -16,15 +17,20 @@ import org.briarproject.briar.api.attachment.AttachmentHeader;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
 import static java.lang.System.arraycopy;
+import static java.util.Arrays.asList;
 import static org.briarproject.bramble.test.TestUtils.getMessage;
 import static org.briarproject.bramble.test.TestUtils.getRandomId;
 import static org.briarproject.bramble.util.IoUtils.copyAndClose;
+import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CHUNK_IDS;
+import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CHUNK_INDEX;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CONTENT_TYPE;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_DESCRIPTOR_LENGTH;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
 
 public class AttachmentReaderImplTest extends BrambleMockTestCase {
 
@@ -125,4 +131,158 @@ public class AttachmentReaderImplTest extends BrambleMockTestCase {
 
 		assertArrayEquals(expectedData, data);
 	}
+
+	@Test
+	public void testReadsChunks() throws Exception {
+		int descriptorLength = 12;
+		Message chunk1 = getMessage(groupId, 1234);
+		Message chunk2 = getMessage(groupId, 1234);
+		BdfDictionary meta = BdfDictionary.of(
+				new BdfEntry(MSG_KEY_CONTENT_TYPE, contentType),
+				new BdfEntry(MSG_KEY_DESCRIPTOR_LENGTH,
+						message.getBody().length),
+				new BdfEntry(MSG_KEY_CHUNK_IDS,
+						BdfList.of(chunk1.getId(), chunk2.getId())));
+		BdfDictionary chunkMeta1 = getChunkMetadata(descriptorLength, 0);
+		BdfDictionary chunkMeta2 = getChunkMetadata(descriptorLength, 1);
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		for (Message chunk : asList(chunk1, chunk2)) {
+			byte[] body = chunk.getBody();
+			expected.write(body, descriptorLength,
+					body.length - descriptorLength);
+		}
+
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, true);
+		Transaction txn2 = new Transaction(null, true);
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
+			oneOf(clientHelper).getMessage(txn, message.getId());
+			will(returnValue(message));
+			oneOf(clientHelper)
+					.getMessageMetadataAsDictionary(txn, message.getId());
+			will(returnValue(meta));
+		}});
+
+		// The chunks shouldn't be loaded until the stream is read
+		Attachment attachment = attachmentReader.getAttachment(header);
+		context.assertIsSatisfied();
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transaction(with(true), withDbRunnable(txn1));
+			oneOf(clientHelper).getMessage(txn1, chunk1.getId());
+			will(returnValue(chunk1));
+			oneOf(clientHelper)
+					.getMessageMetadataAsDictionary(txn1, chunk1.getId());
+			will(returnValue(chunkMeta1));
+			oneOf(db).transaction(with(true), withDbRunnable(txn2));
+			oneOf(clientHelper).getMessage(txn2, chunk2.getId());
+			will(returnValue(chunk2));
+			oneOf(clientHelper)
+					.getMessageMetadataAsDictionary(txn2, chunk2.getId());
+			will(returnValue(chunkMeta2));
+		}});
+
+		InputStream in = attachment.getStream();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		copyAndClose(in, out);
+
+		assertArrayEquals(expected.toByteArray(), out.toByteArray());
+	}
+
+	@Test
+	public void testChunkInWrongGroup() throws Exception {
+		Message chunk = getMessage(new GroupId(getRandomId()), 1234);
+		BdfDictionary meta = BdfDictionary.of(
+				new BdfEntry(MSG_KEY_CONTENT_TYPE, contentType),
+				new BdfEntry(MSG_KEY_DESCRIPTOR_LENGTH,
+						message.getBody().length),
+				new BdfEntry(MSG_KEY_CHUNK_IDS, BdfList.of(chunk.getId())));
+
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, true);
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
+			oneOf(clientHelper).getMessage(txn, message.getId());
+			will(returnValue(message));
+			oneOf(clientHelper)
+					.getMessageMetadataAsDictionary(txn, message.getId());
+			will(returnValue(meta));
+			oneOf(db).transaction(with(true), withDbRunnable(txn1));
+			oneOf(clientHelper).getMessage(txn1, chunk.getId());
+			will(returnValue(chunk));
+		}});
+
+		Attachment attachment = attachmentReader.getAttachment(header);
+		try {
+			attachment.getStream().read();
+			fail();
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testChunkWithoutIndexIsRejected() throws Exception {
+		// Another attachment is listed as a chunk
+		Message other = getMessage(groupId, 1234);
+		BdfDictionary otherMeta = BdfDictionary.of(
+				new BdfEntry(MSG_KEY_CONTENT_TYPE, contentType),
+				new BdfEntry(MSG_KEY_DESCRIPTOR_LENGTH, 12));
+
+		testChunkIsRejected(other, otherMeta);
+	}
+
+	@Test
+	public void testChunkAtWrongIndexIsRejected() throws Exception {
+		// The second chunk is listed first
+		Message chunk = getMessage(groupId, 1234);
+		BdfDictionary chunkMeta = getChunkMetadata(12, 1);
+
+		testChunkIsRejected(chunk, chunkMeta);
+	}
+
+	private void testChunkIsRejected(Message chunk, BdfDictionary chunkMeta)
+			throws Exception {
+		BdfDictionary meta = BdfDictionary.of(
+				new BdfEntry(MSG_KEY_CONTENT_TYPE, contentType),
+				new BdfEntry(MSG_KEY_DESCRIPTOR_LENGTH,
+						message.getBody().length),
+				new BdfEntry(MSG_KEY_CHUNK_IDS, BdfList.of(chunk.getId())));
+
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, true);
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
+			oneOf(clientHelper).getMessage(txn, message.getId());
+			will(returnValue(message));
+			oneOf(clientHelper)
+					.getMessageMetadataAsDictionary(txn, message.getId());
+			will(returnValue(meta));
+			oneOf(db).transaction(with(true), withDbRunnable(txn1));
+			oneOf(clientHelper).getMessage(txn1, chunk.getId());
+			will(returnValue(chunk));
+			oneOf(clientHelper)
+					.getMessageMetadataAsDictionary(txn1, chunk.getId());
+			will(returnValue(chunkMeta));
+		}});
+
+		Attachment attachment = attachmentReader.getAttachment(header);
+		try {
+			attachment.getStream().read();
+			fail();
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	private BdfDictionary getChunkMetadata(int descriptorLength, int index) {
+		return BdfDictionary.of(
+				new BdfEntry(MSG_KEY_DESCRIPTOR_LENGTH, descriptorLength),
+				new BdfEntry(MSG_KEY_CHUNK_INDEX, index));
+	}
 }
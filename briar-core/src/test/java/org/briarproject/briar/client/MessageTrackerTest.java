@@ -1,19 +1,27 @@
 package org.briarproject.briar.client;
 
 import org.briarproject.bramble.api.client.ClientHelper;
+import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.data.BdfDictionary;
 import org.briarproject.bramble.api.data.BdfEntry;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.sync.ClientId;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.bramble.test.BrambleMockTestCase;
 import org.briarproject.bramble.test.TestUtils;
 import org.briarproject.briar.api.client.MessageTracker;
+import org.briarproject.briar.api.client.MessageTracker.GroupCount;
 import org.jmock.Expectations;
 import org.junit.Test;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.briarproject.bramble.api.client.ContactGroupConstants.GROUP_KEY_CONTACT_ID;
+import static org.briarproject.bramble.test.TestUtils.getClientId;
 import static org.briarproject.briar.client.MessageTrackerConstants.GROUP_KEY_LATEST_MSG;
 import static org.briarproject.briar.client.MessageTrackerConstants.GROUP_KEY_MSG_COUNT;
 import static org.briarproject.briar.client.MessageTrackerConstants.GROUP_KEY_STORED_MESSAGE_ID;
@@ -71,4 +79,37 @@ public class MessageTrackerTest extends BrambleMockTestCase {
 		assertEquals(messageId, loadedId);
 	}
 
+	@Test
+	public void testGetContactGroupCounts() throws Exception {
+		Transaction txn = new Transaction(null, true);
+		ClientId clientId = getClientId();
+		int majorVersion = 123;
+		ContactId contactId = new ContactId(123);
+		BdfDictionary contactGroupMeta = BdfDictionary.of(
+				new BdfEntry(GROUP_KEY_CONTACT_ID, contactId.getInt()),
+				new BdfEntry(GROUP_KEY_MSG_COUNT, 3),
+				new BdfEntry(GROUP_KEY_UNREAD_COUNT, 2),
+				new BdfEntry(GROUP_KEY_LATEST_MSG, 42L)
+		);
+		// A group that isn't associated with a contact should be ignored
+		GroupId localGroupId = new GroupId(TestUtils.getRandomId());
+		Map<GroupId, BdfDictionary> metadata = new HashMap<>();
+		metadata.put(groupId, contactGroupMeta);
+		metadata.put(localGroupId, dictionary);
+
+		context.checking(new Expectations() {{
+			oneOf(clientHelper).getGroupMetadataAsDictionary(txn, clientId,
+					majorVersion);
+			will(returnValue(metadata));
+		}});
+
+		Map<ContactId, GroupCount> counts = messageTracker
+				.getContactGroupCounts(txn, clientId, majorVersion);
+		assertEquals(1, counts.size());
+		GroupCount count = counts.get(contactId);
+		assertNotNull(count);
+		assertEquals(3, count.getMsgCount());
+		assertEquals(2, count.getUnreadCount());
+		assertEquals(42L, count.getLatestMsgTime());
+	}
 }
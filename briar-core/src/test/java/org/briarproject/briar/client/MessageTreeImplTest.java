@@ -6,12 +6,19 @@ import org.briarproject.briar.api.client.MessageTree;
 import org.briarproject.nullsafety.NotNullByDefault;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
 
 import javax.annotation.Nullable;
 
+import static java.util.Collections.shuffle;
+import static java.util.Collections.sort;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class MessageTreeImplTest {
 
@@ -59,6 +66,118 @@ public class MessageTreeImplTest {
 		assertEquals(nodes[3], sortedNodes[4]);
 	}
 
+	@Test
+	public void testIncrementalAddsMatchBatchAdd() {
+		Random random = new Random();
+		List<TestNode> nodes = createRandomTree(random, 500);
+
+		// Add the nodes in one batch
+		MessageTree<TestNode> batchTree = new MessageTreeImpl<>();
+		batchTree.add(nodes);
+
+		// Add the nodes one at a time, in order of creation so that each
+		// parent is added before its children
+		tree = new MessageTreeImpl<>();
+		for (TestNode node : nodes) tree.add(node);
+
+		List<TestNode> expected = getExpectedOrder(nodes);
+		assertEquals(expected, batchTree.depthFirstOrder());
+		assertEquals(expected, tree.depthFirstOrder());
+		assertEquals(nodes.size(), tree.size());
+		for (int i = 0; i < expected.size(); i++) {
+			TestNode node = expected.get(i);
+			assertEquals(i, tree.indexOf(node.getId()));
+			TestNode parent = node.getParentId() == null ? null :
+					expected.get(tree.indexOf(node.getParentId()));
+			assertEquals(parent == null ? 0 : parent.level + 1, node.level);
+		}
+	}
+
+	@Test
+	public void testBatchMayContainChildrenBeforeParents() {
+		Random random = new Random();
+		List<TestNode> nodes = createRandomTree(random, 500);
+		// Make the timestamps unique, as siblings with equal timestamps are
+		// kept in the order they were added
+		for (int i = 0; i < nodes.size(); i++) {
+			TestNode node = nodes.get(i);
+			node.setTimestamp(node.getTimestamp() * nodes.size() + i);
+		}
+
+		// Add the nodes in one batch, in random order
+		tree = new MessageTreeImpl<>();
+		List<TestNode> shuffled = new ArrayList<>(nodes);
+		shuffle(shuffled, random);
+		tree.add(shuffled);
+
+		assertEquals(getExpectedOrder(nodes), tree.depthFirstOrder());
+	}
+
+	@Test
+	public void testWindowedView() {
+		tree = new MessageTreeImpl<>();
+		List<TestNode> nodes = createRandomTree(new Random(), 50);
+		tree.add(nodes);
+		List<TestNode> expected = getExpectedOrder(nodes);
+
+		assertEquals(expected.subList(0, 10), tree.depthFirstOrder(0, 10));
+		assertEquals(expected.subList(45, 50), tree.depthFirstOrder(45, 10));
+		assertTrue(tree.depthFirstOrder(50, 10).isEmpty());
+		assertEquals(-1, tree.indexOf(new TestNode().getId()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNodeWithMissingParentIsRejected() {
+		tree = new MessageTreeImpl<>();
+		TestNode node = new TestNode();
+		node.setParentId(new MessageId(TestUtils.getRandomId()));
+		tree.add(node);
+	}
+
+	/**
+	 * Creates a random tree in which each node is created after its parent.
+	 */
+	private List<TestNode> createRandomTree(Random random, int size) {
+		List<TestNode> nodes = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			TestNode node = new TestNode();
+			// Use a small range of timestamps so some are equal
+			node.setTimestamp(random.nextInt(size / 2));
+			if (i > 0 && random.nextInt(4) != 0) {
+				TestNode parent = nodes.get(random.nextInt(i));
+				node.setParentId(parent.getId());
+			}
+			nodes.add(node);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Returns the nodes in depth-first order, with siblings sorted by
+	 * timestamp and then by order of creation.
+	 */
+	private List<TestNode> getExpectedOrder(List<TestNode> nodes) {
+		List<TestNode> ordered = new ArrayList<>();
+		addChildren(ordered, nodes, null);
+		return ordered;
+	}
+
+	private void addChildren(List<TestNode> ordered, List<TestNode> nodes,
+			@Nullable MessageId parentId) {
+		List<TestNode> children = new ArrayList<>();
+		for (TestNode node : nodes) {
+			if (Objects.equals(node.getParentId(), parentId))
+				children.add(node);
+		}
+		// The sort is stable, so equal timestamps keep order of creation
+		sort(children, (a, b) ->
+				Long.compare(a.getTimestamp(), b.getTimestamp()));
+		for (TestNode child : children) {
+			ordered.add(child);
+			addChildren(ordered, nodes, child.getId());
+		}
+	}
+
 	@NotNullByDefault
 	private class TestNode implements MessageTree.MessageNode {
 
@@ -66,6 +185,7 @@ public class MessageTreeImplTest {
 		@Nullable
 		private MessageId parentId;
 		private long timestamp;
+		private int level = -1;
 
 		@Override
 		public MessageId getId() {
@@ -80,7 +200,7 @@ public class MessageTreeImplTest {
 
 		@Override
 		public void setLevel(int level) {
-
+			this.level = level;
 		}
 
 		@Override
@@ -6,7 +6,9 @@ import org.briarproject.bramble.api.db.MessageDeletedException;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.test.TestDatabaseConfigModule;
+import org.briarproject.briar.api.attachment.Attachment;
 import org.briarproject.briar.api.attachment.AttachmentHeader;
+import org.briarproject.briar.api.conversation.ConversationManager;
 import org.briarproject.briar.api.conversation.ConversationMessageHeader;
 import org.briarproject.briar.api.messaging.MessagingManager;
 import org.briarproject.briar.api.messaging.PrivateMessage;
@@ -19,7 +21,9 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -29,12 +33,16 @@ import javax.annotation.Nullable;
 
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_BODY_LENGTH;
 import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.util.IoUtils.copyAndClose;
 import static org.briarproject.bramble.util.StringUtils.getRandomString;
 import static org.briarproject.briar.api.autodelete.AutoDeleteConstants.MIN_AUTO_DELETE_TIMER_MS;
 import static org.briarproject.briar.api.autodelete.AutoDeleteConstants.NO_AUTO_DELETE_TIMER;
 import static org.briarproject.briar.test.BriarTestUtils.assertGroupCount;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -153,6 +161,37 @@ public class MessagingManagerIntegrationTest
 		assertGroupCounts(c1, 1, 1);
 	}
 
+	@Test
+	public void testChunkedAttachment() throws Exception {
+		// add an attachment that's too big for a single message
+		byte[] data = getRandomBytes(MAX_MESSAGE_BODY_LENGTH * 3);
+		AttachmentHeader h = addAttachment(c0, data);
+		GroupId g = messagingManager0.getConversationId(contactId);
+		PrivateMessage m = messageFactory.createPrivateMessage(g,
+				c0.getClock().currentTimeMillis(), null, singletonList(h),
+				NO_AUTO_DELETE_TIMER);
+		messagingManager0.addLocalMessage(m);
+		// the private message, the attachment and four chunks are sent
+		syncMessage(c0, c1, contactId, 6, true);
+
+		// the attachment can be read on both devices
+		assertArrayEquals(data, readAttachment(c0, h));
+		assertArrayEquals(data, readAttachment(c1, h));
+		assertGroupCounts(c1, 1, 1);
+
+		// deleting the message deletes the attachment
+		Set<MessageId> toDelete = singleton(m.getMessage().getId());
+		db1.transaction(false, txn ->
+				messagingManager1.deleteMessages(txn, contactId, toDelete));
+		try {
+			readAttachment(c1, h);
+			fail();
+		} catch (MessageDeletedException e) {
+			// expected
+		}
+		assertGroupCounts(c1, 0, 0);
+	}
+
 	@Test
 	public void testAutoDeleteTimer() throws Exception {
 		// send message with auto-delete timer
@@ -180,6 +219,47 @@ public class MessagingManagerIntegrationTest
 		assertGroupCounts(c1, 1, 1);
 	}
 
+	@Test
+	public void testPagedConversation() throws Exception {
+		// send 4 messages (1 with attachment)
+		sendMessage(c0, c1, getRandomString(42));
+		sendMessage(c0, c1, getRandomString(23));
+		sendMessage(c0, c1, null, singletonList(addAttachment(c0)));
+		sendMessage(c1, c0, getRandomString(42));
+		Collection<ConversationMessageHeader> all = getMessages(c0);
+		assertEquals(4, all.size());
+
+		// page backwards through the conversation
+		ConversationManager conversationManager0 = c0.getConversationManager();
+		List<ConversationMessageHeader> older = new ArrayList<>();
+		long timestamp = Long.MAX_VALUE;
+		while (true) {
+			List<ConversationMessageHeader> page = conversationManager0
+					.getMessageHeaders(contactId, timestamp, true, 2);
+			assertSortedByTimestamp(page);
+			older.addAll(0, page);
+			if (page.size() < 2) break;
+			timestamp = page.get(0).getTimestamp();
+		}
+		assertSortedByTimestamp(older);
+		assertEquals(getIds(all), getIds(older));
+		assertEquals(older.size(), getIds(older).size());
+
+		// page forwards through the conversation
+		List<ConversationMessageHeader> newer = new ArrayList<>();
+		timestamp = Long.MIN_VALUE;
+		while (true) {
+			List<ConversationMessageHeader> page = conversationManager0
+					.getMessageHeaders(contactId, timestamp, false, 2);
+			assertSortedByTimestamp(page);
+			newer.addAll(page);
+			if (page.size() < 2) break;
+			timestamp = page.get(page.size() - 1).getTimestamp();
+		}
+		assertEquals(getIds(all), getIds(newer));
+		assertEquals(newer.size(), getIds(newer).size());
+	}
+
 	@Test
 	public void testDeleteAll() throws Exception {
 		// send 3 messages (1 with attachment)
@@ -339,12 +419,25 @@ public class MessagingManagerIntegrationTest
 
 	private AttachmentHeader addAttachment(BriarIntegrationTestComponent c)
 			throws Exception {
+		return addAttachment(c, getRandomBytes(42));
+	}
+
+	private AttachmentHeader addAttachment(BriarIntegrationTestComponent c,
+			byte[] data) throws Exception {
 		GroupId g = c.getMessagingManager().getConversationId(contactId);
-		InputStream stream = new ByteArrayInputStream(getRandomBytes(42));
+		InputStream stream = new ByteArrayInputStream(data);
 		return c.getMessagingManager().addLocalAttachment(g,
 				c.getClock().currentTimeMillis(), "image/jpeg", stream);
 	}
 
+	private byte[] readAttachment(BriarIntegrationTestComponent c,
+			AttachmentHeader h) throws Exception {
+		Attachment a = c.getAttachmentReader().getAttachment(h);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		copyAndClose(a.getStream(), out);
+		return out.toByteArray();
+	}
+
 	private Collection<ConversationMessageHeader> getMessages(
 			BriarIntegrationTestComponent c)
 			throws Exception {
@@ -364,6 +457,21 @@ public class MessagingManagerIntegrationTest
 		return messages;
 	}
 
+	private void assertSortedByTimestamp(
+			List<ConversationMessageHeader> headers) {
+		for (int i = 1; i < headers.size(); i++) {
+			assertTrue(headers.get(i - 1).getTimestamp() <=
+					headers.get(i).getTimestamp());
+		}
+	}
+
+	private Set<MessageId> getIds(
+			Collection<ConversationMessageHeader> headers) {
+		Set<MessageId> ids = new HashSet<>();
+		for (ConversationMessageHeader h : headers) ids.add(h.getId());
+		return ids;
+	}
+
 	private void assertGroupCounts(BriarIntegrationTestComponent c,
 			long msgCount, long unreadCount) throws Exception {
 		GroupId g = c.getMessagingManager().getConversationId(contactId);
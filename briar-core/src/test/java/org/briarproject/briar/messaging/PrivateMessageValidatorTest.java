@@ -20,6 +20,7 @@ import org.junit.Test;
 
 import java.io.InputStream;
 
+import static java.util.Collections.singletonList;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAX_CLOCK_DIFFERENCE;
 import static org.briarproject.bramble.test.TestUtils.getClientId;
 import static org.briarproject.bramble.test.TestUtils.getGroup;
@@ -28,14 +29,18 @@ import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
 import static org.briarproject.bramble.test.TestUtils.getRandomId;
 import static org.briarproject.bramble.util.StringUtils.getRandomString;
 import static org.briarproject.briar.api.attachment.MediaConstants.MAX_CONTENT_TYPE_BYTES;
+import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CHUNK_IDS;
+import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CHUNK_INDEX;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CONTENT_TYPE;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_DESCRIPTOR_LENGTH;
 import static org.briarproject.briar.api.autodelete.AutoDeleteConstants.MAX_AUTO_DELETE_TIMER_MS;
 import static org.briarproject.briar.api.autodelete.AutoDeleteConstants.MIN_AUTO_DELETE_TIMER_MS;
 import static org.briarproject.briar.api.messaging.MessagingConstants.MAX_ATTACHMENTS_PER_MESSAGE;
+import static org.briarproject.briar.api.messaging.MessagingConstants.MAX_ATTACHMENT_CHUNKS;
 import static org.briarproject.briar.api.messaging.MessagingConstants.MAX_PRIVATE_MESSAGE_INCOMING_TEXT_LENGTH;
 import static org.briarproject.briar.client.MessageTrackerConstants.MSG_KEY_READ;
 import static org.briarproject.briar.messaging.MessageTypes.ATTACHMENT;
+import static org.briarproject.briar.messaging.MessageTypes.ATTACHMENT_CHUNK;
 import static org.briarproject.briar.messaging.MessageTypes.PRIVATE_MESSAGE;
 import static org.briarproject.briar.messaging.MessagingConstants.MSG_KEY_ATTACHMENT_HEADERS;
 import static org.briarproject.briar.messaging.MessagingConstants.MSG_KEY_AUTO_DELETE_TIMER;
@@ -94,6 +99,16 @@ public class PrivateMessageValidatorTest extends BrambleMockTestCase {
 			new BdfEntry(MSG_KEY_CONTENT_TYPE, contentType)
 	);
 
+	private final MessageId chunkId = new MessageId(getRandomId());
+	private final BdfDictionary chunkedAttachmentMeta = BdfDictionary.of(
+			new BdfEntry(MSG_KEY_TIMESTAMP, message.getTimestamp()),
+			new BdfEntry(MSG_KEY_LOCAL, false),
+			new BdfEntry(MSG_KEY_MSG_TYPE, ATTACHMENT),
+			new BdfEntry(MSG_KEY_DESCRIPTOR_LENGTH, 0L),
+			new BdfEntry(MSG_KEY_CONTENT_TYPE, contentType),
+			new BdfEntry(MSG_KEY_CHUNK_IDS, BdfList.of(chunkId))
+	);
+
 	private final PrivateMessageValidator validator =
 			new PrivateMessageValidator(bdfReaderFactory, metadataEncoder,
 					clock);
@@ -386,10 +401,79 @@ public class PrivateMessageValidatorTest extends BrambleMockTestCase {
 		validator.validateMessage(message, group);
 	}
 
+	@Test
+	public void testAcceptsChunkedAttachment() throws Exception {
+		expectCheckTimestamp(now);
+		expectParseList(BdfList.of(ATTACHMENT, contentType,
+				BdfList.of(chunkId)));
+		expectReadEof(true);
+		expectEncodeMetadata(chunkedAttachmentMeta);
+
+		MessageContext result = validator.validateMessage(message, group);
+		assertEquals(singletonList(chunkId), result.getDependencies());
+	}
+
+	@Test(expected = InvalidMessageException.class)
+	public void testRejectsTrailingDataForChunkedAttachment() throws Exception {
+		expectCheckTimestamp(now);
+		expectParseList(BdfList.of(ATTACHMENT, contentType,
+				BdfList.of(chunkId)));
+		expectReadEof(false);
+
+		validator.validateMessage(message, group);
+	}
+
+	@Test(expected = InvalidMessageException.class)
+	public void testRejectsEmptyChunkListForAttachment() throws Exception {
+		testRejectsAttachment(BdfList.of(ATTACHMENT, contentType,
+				new BdfList()));
+	}
+
+	@Test(expected = InvalidMessageException.class)
+	public void testRejectsTooLongChunkListForAttachment() throws Exception {
+		BdfList chunkIds = new BdfList();
+		for (int i = 0; i < MAX_ATTACHMENT_CHUNKS + 1; i++) {
+			chunkIds.add(new MessageId(getRandomId()));
+		}
+		testRejectsAttachment(BdfList.of(ATTACHMENT, contentType, chunkIds));
+	}
+
+	@Test(expected = InvalidMessageException.class)
+	public void testRejectsTooShortChunkIdForAttachment() throws Exception {
+		testRejectsAttachment(BdfList.of(ATTACHMENT, contentType,
+				BdfList.of(getRandomBytes(UniqueId.LENGTH - 1))));
+	}
+
+	@Test
+	public void testAcceptsMinIndexForAttachmentChunk() throws Exception {
+		testAcceptsAttachmentChunk(0);
+	}
+
+	@Test
+	public void testAcceptsMaxIndexForAttachmentChunk() throws Exception {
+		testAcceptsAttachmentChunk(MAX_ATTACHMENT_CHUNKS - 1);
+	}
+
+	@Test(expected = InvalidMessageException.class)
+	public void testRejectsNegativeIndexForAttachmentChunk() throws Exception {
+		testRejectsAttachment(BdfList.of(ATTACHMENT_CHUNK, -1));
+	}
+
+	@Test(expected = InvalidMessageException.class)
+	public void testRejectsTooBigIndexForAttachmentChunk() throws Exception {
+		testRejectsAttachment(BdfList.of(ATTACHMENT_CHUNK,
+				MAX_ATTACHMENT_CHUNKS));
+	}
+
+	@Test(expected = InvalidMessageException.class)
+	public void testRejectsNonLongIndexForAttachmentChunk() throws Exception {
+		testRejectsAttachment(BdfList.of(ATTACHMENT_CHUNK, "foo"));
+	}
+
 	@Test(expected = InvalidMessageException.class)
 	public void testRejectsUnknownMessageType() throws Exception {
 		expectCheckTimestamp(now);
-		expectParseList(BdfList.of(ATTACHMENT + 1, contentType));
+		expectParseList(BdfList.of(ATTACHMENT_CHUNK + 1, contentType));
 
 		validator.validateMessage(message, group);
 	}
@@ -480,6 +564,23 @@ public class PrivateMessageValidatorTest extends BrambleMockTestCase {
 		validator.validateMessage(message, group);
 	}
 
+	private void testAcceptsAttachmentChunk(int index) throws Exception {
+		BdfDictionary chunkMeta = BdfDictionary.of(
+				new BdfEntry(MSG_KEY_TIMESTAMP, message.getTimestamp()),
+				new BdfEntry(MSG_KEY_LOCAL, false),
+				new BdfEntry(MSG_KEY_MSG_TYPE, ATTACHMENT_CHUNK),
+				new BdfEntry(MSG_KEY_DESCRIPTOR_LENGTH, 0L),
+				new BdfEntry(MSG_KEY_CHUNK_INDEX, (long) index)
+		);
+
+		expectCheckTimestamp(now);
+		expectParseList(BdfList.of(ATTACHMENT_CHUNK, index));
+		expectEncodeMetadata(chunkMeta);
+
+		MessageContext result = validator.validateMessage(message, group);
+		assertEquals(0, result.getDependencies().size());
+	}
+
 	private void expectCheckTimestamp(long now) {
 		context.checking(new Expectations() {{
 			oneOf(clock).currentTimeMillis();
@@ -2,14 +2,33 @@ package org.briarproject.briar.headless
 
 import org.briarproject.bramble.api.crypto.KeyStrengthener
 import org.briarproject.bramble.api.db.DatabaseConfig
+import org.briarproject.bramble.api.db.DatabaseDurability
+import org.briarproject.bramble.api.db.DatabaseDurability.STRICT
 import java.io.File
 
-internal class HeadlessDatabaseConfig(private val dbDir: File, private val keyDir: File) :
-    DatabaseConfig {
+/**
+ * Read-only transactions from the REST API should not have to wait for
+ * sync writes, so we keep a small pool of read-only connections.
+ */
+private const val READ_ONLY_CONNECTION_POOL_SIZE = 4
+
+internal class HeadlessDatabaseConfig(
+    private val dbDir: File,
+    private val keyDir: File,
+    private val readOnlyConnectionPoolSize: Int = READ_ONLY_CONNECTION_POOL_SIZE,
+    private val durability: DatabaseDurability = STRICT,
+    private val incrementalCompaction: Boolean = false
+) : DatabaseConfig {
 
     override fun getDatabaseDirectory() = dbDir
 
     override fun getDatabaseKeyDirectory() = keyDir
 
     override fun getKeyStrengthener(): KeyStrengthener? = null
+
+    override fun getReadOnlyConnectionPoolSize() = readOnlyConnectionPoolSize
+
+    override fun getDurability() = durability
+
+    override fun isIncrementalCompactionEnabled() = incrementalCompaction
 }
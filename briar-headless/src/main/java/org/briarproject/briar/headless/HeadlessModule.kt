@@ -6,6 +6,8 @@ import dagger.Provides
 import org.briarproject.bramble.account.AccountModule
 import org.briarproject.bramble.api.FeatureFlags
 import org.briarproject.bramble.api.db.DatabaseConfig
+import org.briarproject.bramble.api.db.DatabaseDurability
+import org.briarproject.bramble.api.db.DatabaseDurability.STRICT
 import org.briarproject.bramble.api.mailbox.MailboxDirectory
 import org.briarproject.bramble.api.plugin.PluginConfig
 import org.briarproject.bramble.api.plugin.TorConstants.DEFAULT_CONTROL_PORT
@@ -52,7 +54,11 @@ import javax.inject.Singleton
         HeadlessMessagingModule::class
     ]
 )
-internal class HeadlessModule(private val appDir: File) {
+internal class HeadlessModule(
+    private val appDir: File,
+    private val dbDurability: DatabaseDurability = STRICT,
+    private val dbIncrementalCompaction: Boolean = false
+) {
 
     @Provides
     @Singleton
@@ -63,7 +69,12 @@ internal class HeadlessModule(private val appDir: File) {
     internal fun provideDatabaseConfig(): DatabaseConfig {
         val dbDir = File(appDir, "db")
         val keyDir = File(appDir, "key")
-        return HeadlessDatabaseConfig(dbDir, keyDir)
+        return HeadlessDatabaseConfig(
+            dbDir,
+            keyDir,
+            durability = dbDurability,
+            incrementalCompaction = dbIncrementalCompaction
+        )
     }
 
     @Provides
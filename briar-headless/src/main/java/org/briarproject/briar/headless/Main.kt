@@ -5,9 +5,15 @@ import com.github.ajalt.clikt.parameters.options.counted
 import com.github.ajalt.clikt.parameters.options.default
 import com.github.ajalt.clikt.parameters.options.flag
 import com.github.ajalt.clikt.parameters.options.option
+import com.github.ajalt.clikt.parameters.types.choice
 import com.github.ajalt.clikt.parameters.types.int
 import org.bouncycastle.util.encoders.Base64.toBase64String
 import org.briarproject.bramble.BrambleCoreEagerSingletons
+import org.briarproject.bramble.api.db.DatabaseDurability.GROUP_COMMIT
+import org.briarproject.bramble.api.db.DatabaseDurability.RELAXED
+import org.briarproject.bramble.api.db.DatabaseDurability.STRICT
+import org.briarproject.bramble.lifecycle.LifecycleModule
+import org.briarproject.bramble.system.VirtualThreads.getVirtualThreadFactory
 import org.briarproject.bramble.util.OsUtils.isLinux
 import org.briarproject.bramble.util.OsUtils.isMac
 import org.briarproject.briar.BriarCoreEagerSingletons
@@ -55,6 +61,24 @@ private class Main : CliktCommand(
         metavar = "PATH",
         envvar = "BRIAR_DATA_DIR"
     ).default(DEFAULT_DATA_DIR)
+    private val dbDurability by option(
+        "--db-durability",
+        help = "How soon committed changes are written to disk. " +
+            "'group-commit' and 'relaxed' are faster, but may lose the most recent " +
+            "changes after a crash. Default: strict",
+        envvar = "BRIAR_DB_DURABILITY"
+    ).choice("strict" to STRICT, "group-commit" to GROUP_COMMIT, "relaxed" to RELAXED)
+        .default(STRICT)
+    private val dbIncrementalCompaction by option(
+        "--db-incremental-compaction",
+        help = "Spend a bounded time compacting the database on shutdown " +
+            "instead of fully compacting it"
+    ).flag(default = false)
+    private val virtualThreads by option(
+        "--virtual-threads",
+        help = "Run connections on virtual threads if the JVM supports them, so many " +
+            "connections can share a few platform threads. Default: enabled"
+    ).flag("--no-virtual-threads", default = true)
 
     override fun run() {
         // logging
@@ -72,8 +96,13 @@ private class Main : CliktCommand(
         LogManager.getLogManager().getLogger("").level = level
 
         val dataDir = getDataDir()
-        val app =
-            DaggerBriarHeadlessApp.builder().headlessModule(HeadlessModule(dataDir)).build()
+        val builder = DaggerBriarHeadlessApp.builder()
+            .headlessModule(HeadlessModule(dataDir, dbDurability, dbIncrementalCompaction))
+        if (virtualThreads) {
+            val ioThreadFactory = getVirtualThreadFactory("IoExecutor-")
+            if (ioThreadFactory != null) builder.lifecycleModule(LifecycleModule(ioThreadFactory))
+        }
+        val app = builder.build()
         // We need to load the eager singletons directly after making the
         // dependency graphs
         BrambleCoreEagerSingletons.Helper.injectEagerSingletons(app)
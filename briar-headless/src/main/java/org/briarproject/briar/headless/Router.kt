@@ -120,7 +120,7 @@ constructor(
                 val session = ctx.session
                 if (ctx.message() == authToken && !webSocketController.sessions.contains(ctx)) {
                     logger.info("Authenticated websocket session with ${session.remoteAddress}")
-                    webSocketController.sessions.add(ctx)
+                    webSocketController.addSession(ctx)
                 } else {
                     logger.info("Invalid message received: ${ctx.message()}")
                     logger.info("Closing websocket connection with ${session.remoteAddress}")
@@ -129,7 +129,7 @@ constructor(
             }
             ws.onClose { ctx ->
                 logger.info("Removing websocket connection with ${ctx.session.remoteAddress}")
-                webSocketController.sessions.remove(ctx)
+                webSocketController.removeSession(ctx)
             }
         }
         return app.start(port)
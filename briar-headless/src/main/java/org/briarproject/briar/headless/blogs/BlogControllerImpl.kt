@@ -31,12 +31,13 @@ constructor(
 ) : BlogController {
 
     override fun listPosts(ctx: Context): Context {
-        val posts = blogManager.blogs
+        val headers = blogManager.blogs
             .flatMap { blog -> blogManager.getPostHeaders(blog.id) }
-            .asSequence()
             .sortedBy { it.timeReceived }
-            .map { header -> header.output(blogManager.getPostText(header.id)) }
-            .toList()
+        // Load the text of all posts in a single transaction
+        val texts = if (headers.isEmpty()) emptyMap()
+        else blogManager.getPostTexts(headers.map { it.id })
+        val posts = headers.map { header -> header.output(texts.getValue(header.id)) }
         return ctx.json(posts)
     }
 
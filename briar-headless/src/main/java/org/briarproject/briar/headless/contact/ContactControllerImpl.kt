@@ -79,10 +79,12 @@ constructor(
     }
 
     override fun list(ctx: Context): Context {
+        val groupCounts = conversationManager.groupCounts
         val contacts = contactManager.contacts.map { contact ->
-            val latestMsgTime = conversationManager.getGroupCount(contact.id).latestMsgTime
+            val groupCount = groupCounts[contact.id]
+            val latestMsgTime = groupCount?.latestMsgTime ?: 0L
             val connected = connectionRegistry.isConnected(contact.id)
-            val unreadCount = conversationManager.getGroupCount(contact.id).unreadCount
+            val unreadCount = groupCount?.unreadCount ?: 0
             contact.output(latestMsgTime, connected, unreadCount)
         }
         return ctx.json(contacts)
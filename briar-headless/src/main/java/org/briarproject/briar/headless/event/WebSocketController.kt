@@ -8,11 +8,29 @@ import javax.annotation.concurrent.ThreadSafe
 @ThreadSafe
 interface WebSocketController {
 
-    val sessions: MutableSet<WsContext>
+    /**
+     * The open sessions, which receive events.
+     */
+    val sessions: Set<WsContext>
+
+    fun addSession(session: WsContext)
+
+    fun removeSession(session: WsContext)
 
     /**
      * Sends an event to all open sessions using the [IoExecutor].
      */
     fun sendEvent(name: String, obj: JsonDict)
 
+    /**
+     * Sends an event to all open sessions using the [IoExecutor].
+     *
+     * If an event with the same name and [key] is still waiting to be sent to a session,
+     * the waiting event's data is replaced by the result of [merge] instead,
+     * called with the waiting event's data and [obj].
+     */
+    fun sendEvent(name: String, obj: JsonDict, key: Any, merge: (JsonDict, JsonDict) -> JsonDict)
+
+    fun getStats(): WebSocketStats
+
 }
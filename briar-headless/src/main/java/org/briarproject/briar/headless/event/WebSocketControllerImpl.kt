@@ -5,39 +5,205 @@ import io.javalin.websocket.WsContext
 import org.briarproject.bramble.api.lifecycle.IoExecutor
 import org.briarproject.bramble.util.LogUtils.logException
 import org.briarproject.briar.headless.json.JsonDict
+import org.eclipse.jetty.websocket.api.StatusCode.POLICY_VIOLATION
 import org.eclipse.jetty.websocket.api.WebSocketException
 import java.io.IOException
+import java.util.ArrayDeque
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.Executor
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 import java.util.logging.Level.WARNING
 import java.util.logging.Logger.getLogger
-import javax.annotation.concurrent.Immutable
+import javax.annotation.concurrent.GuardedBy
+import javax.annotation.concurrent.ThreadSafe
 import javax.inject.Inject
 import javax.inject.Singleton
 
-@Immutable
+/**
+ * The maximum number of events that may be waiting to be sent to a session. A session that
+ * falls further behind than this is disconnected.
+ */
+internal const val MAX_QUEUED_EVENTS = 1000
+
+@ThreadSafe
 @Singleton
-internal class WebSocketControllerImpl
-@Inject
-constructor(@IoExecutor private val ioExecutor: Executor) : WebSocketController {
+internal class WebSocketControllerImpl(
+    private val ioExecutor: Executor,
+    private val maxQueuedEvents: Int
+) : WebSocketController {
+
+    @Inject
+    constructor(@IoExecutor ioExecutor: Executor) : this(ioExecutor, MAX_QUEUED_EVENTS)
 
     private val logger = getLogger(WebSocketControllerImpl::javaClass.name)
 
-    override val sessions: MutableSet<WsContext> = ConcurrentHashMap.newKeySet<WsContext>()
+    private val queues = ConcurrentHashMap<WsContext, SessionQueue>()
+
+    private val queuedEvents = AtomicInteger()
+    private val maxQueueSize = AtomicInteger()
+    private val sentEvents = AtomicLong()
+    private val coalescedEvents = AtomicLong()
+    private val failedEvents = AtomicLong()
+    private val disconnectedSessions = AtomicLong()
+
+    override val sessions: Set<WsContext> get() = queues.keys
+
+    override fun addSession(session: WsContext) {
+        queues.putIfAbsent(session, SessionQueue(session))
+    }
+
+    override fun removeSession(session: WsContext) {
+        queues.remove(session)?.close()
+    }
 
     override fun sendEvent(name: String, obj: JsonDict) {
-        val event = toJson(OutputEvent(name, obj))
-        sessions.forEach { session ->
-            ioExecutor.execute {
+        // Serialise the event once for all sessions
+        val json = toJson(OutputEvent(name, obj))
+        queues.values.forEach { queue -> queue.add(QueuedEvent(name, obj, json)) }
+    }
+
+    override fun sendEvent(
+        name: String,
+        obj: JsonDict,
+        key: Any,
+        merge: (JsonDict, JsonDict) -> JsonDict
+    ) {
+        queues.values.forEach { queue -> queue.add(QueuedEvent(name, obj, null, key, merge)) }
+    }
+
+    override fun getStats() = WebSocketStats(
+        queuedEvents.get(),
+        maxQueueSize.get(),
+        sentEvents.get(),
+        coalescedEvents.get(),
+        failedEvents.get(),
+        disconnectedSessions.get()
+    )
+
+    private fun disconnect(queue: SessionQueue) {
+        val session = queue.session
+        if (!queues.remove(session, queue)) return
+        disconnectedSessions.incrementAndGet()
+        logger.warning("Disconnecting websocket session that is not receiving events")
+        ioExecutor.execute {
+            try {
+                session.session.close(POLICY_VIOLATION, "Too many queued events")
+            } catch (e: WebSocketException) {
+                logException(logger, WARNING, e)
+            }
+        }
+    }
+
+    private class QueuedEvent(
+        val name: String,
+        var data: JsonDict,
+        val json: String?,
+        val key: Any? = null,
+        val merge: ((JsonDict, JsonDict) -> JsonDict)? = null
+    )
+
+    /**
+     * The events waiting to be sent to a session. At most one task per session is submitted
+     * to the [IoExecutor] at a time, which sends events until the queue is empty.
+     */
+    @ThreadSafe
+    private inner class SessionQueue(val session: WsContext) {
+
+        private val lock = Any()
+
+        @GuardedBy("lock")
+        private val queue = ArrayDeque<QueuedEvent>()
+
+        /**
+         * The waiting events that can be merged with later events, by name and key.
+         */
+        @GuardedBy("lock")
+        private val coalescable = HashMap<Pair<String, Any>, QueuedEvent>()
+
+        @GuardedBy("lock")
+        private var sending = false
+
+        @GuardedBy("lock")
+        private var closed = false
+
+        fun add(event: QueuedEvent) {
+            var startSending = false
+            var overflow = false
+            synchronized(lock) {
+                if (closed) return
+                if (event.key != null && event.merge != null) {
+                    val waiting = coalescable[Pair(event.name, event.key)]
+                    if (waiting != null) {
+                        waiting.data = event.merge.invoke(waiting.data, event.data)
+                        coalescedEvents.incrementAndGet()
+                        return
+                    }
+                }
+                if (queue.size >= maxQueuedEvents) {
+                    overflow = true
+                    clear()
+                } else {
+                    queue.add(event)
+                    if (event.key != null) coalescable[Pair(event.name, event.key)] = event
+                    queuedEvents.incrementAndGet()
+                    updateMaxQueueSize(queue.size)
+                    if (!sending) {
+                        sending = true
+                        startSending = true
+                    }
+                }
+            }
+            if (overflow) disconnect(this)
+            else if (startSending) ioExecutor.execute { sendQueuedEvents() }
+        }
+
+        fun close() {
+            synchronized(lock) { clear() }
+        }
+
+        @GuardedBy("lock")
+        private fun clear() {
+            closed = true
+            queuedEvents.addAndGet(-queue.size)
+            queue.clear()
+            coalescable.clear()
+        }
+
+        @IoExecutor
+        private fun sendQueuedEvents() {
+            while (true) {
+                val event = synchronized(lock) {
+                    val event = queue.poll()
+                    if (event == null) {
+                        sending = false
+                        return
+                    }
+                    queuedEvents.decrementAndGet()
+                    // Later events can't be merged into an event that's being sent
+                    if (event.key != null) coalescable.remove(Pair(event.name, event.key))
+                    event
+                }
+                val json = event.json ?: toJson(OutputEvent(event.name, event.data))
                 try {
-                    session.send(event)
+                    session.send(json)
+                    sentEvents.incrementAndGet()
                 } catch (e: WebSocketException) {
+                    failedEvents.incrementAndGet()
                     logException(logger, WARNING, e)
                 } catch (e: IOException) {
+                    failedEvents.incrementAndGet()
                     logException(logger, WARNING, e)
                 }
             }
         }
     }
 
+    private fun updateMaxQueueSize(size: Int) {
+        while (true) {
+            val max = maxQueueSize.get()
+            if (size <= max || maxQueueSize.compareAndSet(max, size)) return
+        }
+    }
+
 }
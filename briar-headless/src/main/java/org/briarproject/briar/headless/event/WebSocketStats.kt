@@ -0,0 +1,25 @@
+package org.briarproject.briar.headless.event
+
+import javax.annotation.concurrent.Immutable
+
+/**
+ * Statistics about the events sent to websocket sessions.
+ *
+ * @param queuedEvents The number of events currently waiting to be sent
+ * @param maxQueuedEvents The maximum number of events that have been waiting to be sent
+ * to a single session at once
+ * @param sentEvents The number of events that have been sent
+ * @param coalescedEvents The number of events that were merged into waiting events
+ * @param failedEvents The number of events that could not be sent
+ * @param disconnectedSessions The number of sessions that were disconnected because
+ * they did not receive events quickly enough
+ */
+@Immutable
+data class WebSocketStats(
+    val queuedEvents: Int,
+    val maxQueuedEvents: Int,
+    val sentEvents: Long,
+    val coalescedEvents: Long,
+    val failedEvents: Long,
+    val disconnectedSessions: Long
+)
@@ -6,10 +6,11 @@ import io.javalin.http.Context
 import io.javalin.http.NotFoundResponse
 import org.bouncycastle.util.encoders.Base64
 import org.bouncycastle.util.encoders.DecoderException
+import org.briarproject.bramble.PoliteExecutor
 import org.briarproject.bramble.api.contact.Contact
 import org.briarproject.bramble.api.contact.ContactId
 import org.briarproject.bramble.api.contact.ContactManager
-import org.briarproject.bramble.api.db.DatabaseExecutor
+import org.briarproject.bramble.api.db.DatabaseReadExecutor
 import org.briarproject.bramble.api.db.NoSuchContactException
 import org.briarproject.bramble.api.event.Event
 import org.briarproject.bramble.api.event.EventListener
@@ -47,6 +48,9 @@ internal const val EVENT_CONVERSATION_MESSAGE = "ConversationMessageReceivedEven
 internal const val EVENT_MESSAGES_ACKED = "MessagesAckedEvent"
 internal const val EVENT_MESSAGES_SENT = "MessagesSentEvent"
 
+internal const val DEFAULT_PAGE_SIZE = 50
+internal const val MAX_PAGE_SIZE = 500
+
 @Immutable
 @Singleton
 internal class MessagingControllerImpl
@@ -57,20 +61,49 @@ constructor(
     private val privateMessageFactory: PrivateMessageFactory,
     private val contactManager: ContactManager,
     private val webSocketController: WebSocketController,
-    @DatabaseExecutor private val dbExecutor: Executor,
+    @DatabaseReadExecutor dbReadExecutor: Executor,
     private val objectMapper: ObjectMapper,
     private val clock: Clock
 ) : MessagingController, EventListener {
 
+    // The read lane may have several threads, so received messages are
+    // loaded one at a time to send them to clients in the order they arrived
+    private val eventExecutor = PoliteExecutor("MessagingControllerImpl", dbReadExecutor, 1)
+
     override fun list(ctx: Context): Context {
         val contact = getContact(ctx)
-        val jsonVisitor = JsonVisitor(contact.id, messagingManager)
-        val messages = conversationManager.getMessageHeaders(contact.id)
-            .sortedBy { it.timestamp }
-            .map { header -> header.accept(jsonVisitor) }
+        val before = ctx.getLongFromQueryParam("before")
+        val after = ctx.getLongFromQueryParam("after")
+        val limit = ctx.getLongFromQueryParam("limit")
+        val headers = if (before == null && after == null && limit == null) {
+            conversationManager.getMessageHeaders(contact.id).sortedBy { it.timestamp }
+        } else {
+            if (before != null && after != null)
+                throw BadRequestResponse("'before' and 'after' can't both be used")
+            val pageSize = limit ?: DEFAULT_PAGE_SIZE.toLong()
+            if (pageSize < 1 || pageSize > MAX_PAGE_SIZE)
+                throw BadRequestResponse("'limit' must be between 1 and $MAX_PAGE_SIZE")
+            if (after != null) {
+                conversationManager.getMessageHeaders(contact.id, after, false, pageSize.toInt())
+            } else {
+                val timestamp = before ?: Long.MAX_VALUE
+                conversationManager.getMessageHeaders(contact.id, timestamp, true, pageSize.toInt())
+            }
+        }
+        // Load the text of all private messages in a single transaction
+        val privateMessageIds = headers.filterIsInstance<PrivateMessageHeader>().map { it.id }
+        val texts = if (privateMessageIds.isEmpty()) emptyMap()
+        else messagingManager.getMessageTexts(privateMessageIds)
+        val jsonVisitor = JsonVisitor(contact.id, texts)
+        val messages = headers.map { header -> header.accept(jsonVisitor) }
         return ctx.json(messages)
     }
 
+    private fun Context.getLongFromQueryParam(param: String): Long? {
+        val value = queryParam(param) ?: return null
+        return value.toLongOrNull() ?: throw BadRequestResponse("'$param' must be a number")
+    }
+
     override fun write(ctx: Context): Context {
         val contact = getContact(ctx)
 
@@ -120,18 +153,25 @@ constructor(
         when (e) {
             is ConversationMessageReceivedEvent<*> -> {
                 val h = e.messageHeader
-                if (h is PrivateMessageHeader) dbExecutor.execute {
-                    val text = messagingManager.getMessageText(h.id)
-                    webSocketController.sendEvent(EVENT_CONVERSATION_MESSAGE, e.output(text))
-                } else {
-                    webSocketController.sendEvent(EVENT_CONVERSATION_MESSAGE, e.output())
+                eventExecutor.execute {
+                    val output = if (h is PrivateMessageHeader) {
+                        e.output(messagingManager.getMessageText(h.id))
+                    } else {
+                        e.output()
+                    }
+                    webSocketController.sendEvent(EVENT_CONVERSATION_MESSAGE, output)
                 }
             }
+            // Events for the same contact are merged while waiting to be sent
             is MessagesSentEvent -> {
-                webSocketController.sendEvent(EVENT_MESSAGES_SENT, e.output())
+                webSocketController.sendEvent(
+                    EVENT_MESSAGES_SENT, e.output(), e.contactId, ::mergeMessageIds
+                )
             }
             is MessagesAckedEvent -> {
-                webSocketController.sendEvent(EVENT_MESSAGES_ACKED, e.output())
+                webSocketController.sendEvent(
+                    EVENT_MESSAGES_ACKED, e.output(), e.contactId, ::mergeMessageIds
+                )
             }
         }
     }
@@ -148,11 +188,11 @@ constructor(
 
 private class JsonVisitor(
     private val contactId: ContactId,
-    private val messagingManager: MessagingManager
+    private val texts: Map<MessageId, String>
 ) : ConversationMessageVisitor<JsonDict> {
 
     override fun visitPrivateMessageHeader(h: PrivateMessageHeader) =
-        h.output(contactId, messagingManager.getMessageText(h.id))
+        h.output(contactId, texts[h.id])
 
     override fun visitBlogInvitationRequest(r: BlogInvitationRequest) = r.output(contactId)
 
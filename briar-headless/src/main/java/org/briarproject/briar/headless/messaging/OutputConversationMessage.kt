@@ -66,4 +66,12 @@ internal fun MessagesSentEvent.output() = JsonDict(
     "messageIds" to messageIds.toJson()
 )
 
+/**
+ * Merges the output of two [MessagesAckedEvent]s or [MessagesSentEvent]s for the same contact.
+ */
+internal fun mergeMessageIds(first: JsonDict, second: JsonDict) = JsonDict(
+    "contactId" to first["contactId"],
+    "messageIds" to (first["messageIds"] as List<*>) + (second["messageIds"] as List<*>)
+)
+
 internal fun Collection<MessageId>.toJson() = map { it.bytes }
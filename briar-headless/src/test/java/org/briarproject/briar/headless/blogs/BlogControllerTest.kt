@@ -107,7 +107,7 @@ internal class BlogControllerTest : ControllerTest() {
     fun testList() {
         every { blogManager.blogs } returns listOf(blog)
         every { blogManager.getPostHeaders(group.id) } returns listOf(header)
-        every { blogManager.getPostText(message.id) } returns text
+        every { blogManager.getPostTexts(listOf(message.id)) } returns mapOf(message.id to text)
         every { ctx.json(listOf(header.output(text))) } returns ctx
 
         controller.listPosts(ctx)
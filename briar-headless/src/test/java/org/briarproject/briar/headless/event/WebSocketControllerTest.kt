@@ -6,6 +6,8 @@ import io.mockk.CapturingSlot
 import io.mockk.every
 import io.mockk.mockk
 import io.mockk.verify
+import org.briarproject.bramble.api.sync.MessageId
+import org.briarproject.bramble.api.sync.event.MessagesAckedEvent
 import org.briarproject.bramble.test.ImmediateExecutor
 import org.briarproject.bramble.test.TestUtils.getRandomId
 import org.briarproject.briar.api.autodelete.AutoDeleteConstants.NO_AUTO_DELETE_TIMER
@@ -17,13 +19,19 @@ import org.briarproject.briar.api.introduction.event.IntroductionRequestReceived
 import org.briarproject.briar.api.messaging.PrivateMessageHeader
 import org.briarproject.briar.api.messaging.event.PrivateMessageReceivedEvent
 import org.briarproject.briar.headless.ControllerTest
+import org.briarproject.briar.headless.json.JsonDict
 import org.briarproject.briar.headless.messaging.EVENT_CONVERSATION_MESSAGE
+import org.briarproject.briar.headless.messaging.EVENT_MESSAGES_ACKED
+import org.briarproject.briar.headless.messaging.mergeMessageIds
 import org.briarproject.briar.headless.messaging.output
 import org.eclipse.jetty.websocket.api.WebSocketException
 import org.eclipse.jetty.websocket.common.io.FutureWriteCallback
 import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
 import org.junit.jupiter.api.Test
 import java.io.IOException
+import java.util.ArrayDeque
+import java.util.concurrent.Executor
 
 internal class WebSocketControllerTest : ControllerTest() {
 
@@ -54,7 +62,7 @@ internal class WebSocketControllerTest : ControllerTest() {
 
         every { session1.send(capture(slot)) } returns FutureWriteCallback()
 
-        controller.sessions.add(session1)
+        controller.addSession(session1)
         controller.sendEvent(EVENT_CONVERSATION_MESSAGE, event.output(text))
 
         assertJsonEquals(slot.captured, outputEvent)
@@ -76,13 +84,84 @@ internal class WebSocketControllerTest : ControllerTest() {
         every { session1.send(capture(slot)) } throws throwable
         every { session2.send(capture(slot)) } returns FutureWriteCallback()
 
-        controller.sessions.add(session1)
-        controller.sessions.add(session2)
+        controller.addSession(session1)
+        controller.addSession(session2)
         controller.sendEvent(EVENT_CONVERSATION_MESSAGE, event.output(text))
 
         verify { session2.send(slot.captured) }
     }
 
+    @Test
+    fun testEventsAreSentInOrder() {
+        val executor = QueueingExecutor()
+        val controller = WebSocketControllerImpl(executor)
+        val sent = ArrayList<String>()
+
+        every { session1.send(capture(sent)) } returns FutureWriteCallback()
+
+        controller.addSession(session1)
+        controller.sendEvent("first", JsonDict())
+        controller.sendEvent("second", JsonDict())
+        controller.sendEvent("third", JsonDict())
+
+        // Only one task is submitted for the session
+        assertEquals(1, executor.tasks.size)
+        assertEquals(3, controller.getStats().queuedEvents)
+        executor.runAll()
+
+        assertEquals(3, sent.size)
+        assertJsonEquals(sent[0], OutputEvent("first", JsonDict()))
+        assertJsonEquals(sent[1], OutputEvent("second", JsonDict()))
+        assertJsonEquals(sent[2], OutputEvent("third", JsonDict()))
+        assertEquals(0, controller.getStats().queuedEvents)
+        assertEquals(3, controller.getStats().sentEvents)
+    }
+
+    @Test
+    fun testWaitingEventsAreCoalesced() {
+        val executor = QueueingExecutor()
+        val controller = WebSocketControllerImpl(executor)
+        val messageId1 = MessageId(getRandomId())
+        val messageId2 = MessageId(getRandomId())
+        val event1 = MessagesAckedEvent(contact.id, listOf(messageId1))
+        val event2 = MessagesAckedEvent(contact.id, listOf(messageId2))
+        val merged = MessagesAckedEvent(contact.id, listOf(messageId1, messageId2))
+        val slot = CapturingSlot<String>()
+
+        every { session1.send(capture(slot)) } returns FutureWriteCallback()
+
+        controller.addSession(session1)
+        controller.sendEvent(EVENT_MESSAGES_ACKED, event1.output(), contact.id, ::mergeMessageIds)
+        controller.sendEvent(EVENT_MESSAGES_ACKED, event2.output(), contact.id, ::mergeMessageIds)
+        executor.runAll()
+
+        verify(exactly = 1) { session1.send(any<String>()) }
+        assertJsonEquals(slot.captured, OutputEvent(EVENT_MESSAGES_ACKED, merged.output()))
+        assertEquals(1, controller.getStats().coalescedEvents)
+    }
+
+    @Test
+    fun testSlowSessionIsDisconnected() {
+        val executor = QueueingExecutor()
+        val controller = WebSocketControllerImpl(executor, 2)
+
+        controller.addSession(session1)
+        controller.sendEvent("first", JsonDict())
+        controller.sendEvent("second", JsonDict())
+        // The session's queue is full, so the session is disconnected
+        controller.sendEvent("third", JsonDict())
+
+        assertFalse(controller.sessions.contains(session1))
+        assertEquals(0, controller.getStats().queuedEvents)
+        assertEquals(2, controller.getStats().maxQueuedEvents)
+        assertEquals(1, controller.getStats().disconnectedSessions)
+        // A task was submitted to send the events, followed by a task to close the session
+        assertEquals(2, executor.tasks.size)
+        // No events are sent to the disconnected session
+        executor.tasks.poll().run()
+        verify(exactly = 0) { session1.send(any<String>()) }
+    }
+
     @Test
     fun testIntroductionRequestEvent() {
         val introductionRequest = IntroductionRequest(
@@ -108,7 +187,7 @@ internal class WebSocketControllerTest : ControllerTest() {
 
         every { session1.send(capture(slot)) } returns FutureWriteCallback()
 
-        controller.sessions.add(session1)
+        controller.addSession(session1)
         controller.sendEvent(EVENT_CONVERSATION_MESSAGE, introductionRequestEvent.output())
         assertJsonEquals(slot.captured, introductionOutputEvent)
         assertEquals("IntroductionRequest", introductionRequestEvent.output()["type"])
@@ -127,3 +206,16 @@ internal class WebSocketControllerTest : ControllerTest() {
     }
 
 }
+
+private class QueueingExecutor : Executor {
+
+    val tasks = ArrayDeque<Runnable>()
+
+    override fun execute(command: Runnable) {
+        tasks.add(command)
+    }
+
+    fun runAll() {
+        while (tasks.isNotEmpty()) tasks.poll().run()
+    }
+}
@@ -11,6 +11,7 @@ import io.mockk.just
 import io.mockk.mockk
 import io.mockk.mockkStatic
 import io.mockk.runs
+import io.mockk.verifyOrder
 import org.bouncycastle.util.encoders.Base64
 import org.briarproject.bramble.api.contact.ContactId
 import org.briarproject.bramble.api.db.NoSuchContactException
@@ -40,6 +41,7 @@ import org.briarproject.briar.headless.json.JsonDict
 import org.junit.jupiter.api.Assertions.assertEquals
 import org.junit.jupiter.api.Assertions.assertThrows
 import org.junit.jupiter.api.Test
+import java.util.concurrent.Executor
 import kotlin.random.Random
 
 internal class MessagingControllerImplTest : ControllerTest() {
@@ -78,8 +80,9 @@ internal class MessagingControllerImplTest : ControllerTest() {
     @Test
     fun list() {
         expectGetContact()
+        expectNoPageParams()
         every { conversationManager.getMessageHeaders(contact.id) } returns listOf(header)
-        every { messagingManager.getMessageText(message.id) } returns text
+        every { messagingManager.getMessageTexts(listOf(message.id)) } returns mapOf(message.id to text)
         every { ctx.json(listOf(header.output(contact.id, text))) } returns ctx
 
         controller.list(ctx)
@@ -93,6 +96,7 @@ internal class MessagingControllerImplTest : ControllerTest() {
         )
 
         expectGetContact()
+        expectNoPageParams()
         every { conversationManager.getMessageHeaders(contact.id) } returns listOf(request)
         every { ctx.json(listOf(request.output(contact.id))) } returns ctx
 
@@ -103,12 +107,75 @@ internal class MessagingControllerImplTest : ControllerTest() {
     fun testEmptyList() {
         every { ctx.pathParam("contactId") } returns contact.id.int.toString()
         every { contactManager.getContact(contact.id) } returns contact
+        expectNoPageParams()
         every { conversationManager.getMessageHeaders(contact.id) } returns emptyList()
         every { ctx.json(emptyList<Any>()) } returns ctx
 
         controller.list(ctx)
     }
 
+    @Test
+    fun listLatestPage() {
+        expectGetContact()
+        expectPageParams(null, null, "10")
+        every {
+            conversationManager.getMessageHeaders(contact.id, Long.MAX_VALUE, true, 10)
+        } returns listOf(header)
+        every { messagingManager.getMessageTexts(listOf(message.id)) } returns mapOf(message.id to text)
+        every { ctx.json(listOf(header.output(contact.id, text))) } returns ctx
+
+        controller.list(ctx)
+    }
+
+    @Test
+    fun listPageBefore() {
+        expectGetContact()
+        expectPageParams(timestamp.toString(), null, null)
+        every {
+            conversationManager.getMessageHeaders(contact.id, timestamp, true, DEFAULT_PAGE_SIZE)
+        } returns listOf(header)
+        every { messagingManager.getMessageTexts(listOf(message.id)) } returns mapOf(message.id to text)
+        every { ctx.json(listOf(header.output(contact.id, text))) } returns ctx
+
+        controller.list(ctx)
+    }
+
+    @Test
+    fun listPageAfter() {
+        expectGetContact()
+        expectPageParams(null, timestamp.toString(), "10")
+        every {
+            conversationManager.getMessageHeaders(contact.id, timestamp, false, 10)
+        } returns emptyList()
+        every { ctx.json(emptyList<Any>()) } returns ctx
+
+        controller.list(ctx)
+    }
+
+    @Test
+    fun listPageBeforeAndAfter() {
+        expectGetContact()
+        expectPageParams(timestamp.toString(), timestamp.toString(), null)
+
+        assertThrows(BadRequestResponse::class.java) { controller.list(ctx) }
+    }
+
+    @Test
+    fun listPageInvalidLimit() {
+        expectGetContact()
+        expectPageParams(null, null, "0")
+
+        assertThrows(BadRequestResponse::class.java) { controller.list(ctx) }
+    }
+
+    @Test
+    fun listPageLimitNotANumber() {
+        expectGetContact()
+        expectPageParams(null, null, "foo")
+
+        assertThrows(BadRequestResponse::class.java) { controller.list(ctx) }
+    }
+
     @Test
     fun listInvalidContactId() {
         testInvalidContactId { controller.list(ctx) }
@@ -124,7 +191,9 @@ internal class MessagingControllerImplTest : ControllerTest() {
         every {
             webSocketController.sendEvent(
                 EVENT_MESSAGES_ACKED,
-                event.output()
+                event.output(),
+                contact.id,
+                any()
             )
         } just runs
 
@@ -141,7 +210,9 @@ internal class MessagingControllerImplTest : ControllerTest() {
         every {
             webSocketController.sendEvent(
                 EVENT_MESSAGES_SENT,
-                event.output()
+                event.output(),
+                contact.id,
+                any()
             )
         } just runs
 
@@ -251,6 +322,54 @@ internal class MessagingControllerImplTest : ControllerTest() {
         controller.eventOccurred(event)
     }
 
+    @Test
+    fun privateMessageEventsAreSentInOrder() {
+        // The read lane may run tasks concurrently, so it shouldn't be given
+        // the second event's task until the first event has been sent
+        val tasks = ArrayList<Runnable>()
+        val controller = MessagingControllerImpl(
+            messagingManager,
+            conversationManager,
+            privateMessageFactory,
+            contactManager,
+            webSocketController,
+            Executor { tasks.add(it) },
+            objectMapper,
+            clock
+        )
+        val header1 = PrivateMessageHeader(
+            MessageId(getRandomId()),
+            group.id,
+            timestamp + 1,
+            true,
+            true,
+            true,
+            true,
+            true,
+            emptyList(),
+            NO_AUTO_DELETE_TIMER
+        )
+        val text1 = getRandomString(5)
+        val event = PrivateMessageReceivedEvent(header, contact.id)
+        val event1 = PrivateMessageReceivedEvent(header1, contact.id)
+
+        every { messagingManager.getMessageText(message.id) } returns text
+        every { messagingManager.getMessageText(header1.id) } returns text1
+        every { webSocketController.sendEvent(EVENT_CONVERSATION_MESSAGE, any()) } just runs
+
+        controller.eventOccurred(event)
+        controller.eventOccurred(event1)
+        assertEquals(1, tasks.size)
+        tasks[0].run()
+        assertEquals(2, tasks.size)
+        tasks[1].run()
+
+        verifyOrder {
+            webSocketController.sendEvent(EVENT_CONVERSATION_MESSAGE, event.output(text))
+            webSocketController.sendEvent(EVENT_CONVERSATION_MESSAGE, event1.output(text1))
+        }
+    }
+
     @Test
     fun testOutputMessagesAckedEvent() {
         val messageId1 = MessageId(getRandomId())
@@ -403,6 +522,16 @@ internal class MessagingControllerImplTest : ControllerTest() {
         every { contactManager.getContact(contact.id) } returns contact
     }
 
+    private fun expectNoPageParams() {
+        expectPageParams(null, null, null)
+    }
+
+    private fun expectPageParams(before: String?, after: String?, limit: String?) {
+        every { ctx.queryParam("before") } returns before
+        every { ctx.queryParam("after") } returns after
+        every { ctx.queryParam("limit") } returns limit
+    }
+
     private fun testNonexistentContactId(function: () -> Context) {
         every { ctx.pathParam("contactId") } returns "42"
         every { contactManager.getContact(ContactId(42)) } throws NoSuchContactException()